@@ -9,6 +9,8 @@ import org.junit.Test;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
@@ -16,7 +18,7 @@ import java.util.*;
 public class GradlePluginIT {
   private String itProjectsDir = "./src/it/";
   private String propertiesFilePath = itProjectsDir + "profile.properties";
-  private SnowflakeConnectionV1 conn;
+  private Connection conn;
   private UdxChecker checker;
 
   private String stageName =
@@ -29,7 +31,12 @@ public class GradlePluginIT {
     prop.load(new FileInputStream(propertiesFilePath));
     prop.put("client_memory_limit", "10240");
     prop.put("CLIENT_SESSION_KEEP_ALIVE", true);
-    conn = new SnowflakeConnectionV1("jdbc:snowflake://" + prop.get("URL").toString(), prop);
+    String url = prop.get("URL").toString();
+    // JDBC urls, such as those of the offline stand-in, are used as is
+    conn =
+        url.startsWith("jdbc:")
+            ? DriverManager.getConnection(url, prop)
+            : new SnowflakeConnectionV1("jdbc:snowflake://" + url, prop);
     checker = new UdxChecker(conn);
   }
 
@@ -1,7 +1,6 @@
 package com.snowflake.plugins.udf.gradle;
 
-import net.snowflake.client.jdbc.SnowflakeConnectionV1;
-
+import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -10,11 +9,11 @@ import static org.junit.Assert.assertEquals;
 
 public class UdxChecker {
 
-  public UdxChecker(SnowflakeConnectionV1 conn) {
+  public UdxChecker(Connection conn) {
     this.conn = conn;
   }
 
-  private SnowflakeConnectionV1 conn;
+  private Connection conn;
 
   private void checkStringFuncProc(
       String invocation, String functionName, String args, String expected) throws SQLException {
@@ -0,0 +1,51 @@
+package com.snowflake.plugins.udf.gradle;
+
+import com.snowflake.plugins.udf.core.DependencyPaths;
+import java.util.Collection;
+import java.util.Map;
+import org.gradle.api.Transformer;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.result.ResolvedArtifactResult;
+
+/**
+ * Maps the resolved runtime artifacts of the project to their stage path and to their file in the
+ * Gradle cache, which is uploaded in place. Each artifact is keyed by the name of its actual file,
+ * so classifiers and custom file names are kept. Project dependencies are not modules and are left
+ * out
+ */
+class ResolvedDependencyPaths {
+  private ResolvedDependencyPaths() {}
+
+  static DependencyPaths resolve(Collection<ResolvedArtifactResult> artifacts) {
+    DependencyPaths paths = new DependencyPaths();
+    for (ResolvedArtifactResult artifact : artifacts) {
+      ComponentIdentifier id = artifact.getId().getComponentIdentifier();
+      if (id instanceof ModuleComponentIdentifier) {
+        ModuleComponentIdentifier module = (ModuleComponentIdentifier) id;
+        paths.add(module.getGroup(), module.getModule(), module.getVersion(), artifact.getFile());
+      }
+    }
+    return paths;
+  }
+
+  // Transformers are classes rather than lambdas so that the configuration cache can store them
+
+  /** A map of each dependency file name to its stage path */
+  static class StagePaths
+      implements Transformer<Map<String, String>, Collection<ResolvedArtifactResult>> {
+    @Override
+    public Map<String, String> transform(Collection<ResolvedArtifactResult> artifacts) {
+      return resolve(artifacts).getStagePaths();
+    }
+  }
+
+  /** A map of each dependency file name to its file in the Gradle cache */
+  static class LocalPaths
+      implements Transformer<Map<String, String>, Collection<ResolvedArtifactResult>> {
+    @Override
+    public Map<String, String> transform(Collection<ResolvedArtifactResult> artifacts) {
+      return resolve(artifacts).getLocalPaths();
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package com.snowflake.plugins.udf.gradle;
+
+import com.snowflake.plugins.udf.core.SnowflakeConnectionPool;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+/**
+ * Shared build service holding the Snowflake connection pool. Every snowflakeDeploy task of the
+ * build borrows its session from this pool, and Gradle closes the pooled connections when the
+ * build finishes. It also hands the work of the deploy tasks over to their Worker API work items,
+ * which can only receive serializable parameters
+ */
+public abstract class SnowflakeConnectionService
+    implements BuildService<BuildServiceParameters.None>, AutoCloseable {
+  // Name the service is registered under with the Gradle shared services
+  public static final String NAME = "snowflakeConnections";
+
+  private final SnowflakeConnectionPool pool = new SnowflakeConnectionPool();
+  // Work submitted to the Worker API, by id, until its work item takes it
+  private final Map<String, Runnable> work = new ConcurrentHashMap<>();
+
+  public SnowflakeConnectionPool getPool() {
+    return pool;
+  }
+
+  /** Holds the work until the work item given the returned id takes it */
+  public String submitWork(Runnable runnable) {
+    String id = UUID.randomUUID().toString();
+    work.put(id, runnable);
+    return id;
+  }
+
+  /** Returns the work of the id and forgets it, or null if it is unknown or was already taken */
+  public Runnable takeWork(String id) {
+    return work.remove(id);
+  }
+
+  @Override
+  public void close() throws Exception {
+    pool.close();
+  }
+}
@@ -1,47 +1,156 @@
 package com.snowflake.plugins.udf.gradle;
 
+import com.snowflake.plugins.udf.core.DeploySnapshot;
 import com.snowflake.plugins.udf.core.Snowflake;
 import com.snowflake.plugins.udf.core.SnowflakeBuilder;
+import com.snowflake.plugins.udf.core.SnowflakeLogger;
 import com.snowflake.plugins.udf.core.UserDefined;
 import com.snowflake.plugins.udf.gradle.extensions.*;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.sql.SQLException;
 import java.util.*;
 import javax.inject.Inject;
 import lombok.Getter;
 import lombok.Setter;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.LineIterator;
 import org.gradle.api.DefaultTask;
+import org.gradle.api.Task;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.SetProperty;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.Classpath;
 import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
 import org.gradle.api.tasks.options.Option;
+import org.gradle.work.DisableCachingByDefault;
+import org.gradle.workers.WorkerExecutor;
 import org.slf4j.Logger;
 
-/** Plugin publish task entry point. Executes all actions associated with snowflakePublish */
-public class SnowflakeDeployTask extends DefaultTask {
+/**
+ * Plugin publish task entry point. Executes all actions associated with snowflakePublish. The task
+ * is up to date when the artifact JAR, the runtime classpath, the function and procedure
+ * definitions and the deploy target are unchanged since the last deploy receipt was written
+ */
+@DisableCachingByDefault(because = "Deploying changes the state of a Snowflake account")
+public abstract class SnowflakeDeployTask extends DefaultTask {
 
-  private final String PLUGIN = "snowflake";
-  private SnowflakeExtension extension =
-      (SnowflakeExtension) getProject().getExtensions().getByName(PLUGIN);
-  // Temporary file which lists each dependency in the user project and their organization or
-  // artifact ID. Populated by ListDependenciesTask
-  @Setter
-  private File dependencyLogFile;
-  // Full file path of the client project artifact JAR
-  @Setter
-  private String artifactFilePath;
-  // File name of the client project artifact JAR
-  @Setter
-  private String artifactFileName;
-  private Logger logger = Logging.getLogger(SnowflakeDeployTask.class);
-  // Snowflake connection authentication information for the task
-  private AuthConfig auth;
-  // Name of Snowflake stage for artifact uploads
-  private String stage;
+  private static final Logger logger = Logging.getLogger(SnowflakeDeployTask.class);
+  // Settings of the auth properties file which select where the functions are deployed
+  private static final List<String> AUTH_TARGET_KEYS =
+      Arrays.asList("url", "user", "role", "db", "schema");
+
+  // A map of each runtime dependency file name to its stage path, see ResolvedDependencyPaths
+  @Input
+  public abstract MapProperty<String, String> getDependencyStagePaths();
+
+  // A map of each runtime dependency file name to its file in the Gradle cache. The contents are
+  // tracked by the runtime classpath
+  @Internal
+  public abstract MapProperty<String, String> getDependencyLocalPaths();
+
+  // The client project artifact JAR
+  @InputFile
+  @PathSensitive(PathSensitivity.NAME_ONLY)
+  public abstract RegularFileProperty getArtifactFile();
+
+  // The runtime dependencies uploaded with the artifact
+  @Classpath
+  public abstract ConfigurableFileCollection getRuntimeClasspath();
+
+  // The project build directory, holding the dependency mirror and the deploy snapshots
+  @Internal
+  public abstract DirectoryProperty getBuildDirectory();
+
+  // Written after each successful deploy. Its presence lets Gradle consider the task up to date
+  @OutputFile
+  public abstract RegularFileProperty getReceiptFile();
+
+  // Build service holding the connection pool shared by every deploy task of the build
+  @Internal
+  public abstract Property<SnowflakeConnectionService> getConnectionService();
+
+  // The functions and procedures of the build file
+  @Internal
+  public abstract SetProperty<UserDefinedConcrete> getUdxs();
+
+  // Auth settings of the build file
+  @Internal
+  public abstract MapProperty<String, String> getAuth();
+
+  // Auth properties file of the build file, if any. It holds the password, so only its settings in
+  // getAuthPropertiesTarget are tracked
+  @Internal
+  public abstract RegularFileProperty getAuthPropertiesFile();
+
+  // Settings of the snowflake extension, see SnowflakeExtension
+  @Internal
+  public abstract Property<String> getStage();
+
+  @Internal
+  public abstract Property<Boolean> getStageIndex();
+
+  @Internal
+  public abstract Property<Integer> getUploadThreads();
+
+  @Internal
+  public abstract Property<Long> getMaxInFlightMegabytes();
+
+  @Internal
+  public abstract Property<String> getDependencyLayout();
+
+  // Changes the bundles imported by the functions, so the task reruns when it changes
+  @Input
+  public abstract Property<Long> getBundleMaxMegabytes();
+
+  @Internal
+  public abstract Property<Integer> getQueryTimeoutSeconds();
+
+  @Internal
+  public abstract Property<String> getDdlMode();
+
+  @Internal
+  public abstract Property<Integer> getDdlBatchSize();
+
+  @Internal
+  public abstract Property<Boolean> getRemoteDiff();
+
+  // Changes the imports of the functions, so the task reruns when it is toggled
+  @Input
+  public abstract Property<Boolean> getPruneImports();
+
+  // Change the artifact uploaded, so the task reruns when they change
+  @Input
+  public abstract Property<Boolean> getShrinkArtifact();
+
+  @Input
+  public abstract ListProperty<String> getKeepRules();
+
+  @Internal
+  public abstract Property<Boolean> getResume();
+
+  @Internal
+  public abstract Property<Integer> getWorkerMaxParallelism();
+
+  // Runs the uploads and DDL batches as work items of the Worker API
+  @Inject
+  public abstract WorkerExecutor getWorkerExecutor();
 
   @Optional
   @Input
@@ -50,8 +159,8 @@ public class SnowflakeDeployTask extends DefaultTask {
   @Option(option = "auth-url", description = "Override the Snowflake auth URL")
   private String authUrl;
 
-  @Optional
-  @Input
+  // Left out of the inputs like in getDeployTarget, so that rotating it does not cause a deploy
+  @Internal
   @Getter
   @Setter
   @Option(option = "auth-password", description = "Override the Snowflake auth password")
@@ -124,35 +233,116 @@ public class SnowflakeDeployTask extends DefaultTask {
   @Option(option = "deploy-returns", description = "Specify the return type for a new deploy")
   private String deployReturns;
 
-  // Snowflake core instance configured for the user
-  private Snowflake snowflake;
-  // Set of Function/Procedure containers inputted by the user from their build file
-  private Set<UserDefinedContainer> udxContainers = new HashSet<>();
+  @Input
+  @Getter
+  @Setter
+  @Option(
+      option = "force",
+      description = "Deploy even if nothing changed since the last successful deploy")
+  private boolean force;
+
+  public SnowflakeDeployTask() {
+    getOutputs().upToDateWhen(new NotForced());
+  }
+
+  // A forced deploy always runs. A class rather than a lambda so that the configuration cache can
+  // store it
+  private static class NotForced implements Spec<Task> {
+    @Override
+    public boolean isSatisfiedBy(Task task) {
+      return !((SnowflakeDeployTask) task).isForce();
+    }
+  }
+
+  /** The functions and procedures to create, including one given on the command line */
+  @Input
+  public SortedSet<String> getUdxDefinitions() {
+    SortedSet<String> definitions = new TreeSet<>();
+    for (UserDefinedConcrete udx : collectUdxs()) {
+      definitions.add(
+          String.format(
+              "%s %s(%s) returns %s handler %s",
+              udx.getType(), udx.getName(), udx.getInputs(), udx.getReturns(), udx.getHandler()));
+    }
+    return definitions;
+  }
+
+  /**
+   * The stage and the auth settings of the build file which select the account, database and
+   * schema. The password is left out so that rotating it does not cause a deploy
+   */
+  @Input
+  public SortedMap<String, String> getDeployTarget() {
+    SortedMap<String, String> target = new TreeMap<>();
+    for (Map.Entry<String, String> entry : getAuth().get().entrySet()) {
+      if (!entry.getKey().equals("password")) {
+        target.put(entry.getKey(), entry.getValue());
+      }
+    }
+    target.put("stage", String.valueOf(getStage().getOrNull()));
+    target.put("dependencyLayout", getDependencyLayout().get());
+    return target;
+  }
+
+  /**
+   * The settings of the auth properties file which select the account, database and schema. The
+   * password and any other setting of the file are left out, so that rotating them does not cause
+   * a deploy
+   */
+  @Input
+  public SortedMap<String, String> getAuthPropertiesTarget() {
+    SortedMap<String, String> target = new TreeMap<>();
+    if (!getAuthPropertiesFile().isPresent()) {
+      return target;
+    }
+    File file = getAuthPropertiesFile().get().getAsFile();
+    Properties properties = new Properties();
+    try (InputStream in = new FileInputStream(file)) {
+      properties.load(in);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error reading the auth properties file " + file, e);
+    }
+    for (String key : AUTH_TARGET_KEYS) {
+      String value = properties.getProperty(key);
+      if (value != null) {
+        target.put(key, value);
+      }
+    }
+    return target;
+  }
 
   @TaskAction
   public void publish() throws IOException, SQLException {
-    auth = extension.getAuth();
-    stage = extension.getStage();
-    // TODO: Follow the user's configuration for project.libsDir
-    String buildDirectory = getProject().getBuildDir() + SnowflakePlugin.libsString;
-    udxContainers.addAll(
-        (Set<FunctionContainer>) getProject().getExtensions().getByName("functions"));
-    udxContainers.addAll(
-        (Set<ProcedureContainer>) getProject().getExtensions().getByName("procedures"));
-    // Validate user configuration of functions and procedures by converting the Gradle API
-    // containers into concrete Java objects
-    Set<UserDefinedConcrete> concreteUdxs = new HashSet<>();
-    for (UserDefinedContainer container : udxContainers) {
-      concreteUdxs.add(container.concrete());
-    }
-    appendCliUdxIfDefined(concreteUdxs);
-    validateUserConfig(concreteUdxs);
-    SnowflakeBuilder builder = new SnowflakeBuilder(logger::info);
+    String stage = getStage().getOrNull();
+    File artifactFile = getArtifactFile().get().getAsFile();
+    String artifactFilePath = artifactFile.getPath();
+    String artifactFileName = artifactFile.getName();
+    Set<UserDefinedConcrete> concreteUdxs = collectUdxs();
+    validateUserConfig(stage, concreteUdxs);
+    SnowflakeBuilder builder =
+        new SnowflakeBuilder(SnowflakeLogger.of(logger::info, logger::debug));
     // Get authentication options from properties file, gradle.build, and CLI to create
     // Snowflake connection
     configureSnowflakeAuth(builder);
     configureSnowflakeDeployParams(builder, stage, artifactFileName);
+    // Compare with the last successful deploy before connecting
+    DeploySnapshot snapshot =
+        builder.snapshot(
+            getBuildDirectory()
+                .dir(SnowflakePlugin.deploySnapshotString.substring(1))
+                .get()
+                .getAsFile(),
+            artifactFile,
+            concreteUdxs);
+    if (!force && snapshot.isUpToDate()) {
+      logger.info(
+          "Nothing changed since the last successful deploy, skipping. Use --force to deploy"
+              + " anyway");
+      writeReceipt(snapshot, concreteUdxs);
+      return;
+    }
     // Create snowflake JDBC Connection
+    Snowflake snowflake;
     try {
       snowflake = builder.create();
     } catch (SQLException e) {
@@ -160,17 +350,67 @@ public class SnowflakeDeployTask extends DefaultTask {
               "Error creating JDBC connection to snowflake. You likely need to change/add information to your auth config for the plugin: ",
               e);
     }
-    snowflake.createStage();
-    snowflake.uploadArtifact(artifactFilePath);
-    snowflake.uploadDependencies(
-        String.format(buildDirectory + SnowflakePlugin.dependenciesString));
-    for (UserDefinedConcrete udx : concreteUdxs) {
-      snowflake.createFunctionOrProc(udx);
+    try {
+      snowflake.createStage();
+      snowflake.uploadArtifact(artifactFilePath, concreteUdxs);
+      snowflake.uploadDependencies();
+      snowflake.createFunctionsOrProcs(new ArrayList<>(concreteUdxs));
+    } finally {
+      writeDeployReport(snowflake);
     }
     logger.info("Functions created!");
+    try {
+      snowflake.clearCheckpoint();
+    } catch (IOException e) {
+      logger.warn("Could not delete the deploy checkpoint: " + e.getMessage());
+    }
+    try {
+      snapshot.save();
+    } catch (IOException e) {
+      logger.warn("Could not save the deploy snapshot: " + e.getMessage());
+    }
+    writeReceipt(snapshot, concreteUdxs);
+  }
+
+  // Writes the report of the deploy, whether it succeeded or not
+  private void writeDeployReport(Snowflake snowflake) {
+    File reportFile =
+        getBuildDirectory().file(SnowflakePlugin.deployReportString.substring(1)).get().getAsFile();
+    try {
+      snowflake.getReport().write(reportFile);
+      logger.info("Deploy report written to " + reportFile);
+    } catch (IOException e) {
+      logger.warn("Could not write the deploy report: " + e.getMessage());
+    }
   }
 
-  private void validateUserConfig(Set<UserDefinedConcrete> udxs) {
+  // The functions and procedures of the build file and the command line
+  private Set<UserDefinedConcrete> collectUdxs() {
+    Set<UserDefinedConcrete> concreteUdxs = new HashSet<>(getUdxs().get());
+    appendCliUdxIfDefined(concreteUdxs);
+    return concreteUdxs;
+  }
+
+  // Records what was deployed where. The password is never written
+  private void writeReceipt(DeploySnapshot snapshot, Set<UserDefinedConcrete> udxs)
+      throws IOException {
+    Properties receipt = new Properties();
+    receipt.putAll(getDeployTarget());
+    receipt.put("fingerprint", snapshot.getFingerprint());
+    List<String> names = new ArrayList<>();
+    for (UserDefinedConcrete udx : udxs) {
+      names.add(udx.getType() + " " + udx.getName());
+    }
+    Collections.sort(names);
+    receipt.put("objects", String.join(", ", names));
+    File receiptFile = getReceiptFile().get().getAsFile();
+    receiptFile.getParentFile().mkdirs();
+    try (OutputStream out = new FileOutputStream(receiptFile)) {
+      receipt.store(out, "Snowflake deploy receipt");
+    }
+  }
+
+  private void validateUserConfig(String stage, Set<UserDefinedConcrete> udxs) {
     if (stage == null) {
       throw new IllegalArgumentException("'stage' name for file upload must be provided");
     }
@@ -186,20 +426,18 @@ public class SnowflakeDeployTask extends DefaultTask {
    * @throws SQLException
    */
   private void configureSnowflakeAuth(SnowflakeBuilder builder) throws IOException, SQLException {
-    if (auth != null) {
-      if (auth.getPropertiesFile() != null) {
-        // User has supplied an authentication file name
-        logger.info("Reading auth config from file: " + auth.getPropertiesFile());
-        try {
-          builder.configFile(auth.getPropertiesFile());
-        } catch (IOException e) {
-          throw new RuntimeException(
-              "Error reading or accessing the specified properties file: ", e);
-        }
+    if (getAuthPropertiesFile().isPresent()) {
+      // User has supplied an authentication file name
+      String propertiesFile = getAuthPropertiesFile().get().getAsFile().getPath();
+      logger.info("Reading auth config from file: " + propertiesFile);
+      try {
+        builder.configFile(propertiesFile);
+      } catch (IOException e) {
+        throw new RuntimeException("Error reading or accessing the specified properties file: ", e);
       }
-      // Read build.gradle auth config
-      builder.config(auth.getAuthMap());
     }
+    // Read build.gradle auth config
+    builder.config(getAuth().get());
     // Read CLI auth config
     builder.config("url", authUrl);
     builder.config("user", authUser);
@@ -213,85 +451,52 @@ public class SnowflakeDeployTask extends DefaultTask {
           SnowflakeBuilder builder, String stageName, String artifactFileName) {
     builder.stageName(stageName);
     builder.artifactFileName(artifactFileName);
-    try {
-      builder.depsToStagePaths(mapDependenciesToStagePaths());
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
-  }
-
-  /**
-   * Creates a map of dependency file names to their corresponding file path in the stage path Their
-   * file paths will imitate the .m2 cache: Ex:
-   * groupID[0]/groupID[1]/groupID[2]/.../artifactID/version/filename Takes as input the
-   * `dependency.log` file created by ListDependenciesTask
-   */
-  private Map<String, String> mapDependenciesToStagePaths() throws IOException {
-    // Reads the file produced by 'gradle dependencies' task
-    LineIterator it = null;
-    Map<String, String> result;
-    try {
-      it = FileUtils.lineIterator(dependencyLogFile, "UTF-8");
-      result = mapDependenciesToStagePathsHelper(it);
-    } catch (IOException e) {
-      throw e;
-    } finally {
-      if (it != null) {
-        it.close();
-      }
-    }
-    logger.info("Mapped dependencies to stage paths: " + result);
-    return result;
-  }
-
-  public static Map<String, String> mapDependenciesToStagePathsHelper(LineIterator lineIt) {
-    Map<String, String> result = new HashMap<>();
-    while (lineIt.hasNext()) {
-      String line = lineIt.nextLine().trim();
-      // The line contains a dependency.
-      if (line.startsWith("\\") || line.startsWith("|") || line.startsWith("+")) {
-        // (*) indicates the dependency has already been previously listed
-        if (line.endsWith("(*)")) {
-          continue;
-        }
-        // Ignore the leading non-alphabetical characters
-        int startIndex = -1;
-        for (int i = 0, n = line.length(); i < n; i++) {
-          char c = line.charAt(i);
-          if (Character.isAlphabetic(c)) {
-            startIndex = i;
-            break;
-          }
-        }
-        String dependencyLine = line.substring(startIndex);
-        // Extract dependency information
-        String[] info = dependencyLine.split(":");
-        String groupId = info[0];
-        String artifactId = info[1];
-        String versionInfo = info[2];
-        // version information can contain the '->' characters to show a dependency version
-        // conflict that was automatically resolved by Gradle. The version number on the right of
-        // the
-        // arrow is used.
-        // e.g. com.fasterxml.jackson.core:jackson-annotations:2.13.2 -> 2.13.4
-        if (versionInfo.contains("->")) {
-          versionInfo = versionInfo.substring(versionInfo.indexOf("->") + 2).trim();
-        }
-        // version information with "(c)" indicates a dependency restriction. Remove extra symbol to
-        // get the version
-        if (versionInfo.endsWith("(c)")) {
-          versionInfo = versionInfo.substring(0, versionInfo.length() - 3).trim();
-        }
-        String stagePath =
-            String.format("%s/%s/%s", groupId.replace('.', '/'), artifactId, versionInfo);
-        // Assume the file name is ArtifactId-VersionNumber.
-        // TODO: Handle the case where the file name does not conform to the above format.
-        // Can this occur?
-        String fileName = String.format("%s-%s.jar", artifactId, versionInfo);
-        result.put(fileName, stagePath);
+    if (getConnectionService().isPresent()) {
+      builder.connectionPool(getConnectionService().get().getPool());
+      // The work items take their work from the connection service
+      if (getWorkerMaxParallelism().get() > 0) {
+        builder.workScheduler(
+            new SnowflakeWorkScheduler(
+                getWorkerExecutor(), getConnectionService(), getWorkerMaxParallelism().get()));
       }
     }
-    return result;
+    builder.stageIndex(getStageIndex().get());
+    builder.uploadThreads(getUploadThreads().get());
+    builder.maxInFlightMegabytes(getMaxInFlightMegabytes().get());
+    builder.dependencyLayout(getDependencyLayout().get());
+    builder.bundleMaxMegabytes(getBundleMaxMegabytes().get());
+    builder.dependencyBundleDir(
+        getBuildDirectory()
+            .dir(SnowflakePlugin.dependencyBundleString.substring(1))
+            .get()
+            .getAsFile());
+    builder.dependencyMirrorDir(
+        getBuildDirectory()
+            .dir(SnowflakePlugin.dependencyMirrorString.substring(1))
+            .get()
+            .getAsFile());
+    builder.queryTimeoutSeconds(getQueryTimeoutSeconds().get());
+    builder.ddlMode(getDdlMode().get());
+    builder.ddlBatchSize(getDdlBatchSize().get());
+    builder.remoteDiff(getRemoteDiff().get());
+    builder.pruneImports(getPruneImports().get());
+    builder.shrinkArtifact(getShrinkArtifact().get());
+    builder.shrunkArtifactDir(
+        getBuildDirectory()
+            .dir(SnowflakePlugin.shrunkArtifactString.substring(1))
+            .get()
+            .getAsFile());
+    builder.keepRules(getKeepRules().get());
+    builder.checkpointDir(
+        getBuildDirectory()
+            .dir(SnowflakePlugin.deployCheckpointString.substring(1))
+            .get()
+            .getAsFile());
+    builder.resume(getResume().get() && !force);
+    Map<String, String> depsToStagePaths = getDependencyStagePaths().get();
+    logger.info("Mapped dependencies to stage paths: " + depsToStagePaths);
+    builder.depsToStagePaths(depsToStagePaths);
+    builder.depsToLocalPaths(getDependencyLocalPaths().get());
   }
 
   /**
@@ -1,54 +1,150 @@
 package com.snowflake.plugins.udf.gradle;
 
+import com.snowflake.plugins.udf.gradle.extensions.AuthConfig;
 import com.snowflake.plugins.udf.gradle.extensions.FunctionContainer;
 import com.snowflake.plugins.udf.gradle.extensions.ProcedureContainer;
 import com.snowflake.plugins.udf.gradle.extensions.SnowflakeExtension;
+import com.snowflake.plugins.udf.gradle.extensions.UserDefinedConcrete;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.gradle.api.NamedDomainObjectContainer;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.artifacts.result.ResolvedArtifactResult;
 import org.gradle.api.plugins.ExtensionContainer;
+import org.gradle.api.plugins.JavaPlugin;
+import org.gradle.api.provider.Provider;
 import org.gradle.api.tasks.TaskContainer;
-import org.gradle.api.Task;
 import org.gradle.api.tasks.TaskProvider;
+import org.gradle.jvm.tasks.Jar;
 
 /** Plugin class for Gradle Plugin */
 public class SnowflakePlugin implements Plugin<Project> {
-  // Directory name for user project artifacts
-  // This should match the user's configuration for project.libsDir
-  public static final String libsString = "/libs";
-  // Directory name to temporarily store user dependency artifacts before PUT them to Snowflake
-  // stage
-  public static final String dependenciesString = "/dependencies";
+  // Directory name to build up the hashed dependency layout before uploading it
+  public static final String dependencyMirrorString = "/snowflake/dependency-mirror";
+  // Directory name caching the bundles of the bundled dependency layout
+  public static final String dependencyBundleString = "/snowflake/dependency-bundles";
+  // Directory name holding the snapshot of the last successful deploy to each target
+  public static final String deploySnapshotString = "/snowflake/deploy-snapshots";
+  // Directory name holding the progress of an unfinished deploy to each target
+  public static final String deployCheckpointString = "/snowflake/deploy-checkpoints";
+  // Directory name the shrunk artifact is written to before uploading it
+  public static final String shrunkArtifactString = "/snowflake/shrunk-artifact";
+  // File name of the receipt written by each successful deploy, the output of the deploy task
+  public static final String deployReceiptString = "/snowflake/deploy-receipt.properties";
+  // File name of the JSON report written by each deploy, successful or not
+  public static final String deployReportString = "/snowflake/deploy-report.json";
 
   @Override
   public void apply(Project project) {
     // Register extensions for the plugin
     ExtensionContainer extension = project.getExtensions();
-    extension.create("snowflake", SnowflakeExtension.class);
-    extension.add("functions", project.container(FunctionContainer.class));
-    extension.add("procedures", project.container(ProcedureContainer.class));
+    SnowflakeExtension snowflake = extension.create("snowflake", SnowflakeExtension.class);
+    NamedDomainObjectContainer<FunctionContainer> functions =
+        project.container(FunctionContainer.class);
+    NamedDomainObjectContainer<ProcedureContainer> procedures =
+        project.container(ProcedureContainer.class);
+    extension.add("functions", functions);
+    extension.add("procedures", procedures);
 
-    // Register tasks for the plugin
+    // Register the connection pool shared by every project of the build
+    Provider<SnowflakeConnectionService> connectionService =
+        project
+            .getGradle()
+            .getSharedServices()
+            .registerIfAbsent(
+                SnowflakeConnectionService.NAME, SnowflakeConnectionService.class, spec -> {});
+
+    // Register tasks for the plugin. Tasks are configured lazily and every extension value is read
+    // through a provider, so nothing is resolved until the task graph needs it
     TaskContainer tasks = project.getTasks();
-    tasks.register("listDependenciesTask", ListDependenciesTask.class);
-    tasks.register("copyDependenciesTask", CopyDependenciesTask.class);
-    TaskProvider<SnowflakeDeployTask> deployTask =  tasks
-      .register(
-        "snowflakeDeploy",
-        SnowflakeDeployTask.class);
-
-    project.afterEvaluate(projectAfterEvaluation -> {
-      final TaskProvider<Task> jarTask = projectAfterEvaluation.getTasks().named("jar");
-
-      deployTask.configure(task -> {
-        task.dependsOn("copyDependenciesTask");
-        task.dependsOn("listDependenciesTask");
-        task.dependsOn(jarTask);
-        task.setArtifactFilePath(jarTask.get().getOutputs().getFiles().getAsPath());
-        task.setArtifactFileName(jarTask.get().getOutputs().getFiles().getSingleFile().getName());
-        task.setDependencyLogFile(
-                tasks.getByName("listDependenciesTask").getOutputs().getFiles().getSingleFile()
-        );
-      });
-    });
+    TaskProvider<SnowflakeDeployTask> deployTask =
+        tasks.register("snowflakeDeploy", SnowflakeDeployTask.class);
+
+    deployTask.configure(
+        task -> {
+          task.getConnectionService().set(connectionService);
+          task.usesService(connectionService);
+          // Read the module and file of each dependency from the resolved artifacts. The files are
+          // uploaded from the Gradle cache without being copied
+          Provider<Set<ResolvedArtifactResult>> artifacts =
+              project
+                  .getConfigurations()
+                  .named("runtimeClasspath")
+                  .flatMap(
+                      configuration ->
+                          configuration.getIncoming().getArtifacts().getResolvedArtifacts());
+          task.getDependencyStagePaths()
+              .set(artifacts.map(new ResolvedDependencyPaths.StagePaths()));
+          task.getDependencyLocalPaths()
+              .set(artifacts.map(new ResolvedDependencyPaths.LocalPaths()));
+          task.getBuildDirectory().set(project.getLayout().getBuildDirectory());
+          task.getReceiptFile()
+              .set(project.getLayout().getBuildDirectory().file(deployReceiptString.substring(1)));
+          task.getRuntimeClasspath().from(project.getConfigurations().named("runtimeClasspath"));
+          task.getUdxs()
+              .set(
+                  project.provider(
+                      () -> {
+                        Set<UserDefinedConcrete> udxs = new HashSet<>();
+                        functions.forEach(function -> udxs.add(function.concrete()));
+                        procedures.forEach(procedure -> udxs.add(procedure.concrete()));
+                        return udxs;
+                      }));
+          task.getAuth().set(project.provider(() -> authMap(snowflake.getAuth())));
+          task.getAuthPropertiesFile()
+              .fileProvider(
+                  project.provider(
+                      () ->
+                          snowflake.getAuth() == null
+                                  || snowflake.getAuth().getPropertiesFile() == null
+                              ? null
+                              : project.file(snowflake.getAuth().getPropertiesFile())));
+          task.getStage().set(project.provider(snowflake::getStage));
+          task.getStageIndex().set(project.provider(snowflake::isStageIndex));
+          task.getUploadThreads().set(project.provider(snowflake::getUploadThreads));
+          task.getMaxInFlightMegabytes().set(project.provider(snowflake::getMaxInFlightMegabytes));
+          task.getDependencyLayout().set(project.provider(snowflake::getDependencyLayout));
+          task.getBundleMaxMegabytes().set(project.provider(snowflake::getBundleMaxMegabytes));
+          task.getQueryTimeoutSeconds().set(project.provider(snowflake::getQueryTimeoutSeconds));
+          task.getDdlMode().set(project.provider(snowflake::getDdlMode));
+          task.getDdlBatchSize().set(project.provider(snowflake::getDdlBatchSize));
+          task.getRemoteDiff().set(project.provider(snowflake::isRemoteDiff));
+          task.getPruneImports().set(project.provider(snowflake::isPruneImports));
+          task.getShrinkArtifact().set(project.provider(snowflake::isShrinkArtifact));
+          task.getKeepRules().set(project.provider(snowflake::getKeepRules));
+          task.getResume().set(project.provider(snowflake::isResume));
+          task.getWorkerMaxParallelism()
+              .set(project.provider(snowflake::getWorkerMaxParallelism));
+        });
+
+    // The artifact is the output of the jar task of the java plugin, whenever that is applied
+    project
+        .getPlugins()
+        .withType(
+            JavaPlugin.class,
+            javaPlugin ->
+                deployTask.configure(
+                    task ->
+                        task.getArtifactFile()
+                            .set(
+                                tasks
+                                    .named(JavaPlugin.JAR_TASK_NAME, Jar.class)
+                                    .flatMap(jar -> jar.getArchiveFile()))));
+  }
+
+  // The auth settings of the build file without the unset ones, which a map property can't hold
+  private static Map<String, String> authMap(AuthConfig auth) {
+    Map<String, String> result = new HashMap<>();
+    if (auth != null) {
+      for (Map.Entry<String, String> entry : auth.getAuthMap().entrySet()) {
+        if (entry.getValue() != null) {
+          result.put(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+    return result;
   }
 }
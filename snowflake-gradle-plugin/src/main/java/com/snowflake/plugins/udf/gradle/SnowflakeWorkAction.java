@@ -0,0 +1,26 @@
+package com.snowflake.plugins.udf.gradle;
+
+import org.gradle.api.provider.Property;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+
+/** Worker API work item running work of a deploy task, handed over by the connection service */
+public abstract class SnowflakeWorkAction implements WorkAction<SnowflakeWorkAction.Parameters> {
+  public interface Parameters extends WorkParameters {
+    Property<SnowflakeConnectionService> getConnectionService();
+
+    // Id the work was submitted to the connection service under
+    Property<String> getWorkId();
+  }
+
+  @Override
+  public void execute() {
+    Parameters parameters = getParameters();
+    String id = parameters.getWorkId().get();
+    Runnable work = parameters.getConnectionService().get().takeWork(id);
+    if (work == null) {
+      throw new IllegalStateException("No deploy work was submitted under id " + id);
+    }
+    work.run();
+  }
+}
@@ -0,0 +1,128 @@
+package com.snowflake.plugins.udf.gradle;
+
+import com.snowflake.plugins.udf.core.WorkScheduler;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.gradle.api.provider.Provider;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutionException;
+import org.gradle.workers.WorkerExecutor;
+
+/**
+ * Runs the dependency uploads and DDL batches of a deploy as Worker API work items, so that Gradle
+ * schedules them alongside the work of other tasks and stops them when the build is interrupted.
+ * The work is spread over at most maxParallelism work items, largest first, rather than one item
+ * per upload, so that no work item holds a worker while waiting for another to finish
+ */
+public class SnowflakeWorkScheduler implements WorkScheduler {
+  private final WorkerExecutor workerExecutor;
+  private final Provider<SnowflakeConnectionService> connectionService;
+  private final int maxParallelism;
+
+  public SnowflakeWorkScheduler(
+      WorkerExecutor workerExecutor,
+      Provider<SnowflakeConnectionService> connectionService,
+      int maxParallelism) {
+    if (maxParallelism < 1) {
+      throw new IllegalArgumentException("'workerMaxParallelism' must be at least 1");
+    }
+    this.workerExecutor = workerExecutor;
+    this.connectionService = connectionService;
+    this.maxParallelism = maxParallelism;
+  }
+
+  @Override
+  public void runAll(List<? extends Work> work) throws SQLException {
+    if (work.isEmpty()) {
+      return;
+    }
+    Queue<String> failedNames = new ConcurrentLinkedQueue<>();
+    Queue<SQLException> failures = new ConcurrentLinkedQueue<>();
+    SnowflakeConnectionService service = connectionService.get();
+    WorkQueue queue = workerExecutor.noIsolation();
+    List<String> ids = new ArrayList<>();
+    try {
+      for (Lane lane : lanes(work, failedNames, failures)) {
+        String id = service.submitWork(lane);
+        ids.add(id);
+        queue.submit(
+            SnowflakeWorkAction.class,
+            parameters -> {
+              parameters.getConnectionService().set(connectionService);
+              parameters.getWorkId().set(id);
+            });
+      }
+      queue.await();
+    } catch (WorkerExecutionException e) {
+      throw new SQLException("Error running the deploy work items", e);
+    } finally {
+      // Work which never started, e.g. because the build was interrupted, is dropped
+      ids.forEach(service::takeWork);
+    }
+    if (!failures.isEmpty()) {
+      SQLException aggregate =
+          new SQLException(
+              String.format(
+                  "%d of %d work items failed: %s",
+                  failures.size(), work.size(), String.join(", ", failedNames)),
+              failures.peek());
+      failures.stream().skip(1).forEach(aggregate::addSuppressed);
+      throw aggregate;
+    }
+  }
+
+  // Deals the work out largest first, each to the lane with the fewest bytes so far
+  private List<Lane> lanes(
+      List<? extends Work> work, Queue<String> failedNames, Queue<SQLException> failures) {
+    List<Work> ordered = new ArrayList<>(work);
+    ordered.sort(Comparator.comparingLong(Work::getBytes).reversed());
+    List<Lane> lanes = new ArrayList<>();
+    for (int i = 0; i < Math.min(maxParallelism, ordered.size()); i++) {
+      lanes.add(new Lane(failedNames, failures));
+    }
+    for (Work item : ordered) {
+      Lane smallest = lanes.stream().min(Comparator.comparingLong(lane -> lane.bytes)).get();
+      smallest.work.add(item);
+      smallest.bytes += item.getBytes();
+    }
+    return lanes;
+  }
+
+  // The work of one work item, run one after the other. Every failure is collected, and the rest
+  // of the lane is skipped once the worker thread is interrupted
+  private static class Lane implements Runnable {
+    private final List<Work> work = new ArrayList<>();
+    private final Queue<String> failedNames;
+    private final Queue<SQLException> failures;
+    private long bytes;
+
+    Lane(Queue<String> failedNames, Queue<SQLException> failures) {
+      this.failedNames = failedNames;
+      this.failures = failures;
+    }
+
+    @Override
+    public void run() {
+      for (Work item : work) {
+        if (Thread.currentThread().isInterrupted()) {
+          failedNames.add(item.getName());
+          failures.add(new SQLException("Interrupted before running " + item.getName()));
+          continue;
+        }
+        try {
+          item.run();
+        } catch (SQLException e) {
+          failedNames.add(item.getName());
+          failures.add(e);
+        } catch (RuntimeException e) {
+          failedNames.add(item.getName());
+          failures.add(new SQLException(e.getMessage(), e));
+        }
+      }
+    }
+  }
+}
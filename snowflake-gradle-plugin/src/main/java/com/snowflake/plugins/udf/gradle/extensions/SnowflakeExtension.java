@@ -1,6 +1,8 @@
 package com.snowflake.plugins.udf.gradle.extensions;
 
 import groovy.lang.Closure;
+import java.util.ArrayList;
+import java.util.List;
 import lombok.Getter;
 import lombok.Setter;
 import org.gradle.api.Project;
@@ -16,6 +18,58 @@ public class SnowflakeExtension {
   private Project project;
   /** The name of the stage to use or create */
   private String stage;
+  /**
+   * List the stage once and skip uploading dependency JARs whose content is already present at the
+   * same stage path
+   */
+  private boolean stageIndex = false;
+  /** Number of dependency JARs uploaded at the same time */
+  private int uploadThreads = 4;
+  /** Maximum total size in megabytes of the dependency JARs uploaded at the same time */
+  private long maxInFlightMegabytes = 256;
+  /**
+   * How dependency JARs are arranged on the stage. "maven" imitates the .m2 cache with one upload
+   * per JAR, "hashed" stores every JAR as dependency/<sha256>.jar and uploads them together,
+   * "bundled" merges the JARs into a few dependency/bundle-<sha256>.jar files
+   */
+  private String dependencyLayout = "maven";
+  /** Maximum total size in megabytes of the JARs merged into one bundle in the bundled layout */
+  private long bundleMaxMegabytes = 64;
+  /** Query timeout in seconds applied to each statement. 0 means no timeout */
+  private int queryTimeoutSeconds = 0;
+  /**
+   * How the CREATE FUNCTION/PROCEDURE statements are sent. "sync" runs one statement at a time,
+   * "async" submits all of them at once and waits for them together, "batch" groups them into
+   * multi-statement requests of ddlBatchSize statements
+   */
+  private String ddlMode = "sync";
+  // Number of statements sent in one multi-statement request when ddlMode is "batch"
+  private int ddlBatchSize = 20;
+  // Skip functions and procedures whose definition in Snowflake already matches
+  private boolean remoteDiff = false;
+  /**
+   * Import only the JARs reachable from the handler class of each function or procedure instead of
+   * every dependency JAR
+   */
+  private boolean pruneImports = false;
+  // Upload only the classes of the artifact reachable from the handlers and the keep rules
+  private boolean shrinkArtifact = false;
+  /**
+   * Classes kept in the shrunk artifact even if no handler reaches them, e.g. classes loaded by
+   * name. Each rule is a class name, a package ending in ".*" or a package tree ending in ".**"
+   */
+  private List<String> keepRules = new ArrayList<>();
+  /**
+   * Resume a deploy which failed part way from the first file or function it did not finish,
+   * instead of starting over. Ignored with --force
+   */
+  private boolean resume = true;
+  /**
+   * Maximum number of Worker API work items running the dependency uploads or DDL batches of a
+   * deploy at the same time. 0 runs them on threads of the task, bounded by uploadThreads and
+   * maxInFlightMegabytes, and sends the batches one after the other
+   */
+  private int workerMaxParallelism = 4;
 
   private AuthConfig auth;
 
@@ -1,12 +1,13 @@
 package com.snowflake.plugins.udf.gradle.extensions;
 
 import com.snowflake.plugins.udf.core.UserDefined;
+import java.io.Serializable;
 
 /**
  * Base class for concrete functions/procedures data class. Performs input validation from user
- * configuration
+ * configuration. Serializable so that the configuration cache can store the deploy task inputs
  */
-public abstract class UserDefinedConcrete implements UserDefined {
+public abstract class UserDefinedConcrete implements UserDefined, Serializable {
   // Constructor used to parse function/argument supplied on the CLI
   public UserDefinedConcrete(String name, String args, String handler, String returns) {
     this(name, parseStringArgs(args), handler, returns);
@@ -0,0 +1,112 @@
+package com.snowflake.plugins.udf.gradle;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.gradle.api.artifacts.ModuleIdentifier;
+import org.gradle.api.artifacts.component.ComponentArtifactIdentifier;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.result.ResolvedArtifactResult;
+import org.gradle.api.artifacts.result.ResolvedVariantResult;
+import org.gradle.api.component.Artifact;
+import org.junit.Test;
+
+public class ResolvedDependencyPathsTest {
+
+  @Test
+  public void testMapDependenciesToStagePaths() {
+    Map<String, String> expected = new HashMap<>();
+    expected.put("snowpark-1.7.0.jar", "com/snowflake/snowpark/1.7.0");
+    expected.put("gson-2.7.jar", "com/google/code/gson/gson/2.7");
+    expected.put("scala-xml_2.12-1.0.6.jar", "org/scala-lang/modules/scala-xml_2.12/1.0.6");
+    expected.put("javassist-3.18.2-GA.jar", "org/javassist/javassist/3.18.2-GA");
+    // The actual file name is kept for classifiers
+    expected.put("netty-epoll-4.1.86-linux-x86_64.jar", "io/netty/netty-epoll/4.1.86");
+    List<ResolvedArtifactResult> artifacts =
+        Arrays.asList(
+            artifact(module("com.snowflake", "snowpark", "1.7.0"), "snowpark-1.7.0.jar"),
+            artifact(module("com.google.code.gson", "gson", "2.7"), "gson-2.7.jar"),
+            artifact(
+                module("org.scala-lang.modules", "scala-xml_2.12", "1.0.6"),
+                "scala-xml_2.12-1.0.6.jar"),
+            artifact(module("org.javassist", "javassist", "3.18.2-GA"), "javassist-3.18.2-GA.jar"),
+            artifact(
+                module("io.netty", "netty-epoll", "4.1.86"),
+                "netty-epoll-4.1.86-linux-x86_64.jar"),
+            // Project dependencies are not uploaded as modules
+            artifact(() -> "project :lib", "lib.jar"));
+    assertEquals(expected, new ResolvedDependencyPaths.StagePaths().transform(artifacts));
+    // Files are uploaded from the Gradle cache
+    Map<String, String> localPaths = new ResolvedDependencyPaths.LocalPaths().transform(artifacts);
+    assertEquals(expected.keySet(), localPaths.keySet());
+    assertEquals(new File("/cache/gson-2.7.jar").getPath(), localPaths.get("gson-2.7.jar"));
+  }
+
+  private static ModuleComponentIdentifier module(String group, String module, String version) {
+    return new ModuleComponentIdentifier() {
+      @Override
+      public String getGroup() {
+        return group;
+      }
+
+      @Override
+      public String getModule() {
+        return module;
+      }
+
+      @Override
+      public String getVersion() {
+        return version;
+      }
+
+      @Override
+      public ModuleIdentifier getModuleIdentifier() {
+        return null;
+      }
+
+      @Override
+      public String getDisplayName() {
+        return group + ":" + module + ":" + version;
+      }
+    };
+  }
+
+  private static ResolvedArtifactResult artifact(ComponentIdentifier component, String fileName) {
+    return new ResolvedArtifactResult() {
+      @Override
+      public File getFile() {
+        return new File("/cache/" + fileName);
+      }
+
+      @Override
+      public ResolvedVariantResult getVariant() {
+        return null;
+      }
+
+      @Override
+      public ComponentArtifactIdentifier getId() {
+        return new ComponentArtifactIdentifier() {
+          @Override
+          public ComponentIdentifier getComponentIdentifier() {
+            return component;
+          }
+
+          @Override
+          public String getDisplayName() {
+            return fileName;
+          }
+        };
+      }
+
+      @Override
+      public Class<? extends Artifact> getType() {
+        return null;
+      }
+    };
+  }
+}
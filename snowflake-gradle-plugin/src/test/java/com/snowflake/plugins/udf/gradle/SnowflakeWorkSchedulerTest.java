@@ -0,0 +1,232 @@
+package com.snowflake.plugins.udf.gradle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import com.snowflake.plugins.udf.core.WorkScheduler;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.gradle.api.Action;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutionException;
+import org.gradle.workers.WorkerExecutor;
+import org.junit.Test;
+
+public class SnowflakeWorkSchedulerTest {
+  private final SnowflakeConnectionService service =
+      new SnowflakeConnectionService() {
+        @Override
+        public BuildServiceParameters.None getParameters() {
+          return null;
+        }
+      };
+  private final FakeWorkQueue queue = new FakeWorkQueue();
+  // Names of the work in the order it ran
+  private final List<String> ran = Collections.synchronizedList(new ArrayList<>());
+
+  @Test
+  public void testWorkSplitIntoLanesLargestFirst() throws SQLException {
+    scheduler(2).runAll(Arrays.asList(work("c", 3), work("a", 5), work("d", 2), work("b", 4)));
+    // a and d fill one lane, b and c the other
+    assertEquals(2, queue.submitted.size());
+    assertEquals(Arrays.asList("a", "d", "b", "c"), ran);
+  }
+
+  @Test
+  public void testNoMoreLanesThanWork() throws SQLException {
+    scheduler(4).runAll(Collections.singletonList(work("a", 1)));
+    assertEquals(1, queue.submitted.size());
+    assertEquals(Collections.singletonList("a"), ran);
+  }
+
+  @Test
+  public void testFailuresAggregated() {
+    SQLException first = new SQLException("first");
+    List<WorkScheduler.Work> work =
+        Arrays.asList(
+            failing("a", 3, first),
+            work("b", 2),
+            failing("c", 1, new IllegalStateException("second")));
+    try {
+      scheduler(1).runAll(work);
+      fail("expected SQLException");
+    } catch (SQLException e) {
+      assertEquals("2 of 3 work items failed: a, c", e.getMessage());
+      assertSame(first, e.getCause());
+      assertEquals(1, e.getSuppressed().length);
+      assertEquals("second", e.getSuppressed()[0].getMessage());
+    }
+    // The rest of the lane still ran
+    assertEquals(Arrays.asList("a", "b", "c"), ran);
+  }
+
+  @Test
+  public void testWorkNeverStartedIsDropped() {
+    // The build is interrupted once the first work item ran
+    queue.startLimit = 1;
+    try {
+      scheduler(2).runAll(Arrays.asList(work("a", 2), work("b", 1)));
+      fail("expected SQLException");
+    } catch (SQLException e) {
+      assertEquals(WorkerExecutionException.class, e.getCause().getClass());
+    }
+    assertEquals(Collections.singletonList("a"), ran);
+    for (Parameters parameters : queue.submitted) {
+      assertNull(service.takeWork(parameters.getWorkId().get()));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testUnknownWorkIdFails() {
+    Parameters parameters = new Parameters();
+    parameters.getConnectionService().set(service);
+    parameters.getWorkId().set("unknown");
+    action(parameters).execute();
+  }
+
+  private SnowflakeWorkScheduler scheduler(int maxParallelism) {
+    WorkerExecutor executor =
+        proxy(
+            WorkerExecutor.class,
+            method -> {
+              assertEquals("noIsolation", method);
+              return queue;
+            });
+    Provider<SnowflakeConnectionService> provider =
+        proxy(
+            Provider.class,
+            method -> {
+              assertEquals("get", method);
+              return service;
+            });
+    return new SnowflakeWorkScheduler(executor, provider, maxParallelism);
+  }
+
+  private WorkScheduler.Work work(String name, long bytes) {
+    return failing(name, bytes, null);
+  }
+
+  private WorkScheduler.Work failing(String name, long bytes, Exception failure) {
+    return new WorkScheduler.Work() {
+      @Override
+      public String getName() {
+        return name;
+      }
+
+      @Override
+      public long getBytes() {
+        return bytes;
+      }
+
+      @Override
+      public void run() throws SQLException {
+        ran.add(name);
+        if (failure instanceof SQLException) {
+          throw (SQLException) failure;
+        } else if (failure != null) {
+          throw (RuntimeException) failure;
+        }
+      }
+    };
+  }
+
+  private static SnowflakeWorkAction action(Parameters parameters) {
+    return new SnowflakeWorkAction() {
+      @Override
+      public SnowflakeWorkAction.Parameters getParameters() {
+        return parameters.proxy;
+      }
+    };
+  }
+
+  // Answers every call of the proxy with the result for the method name
+  private interface Answer {
+    Object answer(String method);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T proxy(Class<?> type, Answer answer) {
+    return (T)
+        Proxy.newProxyInstance(
+            type.getClassLoader(),
+            new Class<?>[] {type},
+            (self, method, args) -> answer.answer(method.getName()));
+  }
+
+  // Parameters of a work item, holding the values set by the scheduler
+  private static class Parameters {
+    private final Property<SnowflakeConnectionService> connectionService = property();
+    private final Property<String> workId = property();
+    private final SnowflakeWorkAction.Parameters proxy =
+        proxy(
+            SnowflakeWorkAction.Parameters.class,
+            method -> method.equals("getConnectionService") ? connectionService : workId);
+
+    Property<SnowflakeConnectionService> getConnectionService() {
+      return connectionService;
+    }
+
+    Property<String> getWorkId() {
+      return workId;
+    }
+
+    // A property supporting set of a value or a provider, and get
+    @SuppressWarnings("unchecked")
+    private static <T> Property<T> property() {
+      Object[] value = new Object[1];
+      return (Property<T>)
+          Proxy.newProxyInstance(
+              Property.class.getClassLoader(),
+              new Class<?>[] {Property.class},
+              (self, method, args) -> {
+                switch (method.getName()) {
+                  case "set":
+                    value[0] = args[0];
+                    return null;
+                  case "get":
+                    return value[0] instanceof Provider ? ((Provider<?>) value[0]).get() : value[0];
+                  default:
+                    throw new UnsupportedOperationException(method.getName());
+                }
+              });
+    }
+  }
+
+  // Runs the submitted work items one after the other on await, and fails like an interrupted
+  // build once startLimit work items ran
+  private static class FakeWorkQueue implements WorkQueue {
+    private final List<Parameters> submitted = new ArrayList<>();
+    private int startLimit = Integer.MAX_VALUE;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends WorkParameters> void submit(
+        Class<? extends WorkAction<T>> workActionClass, Action<? super T> parameterAction) {
+      assertEquals(SnowflakeWorkAction.class, workActionClass);
+      Parameters parameters = new Parameters();
+      ((Action<SnowflakeWorkAction.Parameters>) parameterAction).execute(parameters.proxy);
+      submitted.add(parameters);
+    }
+
+    @Override
+    public void await() throws WorkerExecutionException {
+      for (int i = 0; i < submitted.size(); i++) {
+        if (i == startLimit) {
+          throw new WorkerExecutionException("Build interrupted");
+        }
+        action(submitted.get(i)).execute();
+      }
+    }
+  }
+}
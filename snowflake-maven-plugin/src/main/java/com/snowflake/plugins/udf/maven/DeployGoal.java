@@ -1,22 +1,18 @@
 package com.snowflake.plugins.udf.maven;
 
-import static org.twdata.maven.mojoexecutor.MojoExecutor.*;
-
 import com.snowflake.plugins.udf.core.*;
 import java.io.*;
 import java.sql.SQLException;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.LineIterator;
+import org.apache.maven.artifact.Artifact;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.model.Plugin;
 import org.apache.maven.plugin.AbstractMojo;
-import org.apache.maven.plugin.BuildPluginManager;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
 import org.apache.maven.plugins.annotations.*;
 import org.apache.maven.project.MavenProject;
 
@@ -24,7 +20,7 @@ import org.apache.maven.project.MavenProject;
 @Mojo(
     name = "deploy",
     defaultPhase = LifecyclePhase.DEPLOY,
-    requiresDependencyResolution = ResolutionScope.TEST)
+    requiresDependencyResolution = ResolutionScope.COMPILE)
 public class DeployGoal extends AbstractMojo {
   /**
    * The project currently being build.
@@ -46,13 +42,25 @@ public class DeployGoal extends AbstractMojo {
   @Parameter(defaultValue = "${session}", readonly = true)
   private MavenSession mavenSession;
 
+  // The projects of the reactor, in build order
+  @Parameter(defaultValue = "${reactorProjects}", readonly = true)
+  private List<MavenProject> reactorProjects;
+
+  // This plugin, to find the modules of the reactor which use it
+  @Parameter(defaultValue = "${plugin}", readonly = true)
+  private PluginDescriptor pluginDescriptor;
+
+  // This execution of the goal, to tell a command line invocation from a lifecycle binding
+  @Parameter(defaultValue = "${mojoExecution}", readonly = true)
+  private MojoExecution mojoExecution;
+
+  /** Holds the connection pool shared by every module of the reactor */
+  @Component private SnowflakeConnectionManager connectionManager;
+
   /**
-   * The Maven BuildPluginManager component.
-   *
-   * @component
-   * @required
+   * Holds the uploads shared by every module of the reactor and the deploys waiting to aggregate
    */
-  @Component private BuildPluginManager pluginManager;
+  @Component private ReactorDeploy reactorDeploy;
 
   /**
    * The name of the stage to use or create
@@ -89,6 +97,90 @@ public class DeployGoal extends AbstractMojo {
   @Parameter(property = "deploy.auth")
   private Map<String, String> auth;
 
+  /**
+   * List the stage once and skip uploading dependency JARs whose content is already present at the
+   * same stage path
+   */
+  @Parameter(property = "deploy.stageIndex", defaultValue = "false")
+  private boolean stageIndex;
+
+  /** Number of dependency JARs uploaded at the same time */
+  @Parameter(property = "deploy.uploadThreads", defaultValue = "4")
+  private int uploadThreads;
+
+  /** Maximum total size in megabytes of the dependency JARs uploaded at the same time */
+  @Parameter(property = "deploy.maxInFlightMegabytes", defaultValue = "256")
+  private long maxInFlightMegabytes;
+
+  /**
+   * How dependency JARs are arranged on the stage. "maven" imitates the .m2 cache with one upload
+   * per JAR, "hashed" stores every JAR as dependency/&lt;sha256&gt;.jar and uploads them together,
+   * "bundled" merges the JARs into a few dependency/bundle-&lt;sha256&gt;.jar files
+   */
+  @Parameter(property = "deploy.dependencyLayout", defaultValue = "maven")
+  private String dependencyLayout;
+
+  // Maximum total size in megabytes of the JARs merged into one bundle in the bundled layout
+  @Parameter(property = "deploy.bundleMaxMegabytes", defaultValue = "64")
+  private long bundleMaxMegabytes;
+
+  /** Query timeout in seconds applied to each statement. 0 means no timeout */
+  @Parameter(property = "deploy.queryTimeoutSeconds", defaultValue = "0")
+  private int queryTimeoutSeconds;
+
+  /**
+   * How the CREATE FUNCTION/PROCEDURE statements are sent. "sync" runs one statement at a time,
+   * "async" submits all of them at once and waits for them together, "batch" groups them into
+   * multi-statement requests of ddlBatchSize statements
+   */
+  @Parameter(property = "deploy.ddlMode", defaultValue = "sync")
+  private String ddlMode;
+
+  // Number of statements sent in one multi-statement request when ddlMode is "batch"
+  @Parameter(property = "deploy.ddlBatchSize", defaultValue = "20")
+  private int ddlBatchSize;
+
+  // Skip functions and procedures whose definition in Snowflake already matches
+  @Parameter(property = "deploy.remoteDiff", defaultValue = "false")
+  private boolean remoteDiff;
+
+  /**
+   * Import only the JARs reachable from the handler class of each function or procedure instead of
+   * every dependency JAR
+   */
+  @Parameter(property = "deploy.pruneImports", defaultValue = "false")
+  private boolean pruneImports;
+
+  // Upload only the classes of the artifact reachable from the handlers and the keep rules
+  @Parameter(property = "deploy.shrinkArtifact", defaultValue = "false")
+  private boolean shrinkArtifact;
+
+  /**
+   * Classes kept in the shrunk artifact even if no handler reaches them, e.g. classes loaded by
+   * name. Each rule is a class name, a package ending in ".*" or a package tree ending in ".**"
+   */
+  @Parameter(property = "deploy.keepRules")
+  private List<String> keepRules;
+
+  /**
+   * Deploy every module of the reactor together once the last module using the plugin reaches the
+   * goal. The distinct dependency JARs of all modules are uploaded once before the functions of any
+   * module are created
+   */
+  @Parameter(property = "deploy.aggregate", defaultValue = "false")
+  private boolean aggregate;
+
+  // Deploy even if nothing changed since the last successful deploy to the same target
+  @Parameter(property = "deploy.force", defaultValue = "false")
+  private boolean force;
+
+  /**
+   * Resume a deploy which failed part way from the first file or function it did not finish,
+   * instead of starting over. Ignored when deploy.force is set
+   */
+  @Parameter(property = "deploy.resume", defaultValue = "true")
+  private boolean resume;
+
   // Duplicate parameters from the auth configuration object so that users can specify auth
   // arguments through CLI
   // e.g. mvn snowflake-udx:deploy -Ddeploy.auth.url="testtest.snowflakecomputing.com"
@@ -128,69 +220,130 @@ public class DeployGoal extends AbstractMojo {
   @Parameter(property = "deploy.args")
   private String udx_args;
 
-  // Path in build directory where dependencies are copied
-  private String dependencyDirName = "dependency";
+  // Path in build directory where the hashed dependency layout is built before upload
+  private String dependencyMirrorDirName = "snowflake/dependency-mirror";
+  // Path in build directory caching the bundles of the bundled dependency layout
+  private String dependencyBundleDirName = "snowflake/dependency-bundles";
+  // Directory holding the snapshot of the last successful deploy to each target
+  private String deploySnapshotDirName = "snowflake/deploy-snapshots";
+  // Directory holding the progress of an unfinished deploy to each target
+  private String deployCheckpointDirName = "snowflake/deploy-checkpoints";
+  // Path in build directory where the shrunk artifact is written before upload
+  private String shrunkArtifactDirName = "snowflake/shrunk-artifact";
+  // Path in build directory of the JSON report of the last deploy
+  private String deployReportFileName = "snowflake/deploy-report.json";
   // The plugin config parameter responsible for choosing the auth file
   private String authFileParamName = "propertiesFile";
   private String buildDirectory;
   private List<UserDefined> udxs;
-  private Snowflake snowflake;
-  private String dependencyListFile;
+  // The compile scope dependencies of the project, uploaded from the local repository
+  private DependencyPaths dependencyPaths;
 
   public void execute() throws MojoExecutionException {
-    // Collect Project details
-    ExecutionEnvironment executionEnv =
-        new ExecutionEnvironment(mavenProject, mavenSession, pluginManager);
     String artifactFileName = mavenProject.getBuild().getFinalName() + ".jar";
     buildDirectory = mavenProject.getBuild().getDirectory();
-    dependencyListFile = String.format("%s/%s/dependencies.log", buildDirectory, dependencyDirName);
     // Validate user config
     udxs =
         Stream.concat(Arrays.stream(functions), Arrays.stream(procedures))
             .collect(Collectors.toList());
     appendCliUdxIfDefined(udxs);
     validateUserConfig();
-    // Copy dependencies to the "target/dependency" folder
-    getLog()
-        .info(
-            "Execute copy dependencies. Destination: " + buildDirectory + "/" + dependencyDirName);
-    executeDependencyCopyDependencies(executionEnv);
-    executeDependencyList(executionEnv);
-
-    SnowflakeBuilder builder = new SnowflakeBuilder(getLog()::info);
+    dependencyPaths = resolveDependencyPaths();
+    File localRepository = new File(mavenSession.getLocalRepository().getBasedir());
+
+    SnowflakeBuilder builder =
+        new SnowflakeBuilder(SnowflakeLogger.of(getLog()::info, getLog()::debug));
     // Get authentication options from properties file, POM, and CLI to create Snowflake connection
     configureSnowflakeAuth(builder);
     configureSnowflakeDeployParams(builder, stage, artifactFileName);
-    // Create snowflake JDBC Connection
-    try {
-      snowflake = builder.create();
-    } catch (SQLException e) {
-      throw new MojoExecutionException(
-          "Error creating JDBC connection to snowflake. You likely need to change/add information to your auth config for the plugin: ",
-          e);
-    }
+    // Compare with the last successful deploy before connecting
+    DeploySnapshot snapshot;
     try {
-      snowflake.createStage();
-    } catch (SQLException e) {
-      throw new MojoExecutionException("Error creating or accessing stage: ", e);
+      snapshot =
+          builder.snapshot(
+              new File(buildDirectory, deploySnapshotDirName),
+              new File(buildDirectory, artifactFileName),
+              localRepository,
+              udxs);
+    } catch (IOException e) {
+      throw new MojoExecutionException("Error reading the files to deploy: ", e);
     }
-
-    // Upload artifacts to stage
-    try {
-      snowflake.uploadArtifact(String.format("%s/%s", buildDirectory, artifactFileName));
-      snowflake.uploadDependencies(String.format("%s/%s", buildDirectory, dependencyDirName));
-    } catch (SQLException e) {
-      throw new MojoExecutionException("Error uploading: ", e);
+    ModuleDeploy deploy = null;
+    if (!force && snapshot.isUpToDate()) {
+      getLog()
+          .info(
+              "Nothing changed since the last successful deploy, skipping. Set deploy.force to"
+                  + " deploy anyway");
+    } else {
+      // Create snowflake JDBC Connection
+      Snowflake snowflake;
+      try {
+        snowflake = builder.create();
+      } catch (SQLException e) {
+        throw new MojoExecutionException(
+            "Error creating JDBC connection to snowflake. You likely need to change/add information to your auth config for the plugin: ",
+            e);
+      }
+      deploy =
+          new ModuleDeploy(
+              mavenProject.getId(),
+              snowflake,
+              String.format("%s/%s", buildDirectory, artifactFileName),
+              localRepository,
+              udxs,
+              snapshot,
+              new File(buildDirectory, deployReportFileName),
+              getLog());
+      if (!aggregate) {
+        deploy.deploy();
+        return;
+      }
     }
-    // Register UDFs and Procedures
-    try {
-      for (UserDefined udf : udxs) {
-        snowflake.createFunctionOrProc(udf);
+    if (aggregate) {
+      List<ModuleDeploy> deploys =
+          reactorDeploy.arrive(mavenProject.getId(), deploy, countParticipants());
+      if (deploys == null) {
+        getLog().info("Waiting for the last module of the reactor to deploy every module together");
+      } else if (!deploys.isEmpty()) {
+        reactorDeploy.deployAll(deploys, getLog());
       }
-    } catch (SQLException e) {
-      throw new MojoExecutionException("Error creating function or procedure.", e);
     }
-    getLog().info("Functions created!");
+  }
+
+  // Number of modules of the reactor running the deploy goal along with this one. A goal invoked
+  // from the command line runs in every module, otherwise only the modules with an execution of the
+  // plugin binding the goal run it
+  private int countParticipants() {
+    String pluginKey = pluginDescriptor.getPluginLookupKey();
+    boolean fromCommandLine = mojoExecution.getSource() == MojoExecution.Source.CLI;
+    List<String> dependencies = pluginDependencies(mavenProject.getPlugin(pluginKey));
+    return (int)
+        reactorProjects.stream()
+            .map(project -> project.getPlugin(pluginKey))
+            .filter(plugin -> fromCommandLine || bindsGoal(plugin))
+            .filter(plugin -> pluginDependencies(plugin).equals(dependencies))
+            .count();
+  }
+
+  // An execution inherited with the phase "none" is disabled
+  private boolean bindsGoal(Plugin plugin) {
+    return plugin != null
+        && plugin.getExecutions().stream()
+            .anyMatch(
+                execution ->
+                    execution.getGoals().contains(mojoExecution.getGoal())
+                        && !"none".equals(execution.getPhase()));
+  }
+
+  // The dependencies a module adds to the plugin. Modules adding other dependencies load the plugin
+  // in another class realm, with its own ReactorDeploy, so they are deployed apart
+  private static List<String> pluginDependencies(Plugin plugin) {
+    if (plugin == null) {
+      return Collections.emptyList();
+    }
+    return plugin.getDependencies().stream()
+        .map(dependency -> dependency.getManagementKey() + ":" + dependency.getVersion())
+        .collect(Collectors.toList());
   }
 
   private void validateUserConfig() {
@@ -252,11 +405,27 @@ public class DeployGoal extends AbstractMojo {
       throws MojoExecutionException {
     builder.stageName(stageName);
     builder.artifactFileName(artifactFileName);
-    try {
-      builder.depsToStagePaths(mapDependenciesToStagePaths());
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
+    builder.connectionPool(connectionManager.getPool());
+    builder.stageIndex(stageIndex);
+    builder.uploadThreads(uploadThreads);
+    builder.maxInFlightMegabytes(maxInFlightMegabytes);
+    builder.dependencyLayout(dependencyLayout);
+    builder.dependencyMirrorDir(new File(buildDirectory, dependencyMirrorDirName));
+    builder.dependencyBundleDir(new File(buildDirectory, dependencyBundleDirName));
+    builder.bundleMaxMegabytes(bundleMaxMegabytes);
+    builder.queryTimeoutSeconds(queryTimeoutSeconds);
+    builder.ddlMode(ddlMode);
+    builder.ddlBatchSize(ddlBatchSize);
+    builder.remoteDiff(remoteDiff);
+    builder.pruneImports(pruneImports);
+    builder.shrinkArtifact(shrinkArtifact);
+    builder.shrunkArtifactDir(new File(buildDirectory, shrunkArtifactDirName));
+    builder.keepRules(keepRules);
+    builder.checkpointDir(new File(buildDirectory, deployCheckpointDirName));
+    builder.resume(resume && !force);
+    builder.sharedUploads(reactorDeploy.getSharedUploads());
+    builder.depsToStagePaths(dependencyPaths.getStagePaths());
+    builder.depsToLocalPaths(dependencyPaths.getLocalPaths());
   }
 
   // Create a Function/Procedure object and append it to the UDFs list if ANY of the CLI arguments
@@ -281,71 +450,19 @@ public class DeployGoal extends AbstractMojo {
     }
   }
 
-  private void executeDependencyCopyDependencies(ExecutionEnvironment executionEnv)
-      throws MojoExecutionException {
-    executeMojo(
-        plugin(
-            groupId("org.apache.maven.plugins"),
-            artifactId("maven-dependency-plugin"),
-            version("3.5.0")),
-        goal("copy-dependencies"),
-        configuration(
-            element(name("includeScope"), "compile"),
-            element(name("outputDirectory"), buildDirectory + "/" + dependencyDirName)),
-        executionEnv);
-  }
-
-  // Gets all dependencies from "compile" scope. i.e. Ignores test dependencies like JUnit
-  private void executeDependencyList(ExecutionEnvironment executionEnv)
-      throws MojoExecutionException {
-    executeMojo(
-        plugin(
-            groupId("org.apache.maven.plugins"),
-            artifactId("maven-dependency-plugin"),
-            version("3.5.0")),
-        goal("list"),
-        configuration(
-            element(name("includeScope"), "compile"),
-            element(name("outputFile"), dependencyListFile),
-            element(name("outputAbsoluteArtifactFilename"), "true")),
-        executionEnv);
-  }
-
-  // Creates a map of dependency file names to their corresponding file path in the stage path
-  // Their file paths will imitate the .m2 cache:
-  // Ex: groupID[0]/groupID[1]/groupID[2]/.../artifactID/version/filename
-  private Map<String, String> mapDependenciesToStagePaths()
-      throws MojoExecutionException, IOException {
-    Map<String, String> result = new HashMap<>();
-    // Create matcher on file
-    String fileNames = "[^/]*\\.jar";
-    Pattern pattern = Pattern.compile(fileNames);
-    LineIterator it = FileUtils.lineIterator(new File(dependencyListFile), "UTF-8");
-    ;
-    try {
-      it = FileUtils.lineIterator(new File(dependencyListFile), "UTF-8");
-      while (it.hasNext()) {
-        String line = it.nextLine().trim();
-        Matcher matcher = pattern.matcher(line);
-        if (matcher.find()) {
-          String fileName = matcher.group();
-          String[] info = line.split(":");
-
-          String groupId = info[0];
-          String artifactId = info[1];
-          String version = info[3];
-          String stagePath =
-              String.format("%s/%s/%s", groupId.replace('.', '/'), artifactId, version);
-          result.put(fileName, stagePath);
-        }
+  // Maps the compile scope dependencies resolved by Maven to their stage path and their file in the
+  // local repository. Only JAR files are uploaded, with or without a classifier. Dependencies
+  // without a file, such as imported BOMs, other packagings, such as pom or zip, and the class
+  // directories of reactor modules which were not packaged are skipped
+  private DependencyPaths resolveDependencyPaths() {
+    DependencyPaths paths = new DependencyPaths();
+    for (Artifact artifact : mavenProject.getArtifacts()) {
+      File file = artifact.getFile();
+      if (file != null && file.isFile() && file.getName().endsWith(".jar")) {
+        paths.add(artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion(), file);
       }
-    } catch (IOException e) {
-      throw new MojoExecutionException(
-          "Unexpected error: snowflake-udx plugin failed to create dependency list file");
-    } finally {
-      it.close();
     }
-    getLog().info("Mapped dependencies to stage paths: " + result.toString());
-    return result;
+    getLog().info("Mapped dependencies to stage paths: " + paths.getStagePaths());
+    return paths;
   }
 }
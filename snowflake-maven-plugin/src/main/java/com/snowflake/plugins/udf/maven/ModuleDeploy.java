@@ -0,0 +1,118 @@
+package com.snowflake.plugins.udf.maven;
+
+import com.snowflake.plugins.udf.core.DeploySnapshot;
+import com.snowflake.plugins.udf.core.Snowflake;
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * The deploy of one module, connected and ready to upload. Split into steps so that an aggregated
+ * deploy can upload the files of every module before creating any of their functions
+ */
+public class ModuleDeploy {
+  private final String projectId;
+  private final Snowflake snowflake;
+  // Local path of the artifact JAR
+  private final String artifactPath;
+  // Local repository the dependency JARs are uploaded from
+  private final File localRepository;
+  private final List<UserDefined> udxs;
+  // Saved once the deploy succeeded, so that an unchanged module is skipped next time
+  private final DeploySnapshot snapshot;
+  private final File reportFile;
+  private final Log log;
+
+  public ModuleDeploy(
+      String projectId,
+      Snowflake snowflake,
+      String artifactPath,
+      File localRepository,
+      List<UserDefined> udxs,
+      DeploySnapshot snapshot,
+      File reportFile,
+      Log log) {
+    this.projectId = projectId;
+    this.snowflake = snowflake;
+    this.artifactPath = artifactPath;
+    this.localRepository = localRepository;
+    this.udxs = udxs;
+    this.snapshot = snapshot;
+    this.reportFile = reportFile;
+    this.log = log;
+  }
+
+  public String getProjectId() {
+    return projectId;
+  }
+
+  /** Runs every step of the deploy, writing the report whether it succeeded or not */
+  public void deploy() throws MojoExecutionException {
+    try {
+      uploadArtifact();
+      uploadDependencies();
+      createFunctionsOrProcs();
+    } finally {
+      writeDeployReport();
+    }
+    finish();
+  }
+
+  /** Creates the stage if needed and uploads the artifact JAR */
+  public void uploadArtifact() throws MojoExecutionException {
+    try {
+      snowflake.createStage();
+    } catch (SQLException e) {
+      throw new MojoExecutionException("Error creating or accessing stage: ", e);
+    }
+    try {
+      snowflake.uploadArtifact(artifactPath, udxs);
+    } catch (SQLException e) {
+      throw new MojoExecutionException("Error uploading: ", e);
+    }
+  }
+
+  public void uploadDependencies() throws MojoExecutionException {
+    try {
+      snowflake.uploadDependencies(localRepository.getPath());
+    } catch (SQLException e) {
+      throw new MojoExecutionException("Error uploading: ", e);
+    }
+  }
+
+  public void createFunctionsOrProcs() throws MojoExecutionException {
+    try {
+      snowflake.createFunctionsOrProcs(udxs);
+    } catch (SQLException e) {
+      throw new MojoExecutionException("Error creating function or procedure.", e);
+    }
+  }
+
+  // Writes the report of the deploy, whether it succeeded or not
+  public void writeDeployReport() {
+    try {
+      snowflake.getReport().write(reportFile);
+      log.info("Deploy report written to " + reportFile);
+    } catch (IOException e) {
+      log.warn("Could not write the deploy report: " + e.getMessage());
+    }
+  }
+
+  /** Deletes the checkpoint and saves the snapshot of the successful deploy */
+  public void finish() {
+    log.info("Functions created!");
+    try {
+      snowflake.clearCheckpoint();
+    } catch (IOException e) {
+      log.warn("Could not delete the deploy checkpoint: " + e.getMessage());
+    }
+    try {
+      snapshot.save();
+    } catch (IOException e) {
+      log.warn("Could not save the deploy snapshot: " + e.getMessage());
+    }
+  }
+}
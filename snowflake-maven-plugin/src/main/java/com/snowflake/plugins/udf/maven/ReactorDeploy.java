@@ -0,0 +1,101 @@
+package com.snowflake.plugins.udf.maven;
+
+import com.snowflake.plugins.udf.core.SharedUploads;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.inject.Inject;
+import javax.inject.Named;
+import org.apache.maven.SessionScoped;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Session scoped component holding the files uploaded by every module of the reactor, and in
+ * aggregate mode the deploys of the modules waiting for the last one. The last module to reach the
+ * deploy goal uploads the files of every module, so that dependencies shared by several modules are
+ * uploaded once, before creating the functions of every module
+ */
+@Named
+@SessionScoped
+public class ReactorDeploy {
+  private final SharedUploads sharedUploads = new SharedUploads();
+  // The modules which reached the deploy goal, deployed or not
+  private final Set<String> arrived = new HashSet<>();
+  // The deploys waiting for the last module, in the order the modules reached the goal
+  private final List<ModuleDeploy> pending = new ArrayList<>();
+
+  @Inject
+  public ReactorDeploy(MavenSession session) {
+    MavenExecutionRequest request = session.getRequest();
+    request.setExecutionListener(
+        new SessionEndListener(request.getExecutionListener(), () -> failIfPending(session)));
+  }
+
+  public SharedUploads getSharedUploads() {
+    return sharedUploads;
+  }
+
+  /**
+   * Records that a module reached the deploy goal, with its deploy or null if it is up to date.
+   * Returns the deploys of every module once all the participating modules arrived, and null before
+   */
+  public synchronized List<ModuleDeploy> arrive(
+      String projectId, ModuleDeploy deploy, int participants) {
+    arrived.add(projectId);
+    if (deploy != null) {
+      pending.add(deploy);
+    }
+    if (arrived.size() < participants) {
+      return null;
+    }
+    List<ModuleDeploy> deploys = new ArrayList<>(pending);
+    pending.clear();
+    return deploys;
+  }
+
+  /**
+   * Deploys the modules together over their shared session. Every artifact and distinct dependency
+   * JAR is uploaded before any function is created, so that a failed upload leaves the functions of
+   * every module untouched
+   */
+  public void deployAll(List<ModuleDeploy> deploys, Log log) throws MojoExecutionException {
+    log.info(String.format("Deploying %d modules of the reactor together", deploys.size()));
+    try {
+      for (ModuleDeploy deploy : deploys) {
+        log.info("Uploading the artifact of " + deploy.getProjectId());
+        deploy.uploadArtifact();
+      }
+      for (ModuleDeploy deploy : deploys) {
+        log.info("Uploading the dependencies of " + deploy.getProjectId());
+        deploy.uploadDependencies();
+      }
+      for (ModuleDeploy deploy : deploys) {
+        log.info("Creating the functions and procedures of " + deploy.getProjectId());
+        deploy.createFunctionsOrProcs();
+      }
+    } finally {
+      deploys.forEach(ModuleDeploy::writeDeployReport);
+    }
+    deploys.forEach(ModuleDeploy::finish);
+  }
+
+  // A module which fails, or skips the deploy goal, keeps the last module from arriving. The build
+  // fails rather than succeed without deploying the modules waiting for it
+  private synchronized void failIfPending(MavenSession session) {
+    if (!pending.isEmpty()) {
+      session
+          .getResult()
+          .addException(
+              new MojoExecutionException(
+                  String.format(
+                      "%d modules waiting for the aggregated deploy were not deployed because not"
+                          + " every module of the reactor reached the deploy goal",
+                      pending.size())));
+      pending.clear();
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package com.snowflake.plugins.udf.maven;
+
+import com.snowflake.plugins.udf.core.SnowflakeConnectionPool;
+import java.sql.SQLException;
+import javax.inject.Inject;
+import javax.inject.Named;
+import org.apache.maven.SessionScoped;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+
+/**
+ * Session scoped component holding the Snowflake connection pool shared by every module of the
+ * reactor. The pooled connections are closed when the Maven session ends
+ */
+@Named
+@SessionScoped
+public class SnowflakeConnectionManager {
+  private final SnowflakeConnectionPool pool = new SnowflakeConnectionPool();
+
+  @Inject
+  public SnowflakeConnectionManager(MavenSession session) {
+    // Maven fires the session ended event to whichever listener is set on the request when the
+    // reactor build finishes, so wrap the current listener to close the pool at that point
+    MavenExecutionRequest request = session.getRequest();
+    request.setExecutionListener(
+        new SessionEndListener(request.getExecutionListener(), this::close));
+  }
+
+  public SnowflakeConnectionPool getPool() {
+    return pool;
+  }
+
+  private void close() {
+    try {
+      pool.close();
+    } catch (SQLException e) {
+      // The build is already over at this point. Sessions which failed to close are expired by
+      // Snowflake once their heartbeat stops
+    }
+  }
+}
@@ -1,6 +1,8 @@
 package com.snowflake.plugins.udf.maven;
 
 import java.io.*;
+import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Properties;
@@ -15,7 +17,7 @@ public class MavenPluginIT {
 
   private String runScriptPath = "./src/it/runtest.sh";
   private String propertiesFilePath = "./src/it/profile.properties";
-  private SnowflakeConnectionV1 conn;
+  private Connection conn;
   private UdxChecker checker;
   private String stageName =
           "SNOWFLAKE_MAVEN_PLUGIN_INTEGRATION_TEST_"
@@ -25,7 +27,12 @@ public class MavenPluginIT {
   public void setup() throws SQLException, IOException {
     Properties prop = new Properties();
     prop.load(new FileInputStream(propertiesFilePath));
-    conn = new SnowflakeConnectionV1("jdbc:snowflake://" + prop.get("URL").toString(), prop);
+    String url = prop.get("URL").toString();
+    // JDBC urls, such as those of the offline stand-in, are used as is
+    conn =
+            url.startsWith("jdbc:")
+                    ? DriverManager.getConnection(url, prop)
+                    : new SnowflakeConnectionV1("jdbc:snowflake://" + url, prop);
     checker = new UdxChecker(conn);
   }
 
@@ -0,0 +1,78 @@
+package com.snowflake.plugins.udf.benchmarks;
+
+import com.snowflake.plugins.udf.core.CreateResult;
+import com.snowflake.plugins.udf.core.DdlRenderer;
+import com.snowflake.plugins.udf.core.DependencyPaths;
+import com.snowflake.plugins.udf.core.Snowflake;
+import com.snowflake.plugins.udf.core.UserDefined;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Generates the CREATE FUNCTION/PROCEDURE statements, alone and when run on a mocked connection, so
+ * that the cost of DDL generation can be told apart from the cost of the statement handling. The
+ * plan is rendered both with the imports computed again and with the memoized imports
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CreateFunctionsBenchmark {
+  @Param({"1", "10", "100", "1000"})
+  public int functions;
+
+  @Param({"10", "1000"})
+  public int dependencies;
+
+  private List<UserDefined> udxs;
+  private Snowflake snowflake;
+
+  @Setup
+  public void setup() throws SQLException {
+    udxs = Fixtures.functions(functions);
+    DependencyPaths paths = new DependencyPaths();
+    for (Fixtures.Dependency dependency : Fixtures.dependencies(dependencies)) {
+      paths.add(dependency.groupId, dependency.artifactId, dependency.version, dependency.file);
+    }
+    snowflake = Fixtures.snowflake(paths.getStagePaths(), "sync");
+  }
+
+  @Benchmark
+  public void createStatements(Blackhole blackhole) {
+    for (UserDefined udx : udxs) {
+      blackhole.consume(snowflake.getCreateStatement(udx));
+    }
+  }
+
+  @Benchmark
+  public List<String> renderPlanCold() {
+    DdlRenderer renderer = snowflake.getDdlRenderer();
+    renderer.invalidateImports();
+    return renderer.renderAll(udxs);
+  }
+
+  @Benchmark
+  public List<String> renderPlanCached() {
+    return snowflake.getDdlRenderer().renderAll(udxs);
+  }
+
+  @Benchmark
+  public List<CreateResult> createFunctions() throws SQLException {
+    return snowflake.createFunctionsOrProcs(udxs);
+  }
+}
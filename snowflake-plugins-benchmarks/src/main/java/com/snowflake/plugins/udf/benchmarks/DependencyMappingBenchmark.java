@@ -0,0 +1,47 @@
+package com.snowflake.plugins.udf.benchmarks;
+
+import com.snowflake.plugins.udf.core.DependencyPaths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Maps resolved dependencies to their stage path and local file, as the Maven and Gradle plugins do
+ * before every deploy
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DependencyMappingBenchmark {
+  @Param({"10", "100", "1000", "10000"})
+  public int dependencies;
+
+  private List<Fixtures.Dependency> resolved;
+
+  @Setup
+  public void setup() {
+    resolved = Fixtures.dependencies(dependencies);
+  }
+
+  @Benchmark
+  public DependencyPaths mapDependencies() {
+    DependencyPaths paths = new DependencyPaths();
+    for (Fixtures.Dependency dependency : resolved) {
+      paths.add(dependency.groupId, dependency.artifactId, dependency.version, dependency.file);
+    }
+    return paths;
+  }
+}
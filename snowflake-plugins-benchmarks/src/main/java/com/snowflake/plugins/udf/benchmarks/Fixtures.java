@@ -0,0 +1,126 @@
+package com.snowflake.plugins.udf.benchmarks;
+
+import static org.mockito.Mockito.*;
+
+import com.snowflake.plugins.udf.core.Snowflake;
+import com.snowflake.plugins.udf.core.SnowflakeBuilder;
+import com.snowflake.plugins.udf.core.SnowflakeConnectionPool;
+import com.snowflake.plugins.udf.core.UserDefined;
+import java.io.File;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import net.snowflake.client.jdbc.SnowflakeConnectionV1;
+
+/** Synthetic dependencies, functions and a mocked Snowflake session shared by the benchmarks */
+final class Fixtures {
+  private Fixtures() {}
+
+  /** A resolved dependency as the Maven and Gradle plugins see it */
+  static final class Dependency {
+    final String groupId;
+    final String artifactId;
+    final String version;
+    final File file;
+
+    Dependency(String groupId, String artifactId, String version, File file) {
+      this.groupId = groupId;
+      this.artifactId = artifactId;
+      this.version = version;
+      this.file = file;
+    }
+  }
+
+  // Spread over a few groups of different depths, like a real dependency graph
+  static List<Dependency> dependencies(int count) {
+    List<Dependency> dependencies = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      String groupId = i % 3 == 0 ? "org.example.group" + i % 50 : "com.example.lib" + i % 20;
+      String artifactId = "artifact-" + i;
+      String version = (i % 7) + "." + (i % 13) + "." + (i % 5);
+      File file =
+          new File(
+              String.format(
+                  "/home/ci/.m2/repository/%s/%s/%s/%s-%s.jar",
+                  groupId.replace('.', '/'), artifactId, version, artifactId, version));
+      dependencies.add(new Dependency(groupId, artifactId, version, file));
+    }
+    return dependencies;
+  }
+
+  static List<UserDefined> functions(int count) {
+    List<UserDefined> functions = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      functions.add(new Function("fn_" + i, "a string, b int, c variant", "pkg.Handler.run" + i));
+    }
+    return functions;
+  }
+
+  /**
+   * Creates a Snowflake session on a mocked connection whose statements always succeed. Mocks are
+   * stub only, so that they don't record invocations and skew allocation rates
+   */
+  static Snowflake snowflake(Map<String, String> depsToStagePaths, String ddlMode)
+      throws SQLException {
+    Statement statement = mock(Statement.class, withSettings().stubOnly());
+    when(statement.execute(anyString())).thenReturn(true);
+    SnowflakeConnectionV1 conn = mock(SnowflakeConnectionV1.class, withSettings().stubOnly());
+    when(conn.createStatement()).thenReturn(statement);
+    SnowflakeConnectionPool pool =
+        new SnowflakeConnectionPool() {
+          @Override
+          protected SnowflakeConnectionV1 connect(String url, Properties properties) {
+            return conn;
+          }
+        };
+    return new SnowflakeBuilder(message -> {})
+        .config("url", "benchmark.snowflakecomputing.com")
+        .config("user", "benchmark")
+        .stageName("benchmark_stage")
+        .artifactFileName("project-1.0.jar")
+        .depsToStagePaths(depsToStagePaths)
+        .ddlMode(ddlMode)
+        .connectionPool(pool)
+        .create();
+  }
+
+  private static final class Function implements UserDefined {
+    private final String name;
+    private final String inputs;
+    private final String handler;
+
+    Function(String name, String inputs, String handler) {
+      this.name = name;
+      this.inputs = inputs;
+      this.handler = handler;
+    }
+
+    @Override
+    public String getInputs() {
+      return inputs;
+    }
+
+    @Override
+    public String getType() {
+      return UserDefined.function;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public String getHandler() {
+      return handler;
+    }
+
+    @Override
+    public String getReturns() {
+      return "string";
+    }
+  }
+}
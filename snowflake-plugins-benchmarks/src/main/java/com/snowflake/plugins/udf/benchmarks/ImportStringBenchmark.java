@@ -0,0 +1,54 @@
+package com.snowflake.plugins.udf.benchmarks;
+
+import com.snowflake.plugins.udf.core.DependencyPaths;
+import com.snowflake.plugins.udf.core.Snowflake;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Builds the IMPORTS clause shared by every CREATE FUNCTION/PROCEDURE statement. The memoized clause
+ * is discarded before each call, so that every call computes it
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ImportStringBenchmark {
+  @Param({"10", "100", "1000", "10000"})
+  public int dependencies;
+
+  private Snowflake snowflake;
+
+  @Setup
+  public void setup() throws SQLException {
+    DependencyPaths paths = new DependencyPaths();
+    for (Fixtures.Dependency dependency : Fixtures.dependencies(dependencies)) {
+      paths.add(dependency.groupId, dependency.artifactId, dependency.version, dependency.file);
+    }
+    snowflake = Fixtures.snowflake(paths.getStagePaths(), "sync");
+  }
+
+  @Setup(Level.Invocation)
+  public void invalidateImports() {
+    snowflake.getDdlRenderer().invalidateImports();
+  }
+
+  @Benchmark
+  public String importString() {
+    return snowflake.getImportString();
+  }
+}
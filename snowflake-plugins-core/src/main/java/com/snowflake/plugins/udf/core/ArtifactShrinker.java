@@ -0,0 +1,178 @@
+package com.snowflake.plugins.udf.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Removes the classes of the artifact JAR which no handler can reach. Starting from the handler
+ * classes, the classes named by keep rules and the service implementations listed in
+ * META-INF/services, the class references of every reachable class are followed within the JAR.
+ * Every other class is dropped, resources are kept as they are.
+ *
+ * <p>A keep rule is a class name such as "com.example.Plugin", which also keeps its nested classes,
+ * a package such as "com.example.*" or a package and its subpackages such as "com.example.**".
+ * Without keep rules, the original JAR is kept when a reachable class loads classes by name, since
+ * the classes it loads can't be found from its bytecode. With keep rules, the rules are trusted to
+ * name those classes
+ */
+public class ArtifactShrinker {
+  private static final String SERVICES_PREFIX = "META-INF/services/";
+
+  private final List<String> keepRules;
+
+  public ArtifactShrinker(Collection<String> keepRules) {
+    this.keepRules = new ArrayList<>();
+    for (String rule : keepRules) {
+      if (!rule.trim().isEmpty()) {
+        this.keepRules.add(rule.trim());
+      }
+    }
+  }
+
+  /**
+   * Writes the reachable part of the artifact to the output file
+   *
+   * @param artifact the artifact JAR
+   * @param handlers the handlers of the functions and procedures, e.g. "com.example.MyClass.run"
+   * @param output the shrunk JAR, which must not be the artifact itself
+   * @return the result, whose file is the artifact itself when shrinking fell back
+   */
+  public ShrinkResult shrink(File artifact, Collection<String> handlers, File output)
+      throws IOException {
+    long bytesBefore = artifact.length();
+    try (ZipFile jar = new ZipFile(artifact)) {
+      Map<String, ZipEntry> classes = new HashMap<>();
+      Deque<String> queue = new ArrayDeque<>();
+      Enumeration<? extends ZipEntry> entries = jar.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        String name = ImportPruner.internalName(entry.getName());
+        if (name != null) {
+          classes.putIfAbsent(name, entry);
+        } else if (entry.getName().startsWith(SERVICES_PREFIX) && !entry.isDirectory()) {
+          queue.addAll(serviceImplementations(jar, entry));
+        }
+      }
+      for (String handler : handlers) {
+        queue.add(ImportPruner.handlerClass(handler));
+      }
+      for (String name : classes.keySet()) {
+        if (isKept(name.replace('/', '.'))) {
+          queue.add(name);
+        }
+      }
+      Set<String> reached = new HashSet<>();
+      while (!queue.isEmpty()) {
+        String name = queue.poll();
+        ZipEntry entry = classes.get(name);
+        if (entry == null || !reached.add(name)) {
+          continue;
+        }
+        ClassReferences references;
+        try (InputStream in = jar.getInputStream(entry)) {
+          references = ClassReferences.read(in);
+        }
+        if (references.getClassLoadingCall() != null && keepRules.isEmpty()) {
+          return fallback(
+              artifact,
+              classes.size(),
+              String.format(
+                  "%s calls %s, add keep rules for the classes it loads",
+                  name.replace('/', '.'), references.getClassLoadingCall().replace('/', '.')));
+        }
+        queue.addAll(references.getClassNames());
+      }
+      if (reached.isEmpty()) {
+        return fallback(artifact, classes.size(), "no handler class found in the artifact");
+      }
+      write(jar, reached, output);
+      return new ShrinkResult(
+          output, bytesBefore, output.length(), classes.size(), reached.size(), null);
+    }
+  }
+
+  private static ShrinkResult fallback(File artifact, int classes, String reason) {
+    return new ShrinkResult(
+        artifact, artifact.length(), artifact.length(), classes, classes, reason);
+  }
+
+  // Copies the resources and the reached classes in their original order, keeping entry times so
+  // that the same artifact always shrinks to the same bytes
+  private static void write(ZipFile jar, Set<String> reached, File output) throws IOException {
+    Files.createDirectories(output.getAbsoluteFile().getParentFile().toPath());
+    byte[] buffer = new byte[8192];
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(output))) {
+      Enumeration<? extends ZipEntry> entries = jar.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        String name = ImportPruner.internalName(entry.getName());
+        if (name != null && !reached.contains(name)) {
+          continue;
+        }
+        ZipEntry copy = new ZipEntry(entry.getName());
+        copy.setTime(entry.getTime());
+        out.putNextEntry(copy);
+        try (InputStream in = jar.getInputStream(entry)) {
+          copy(in, out, buffer);
+        }
+        out.closeEntry();
+      }
+    }
+  }
+
+  private static void copy(InputStream in, OutputStream out, byte[] buffer) throws IOException {
+    int n;
+    while ((n = in.read(buffer)) > 0) {
+      out.write(buffer, 0, n);
+    }
+  }
+
+  // Internal names of the classes listed in a service provider file
+  private static List<String> serviceImplementations(ZipFile jar, ZipEntry entry)
+      throws IOException {
+    List<String> names = new ArrayList<>();
+    try (BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(jar.getInputStream(entry), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int comment = line.indexOf('#');
+        String name = (comment < 0 ? line : line.substring(0, comment)).trim();
+        if (!name.isEmpty()) {
+          names.add(name.replace('.', '/'));
+        }
+      }
+    }
+    return names;
+  }
+
+  // Whether a class, by binary name such as "com.example.Outer$Inner", matches a keep rule
+  boolean isKept(String className) {
+    for (String rule : keepRules) {
+      if (rule.endsWith(".**")) {
+        if (className.startsWith(rule.substring(0, rule.length() - 2))) {
+          return true;
+        }
+      } else if (rule.endsWith(".*")) {
+        String pkg = rule.substring(0, rule.length() - 1);
+        if (className.startsWith(pkg) && className.indexOf('.', pkg.length()) < 0) {
+          return true;
+        }
+      } else if (className.equals(rule) || className.startsWith(rule + "$")) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
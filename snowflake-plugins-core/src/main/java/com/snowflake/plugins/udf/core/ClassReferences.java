@@ -0,0 +1,184 @@
+package com.snowflake.plugins.udf.core;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The classes referenced by a class file, read from its constant pool. Class entries and every type
+ * named in a descriptor or signature are collected, which over-approximates the classes the code
+ * can reach without reflection
+ */
+class ClassReferences {
+  // Calls which load classes by name, so that the classes they reach are not in the constant pool
+  static final Set<String> CLASS_LOADING_CALLS =
+      Collections.unmodifiableSet(
+          new HashSet<>(
+              Arrays.asList(
+                  "java/lang/Class.forName",
+                  "java/lang/ClassLoader.loadClass",
+                  "java/lang/invoke/MethodHandles$Lookup.findClass",
+                  "java/lang/reflect/Proxy.newProxyInstance",
+                  "java/util/ServiceLoader.load",
+                  "java/util/ServiceLoader.loadInstalled")));
+
+  // ClassLoader.loadClass called on a subclass, e.g. URLClassLoader, is owned by the subclass
+  private static final String LOAD_CLASS = "loadClass";
+  private static final String LOAD_CLASS_RETURN = ")Ljava/lang/Class;";
+
+  private static final int MAGIC = 0xCAFEBABE;
+  private static final int UTF8 = 1;
+  private static final int INTEGER = 3;
+  private static final int FLOAT = 4;
+  private static final int LONG = 5;
+  private static final int DOUBLE = 6;
+  private static final int CLASS = 7;
+  private static final int STRING = 8;
+  private static final int FIELD_REF = 9;
+  private static final int METHOD_REF = 10;
+  private static final int INTERFACE_METHOD_REF = 11;
+  private static final int NAME_AND_TYPE = 12;
+  private static final int METHOD_HANDLE = 15;
+  private static final int METHOD_TYPE = 16;
+  private static final int DYNAMIC = 17;
+  private static final int INVOKE_DYNAMIC = 18;
+  private static final int MODULE = 19;
+  private static final int PACKAGE = 20;
+
+  // Internal names of the referenced classes, e.g. "com/example/Util"
+  private final Set<String> classNames;
+  // The first call found which loads classes by name, null if there is none
+  private final String classLoadingCall;
+
+  ClassReferences(Set<String> classNames, String classLoadingCall) {
+    this.classNames = classNames;
+    this.classLoadingCall = classLoadingCall;
+  }
+
+  Set<String> getClassNames() {
+    return classNames;
+  }
+
+  /** Returns a call such as "java/lang/Class.forName" if the class loads classes by name */
+  String getClassLoadingCall() {
+    return classLoadingCall;
+  }
+
+  /** Reads the constant pool of a class file. Only the pool is read, the stream is not closed */
+  static ClassReferences read(InputStream classFile) throws IOException {
+    DataInputStream in = new DataInputStream(classFile);
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not a class file");
+    }
+    in.readUnsignedShort();
+    in.readUnsignedShort();
+    int count = in.readUnsignedShort();
+    String[] utf8 = new String[count];
+    int[] tags = new int[count];
+    // First and second index of each entry, e.g. the class and the name and type of a method ref
+    int[] first = new int[count];
+    int[] second = new int[count];
+    for (int i = 1; i < count; i++) {
+      int tag = in.readUnsignedByte();
+      tags[i] = tag;
+      switch (tag) {
+        case UTF8:
+          utf8[i] = in.readUTF();
+          break;
+        case INTEGER:
+        case FLOAT:
+          in.readInt();
+          break;
+        case LONG:
+        case DOUBLE:
+          in.readLong();
+          // Eight byte constants take up two entries
+          i++;
+          break;
+        case CLASS:
+        case STRING:
+        case METHOD_TYPE:
+        case MODULE:
+        case PACKAGE:
+          first[i] = in.readUnsignedShort();
+          break;
+        case FIELD_REF:
+        case METHOD_REF:
+        case INTERFACE_METHOD_REF:
+        case NAME_AND_TYPE:
+        case DYNAMIC:
+        case INVOKE_DYNAMIC:
+          first[i] = in.readUnsignedShort();
+          second[i] = in.readUnsignedShort();
+          break;
+        case METHOD_HANDLE:
+          in.readUnsignedByte();
+          first[i] = in.readUnsignedShort();
+          break;
+        default:
+          throw new IOException("Unknown constant pool tag " + tag);
+      }
+    }
+    Set<String> classNames = new HashSet<>();
+    String classLoadingCall = null;
+    for (int i = 1; i < count; i++) {
+      if (tags[i] == CLASS) {
+        addClassName(utf8[first[i]], classNames);
+      } else if (tags[i] == UTF8) {
+        addDescriptorTypes(utf8[i], classNames);
+      } else if ((tags[i] == METHOD_REF || tags[i] == INTERFACE_METHOD_REF)
+          && classLoadingCall == null) {
+        String owner = utf8[first[first[i]]];
+        String name = utf8[first[second[i]]];
+        String descriptor = utf8[second[second[i]]];
+        String call = owner + "." + name;
+        if (CLASS_LOADING_CALLS.contains(call) || isLoadClass(name, descriptor)) {
+          classLoadingCall = call;
+        }
+      }
+    }
+    return new ClassReferences(classNames, classLoadingCall);
+  }
+
+  // A loadClass(String, ...) method returning a Class, whatever class loader it is called on
+  private static boolean isLoadClass(String name, String descriptor) {
+    return name.equals(LOAD_CLASS)
+        && descriptor.startsWith("(Ljava/lang/String;")
+        && descriptor.endsWith(LOAD_CLASS_RETURN);
+  }
+
+  // Class entries hold an internal name, or a descriptor for array classes
+  private static void addClassName(String name, Set<String> classNames) {
+    if (name.startsWith("[")) {
+      addDescriptorTypes(name, classNames);
+    } else {
+      classNames.add(name);
+    }
+  }
+
+  // Adds every "Lpackage/Name;" or "Lpackage/Name<" type of a descriptor or signature. Other UTF8
+  // entries such as names and string literals rarely match, and an extra name only keeps a JAR
+  private static void addDescriptorTypes(String descriptor, Set<String> classNames) {
+    int start = descriptor.indexOf('L');
+    while (start >= 0) {
+      int end = start + 1;
+      while (end < descriptor.length() && isNameChar(descriptor.charAt(end))) {
+        end++;
+      }
+      if (end > start + 1
+          && end < descriptor.length()
+          && (descriptor.charAt(end) == ';' || descriptor.charAt(end) == '<')) {
+        classNames.add(descriptor.substring(start + 1, end));
+      }
+      start = descriptor.indexOf('L', start + 1);
+    }
+  }
+
+  private static boolean isNameChar(char c) {
+    return c != ';' && c != '<' && c != '>' && c != '(' && c != ')' && c != '[' && c != '.';
+  }
+}
@@ -0,0 +1,130 @@
+package com.snowflake.plugins.udf.core;
+
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs file uploads on a bounded pool of worker threads. The largest files are scheduled first to
+ * shorten the total wall time, and the total size of the files being uploaded at once is capped so
+ * that the JDBC driver buffers do not exhaust the memory of the build agent. Failures are collected
+ * and reported together once every upload has finished.
+ */
+public class ConcurrentUploader implements WorkScheduler {
+  // Semaphore permits are counted in KiB so that gigabyte caps fit in an int
+  private static final long PERMIT_BYTES = 1024;
+
+  private final int threads;
+  private final int maxInFlightPermits;
+
+  /**
+   * @param threads maximum number of files uploaded at the same time
+   * @param maxInFlightBytes maximum total size of the files uploaded at the same time. A single
+   *     file larger than the cap is uploaded on its own
+   */
+  public ConcurrentUploader(int threads, long maxInFlightBytes) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Upload threads must be at least 1");
+    }
+    if (maxInFlightBytes < 1) {
+      throw new IllegalArgumentException("Maximum in-flight upload bytes must be at least 1");
+    }
+    this.threads = threads;
+    this.maxInFlightPermits =
+        (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxInFlightBytes / PERMIT_BYTES));
+  }
+
+  /** A single file upload */
+  public interface Upload extends Work {}
+
+  /**
+   * Runs all uploads and waits for them to finish
+   *
+   * @throws SQLException if any upload failed. The first failure is the cause and every other
+   *     failure is attached as a suppressed exception
+   */
+  public void uploadAll(List<? extends Upload> uploads) throws SQLException {
+    runAll(uploads);
+  }
+
+  @Override
+  public void runAll(List<? extends Work> uploads) throws SQLException {
+    List<Work> ordered = new ArrayList<>(uploads);
+    ordered.sort(Comparator.comparingLong(Work::getBytes).reversed());
+    Semaphore slots = new Semaphore(threads);
+    Semaphore inFlight = new Semaphore(maxInFlightPermits);
+    Queue<String> failedNames = new ConcurrentLinkedQueue<>();
+    Queue<SQLException> failures = new ConcurrentLinkedQueue<>();
+
+    ExecutorService executor = newExecutor(threads);
+    try {
+      for (Work upload : ordered) {
+        int permits = permitsFor(upload.getBytes());
+        slots.acquire();
+        inFlight.acquire(permits);
+        executor.execute(
+            () -> {
+              try {
+                upload.run();
+              } catch (SQLException e) {
+                failedNames.add(upload.getName());
+                failures.add(e);
+              } catch (RuntimeException e) {
+                failedNames.add(upload.getName());
+                failures.add(new SQLException(e.getMessage(), e));
+              } finally {
+                inFlight.release(permits);
+                slots.release();
+              }
+            });
+      }
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while uploading files", e);
+    }
+
+    if (!failures.isEmpty()) {
+      SQLException aggregate =
+          new SQLException(
+              String.format(
+                  "%d of %d uploads failed: %s",
+                  failures.size(), ordered.size(), String.join(", ", failedNames)),
+              failures.peek());
+      failures.stream().skip(1).forEach(aggregate::addSuppressed);
+      throw aggregate;
+    }
+  }
+
+  private int permitsFor(long bytes) {
+    long permits = (bytes + PERMIT_BYTES - 1) / PERMIT_BYTES;
+    return (int) Math.max(1, Math.min(maxInFlightPermits, permits));
+  }
+
+  // Use virtual threads when running on JDK 21+. The core module is compiled for Java 11, so the
+  // factory method is looked up reflectively. The slots semaphore bounds the concurrency either way
+  static ExecutorService newExecutor(int threads) {
+    try {
+      Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) virtual.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newFixedThreadPool(
+          threads,
+          runnable -> {
+            Thread thread = new Thread(runnable, "snowflake-upload");
+            thread.setDaemon(true);
+            return thread;
+          });
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package com.snowflake.plugins.udf.core;
+
+import java.sql.SQLException;
+
+/** The outcome of creating a single function or procedure */
+public class CreateResult {
+  private final UserDefined udx;
+  // Null if the function or procedure was created
+  private final SQLException error;
+  // True if the definition in Snowflake already matched and no statement was run
+  private final boolean unchanged;
+
+  public CreateResult(UserDefined udx, SQLException error) {
+    this(udx, error, false);
+  }
+
+  private CreateResult(UserDefined udx, SQLException error, boolean unchanged) {
+    this.udx = udx;
+    this.error = error;
+    this.unchanged = unchanged;
+  }
+
+  /** Result of a function or procedure which was left as it is in Snowflake */
+  public static CreateResult unchanged(UserDefined udx) {
+    return new CreateResult(udx, null, true);
+  }
+
+  public UserDefined getUdx() {
+    return udx;
+  }
+
+  public SQLException getError() {
+    return error;
+  }
+
+  public boolean isSucceeded() {
+    return error == null;
+  }
+
+  public boolean isUnchanged() {
+    return unchanged;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s %s: %s",
+        udx.getType(),
+        udx.getName(),
+        unchanged ? "unchanged" : error == null ? "created" : "failed, " + error.getMessage());
+  }
+}
@@ -0,0 +1,30 @@
+package com.snowflake.plugins.udf.core;
+
+/** How the CREATE FUNCTION/PROCEDURE statements of a deploy are sent to Snowflake */
+public enum DdlMode {
+  // One blocking round trip per statement, stopping at the first failure
+  SYNC,
+  // Every statement is submitted asynchronously and their status is polled together
+  ASYNC,
+  // Statements are grouped into multi-statement requests of a configurable size
+  BATCH;
+
+  public static DdlMode fromString(String mode) {
+    if (mode == null) {
+      return SYNC;
+    }
+    switch (mode.trim().toLowerCase()) {
+      case "sync":
+        return SYNC;
+      case "async":
+        return ASYNC;
+      case "batch":
+        return BATCH;
+      default:
+        throw new IllegalArgumentException(
+            String.format(
+                "The DDL mode '%s' is not recognized. The mode may be \"sync\", \"async\" or \"batch\"",
+                mode));
+    }
+  }
+}
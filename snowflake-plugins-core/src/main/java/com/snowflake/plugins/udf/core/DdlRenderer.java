@@ -0,0 +1,170 @@
+package com.snowflake.plugins.udf.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Renders the CREATE OR REPLACE statements of a deploy. Every statement shares the same IMPORTS
+ * clause, so the import paths and the clause are computed once and reused until invalidated, e.g.
+ * when an upload skips a dependency. With import pruning, each handler class gets its own IMPORTS
+ * clause holding only the JARs it reaches. Statements are rendered into a single reused builder.
+ * Safe to use from several threads
+ */
+public class DdlRenderer {
+  // Computes the stage paths of the IMPORTS clause, e.g. "@mystage/libs/project.jar"
+  private final Supplier<List<String>> importPathsSupplier;
+  // Returns the packages of the PACKAGES clause for a function or procedure type
+  private final Function<String, List<String>> packagesSupplier;
+  // Memoized import paths and IMPORTS clause, null until computed or after invalidation
+  private List<String> importPaths;
+  private String importClause;
+  // Creates the pruner of the import paths, null when every function imports every JAR
+  private Function<List<String>, ImportPruner> prunerFactory;
+  // Memoized pruner and IMPORTS clause of each handler class, cleared with the imports
+  private ImportPruner pruner;
+  private final Map<String, String> prunedClauses = new HashMap<>();
+  // Memoized PACKAGES clause of each function or procedure type
+  private final Map<String, String> packageClauses = new HashMap<>();
+  private final StringBuilder builder = new StringBuilder();
+
+  public DdlRenderer(
+      Supplier<List<String>> importPathsSupplier, Function<String, List<String>> packagesSupplier) {
+    this.importPathsSupplier = importPathsSupplier;
+    this.packagesSupplier = packagesSupplier;
+  }
+
+  /**
+   * Prunes the imports of each function or procedure with a pruner created from the full import
+   * paths, or imports every JAR when the factory is null
+   */
+  public synchronized void setImportPruning(Function<List<String>, ImportPruner> prunerFactory) {
+    this.prunerFactory = prunerFactory;
+    invalidateImports();
+  }
+
+  /** Discards the memoized imports, so that they are computed again for the next statement */
+  public synchronized void invalidateImports() {
+    importPaths = null;
+    importClause = null;
+    pruner = null;
+    prunedClauses.clear();
+  }
+
+  /** Returns the stage paths of the IMPORTS clause */
+  public synchronized List<String> getImportPaths() {
+    if (importPaths == null) {
+      importPaths = Collections.unmodifiableList(new ArrayList<>(importPathsSupplier.get()));
+    }
+    return importPaths;
+  }
+
+  /** Returns the quoted, comma separated import paths, e.g. "'@stage/a.jar', '@stage/b.jar'" */
+  public synchronized String getImportClause() {
+    if (importClause == null) {
+      importClause = quote(getImportPaths());
+    }
+    return importClause;
+  }
+
+  /**
+   * Returns the imports of a function or procedure after pruning, or null when import pruning is
+   * off
+   */
+  public synchronized PrunedImports getPrunedImports(UserDefined udx) {
+    if (prunerFactory == null) {
+      return null;
+    }
+    if (pruner == null) {
+      pruner = prunerFactory.apply(getImportPaths());
+    }
+    return pruner.prune(udx.getHandler());
+  }
+
+  /** Returns the stage paths of the IMPORTS clause of a function or procedure */
+  public synchronized List<String> getImportPaths(UserDefined udx) {
+    PrunedImports pruned = getPrunedImports(udx);
+    return pruned == null ? getImportPaths() : pruned.getImportPaths();
+  }
+
+  /** Returns the quoted, comma separated import paths of a function or procedure */
+  public synchronized String getImportClause(UserDefined udx) {
+    if (prunerFactory == null) {
+      return getImportClause();
+    }
+    String handlerClass = ImportPruner.handlerClass(udx.getHandler());
+    String clause = prunedClauses.get(handlerClass);
+    if (clause == null) {
+      clause = quote(getPrunedImports(udx).getImportPaths());
+      prunedClauses.put(handlerClass, clause);
+    }
+    return clause;
+  }
+
+  private static String quote(List<String> paths) {
+    StringBuilder clause = new StringBuilder();
+    for (String path : paths) {
+      if (clause.length() > 0) {
+        clause.append(", ");
+      }
+      clause.append('\'').append(path).append('\'');
+    }
+    return clause.toString();
+  }
+
+  /** Returns the PACKAGES clause of a function or procedure type, or "" if it has no packages */
+  public synchronized String getPackageClause(String udxType) {
+    return packageClauses.computeIfAbsent(udxType, this::renderPackageClause);
+  }
+
+  private String renderPackageClause(String udxType) {
+    List<String> packages = packagesSupplier.apply(udxType);
+    if (packages.isEmpty()) {
+      return "";
+    }
+    StringBuilder clause = new StringBuilder("PACKAGES = (");
+    for (int i = 0; i < packages.size(); i++) {
+      if (i > 0) {
+        clause.append(", ");
+      }
+      clause.append('\'').append(packages.get(i)).append('\'');
+    }
+    return clause.append(")\n").toString();
+  }
+
+  /** Returns the CREATE OR REPLACE statement for the function or procedure */
+  public synchronized String render(UserDefined udx) {
+    String imports = getImportClause(udx);
+    builder.setLength(0);
+    builder
+        .append("CREATE OR REPLACE ")
+        .append(udx.getType())
+        .append(' ')
+        .append(udx.getName())
+        .append(" (")
+        .append(udx.getInputs())
+        .append(")\nRETURNS ")
+        .append(udx.getReturns())
+        .append("\nLANGUAGE java\n")
+        .append(getPackageClause(udx.getType()))
+        .append("HANDLER = '")
+        .append(udx.getHandler())
+        .append("'\nIMPORTS = (")
+        .append(imports)
+        .append(");");
+    return builder.toString();
+  }
+
+  /** Returns the statements of the functions and procedures, in the same order */
+  public synchronized List<String> renderAll(List<? extends UserDefined> udxs) {
+    List<String> statements = new ArrayList<>(udxs.size());
+    for (UserDefined udx : udxs) {
+      statements.add(render(udx));
+    }
+    return statements;
+  }
+}
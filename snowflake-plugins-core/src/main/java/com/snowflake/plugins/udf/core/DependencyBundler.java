@@ -0,0 +1,226 @@
+package com.snowflake.plugins.udf.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+/**
+ * Merges dependency JARs into a few bundle JARs of bounded size, so that functions import a handful
+ * of files instead of one per dependency. Dependencies are bundled in file name order and the first
+ * JAR wins for duplicate entries. The lines of META-INF/services files are merged, signature files
+ * are dropped since they no longer match, and every entry gets the same time so that the same
+ * dependencies always make the same bytes. Bundles are named and cached by the content hash of
+ * their dependencies, and reused as long as the dependencies don't change
+ */
+public class DependencyBundler {
+  static final String BUNDLE_PREFIX = "bundle-";
+  private static final String SERVICES_PREFIX = "META-INF/services/";
+  // Changed whenever the merge changes, so that bundles cached by older versions are not reused
+  private static final String FORMAT_VERSION = "1";
+  private static final LocalDateTime ENTRY_TIME = LocalDateTime.of(1980, 2, 1, 0, 0);
+
+  // Directory caching the bundles by content hash
+  private final File bundleDir;
+  // Bundles are closed once adding the next dependency would make them larger than this. A single
+  // larger dependency gets a bundle of its own
+  private final long maxBundleBytes;
+
+  public DependencyBundler(File bundleDir, long maxBundleBytes) {
+    this.bundleDir = bundleDir;
+    this.maxBundleBytes = maxBundleBytes;
+  }
+
+  /** A bundle JAR and the dependency files merged into it */
+  public static class Bundle {
+    private final File file;
+    private final List<String> dependencyFiles;
+    // True if the bundle was found in the cache instead of being built
+    private final boolean cached;
+
+    Bundle(File file, List<String> dependencyFiles, boolean cached) {
+      this.file = file;
+      this.dependencyFiles = dependencyFiles;
+      this.cached = cached;
+    }
+
+    public File getFile() {
+      return file;
+    }
+
+    /** The file name of the bundle, e.g. "bundle-<sha256>.jar" */
+    public String getName() {
+      return file.getName();
+    }
+
+    public List<String> getDependencyFiles() {
+      return dependencyFiles;
+    }
+
+    public boolean isCached() {
+      return cached;
+    }
+  }
+
+  /**
+   * Bundles the dependencies, building the bundles missing from the cache
+   *
+   * @param dependencies the local JAR of each dependency file name
+   * @return the bundles, in the order of the dependency file names they hold
+   */
+  public List<Bundle> bundle(Map<String, File> dependencies) throws IOException {
+    Files.createDirectories(bundleDir.toPath());
+    List<Bundle> bundles = new ArrayList<>();
+    List<String> group = new ArrayList<>();
+    long groupBytes = 0;
+    for (String dependencyFile : new TreeSet<>(dependencies.keySet())) {
+      long bytes = dependencies.get(dependencyFile).length();
+      if (!group.isEmpty() && groupBytes + bytes > maxBundleBytes) {
+        bundles.add(bundleGroup(group, dependencies));
+        group = new ArrayList<>();
+        groupBytes = 0;
+      }
+      group.add(dependencyFile);
+      groupBytes += bytes;
+    }
+    if (!group.isEmpty()) {
+      bundles.add(bundleGroup(group, dependencies));
+    }
+    return bundles;
+  }
+
+  private Bundle bundleGroup(List<String> group, Map<String, File> dependencies)
+      throws IOException {
+    StringBuilder key = new StringBuilder(FORMAT_VERSION);
+    for (String dependencyFile : group) {
+      key.append('\n')
+          .append(dependencyFile)
+          .append(' ')
+          .append(FileDigest.sha256Hex(dependencies.get(dependencyFile)));
+    }
+    File file = new File(bundleDir, BUNDLE_PREFIX + FileDigest.sha256Hex(key.toString()) + ".jar");
+    List<String> dependencyFiles = Collections.unmodifiableList(group);
+    if (file.isFile()) {
+      return new Bundle(file, dependencyFiles, true);
+    }
+    // Written next to the bundle and moved into place, so that a bundle in the cache is complete
+    File partial = File.createTempFile(BUNDLE_PREFIX, ".tmp", bundleDir);
+    try {
+      merge(group, dependencies, partial);
+      Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(partial.toPath());
+    }
+    return new Bundle(file, dependencyFiles, false);
+  }
+
+  private static void merge(List<String> group, Map<String, File> dependencies, File output)
+      throws IOException {
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    for (String dependencyFile : group) {
+      try (JarFile jar = new JarFile(dependencies.get(dependencyFile), false)) {
+        // Versioned entries are only used when the manifest says so
+        if (jar.isMultiRelease()) {
+          manifest.getMainAttributes().put(new Attributes.Name("Multi-Release"), "true");
+        }
+      }
+    }
+    Set<String> written = new HashSet<>();
+    // Merged lines of each service provider file, written after every other entry
+    Map<String, Set<String>> services = new TreeMap<>();
+    byte[] buffer = new byte[8192];
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(output))) {
+      putEntry(out, JarFile.MANIFEST_NAME);
+      manifest.write(out);
+      out.closeEntry();
+      for (String dependencyFile : group) {
+        try (JarFile jar = new JarFile(dependencies.get(dependencyFile), false)) {
+          Enumeration<JarEntry> entries = jar.entries();
+          while (entries.hasMoreElements()) {
+            JarEntry entry = entries.nextElement();
+            String name = entry.getName();
+            if (entry.isDirectory() || isDropped(name)) {
+              continue;
+            }
+            if (name.startsWith(SERVICES_PREFIX)) {
+              readLines(jar, entry, services.computeIfAbsent(name, n -> new LinkedHashSet<>()));
+              continue;
+            }
+            if (!written.add(name)) {
+              // Already written by a JAR earlier in the bundle
+              continue;
+            }
+            putEntry(out, name);
+            try (InputStream in = jar.getInputStream(entry)) {
+              int n;
+              while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+              }
+            }
+            out.closeEntry();
+          }
+        }
+      }
+      for (Map.Entry<String, Set<String>> service : services.entrySet()) {
+        putEntry(out, service.getKey());
+        for (String line : service.getValue()) {
+          out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        out.closeEntry();
+      }
+    }
+  }
+
+  private static void putEntry(JarOutputStream out, String name) throws IOException {
+    ZipEntry entry = new ZipEntry(name);
+    entry.setTimeLocal(ENTRY_TIME);
+    out.putNextEntry(entry);
+  }
+
+  // Manifests are replaced by the bundle's own, signatures no longer match the merged content, and
+  // module descriptors would describe only one of the merged JARs
+  static boolean isDropped(String name) {
+    if (name.equals(JarFile.MANIFEST_NAME) || name.endsWith("module-info.class")) {
+      return true;
+    }
+    if (!name.startsWith("META-INF/") || name.indexOf('/', "META-INF/".length()) >= 0) {
+      return false;
+    }
+    String upper = name.toUpperCase(Locale.ROOT);
+    return upper.endsWith(".SF")
+        || upper.endsWith(".DSA")
+        || upper.endsWith(".RSA")
+        || upper.endsWith(".EC")
+        || upper.startsWith("META-INF/SIG-");
+  }
+
+  // Adds the provider lines of a service file, without comments and blank lines
+  private static void readLines(JarFile jar, JarEntry entry, Set<String> lines) throws IOException {
+    try (BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(jar.getInputStream(entry), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int comment = line.indexOf('#');
+        String provider = (comment < 0 ? line : line.substring(0, comment)).trim();
+        if (!provider.isEmpty()) {
+          lines.add(provider);
+        }
+      }
+    }
+  }
+}
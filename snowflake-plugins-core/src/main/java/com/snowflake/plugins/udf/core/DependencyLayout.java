@@ -0,0 +1,33 @@
+package com.snowflake.plugins.udf.core;
+
+/** How dependency files are arranged on the stage */
+public enum DependencyLayout {
+  // Imitates the .m2 cache: groupID[0]/groupID[1]/.../artifactID/version/filename
+  // Each dependency is uploaded with its own PUT
+  MAVEN,
+  // Content-addressed: every dependency is stored as dependency/<sha256>.jar
+  // The whole set is uploaded with a single wildcard PUT from a local mirror directory
+  HASHED,
+  // Merged: the dependencies are merged into a few size-bounded dependency/bundle-<sha256>.jar
+  // files, uploaded together like the hashed layout and imported instead of every dependency
+  BUNDLED;
+
+  public static DependencyLayout fromString(String layout) {
+    if (layout == null) {
+      return MAVEN;
+    }
+    switch (layout.trim().toLowerCase()) {
+      case "maven":
+        return MAVEN;
+      case "hashed":
+        return HASHED;
+      case "bundled":
+        return BUNDLED;
+      default:
+        throw new IllegalArgumentException(
+            String.format(
+                "The dependency layout '%s' is not recognized. The layout may be \"maven\", \"hashed\" or \"bundled\"",
+                layout));
+    }
+  }
+}
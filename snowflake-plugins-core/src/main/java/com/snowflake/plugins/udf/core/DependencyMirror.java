@@ -0,0 +1,59 @@
+package com.snowflake.plugins.udf.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Local directory holding the dependency files to upload under their content-addressed names, so
+ * that they can be uploaded to a single stage directory with one wildcard PUT. Files are linked
+ * rather than copied whenever the file system allows it
+ */
+public class DependencyMirror {
+  private final Path dir;
+
+  public DependencyMirror(File dir) {
+    this.dir = dir.toPath();
+  }
+
+  /** Creates the mirror directory if needed and removes every jar left from a previous deploy */
+  public void reset() throws IOException {
+    Files.createDirectories(dir);
+    try (DirectoryStream<Path> jars = Files.newDirectoryStream(dir, "*.jar")) {
+      for (Path jar : jars) {
+        Files.delete(jar);
+      }
+    }
+  }
+
+  /**
+   * Places the source file in the mirror under the given file name. Uses a hard link, or a symbolic
+   * link when the source is on another file system, and copies the file only when neither is
+   * supported
+   */
+  public void add(File source, String fileName) throws IOException {
+    Path target = dir.resolve(fileName);
+    Files.deleteIfExists(target);
+    try {
+      Files.createLink(target, source.toPath());
+      return;
+    } catch (IOException | UnsupportedOperationException | SecurityException e) {
+      // e.g. the source is on another file system
+    }
+    try {
+      Files.createSymbolicLink(target, source.toPath().toAbsolutePath());
+      return;
+    } catch (IOException | UnsupportedOperationException | SecurityException e) {
+      // e.g. symbolic links need extra privileges on Windows
+    }
+    Files.copy(source.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /** The local file pattern matching every jar in the mirror, for use in a PUT command */
+  public String wildcardPath() {
+    return dir.resolve("*.jar").toString();
+  }
+}
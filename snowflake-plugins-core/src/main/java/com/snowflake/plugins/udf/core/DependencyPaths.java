@@ -0,0 +1,35 @@
+package com.snowflake.plugins.udf.core;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The resolved dependencies of a project, keyed by file name. Each dependency has the stage path it
+ * is uploaded to, which imitates the .m2 cache: groupID[0]/groupID[1]/.../artifactID/version, and
+ * the path of its file on the local disk, e.g. in the local repository
+ */
+public class DependencyPaths {
+  // A map of each dependency file name to its stage path
+  private final Map<String, String> stagePaths = new HashMap<>();
+  // A map of each dependency file name to its local file path
+  private final Map<String, String> localPaths = new HashMap<>();
+
+  /** Adds a resolved dependency. The file name of the dependency is the name of its local file */
+  public void add(String groupId, String artifactId, String version, File file) {
+    stagePaths.put(file.getName(), stagePath(groupId, artifactId, version));
+    localPaths.put(file.getName(), file.getPath());
+  }
+
+  public Map<String, String> getStagePaths() {
+    return stagePaths;
+  }
+
+  public Map<String, String> getLocalPaths() {
+    return localPaths;
+  }
+
+  public static String stagePath(String groupId, String artifactId, String version) {
+    return String.format("%s/%s/%s", groupId.replace('.', '/'), artifactId, version);
+  }
+}
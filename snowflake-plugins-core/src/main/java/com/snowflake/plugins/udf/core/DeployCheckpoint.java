@@ -0,0 +1,110 @@
+package com.snowflake.plugins.udf.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Progress of an unfinished deploy to a target, kept in the build directory so that a rerun after a
+ * failure resumes from the first incomplete item. Every file uploaded is recorded with the digest
+ * of its content and every function or procedure created with the digest of its DDL, one line per
+ * item appended as soon as it is done, so that progress survives a killed build. An item is only
+ * skipped when its digest is unchanged. Overwriting an imported file is recorded too, since the
+ * rerun skips that upload but must still recreate the functions importing the file. The checkpoint
+ * is deleted once the deploy succeeds
+ */
+public class DeployCheckpoint {
+  private static final String UPLOAD = "upload";
+  private static final String UDX = "udx";
+  private static final String IMPORTS = "imports";
+  private static final String OVERWRITTEN = "overwritten";
+
+  private final File file;
+  // The digest of each recorded item, by kind and key
+  private final Map<String, String> digests = new HashMap<>();
+
+  /**
+   * Loads the checkpoint left by an unfinished deploy to the target, if any
+   *
+   * @param directory the directory holding one checkpoint file per deploy target
+   * @param target identifies the account, database, schema and stage deployed to
+   */
+  public DeployCheckpoint(File directory, String target) throws IOException {
+    this.file = new File(directory, FileDigest.sha256Hex(target) + ".checkpoint");
+    if (file.isFile()) {
+      List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+      for (String line : lines) {
+        String[] fields = line.split("\t");
+        // A line cut short by a killed build is ignored, or its digest doesn't match
+        if (fields.length == 3) {
+          digests.put(fields[0] + "\t" + fields[1], fields[2]);
+        }
+      }
+    }
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /** Returns the number of items recorded */
+  public synchronized int size() {
+    return digests.size();
+  }
+
+  /** Returns true if the file was uploaded to the path on the stage with the same content */
+  public synchronized boolean isUploaded(String pathOnStage, String digest) {
+    return digest.equals(digests.get(UPLOAD + "\t" + pathOnStage));
+  }
+
+  public void recordUpload(String pathOnStage, String digest) throws IOException {
+    record(UPLOAD, pathOnStage, digest);
+  }
+
+  /** Returns true if the function or procedure was created with the same DDL */
+  public synchronized boolean isCreated(UserDefined udx, String ddl) {
+    return FileDigest.sha256Hex(ddl).equals(digests.get(UDX + "\t" + udxKey(udx)));
+  }
+
+  public void recordCreated(UserDefined udx, String ddl) throws IOException {
+    record(UDX, udxKey(udx), FileDigest.sha256Hex(ddl));
+  }
+
+  /** Returns true if the unfinished deploy overwrote the content of an imported file */
+  public synchronized boolean isImportsOverwritten() {
+    return digests.containsKey(IMPORTS + "\t" + OVERWRITTEN);
+  }
+
+  public void recordImportsOverwritten() throws IOException {
+    if (!isImportsOverwritten()) {
+      record(IMPORTS, OVERWRITTEN, "true");
+    }
+  }
+
+  /** Deletes the checkpoint, once the deploy succeeded or to start over */
+  public synchronized void clear() throws IOException {
+    digests.clear();
+    Files.deleteIfExists(file.toPath());
+  }
+
+  private synchronized void record(String kind, String key, String digest) throws IOException {
+    digests.put(kind + "\t" + key, digest);
+    Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+    Files.write(
+        file.toPath(),
+        (kind + "\t" + key + "\t" + digest + "\n").getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.CREATE,
+        StandardOpenOption.APPEND);
+  }
+
+  // Functions and procedures are overloaded by their argument list
+  private static String udxKey(UserDefined udx) {
+    return String.format("%s %s(%s)", udx.getType(), udx.getName(), udx.getInputs())
+        .replace('\t', ' ');
+  }
+}
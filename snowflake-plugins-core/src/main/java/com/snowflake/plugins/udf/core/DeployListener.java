@@ -0,0 +1,24 @@
+package com.snowflake.plugins.udf.core;
+
+/**
+ * Receives the structured events of a deploy: the start and end of each phase, every statement run
+ * with its query ID and elapsed time, every file upload and the outcome of every function and
+ * procedure. Events of one phase may arrive from several threads, e.g. concurrent dependency
+ * uploads, so implementations must be thread safe. Every method does nothing by default
+ */
+public interface DeployListener {
+  /** A phase such as "connect" or "create_functions" started */
+  default void phaseStarted(String phase) {}
+
+  /** A phase finished, successfully or not */
+  default void phaseFinished(String phase, long elapsedMillis, boolean succeeded) {}
+
+  /** A statement or stream upload finished */
+  default void queryFinished(QueryRecord record) {}
+
+  /** The upload decision for the artifact, a dependency or a bundle was made and carried out */
+  default void uploadFinished(UploadResult result) {}
+
+  /** A function or procedure was created, left unchanged or failed */
+  default void udxFinished(CreateResult result) {}
+}
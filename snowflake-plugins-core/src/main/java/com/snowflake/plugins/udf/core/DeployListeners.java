@@ -0,0 +1,45 @@
+package com.snowflake.plugins.udf.core;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// Sends every event to each of the listeners of a deploy, in the order they were added
+class DeployListeners implements DeployListener {
+  private final List<DeployListener> listeners = new CopyOnWriteArrayList<>();
+
+  void add(DeployListener listener) {
+    listeners.add(listener);
+  }
+
+  private void fire(Consumer<DeployListener> event) {
+    for (DeployListener listener : listeners) {
+      event.accept(listener);
+    }
+  }
+
+  @Override
+  public void phaseStarted(String phase) {
+    fire(l -> l.phaseStarted(phase));
+  }
+
+  @Override
+  public void phaseFinished(String phase, long elapsedMillis, boolean succeeded) {
+    fire(l -> l.phaseFinished(phase, elapsedMillis, succeeded));
+  }
+
+  @Override
+  public void queryFinished(QueryRecord record) {
+    fire(l -> l.queryFinished(record));
+  }
+
+  @Override
+  public void uploadFinished(UploadResult result) {
+    fire(l -> l.uploadFinished(result));
+  }
+
+  @Override
+  public void udxFinished(CreateResult result) {
+    fire(l -> l.udxFinished(result));
+  }
+}
@@ -0,0 +1,162 @@
+package com.snowflake.plugins.udf.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the events of a deploy into a machine readable JSON report, listing the elapsed time of
+ * every phase, the query ID of every statement, every upload decision and the outcome of every
+ * function and procedure
+ */
+public class DeployReport implements DeployListener {
+  private final Instant startedAt = Instant.now();
+  // Phase records in the order the phases finished
+  private final List<String> phases = new ArrayList<>();
+  private final List<QueryRecord> queries = new ArrayList<>();
+  private final List<UploadResult> uploads = new ArrayList<>();
+  private final List<CreateResult> functions = new ArrayList<>();
+  private boolean succeeded = true;
+
+  @Override
+  public synchronized void phaseFinished(String phase, long elapsedMillis, boolean succeeded) {
+    phases.add(
+        String.format(
+            "{\"name\": %s, \"elapsedMillis\": %d, \"succeeded\": %b}",
+            string(phase), elapsedMillis, succeeded));
+    this.succeeded &= succeeded;
+  }
+
+  @Override
+  public synchronized void queryFinished(QueryRecord record) {
+    queries.add(record);
+  }
+
+  @Override
+  public synchronized void uploadFinished(UploadResult result) {
+    uploads.add(result);
+  }
+
+  @Override
+  public synchronized void udxFinished(CreateResult result) {
+    functions.add(result);
+  }
+
+  /** Returns the statements run so far, in the order they finished */
+  public synchronized List<QueryRecord> getQueries() {
+    return new ArrayList<>(queries);
+  }
+
+  /** Returns the uploads so far, in the order they finished */
+  public synchronized List<UploadResult> getUploads() {
+    return new ArrayList<>(uploads);
+  }
+
+  /** Returns the outcome of the functions and procedures so far */
+  public synchronized List<CreateResult> getFunctions() {
+    return new ArrayList<>(functions);
+  }
+
+  /** Returns the report as a JSON document */
+  public synchronized String toJson() {
+    List<String> queryItems = new ArrayList<>();
+    for (QueryRecord record : queries) {
+      queryItems.add(
+          String.format(
+              "{\"phase\": %s, \"queryId\": %s, \"statement\": %s, \"elapsedMillis\": %d,"
+                  + " \"succeeded\": %b}",
+              string(record.getPhase()),
+              string(record.getQueryId()),
+              string(record.getSummary()),
+              record.getElapsedMillis(),
+              record.isSucceeded()));
+    }
+    List<String> uploadItems = new ArrayList<>();
+    for (UploadResult result : uploads) {
+      uploadItems.add(
+          String.format(
+              "{\"file\": %s, \"stagePath\": %s, \"decision\": %s, \"bytes\": %d,"
+                  + " \"elapsedMillis\": %d}",
+              string(result.getDependencyFile()),
+              string(result.getStagePath()),
+              string(result.getDecision().name()),
+              result.getBytes(),
+              result.getElapsedMillis()));
+    }
+    List<String> functionItems = new ArrayList<>();
+    for (CreateResult result : functions) {
+      functionItems.add(
+          String.format(
+              "{\"type\": %s, \"name\": %s, \"outcome\": %s, \"error\": %s}",
+              string(result.getUdx().getType()),
+              string(result.getUdx().getName()),
+              string(outcome(result)),
+              string(result.isSucceeded() ? null : result.getError().getMessage())));
+    }
+    return String.format(
+        "{\n  \"startedAt\": %s,\n  \"succeeded\": %b,\n  \"phases\": %s,\n  \"queries\": %s,\n"
+            + "  \"uploads\": %s,\n  \"functions\": %s\n}\n",
+        string(startedAt.toString()),
+        succeeded,
+        array(phases),
+        array(queryItems),
+        array(uploadItems),
+        array(functionItems));
+  }
+
+  /** Writes the report as JSON to the file, creating its directory if needed */
+  public void write(File file) throws IOException {
+    Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+    Files.write(file.toPath(), toJson().getBytes(StandardCharsets.UTF_8));
+  }
+
+  // One of "created", "unchanged" or "failed"
+  static String outcome(CreateResult result) {
+    return result.isUnchanged() ? "unchanged" : result.isSucceeded() ? "created" : "failed";
+  }
+
+  private static String array(List<String> items) {
+    if (items.isEmpty()) {
+      return "[]";
+    }
+    return "[\n    " + String.join(",\n    ", items) + "\n  ]";
+  }
+
+  // A JSON string literal, or null
+  static String string(String s) {
+    if (s == null) {
+      return "null";
+    }
+    StringBuilder json = new StringBuilder("\"");
+    for (char c : s.toCharArray()) {
+      switch (c) {
+        case '"':
+          json.append("\\\"");
+          break;
+        case '\\':
+          json.append("\\\\");
+          break;
+        case '\n':
+          json.append("\\n");
+          break;
+        case '\r':
+          json.append("\\r");
+          break;
+        case '\t':
+          json.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            json.append(String.format("\\u%04x", (int) c));
+          } else {
+            json.append(c);
+          }
+      }
+    }
+    return json.append('"').toString();
+  }
+}
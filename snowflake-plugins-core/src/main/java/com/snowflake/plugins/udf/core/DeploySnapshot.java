@@ -0,0 +1,59 @@
+package com.snowflake.plugins.udf.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Record of the last successful deploy to a target, kept in the build directory. The target is the
+ * account, database, schema and stage, and the fingerprint covers everything a deploy sends: the
+ * artifact and dependency files, their stage paths and the function and procedure definitions. When
+ * the fingerprint of a new deploy matches the snapshot, the deploy can be skipped without
+ * connecting to Snowflake
+ */
+public class DeploySnapshot {
+  private final File file;
+  private final String fingerprint;
+
+  /**
+   * @param directory the directory holding one snapshot file per deploy target
+   * @param target identifies the account, database, schema and stage deployed to
+   * @param fingerprint digest of the contents of the deploy
+   */
+  public DeploySnapshot(File directory, String target, String fingerprint) {
+    this.file = new File(directory, FileDigest.sha256Hex(target) + ".snapshot");
+    this.fingerprint = fingerprint;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public String getFingerprint() {
+    return fingerprint;
+  }
+
+  /** Returns true if the last successful deploy to the target had the same fingerprint */
+  public boolean isUpToDate() {
+    if (!file.isFile()) {
+      return false;
+    }
+    try {
+      return fingerprint.equals(
+          new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim());
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /** Records the fingerprint once the deploy succeeded */
+  public void save() throws IOException {
+    Files.createDirectories(file.getParentFile().toPath());
+    // Written to a temporary file first so that an interrupted build never leaves a partial file
+    File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+    Files.write(temp.toPath(), fingerprint.getBytes(StandardCharsets.UTF_8));
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+}
@@ -0,0 +1,58 @@
+package com.snowflake.plugins.udf.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** Utility class to compute hex encoded digests of local files and text */
+public class FileDigest {
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private FileDigest() {}
+
+  public static String md5Hex(File file) throws IOException {
+    return digestHex(file, "MD5");
+  }
+
+  public static String sha256Hex(File file) throws IOException {
+    return digestHex(file, "SHA-256");
+  }
+
+  public static String sha256Hex(String text) {
+    return toHex(newDigest("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static String digestHex(File file, String algorithm) throws IOException {
+    MessageDigest digest = newDigest(algorithm);
+    byte[] buffer = new byte[64 * 1024];
+    try (InputStream in = new FileInputStream(file)) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    return toHex(digest.digest());
+  }
+
+  private static MessageDigest newDigest(String algorithm) {
+    try {
+      return MessageDigest.getInstance(algorithm);
+    } catch (NoSuchAlgorithmException e) {
+      // MD5 and SHA-256 are required to be supported by every Java platform
+      throw new IllegalStateException(e);
+    }
+  }
+
+  static String toHex(byte[] bytes) {
+    char[] result = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      result[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+      result[i * 2 + 1] = HEX[bytes[i] & 0xF];
+    }
+    return new String(result);
+  }
+}
@@ -0,0 +1,218 @@
+package com.snowflake.plugins.udf.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Finds the JARs a function or procedure actually needs. Starting from the handler class, the class
+ * references of every reachable class are followed through the artifact and dependency JARs, and
+ * only the JARs holding a reached class are imported. Every JAR is kept when a reached class loads
+ * classes by name, e.g. with Class.forName or a ServiceLoader, since the classes it loads can't be
+ * found from its bytecode. JARs holding resources outside META-INF are kept as well, since the
+ * resources a class reads with getResource can't be found either
+ */
+public class ImportPruner {
+  private static final String CLASS_SUFFIX = ".class";
+  private static final String VERSIONS_PREFIX = "META-INF/versions/";
+
+  // The full imports, in the order of the IMPORTS clause
+  private final List<String> importPaths;
+  // The local JAR of each import path. Imports without a local JAR are always kept
+  private final Map<String, File> localFiles;
+  // The import path holding each class by internal name, built on first use. The first JAR of the
+  // imports wins, like on a class path
+  private Map<String, String> classIndex;
+  // The imports of every class which could not be indexed, which are always kept
+  private final Set<String> unreadablePaths = new LinkedHashSet<>();
+  // The imports holding files other than classes outside META-INF, which are always kept
+  private final Set<String> resourcePaths = new HashSet<>();
+  // Class references of every class read so far, shared between handlers
+  private final Map<String, ClassReferences> references = new HashMap<>();
+  // Result of each handler class
+  private final Map<String, PrunedImports> results = new HashMap<>();
+
+  public ImportPruner(List<String> importPaths, Map<String, File> localFiles) {
+    this.importPaths = importPaths;
+    this.localFiles = localFiles;
+  }
+
+  /**
+   * Returns the imports needed by a handler such as "com.example.MyClass.myMethod". Never throws,
+   * every import is kept when the reachable JARs can't be determined
+   */
+  public synchronized PrunedImports prune(String handler) {
+    String className = handlerClass(handler);
+    PrunedImports cached = results.get(className);
+    if (cached != null) {
+      return new PrunedImports(
+          handler, cached.getImportPaths(), cached.getPrunedPaths(), cached.getFallbackReason());
+    }
+    PrunedImports result;
+    try {
+      result = analyze(handler, className);
+    } catch (IOException e) {
+      result = fallback(handler, "could not read the handler's classes: " + e.getMessage());
+    }
+    results.put(className, result);
+    return result;
+  }
+
+  private PrunedImports analyze(String handler, String className) throws IOException {
+    Map<String, String> index = classIndex();
+    if (!index.containsKey(className)) {
+      return fallback(handler, "handler class " + className + " not found in any imported JAR");
+    }
+    Set<String> reached = new HashSet<>(unreadablePaths);
+    Set<String> visited = new HashSet<>();
+    Deque<String> queue = new ArrayDeque<>();
+    queue.add(className);
+    visited.add(className);
+    Map<String, ZipFile> jars = new HashMap<>();
+    try {
+      while (!queue.isEmpty()) {
+        String name = queue.poll();
+        String importPath = index.get(name);
+        if (importPath == null) {
+          // A JDK class, or a class provided by Snowflake
+          continue;
+        }
+        reached.add(importPath);
+        ClassReferences classReferences = read(name, importPath, jars);
+        if (classReferences.getClassLoadingCall() != null) {
+          return fallback(
+              handler,
+              String.format(
+                  "%s calls %s",
+                  name.replace('/', '.'), classReferences.getClassLoadingCall().replace('/', '.')));
+        }
+        for (String referenced : classReferences.getClassNames()) {
+          if (visited.add(referenced)) {
+            queue.add(referenced);
+          }
+        }
+      }
+    } finally {
+      for (ZipFile jar : jars.values()) {
+        jar.close();
+      }
+    }
+    List<String> kept = new ArrayList<>();
+    List<String> pruned = new ArrayList<>();
+    for (String importPath : importPaths) {
+      if (reached.contains(importPath)
+          || resourcePaths.contains(importPath)
+          || !localFiles.containsKey(importPath)) {
+        kept.add(importPath);
+      } else {
+        pruned.add(importPath);
+      }
+    }
+    return new PrunedImports(
+        handler, Collections.unmodifiableList(kept), Collections.unmodifiableList(pruned), null);
+  }
+
+  private PrunedImports fallback(String handler, String reason) {
+    return new PrunedImports(handler, importPaths, Collections.emptyList(), reason);
+  }
+
+  // Reads the class references of a class, keeping the JARs open until the analysis ends
+  private ClassReferences read(String className, String importPath, Map<String, ZipFile> jars)
+      throws IOException {
+    ClassReferences classReferences = references.get(className);
+    if (classReferences != null) {
+      return classReferences;
+    }
+    ZipFile jar = jars.get(importPath);
+    if (jar == null) {
+      jar = new ZipFile(localFiles.get(importPath));
+      jars.put(importPath, jar);
+    }
+    ZipEntry entry = jar.getEntry(className + CLASS_SUFFIX);
+    if (entry == null) {
+      // Only present in a versioned directory of a multi-release JAR
+      entry = findVersioned(jar, className);
+    }
+    try (InputStream in = jar.getInputStream(entry)) {
+      classReferences = ClassReferences.read(in);
+    } catch (IOException e) {
+      throw new IOException(String.format("%s in %s: %s", className, importPath, e.getMessage()));
+    }
+    references.put(className, classReferences);
+    return classReferences;
+  }
+
+  private static ZipEntry findVersioned(ZipFile jar, String className) throws IOException {
+    Enumeration<? extends ZipEntry> entries = jar.entries();
+    while (entries.hasMoreElements()) {
+      ZipEntry entry = entries.nextElement();
+      if (entry.getName().startsWith(VERSIONS_PREFIX)
+          && className.equals(internalName(entry.getName()))) {
+        return entry;
+      }
+    }
+    throw new IOException("class file not found");
+  }
+
+  private Map<String, String> classIndex() {
+    if (classIndex != null) {
+      return classIndex;
+    }
+    classIndex = new HashMap<>();
+    for (String importPath : importPaths) {
+      File file = localFiles.get(importPath);
+      if (file == null) {
+        continue;
+      }
+      try (ZipFile jar = new ZipFile(file)) {
+        Enumeration<? extends ZipEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+          ZipEntry entry = entries.nextElement();
+          String name = internalName(entry.getName());
+          if (name != null) {
+            classIndex.putIfAbsent(name, importPath);
+          } else if (isResource(entry)) {
+            resourcePaths.add(importPath);
+          }
+        }
+      } catch (IOException e) {
+        // Its classes can't be followed, so the JAR is kept for every handler
+        unreadablePaths.add(importPath);
+      }
+    }
+    return classIndex;
+  }
+
+  // Internal name of the class in a JAR entry, e.g. "com/example/Util" for
+  // "META-INF/versions/11/com/example/Util.class", null if the entry is not a class
+  static String internalName(String entryName) {
+    if (!entryName.endsWith(CLASS_SUFFIX) || entryName.endsWith("module-info.class")) {
+      return null;
+    }
+    String name = entryName.substring(0, entryName.length() - CLASS_SUFFIX.length());
+    if (name.startsWith(VERSIONS_PREFIX)) {
+      int slash = name.indexOf('/', VERSIONS_PREFIX.length());
+      return slash < 0 ? null : name.substring(slash + 1);
+    }
+    return name;
+  }
+
+  // A file read with getResource rather than loaded as a class. The manifest, signatures and other
+  // files of META-INF only describe the JAR
+  private static boolean isResource(ZipEntry entry) {
+    return !entry.isDirectory()
+        && !entry.getName().startsWith("META-INF/")
+        && !entry.getName().endsWith(CLASS_SUFFIX);
+  }
+
+  // Internal name of the class of a handler, e.g. "com/example/MyClass" for
+  // "com.example.MyClass.myMethod"
+  static String handlerClass(String handler) {
+    String trimmed = handler.trim();
+    int dot = trimmed.lastIndexOf('.');
+    return (dot < 0 ? trimmed : trimmed.substring(0, dot)).replace('.', '/');
+  }
+}
@@ -0,0 +1,152 @@
+package com.snowflake.plugins.udf.core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Records the deploy as Java Flight Recorder events, so that a recording of the build shows each
+ * phase, statement, upload and function next to the JVM's own events. Events are only recorded
+ * while a recording with them enabled is running, e.g. with -XX:StartFlightRecording
+ */
+public class JfrDeployListener implements DeployListener {
+  private static final String CATEGORY = "Snowflake Deploy";
+
+  @Name("com.snowflake.plugins.DeployPhase")
+  @Label("Deploy Phase")
+  @Category(CATEGORY)
+  static class PhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Succeeded")
+    boolean succeeded;
+  }
+
+  @Name("com.snowflake.plugins.DeployQuery")
+  @Label("Deploy Query")
+  @Category(CATEGORY)
+  static class QueryEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Query ID")
+    String queryId;
+
+    @Label("Statement")
+    String summary;
+
+    @Label("Elapsed")
+    @Timespan(Timespan.MILLISECONDS)
+    long elapsed;
+
+    @Label("Succeeded")
+    boolean succeeded;
+  }
+
+  @Name("com.snowflake.plugins.DeployUpload")
+  @Label("Deploy Upload")
+  @Category(CATEGORY)
+  static class UploadEvent extends Event {
+    @Label("File")
+    String file;
+
+    @Label("Stage Path")
+    String stagePath;
+
+    @Label("Decision")
+    String decision;
+
+    @Label("Size")
+    @DataAmount
+    long bytes;
+
+    @Label("Elapsed")
+    @Timespan(Timespan.MILLISECONDS)
+    long elapsed;
+  }
+
+  @Name("com.snowflake.plugins.DeployFunction")
+  @Label("Deploy Function")
+  @Category(CATEGORY)
+  static class FunctionEvent extends Event {
+    @Label("Type")
+    String type;
+
+    @Label("Name")
+    String name;
+
+    @Label("Outcome")
+    String outcome;
+
+    @Label("Error")
+    String error;
+  }
+
+  // Phase events begun and not yet committed, a phase event lasts from its start to its end
+  private final Map<String, PhaseEvent> openPhases = new ConcurrentHashMap<>();
+
+  @Override
+  public void phaseStarted(String phase) {
+    PhaseEvent event = new PhaseEvent();
+    event.phase = phase;
+    event.begin();
+    openPhases.put(phase, event);
+  }
+
+  @Override
+  public void phaseFinished(String phase, long elapsedMillis, boolean succeeded) {
+    PhaseEvent event = openPhases.remove(phase);
+    if (event == null) {
+      return;
+    }
+    event.succeeded = succeeded;
+    event.commit();
+  }
+
+  @Override
+  public void queryFinished(QueryRecord record) {
+    QueryEvent event = new QueryEvent();
+    if (!event.isEnabled()) {
+      return;
+    }
+    event.phase = record.getPhase();
+    event.queryId = record.getQueryId();
+    event.summary = record.getSummary();
+    event.elapsed = record.getElapsedMillis();
+    event.succeeded = record.isSucceeded();
+    event.commit();
+  }
+
+  @Override
+  public void uploadFinished(UploadResult result) {
+    UploadEvent event = new UploadEvent();
+    if (!event.isEnabled()) {
+      return;
+    }
+    event.file = result.getDependencyFile();
+    event.stagePath = result.getStagePath();
+    event.decision = result.getDecision().name();
+    event.bytes = result.getBytes();
+    event.elapsed = result.getElapsedMillis();
+    event.commit();
+  }
+
+  @Override
+  public void udxFinished(CreateResult result) {
+    FunctionEvent event = new FunctionEvent();
+    if (!event.isEnabled()) {
+      return;
+    }
+    event.type = result.getUdx().getType();
+    event.name = result.getUdx().getName();
+    event.outcome = DeployReport.outcome(result);
+    event.error = result.isSucceeded() ? null : result.getError().getMessage();
+    event.commit();
+  }
+}
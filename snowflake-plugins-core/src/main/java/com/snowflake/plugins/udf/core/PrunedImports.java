@@ -0,0 +1,57 @@
+package com.snowflake.plugins.udf.core;
+
+import java.util.List;
+
+/** The imports of a single function or procedure after removing the JARs its handler can't reach */
+public class PrunedImports {
+  private final String handler;
+  // The import paths kept, in the order of the full imports
+  private final List<String> importPaths;
+  // The import paths removed because no class of the handler reaches them
+  private final List<String> prunedPaths;
+  // Why every import was kept, null if the imports were pruned
+  private final String fallbackReason;
+
+  public PrunedImports(
+      String handler, List<String> importPaths, List<String> prunedPaths, String fallbackReason) {
+    this.handler = handler;
+    this.importPaths = importPaths;
+    this.prunedPaths = prunedPaths;
+    this.fallbackReason = fallbackReason;
+  }
+
+  public String getHandler() {
+    return handler;
+  }
+
+  public List<String> getImportPaths() {
+    return importPaths;
+  }
+
+  public List<String> getPrunedPaths() {
+    return prunedPaths;
+  }
+
+  public String getFallbackReason() {
+    return fallbackReason;
+  }
+
+  /** True if every import was kept because the reachable JARs could not be determined */
+  public boolean isFallback() {
+    return fallbackReason != null;
+  }
+
+  @Override
+  public String toString() {
+    if (isFallback()) {
+      return String.format(
+          "%s: importing all %d JARs, %s", handler, importPaths.size(), fallbackReason);
+    }
+    return String.format(
+        "%s: importing %d of %d JARs, pruned %s",
+        handler,
+        importPaths.size(),
+        importPaths.size() + prunedPaths.size(),
+        prunedPaths.isEmpty() ? "none" : String.join(", ", prunedPaths));
+  }
+}
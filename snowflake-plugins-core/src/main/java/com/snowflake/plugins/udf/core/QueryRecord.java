@@ -0,0 +1,48 @@
+package com.snowflake.plugins.udf.core;
+
+/** The query ID and elapsed time of a statement run through the StatementExecutor */
+public class QueryRecord {
+  private final String phase;
+  private final String queryId;
+  // First line of the statement text, truncated so that large DDL is not retained
+  private final String summary;
+  private final long elapsedMillis;
+  private final boolean succeeded;
+
+  public QueryRecord(
+      String phase, String queryId, String summary, long elapsedMillis, boolean succeeded) {
+    this.phase = phase;
+    this.queryId = queryId;
+    this.summary = summary;
+    this.elapsedMillis = elapsedMillis;
+    this.succeeded = succeeded;
+  }
+
+  public String getPhase() {
+    return phase;
+  }
+
+  // Null if the driver did not report a query ID
+  public String getQueryId() {
+    return queryId;
+  }
+
+  public String getSummary() {
+    return summary;
+  }
+
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  public boolean isSucceeded() {
+    return succeeded;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "[%s] %s: %s (%d ms%s)",
+        phase, queryId, summary, elapsedMillis, succeeded ? "" : ", failed");
+  }
+}
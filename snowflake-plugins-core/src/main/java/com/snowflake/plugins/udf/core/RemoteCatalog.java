@@ -0,0 +1,365 @@
+package com.snowflake.plugins.udf.core;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The user functions and procedures currently defined in the schema of the session, read with one
+ * SHOW per kind. Definitions are compared against the DDL a deploy would run so that unchanged
+ * functions and procedures are not replaced. Only the Java functions and procedures whose signature
+ * matches the SHOW output are described, and describeAll runs those DESCRIBEs at the same time.
+ * Comparisons are conservative: anything which cannot be matched reliably, such as qualified or
+ * quoted names, counts as changed
+ */
+public class RemoteCatalog {
+  private final StatementExecutor executor;
+  // A map of each signature key to the signature used to DESCRIBE it, e.g. "ADD(NUMBER, NUMBER)"
+  private final Map<String, String> signatures;
+  // The language SHOW reports for each signature key, if any
+  private final Map<String, String> languages;
+  // The properties of each DESCRIBE statement already run, by statement
+  private final Map<String, Map<String, String>> descriptions = new ConcurrentHashMap<>();
+
+  RemoteCatalog(StatementExecutor executor, Map<String, String> signatures) {
+    this(executor, signatures, new HashMap<>());
+  }
+
+  RemoteCatalog(
+      StatementExecutor executor, Map<String, String> signatures, Map<String, String> languages) {
+    this.executor = executor;
+    this.signatures = signatures;
+    this.languages = languages;
+  }
+
+  /** Lists the user functions and procedures of the current schema */
+  public static RemoteCatalog load(StatementExecutor executor) throws SQLException {
+    Map<String, String> signatures = new HashMap<>();
+    Map<String, String> languages = new HashMap<>();
+    list(executor, UserDefined.function, "SHOW USER FUNCTIONS IN SCHEMA", signatures, languages);
+    list(executor, UserDefined.procedure, "SHOW USER PROCEDURES IN SCHEMA", signatures, languages);
+    return new RemoteCatalog(executor, signatures, languages);
+  }
+
+  private static void list(
+      StatementExecutor executor,
+      String type,
+      String sql,
+      Map<String, String> signatures,
+      Map<String, String> languages)
+      throws SQLException {
+    executor.query(
+        sql,
+        rs -> {
+          while (rs.next()) {
+            // e.g. "ADD(NUMBER, NUMBER) RETURN NUMBER"
+            String arguments = rs.getString("arguments");
+            int open = arguments.indexOf('(');
+            int close = arguments.lastIndexOf(") RETURN ");
+            if (open < 0 || close < open) {
+              continue;
+            }
+            List<String> types = new ArrayList<>();
+            for (String argType : splitTopLevel(arguments.substring(open + 1, close))) {
+              types.add(canonicalType(argType));
+            }
+            String key = signatureKey(type, rs.getString("name"), types);
+            signatures.put(key, arguments.substring(0, close + 1));
+            String language = optionalString(rs, "language");
+            if (language != null) {
+              languages.put(key, language.trim());
+            }
+          }
+          return null;
+        });
+  }
+
+  public int size() {
+    return signatures.size();
+  }
+
+  /**
+   * Returns true if the function or procedure exists with the same signature, return type, handler,
+   * imports and packages
+   *
+   * @param imports the stage paths in the IMPORTS clause the deploy would use
+   * @param packages the packages in the PACKAGES clause the deploy would use
+   */
+  public boolean isUnchanged(
+      UserDefined udx, Collection<String> imports, Collection<String> packages)
+      throws SQLException {
+    String describe = describeStatement(udx);
+    if (describe == null) {
+      return false;
+    }
+    Map<String, String> properties = descriptions.get(describe);
+    if (properties == null) {
+      properties = describe(describe);
+    }
+    return "java".equalsIgnoreCase(trimmed(properties.get("language")))
+        && udx.getHandler().trim().equals(trimmed(properties.get("handler")))
+        && canonicalType(udx.getReturns()).equals(canonicalType(properties.get("returns")))
+        && normalizeList(imports).equals(normalizeList(properties.get("imports")))
+        && normalizeList(packages).equals(normalizeList(properties.get("packages")));
+  }
+
+  /**
+   * Describes every function and procedure which may be unchanged as units of work of the
+   * scheduler, so that the DESCRIBEs run at the same time instead of one round trip after the
+   * other. isUnchanged then compares against the descriptions without querying
+   */
+  public void describeAll(Collection<? extends UserDefined> udxs, WorkScheduler scheduler)
+      throws SQLException {
+    Set<String> statements = new TreeSet<>();
+    for (UserDefined udx : udxs) {
+      String describe = describeStatement(udx);
+      if (describe != null && !descriptions.containsKey(describe)) {
+        statements.add(describe);
+      }
+    }
+    List<WorkScheduler.Work> work = new ArrayList<>();
+    for (String describe : statements) {
+      work.add(
+          new WorkScheduler.Work() {
+            @Override
+            public String getName() {
+              return describe;
+            }
+
+            @Override
+            public long getBytes() {
+              return 0;
+            }
+
+            @Override
+            public void run() throws SQLException {
+              describe(describe);
+            }
+          });
+    }
+    scheduler.runAll(work);
+  }
+
+  // The DESCRIBE of the function or procedure in Snowflake with the same signature, or null if
+  // there is none or it is not a Java one
+  private String describeStatement(UserDefined udx) {
+    String name = udx.getName().trim();
+    if (name.contains(".") || name.contains("\"")) {
+      return null;
+    }
+    List<String> types = localArgumentTypes(udx.getInputs());
+    if (types == null) {
+      return null;
+    }
+    String key = signatureKey(udx.getType(), name, types);
+    String signature = signatures.get(key);
+    String language = languages.get(key);
+    if (signature == null || (language != null && !language.equalsIgnoreCase("java"))) {
+      return null;
+    }
+    return String.format("DESCRIBE %s %s", udx.getType().toUpperCase(Locale.ROOT), signature);
+  }
+
+  private Map<String, String> describe(String describe) throws SQLException {
+    Map<String, String> properties =
+        executor.query(
+            describe,
+            rs -> {
+              Map<String, String> values = new HashMap<>();
+              while (rs.next()) {
+                values.put(
+                    rs.getString("property").toLowerCase(Locale.ROOT), rs.getString("value"));
+              }
+              return values;
+            });
+    descriptions.put(describe, properties);
+    return properties;
+  }
+
+  static String signatureKey(String type, String name, List<String> argumentTypes) {
+    return String.format(
+        "%s:%s(%s)",
+        type.toLowerCase(Locale.ROOT),
+        name.trim().toUpperCase(Locale.ROOT),
+        String.join(",", argumentTypes));
+  }
+
+  // Returns the canonical types of inputs such as "a string, b int", or null if they can't be
+  // parsed
+  static List<String> localArgumentTypes(String inputs) {
+    List<String> types = new ArrayList<>();
+    for (String input : splitTopLevel(inputs)) {
+      String[] nameAndType = input.trim().split("\\s+", 2);
+      if (nameAndType.length < 2 || input.toUpperCase(Locale.ROOT).contains(" DEFAULT ")) {
+        return null;
+      }
+      types.add(canonicalType(nameAndType[1]));
+    }
+    return types;
+  }
+
+  // Splits on the commas which are not inside parentheses or brackets
+  static List<String> splitTopLevel(String s) {
+    List<String> parts = new ArrayList<>();
+    if (s == null || s.trim().isEmpty()) {
+      return parts;
+    }
+    int depth = 0;
+    int start = 0;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '(' || c == '[') {
+        depth++;
+      } else if (c == ')' || c == ']') {
+        depth--;
+      } else if (c == ',' && depth == 0) {
+        parts.add(s.substring(start, i).trim());
+        start = i + 1;
+      }
+    }
+    parts.add(s.substring(start).trim());
+    return parts;
+  }
+
+  /**
+   * Maps a SQL type to the name Snowflake reports for it, dropping the default precision. e.g.
+   * "string" and "VARCHAR(16777216)" are both "VARCHAR", "int" is "NUMBER"
+   */
+  static String canonicalType(String type) {
+    if (type == null) {
+      return "";
+    }
+    String upper = type.trim().toUpperCase(Locale.ROOT).replaceAll("\\s+", " ");
+    int open = upper.indexOf('(');
+    String base = open < 0 ? upper : upper.substring(0, open).trim();
+    String params =
+        open < 0 ? "" : upper.substring(open + 1, upper.lastIndexOf(')')).replace(" ", "");
+    String canonical;
+    String defaultParams;
+    switch (base) {
+      case "VARCHAR":
+      case "STRING":
+      case "TEXT":
+      case "NVARCHAR":
+      case "NVARCHAR2":
+      case "CHAR VARYING":
+      case "NCHAR VARYING":
+        canonical = "VARCHAR";
+        defaultParams = "16777216";
+        break;
+      case "CHAR":
+      case "CHARACTER":
+      case "NCHAR":
+        canonical = "VARCHAR";
+        defaultParams = "16777216";
+        params = params.isEmpty() ? "1" : params;
+        break;
+      case "NUMBER":
+      case "NUMERIC":
+      case "DECIMAL":
+      case "DEC":
+      case "INT":
+      case "INTEGER":
+      case "BIGINT":
+      case "SMALLINT":
+      case "TINYINT":
+      case "BYTEINT":
+        canonical = "NUMBER";
+        defaultParams = "38,0";
+        break;
+      case "FLOAT":
+      case "FLOAT4":
+      case "FLOAT8":
+      case "DOUBLE":
+      case "DOUBLE PRECISION":
+      case "REAL":
+        canonical = "FLOAT";
+        defaultParams = "";
+        break;
+      case "BINARY":
+      case "VARBINARY":
+        canonical = "BINARY";
+        defaultParams = "8388608";
+        break;
+      case "TIMESTAMP":
+      case "DATETIME":
+      case "TIMESTAMP_NTZ":
+        canonical = "TIMESTAMP_NTZ";
+        defaultParams = "9";
+        break;
+      case "TIMESTAMP_LTZ":
+      case "TIMESTAMP_TZ":
+      case "TIME":
+        canonical = base;
+        defaultParams = "9";
+        break;
+      default:
+        return upper;
+    }
+    return params.isEmpty() || params.equals(defaultParams)
+        ? canonical
+        : canonical + "(" + params + ")";
+  }
+
+  // Normalizes a list such as "[@STAGE/libs/a.jar, '@stage/b.jar']" into a comparable set
+  static Set<String> normalizeList(String value) {
+    if (value == null) {
+      return new TreeSet<>();
+    }
+    String trimmed = value.trim();
+    if (trimmed.startsWith("[") || trimmed.startsWith("(")) {
+      trimmed = trimmed.substring(1, trimmed.length() - 1);
+    }
+    return normalizeList(splitTopLevel(trimmed));
+  }
+
+  static Set<String> normalizeList(Collection<String> values) {
+    Set<String> normalized = new TreeSet<>();
+    for (String value : values) {
+      String item = value.trim().replaceAll("^['\"]|['\"]$", "");
+      if (item.startsWith("@")) {
+        item = foldStageName(item.substring(1));
+      }
+      if (!item.isEmpty()) {
+        normalized.add(item);
+      }
+    }
+    return normalized;
+  }
+
+  // Unquoted stage names are case insensitive and are reported in upper case, while quoted names
+  // and the paths of files on the stage are case sensitive
+  private static String foldStageName(String path) {
+    int slash = path.indexOf('/');
+    String stage = slash < 0 ? path : path.substring(0, slash);
+    StringBuilder folded = new StringBuilder();
+    for (String part : stage.split("\\.", -1)) {
+      if (folded.length() > 0) {
+        folded.append('.');
+      }
+      folded.append(part.startsWith("\"") ? part : part.toLowerCase(Locale.ROOT));
+    }
+    return slash < 0 ? folded.toString() : folded + path.substring(slash);
+  }
+
+  // The value of a column which older versions of SHOW may not return, null without it
+  private static String optionalString(ResultSet rs, String column) {
+    try {
+      return rs.getString(column);
+    } catch (SQLException e) {
+      return null;
+    }
+  }
+
+  private static String trimmed(String value) {
+    return value == null ? null : value.trim();
+  }
+}
@@ -0,0 +1,48 @@
+package com.snowflake.plugins.udf.core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Files uploaded by the deploys of one build, shared by the deploys of every module so that a
+ * dependency JAR used by several modules is uploaded to a stage only once. Every file is recorded
+ * with the digest of its content, and a file is only skipped when its digest is unchanged
+ */
+public class SharedUploads {
+  // The digest of each uploaded file, by deploy target and path on the stage
+  private final Map<String, String> digests = new ConcurrentHashMap<>();
+  // The digest of each file whose content PUT transferred, by deploy target and path on the stage
+  private final Map<String, String> transferred = new ConcurrentHashMap<>();
+
+  /**
+   * Returns true if a deploy of this build uploaded the file to the target with the same content
+   */
+  public boolean isUploaded(String target, String pathOnStage, String digest) {
+    return digest.equals(digests.get(key(target, pathOnStage)));
+  }
+
+  /**
+   * Returns true if a deploy of this build transferred the content to the target, rather than PUT
+   * skipping it as identical
+   */
+  public boolean isTransferred(String target, String pathOnStage, String digest) {
+    return digest.equals(transferred.get(key(target, pathOnStage)));
+  }
+
+  public void recordUpload(
+      String target, String pathOnStage, String digest, boolean contentTransferred) {
+    digests.put(key(target, pathOnStage), digest);
+    if (contentTransferred) {
+      transferred.put(key(target, pathOnStage), digest);
+    }
+  }
+
+  /** Returns the number of files recorded */
+  public int size() {
+    return digests.size();
+  }
+
+  private static String key(String target, String pathOnStage) {
+    return target + "\t" + pathOnStage;
+  }
+}
@@ -0,0 +1,70 @@
+package com.snowflake.plugins.udf.core;
+
+import java.io.File;
+
+/** The outcome of shrinking the artifact JAR before it is uploaded */
+public class ShrinkResult {
+  // The JAR to upload, the shrunk JAR or the original one when shrinking fell back
+  private final File file;
+  private final long bytesBefore;
+  private final long bytesAfter;
+  private final int classesBefore;
+  private final int classesAfter;
+  // Why the original JAR is uploaded, null if it was shrunk
+  private final String fallbackReason;
+
+  public ShrinkResult(
+      File file,
+      long bytesBefore,
+      long bytesAfter,
+      int classesBefore,
+      int classesAfter,
+      String fallbackReason) {
+    this.file = file;
+    this.bytesBefore = bytesBefore;
+    this.bytesAfter = bytesAfter;
+    this.classesBefore = classesBefore;
+    this.classesAfter = classesAfter;
+    this.fallbackReason = fallbackReason;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public long getBytesBefore() {
+    return bytesBefore;
+  }
+
+  public long getBytesAfter() {
+    return bytesAfter;
+  }
+
+  public int getClassesBefore() {
+    return classesBefore;
+  }
+
+  public int getClassesAfter() {
+    return classesAfter;
+  }
+
+  public String getFallbackReason() {
+    return fallbackReason;
+  }
+
+  /** True if the original JAR is uploaded because the reachable classes could not be determined */
+  public boolean isFallback() {
+    return fallbackReason != null;
+  }
+
+  @Override
+  public String toString() {
+    if (isFallback()) {
+      return String.format(
+          "Artifact not shrunk, uploading all %d bytes: %s", bytesBefore, fallbackReason);
+    }
+    return String.format(
+        "Artifact shrunk from %d to %d bytes, keeping %d of %d classes",
+        bytesBefore, bytesAfter, classesAfter, classesBefore);
+  }
+}
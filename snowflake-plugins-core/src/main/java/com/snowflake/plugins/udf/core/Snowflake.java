@@ -1,25 +1,38 @@
 package com.snowflake.plugins.udf.core;
 
 import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
-import net.snowflake.client.jdbc.SnowflakeConnectionV1;
 
 /**
  * Class to execute create stage, upload file, create function/procedure commands on Snowflake
  * through a JDBC connection
  */
 public class Snowflake {
+  // Deploy phases used to tag queries and reported to the listeners
+  static final String CONNECT_PHASE = "connect";
+  static final String CREATE_STAGE_PHASE = "create_stage";
+  static final String UPLOAD_ARTIFACT_PHASE = "upload_artifact";
+  static final String UPLOAD_DEPENDENCIES_PHASE = "upload_dependencies";
+  static final String CREATE_FUNCTIONS_PHASE = "create_functions";
+  static final String DIFF_PHASE = "diff";
 
   // Logger object passed from Maven/Gradle plugin
   private SnowflakeLogger sfLogger;
   private String artifactDirOnStage = "libs";
   private String dependencyDirOnStage = "dependency";
-  private SnowflakeConnectionV1 conn;
+  private Connection conn;
+  // Runs every statement of the deploy on the connection
+  private StatementExecutor executor;
   // A set of dependencies which did not resolve to JAR files and are therefore skipped on upload
   // These are usually Gradle platform dependencies or Maven Bill-Of-Materials (BOM) which do not
   // need to be uploaded
-  private Set<String> skippedDependencies = new HashSet<>();
+  private Set<String> skippedDependencies = Collections.synchronizedSet(new HashSet<>());
 
   // The name of the stage used for uploaded files
   private String stageName;
@@ -27,6 +40,72 @@ public class Snowflake {
   private String artifactFileName;
   // A map of each dependency to its path on the stage
   private Map<String, String> depsToStagePaths;
+  // A map of each dependency to its local file path. Dependencies not in the map are read from the
+  // directory passed to uploadDependencies
+  private Map<String, String> depsToLocalPaths = new HashMap<>();
+  // When true, a single LIST of the stage is used to skip dependencies which are already uploaded
+  private boolean useStageIndex = false;
+  // Index of the stage contents, loaded once per uploadDependencies call in stage index mode
+  private StageIndex stageIndex;
+  // The upload decision for each dependency file, in the order they were processed
+  private Map<String, UploadResult> uploadResults =
+      Collections.synchronizedMap(new LinkedHashMap<>());
+  // Number of dependency files uploaded at the same time
+  private int uploadThreads = 4;
+  // Maximum total size of the dependency files uploaded at the same time
+  private long maxInFlightBytes = 256L * 1024 * 1024;
+  // How dependency files are arranged on the stage
+  private DependencyLayout dependencyLayout = DependencyLayout.MAVEN;
+  // Local directory used to build up the hashed dependency layout before it is uploaded
+  private File dependencyMirrorDir;
+  // A map of each dependency to its content-addressed file name in the hashed layout
+  private Map<String, String> hashedFileNames = new HashMap<>();
+  // Local directory caching the bundles of the bundled layout
+  private File dependencyBundleDir;
+  // Maximum size of the dependencies merged into one bundle
+  private long maxBundleBytes = 64L * 1024 * 1024;
+  // The bundles uploaded in the bundled layout, imported instead of the dependencies. Null until
+  // the dependencies are uploaded
+  private List<DependencyBundler.Bundle> bundles;
+  // How the CREATE FUNCTION/PROCEDURE statements are sent to Snowflake
+  private DdlMode ddlMode = DdlMode.SYNC;
+  // Number of statements sent in one multi-statement request in BATCH mode
+  private int ddlBatchSize = 20;
+  // When true, functions and procedures whose definition in Snowflake already matches the DDL are
+  // not replaced
+  private boolean remoteDiff = false;
+  // Renders the DDL, keeping the IMPORTS clause until the imports change
+  private final DdlRenderer ddlRenderer =
+      new DdlRenderer(this::computeImportPaths, this::getPackages);
+  // Whether the artifact JAR was uploaded with new content during this deploy
+  private boolean artifactUploaded = false;
+  // Whether another deploy of the build uploaded an imported file this deploy then skipped
+  private volatile boolean importsUploadedByBuild = false;
+  // Local artifact JAR, set when the artifact is uploaded from a file
+  private File artifactLocalFile;
+  // The directory passed to uploadDependencies, holding the dependencies without a local path
+  private String dependencyDir;
+  // Directory the shrunk artifact is written to, null when the artifact is uploaded as it is
+  private File shrunkArtifactDir;
+  // Classes kept in the shrunk artifact even if no handler reaches them
+  private List<String> keepRules = Collections.emptyList();
+  // Outcome of shrinking the artifact, null if it was not shrunk
+  private ShrinkResult shrinkResult;
+  // Receives the structured events of the deploy
+  private DeployListeners listeners = new DeployListeners();
+  // Report of the deploy, one of the listeners
+  private DeployReport report = new DeployReport();
+  // Progress of the deploy, recorded so that a rerun after a failure resumes where it stopped. Null
+  // when progress is not recorded
+  private DeployCheckpoint checkpoint;
+  // Files uploaded by the other deploys of the build, skipped when unchanged. Null when the deploy
+  // is not part of a larger build
+  private SharedUploads sharedUploads;
+  // Identifies the target of the deploy among the shared uploads
+  private String uploadTarget;
+  // Runs the dependency uploads and the DDL batches. Null to upload on threads of the deploy,
+  // bounded by uploadThreads and maxInFlightBytes, and to send the batches one after the other
+  private WorkScheduler workScheduler;
 
   /**
    * Create a snowflake object representing a session with a logger
@@ -39,59 +118,770 @@ public class Snowflake {
    */
   public Snowflake(
       SnowflakeLogger logger,
-      SnowflakeConnectionV1 conn,
+      Connection conn,
       String stageName,
       String artifactFileName,
       Map<String, String> depsToStagePaths) {
     this.sfLogger = logger;
     this.conn = conn;
+    this.executor = new StatementExecutor(conn);
+    this.executor.setQueryListener(record -> listeners.queryFinished(record));
+    this.listeners.add(report);
     this.stageName = normalizeStageLocation(stageName);
     this.artifactFileName = artifactFileName;
     this.depsToStagePaths = depsToStagePaths;
   }
 
+  // The work of a deploy phase
+  private interface PhaseBody<T> {
+    T run() throws SQLException;
+  }
+
+  // Runs the body as a phase, tagging its queries and sending its start and end to the listeners.
+  // Only a one line summary of the phase is logged at info level
+  private <T> T inPhase(String phase, PhaseBody<T> body) throws SQLException {
+    executor.setPhase(phase);
+    listeners.phaseStarted(phase);
+    long start = System.nanoTime();
+    boolean succeeded = false;
+    try {
+      T result = body.run();
+      succeeded = true;
+      return result;
+    } finally {
+      long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+      listeners.phaseFinished(phase, elapsedMillis, succeeded);
+      sfLogger.info(
+          String.format(
+              "Phase %s %s in %d ms (%d statements)",
+              phase,
+              succeeded ? "finished" : "failed",
+              elapsedMillis,
+              executor.getStatementCount(phase)));
+    }
+  }
+
   public void createStage() throws SQLException {
-    sfLogger.info(String.format("Creating stage %s if not exists", stageName));
-    conn.createStatement().execute(String.format("create stage if not exists %s", stageName));
-    sfLogger.info("Stage located or created!");
+    inPhase(
+        CREATE_STAGE_PHASE,
+        () -> {
+          sfLogger.debug(String.format("Creating stage %s if not exists", stageName));
+          executor.execute(String.format("create stage if not exists %s", stageName));
+          return null;
+        });
   }
 
   public void uploadArtifact(String localFileName) throws SQLException {
-    sfLogger.info("Uploading artifact JAR: " + localFileName);
-    uploadFiles(localFileName, artifactDirOnStage, true);
-    sfLogger.info("Artifact JAR uploaded!");
+    inPhase(
+        UPLOAD_ARTIFACT_PHASE,
+        () -> {
+          uploadArtifactFile(localFileName);
+          return null;
+        });
+  }
+
+  private void uploadArtifactFile(String localFileName) throws SQLException {
+    sfLogger.debug("Uploading artifact JAR: " + localFileName);
+    long start = System.nanoTime();
+    File file = new File(localFileName);
+    artifactLocalFile = file;
+    String pathOnStage = artifactDirOnStage + "/" + artifactFileName;
+    String digest = uploadDigest(file);
+    if (isUploaded(pathOnStage, digest)) {
+      skippedUploadedByBuild(pathOnStage, digest);
+      sfLogger.info("Skipping artifact JAR, already uploaded by this or an unfinished deploy");
+      listeners.uploadFinished(
+          new UploadResult(
+              artifactFileName,
+              artifactDirOnStage,
+              UploadResult.Decision.SKIPPED_IDENTICAL,
+              file.length(),
+              elapsedMillisSince(start)));
+      return;
+    }
+    boolean overwrite = true;
+    if (useStageIndex && file.isFile()) {
+      StageIndex artifactIndex = StageIndex.load(executor, stageName + "/" + pathOnStage);
+      if (artifactIndex.get(pathOnStage) != null) {
+        overwrite = false;
+        try {
+          if (artifactIndex.containsIdentical(pathOnStage, FileDigest.md5Hex(file))) {
+            sfLogger.info("Skipping artifact JAR, identical file found on stage");
+            listeners.uploadFinished(
+                new UploadResult(
+                    artifactFileName,
+                    artifactDirOnStage,
+                    UploadResult.Decision.SKIPPED_IDENTICAL,
+                    file.length(),
+                    elapsedMillisSince(start)));
+            return;
+          }
+        } catch (IOException e) {
+          sfLogger.info(String.format("Could not compute digest of %s, uploading: %s", file, e));
+        }
+      }
+    }
+    // LIST reports the md5 of the encrypted file on encrypted stages, so a different md5 doesn't
+    // mean different content. Without OVERWRITE the driver still skips a file with the same digest
+    boolean transferred = uploadFiles(localFileName, artifactDirOnStage, overwrite);
+    if (transferred) {
+      artifactUploaded = true;
+      checkpointImportsOverwritten();
+    }
+    recordUploaded(pathOnStage, digest, transferred);
+    listeners.uploadFinished(
+        new UploadResult(
+            artifactFileName,
+            artifactDirOnStage,
+            transferred ? UploadResult.Decision.UPLOADED : UploadResult.Decision.SKIPPED_IDENTICAL,
+            file.length(),
+            elapsedMillisSince(start)));
+    sfLogger.debug(transferred ? "Artifact JAR uploaded!" : "Artifact JAR skipped by PUT");
+  }
+
+  private static long elapsedMillisSince(long startNanos) {
+    return (System.nanoTime() - startNanos) / 1_000_000;
+  }
+
+  // Digest of a file for the checkpoint and the shared uploads, null when uploads are not recorded
+  // or the file can't be read
+  private String uploadDigest(File file) {
+    if ((checkpoint == null && sharedUploads == null) || !file.isFile()) {
+      return null;
+    }
+    try {
+      return FileDigest.sha256Hex(file);
+    } catch (IOException e) {
+      sfLogger.info(String.format("Could not compute digest of %s: %s", file, e));
+      return null;
+    }
+  }
+
+  // Returns true if the file was uploaded with the same content by an unfinished deploy to the
+  // same target or by another deploy of the build
+  private boolean isUploaded(String pathOnStage, String digest) {
+    return digest != null
+        && ((checkpoint != null && checkpoint.isUploaded(pathOnStage, digest))
+            || (sharedUploads != null
+                && sharedUploads.isUploaded(uploadTarget, pathOnStage, digest)));
+  }
+
+  // A file another deploy of the build transferred was overwritten all the same, so the functions
+  // of this deploy importing it are recreated like after an upload of their own
+  private void skippedUploadedByBuild(String pathOnStage, String digest) {
+    if (digest != null
+        && sharedUploads != null
+        && sharedUploads.isTransferred(uploadTarget, pathOnStage, digest)) {
+      importsUploadedByBuild = true;
+      checkpointImportsOverwritten();
+    }
+  }
+
+  // A checkpoint which can't be written only costs the rerun some work, so the deploy goes on
+  private void recordUploaded(String pathOnStage, String digest, boolean transferred) {
+    if (digest == null) {
+      return;
+    }
+    if (sharedUploads != null) {
+      sharedUploads.recordUpload(uploadTarget, pathOnStage, digest, transferred);
+    }
+    if (checkpoint == null) {
+      return;
+    }
+    try {
+      checkpoint.recordUpload(pathOnStage, digest);
+    } catch (IOException e) {
+      sfLogger.info("Could not write the deploy checkpoint: " + e);
+    }
+  }
+
+  // Recorded before the uploaded file, so that a rerun which skips its upload still recreates the
+  // functions importing it
+  private void checkpointImportsOverwritten() {
+    if (checkpoint == null) {
+      return;
+    }
+    try {
+      checkpoint.recordImportsOverwritten();
+    } catch (IOException e) {
+      sfLogger.info("Could not write the deploy checkpoint: " + e);
+    }
+  }
+
+  private void checkpointCreated(UserDefined udx) {
+    if (checkpoint == null) {
+      return;
+    }
+    try {
+      checkpoint.recordCreated(udx, getCreateStatement(udx));
+    } catch (IOException e) {
+      sfLogger.info("Could not write the deploy checkpoint: " + e);
+    }
+  }
+
+  /**
+   * Uploads the project artifact, shrunk to the classes reachable from the handlers of the
+   * functions and procedures when artifact shrinking is on
+   */
+  public void uploadArtifact(String localFileName, Collection<? extends UserDefined> udxs)
+      throws SQLException {
+    if (shrunkArtifactDir == null) {
+      uploadArtifact(localFileName);
+      return;
+    }
+    inPhase(
+        UPLOAD_ARTIFACT_PHASE,
+        () -> {
+          List<String> handlers = new ArrayList<>();
+          for (UserDefined udx : udxs) {
+            handlers.add(udx.getHandler());
+          }
+          // The shrunk JAR keeps the artifact file name, which is its name on the stage
+          File output = new File(shrunkArtifactDir, artifactFileName);
+          try {
+            shrinkResult =
+                new ArtifactShrinker(keepRules).shrink(new File(localFileName), handlers, output);
+          } catch (IOException e) {
+            throw new SQLException("Error shrinking the artifact JAR " + localFileName, e);
+          }
+          sfLogger.info(shrinkResult.toString());
+          uploadArtifactFile(shrinkResult.getFile().getPath());
+          return null;
+        });
+  }
+
+  /** Returns the outcome of shrinking the artifact, or null if it was not shrunk */
+  public ShrinkResult getShrinkResult() {
+    return shrinkResult;
+  }
+
+  /** Opens the content of an upload. Called once per upload, the stream is closed afterwards */
+  public interface StreamSource {
+    InputStream open() throws IOException;
+  }
+
+  /**
+   * Uploads the project artifact from a stream, e.g. a JAR built in memory, without writing it to a
+   * local file. The artifact is always replaced, since its content is not known before reading it
+   */
+  public void uploadArtifact(StreamSource source) throws SQLException {
+    inPhase(
+        UPLOAD_ARTIFACT_PHASE,
+        () -> {
+          sfLogger.debug("Uploading artifact JAR from a stream: " + artifactFileName);
+          long start = System.nanoTime();
+          long bytes = uploadCountedStream(source, artifactDirOnStage, artifactFileName);
+          artifactUploaded = true;
+          checkpointImportsOverwritten();
+          listeners.uploadFinished(
+              new UploadResult(
+                  artifactFileName,
+                  artifactDirOnStage,
+                  UploadResult.Decision.UPLOADED,
+                  bytes,
+                  elapsedMillisSince(start)));
+          return null;
+        });
+  }
+
+  /**
+   * Uploads the content of the stream to pathOnStage/fileName with the driver's stream upload,
+   * replacing any file of the same name
+   */
+  public void uploadStream(StreamSource source, String pathOnStage, String fileName)
+      throws SQLException {
+    uploadCountedStream(source, pathOnStage, fileName);
+  }
+
+  // Uploads the stream and returns the number of bytes read from it
+  private long uploadCountedStream(StreamSource source, String pathOnStage, String fileName)
+      throws SQLException {
+    try (CountingInputStream in = new CountingInputStream(source.open())) {
+      executor.uploadStream(stageName, pathOnStage, in, fileName);
+      return in.count;
+    } catch (IOException e) {
+      throw new SQLException(
+          String.format("Error reading the content of %s/%s", pathOnStage, fileName), e);
+    }
+  }
+
+  // Counts the bytes read, to report the size of a stream upload
+  private static class CountingInputStream extends FilterInputStream {
+    private long count;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        count += n;
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count += skipped;
+      return skipped;
+    }
+  }
+
+  /** Returns the executor running the statements of this deploy */
+  public StatementExecutor getExecutor() {
+    return executor;
+  }
+
+  /** Returns the report collecting the events of this deploy */
+  public DeployReport getReport() {
+    return report;
+  }
+
+  /** Returns the progress recorded for resuming the deploy, or null if it is not recorded */
+  public DeployCheckpoint getCheckpoint() {
+    return checkpoint;
+  }
+
+  /**
+   * Deletes the recorded progress once the deploy succeeded, so that the next deploy starts over
+   */
+  public void clearCheckpoint() throws IOException {
+    if (checkpoint != null) {
+      checkpoint.clear();
+    }
+  }
+
+  void setCheckpoint(DeployCheckpoint checkpoint) {
+    this.checkpoint = checkpoint;
+  }
+
+  void setSharedUploads(SharedUploads sharedUploads, String uploadTarget) {
+    this.sharedUploads = sharedUploads;
+    this.uploadTarget = uploadTarget;
+  }
+
+  // Replaces the listeners, e.g. with those which already received the connect phase
+  void setListeners(DeployListeners listeners, DeployReport report) {
+    this.listeners = listeners;
+    this.report = report;
+  }
+
+  void setDdlMode(DdlMode ddlMode) {
+    this.ddlMode = ddlMode;
+  }
+
+  void setDdlBatchSize(int ddlBatchSize) {
+    this.ddlBatchSize = ddlBatchSize;
+  }
+
+  void setRemoteDiff(boolean remoteDiff) {
+    this.remoteDiff = remoteDiff;
+  }
+
+  void setArtifactShrinking(File shrunkArtifactDir, List<String> keepRules) {
+    this.shrunkArtifactDir = shrunkArtifactDir;
+    this.keepRules = keepRules;
+  }
+
+  void setPruneImports(boolean pruneImports) {
+    ddlRenderer.setImportPruning(pruneImports ? this::createImportPruner : null);
+  }
+
+  void setDepsToLocalPaths(Map<String, String> depsToLocalPaths) {
+    this.depsToLocalPaths = depsToLocalPaths;
+  }
+
+  void setUseStageIndex(boolean useStageIndex) {
+    this.useStageIndex = useStageIndex;
+  }
+
+  void setUploadThreads(int uploadThreads) {
+    this.uploadThreads = uploadThreads;
+  }
+
+  void setMaxInFlightBytes(long maxInFlightBytes) {
+    this.maxInFlightBytes = maxInFlightBytes;
+  }
+
+  void setWorkScheduler(WorkScheduler workScheduler) {
+    this.workScheduler = workScheduler;
+  }
+
+  void setDependencyLayout(DependencyLayout dependencyLayout) {
+    this.dependencyLayout = dependencyLayout;
+    ddlRenderer.invalidateImports();
+  }
+
+  void setDependencyMirrorDir(File dependencyMirrorDir) {
+    this.dependencyMirrorDir = dependencyMirrorDir;
+  }
+
+  void setDependencyBundleDir(File dependencyBundleDir) {
+    this.dependencyBundleDir = dependencyBundleDir;
+  }
+
+  void setMaxBundleBytes(long maxBundleBytes) {
+    this.maxBundleBytes = maxBundleBytes;
+  }
+
+  /**
+   * Uploads every dependency from its local path, for builds which resolve dependencies in place
+   * instead of copying them to a directory
+   */
+  public void uploadDependencies() throws SQLException {
+    uploadDependencies(null);
   }
 
   public void uploadDependencies(String localFilePath) throws SQLException {
-    sfLogger.info("Uploading dependency JARs from: " + localFilePath);
+    inPhase(
+        UPLOAD_DEPENDENCIES_PHASE,
+        () -> {
+          uploadDependencyFiles(localFilePath);
+          return null;
+        });
+  }
+
+  private void uploadDependencyFiles(String localFilePath) throws SQLException {
+    sfLogger.debug(
+        localFilePath == null
+            ? "Uploading dependency JARs"
+            : "Uploading dependency JARs from: " + localFilePath);
+    dependencyDir = localFilePath;
+    if (useStageIndex) {
+      stageIndex = StageIndex.load(executor, stageName);
+      sfLogger.debug(String.format("Indexed %d files on stage %s", stageIndex.size(), stageName));
+    }
+    if (dependencyLayout != DependencyLayout.MAVEN) {
+      try {
+        if (dependencyLayout == DependencyLayout.BUNDLED) {
+          uploadBundledDependencies(localFilePath);
+        } else {
+          uploadHashedDependencies(localFilePath);
+        }
+      } finally {
+        logUploadSummary();
+      }
+      return;
+    }
+    List<ConcurrentUploader.Upload> uploads = new ArrayList<>();
     for (Map.Entry<String, String> entry : depsToStagePaths.entrySet()) {
       String dependencyFile = entry.getKey();
       String stagePath = entry.getValue();
-      sfLogger.info("Uploading " + dependencyFile);
-      String dependencyFilePath = String.format("%s/%s", localFilePath, dependencyFile);
+      String dependencyFilePath = localDependencyPath(localFilePath, dependencyFile);
+      uploads.add(new DependencyUpload(dependencyFilePath, stagePath, dependencyFile));
+    }
+    try {
+      scheduler().runAll(uploads);
+    } finally {
+      logUploadSummary();
+    }
+  }
+
+  // Places every dependency in the mirror directory under its content-addressed name and uploads
+  // them all into the flat dependency directory of the stage with a single wildcard PUT
+  private void uploadHashedDependencies(String localFilePath) throws SQLException {
+    if (dependencyMirrorDir == null) {
+      throw new IllegalStateException(
+          "A dependency mirror directory is required for the hashed dependency layout");
+    }
+    DependencyMirror mirror = new DependencyMirror(dependencyMirrorDir);
+    List<UploadResult> mirrored = new ArrayList<>();
+    try {
+      mirror.reset();
+      for (Map.Entry<String, String> entry : depsToStagePaths.entrySet()) {
+        String dependencyFile = entry.getKey();
+        String dependencyFilePath = localDependencyPath(localFilePath, dependencyFile);
+        File file = new File(dependencyFilePath);
+        if (!file.isFile()) {
+          skipMissingDependency(dependencyFilePath, entry.getValue(), dependencyFile);
+          continue;
+        }
+        String hashedName = FileDigest.sha256Hex(file) + ".jar";
+        hashedFileNames.put(dependencyFile, hashedName);
+        ddlRenderer.invalidateImports();
+        // Hashed file names never change content, so any file with the same name is identical
+        String pathOnStage = dependencyDirOnStage + "/" + hashedName;
+        if ((stageIndex != null && stageIndex.get(pathOnStage) != null)
+            || isUploaded(pathOnStage, hashedName)) {
+          recordUpload(
+              dependencyFile,
+              dependencyDirOnStage,
+              UploadResult.Decision.SKIPPED_IDENTICAL,
+              file.length(),
+              0);
+          continue;
+        }
+        mirror.add(file, hashedName);
+        mirrored.add(
+            new UploadResult(
+                dependencyFile,
+                dependencyDirOnStage,
+                UploadResult.Decision.UPLOADED,
+                file.length()));
+      }
+    } catch (IOException e) {
+      throw new SQLException(
+          "Error preparing the dependency mirror directory " + dependencyMirrorDir, e);
+    }
+    if (!mirrored.isEmpty()) {
+      sfLogger.debug(
+          String.format("Uploading %d dependency JARs from the mirror", mirrored.size()));
+      uploadMirrored(mirror, mirrored);
+      for (UploadResult result : mirrored) {
+        String hashedName = hashedFileNames.get(result.getDependencyFile());
+        recordUploaded(dependencyDirOnStage + "/" + hashedName, hashedName, true);
+      }
+    }
+  }
+
+  // Merges the dependencies into bundles, or reuses the cached bundles of the same dependencies,
+  // and uploads the bundles missing from the stage with a single wildcard PUT from the mirror
+  // directory
+  private void uploadBundledDependencies(String localFilePath) throws SQLException {
+    if (dependencyMirrorDir == null || dependencyBundleDir == null) {
+      throw new IllegalStateException(
+          "A dependency mirror directory and a bundle directory are required for the bundled"
+              + " dependency layout");
+    }
+    Map<String, File> files = new HashMap<>();
+    for (Map.Entry<String, String> entry : depsToStagePaths.entrySet()) {
+      String dependencyFile = entry.getKey();
+      String dependencyFilePath = localDependencyPath(localFilePath, dependencyFile);
+      File file = new File(dependencyFilePath);
+      if (file.isFile()) {
+        files.put(dependencyFile, file);
+      } else {
+        skipMissingDependency(dependencyFilePath, entry.getValue(), dependencyFile);
+      }
+    }
+    DependencyMirror mirror = new DependencyMirror(dependencyMirrorDir);
+    List<UploadResult> mirrored = new ArrayList<>();
+    try {
+      bundles = new DependencyBundler(dependencyBundleDir, maxBundleBytes).bundle(files);
+      ddlRenderer.invalidateImports();
+      mirror.reset();
+      for (DependencyBundler.Bundle bundle : bundles) {
+        File file = bundle.getFile();
+        sfLogger.debug(
+            String.format(
+                "%s %s holding %d dependency JARs (%d bytes)",
+                bundle.isCached() ? "Reusing cached bundle" : "Built bundle",
+                bundle.getName(),
+                bundle.getDependencyFiles().size(),
+                file.length()));
+        // Bundle names never change content, so any file with the same name is identical
+        String pathOnStage = dependencyDirOnStage + "/" + bundle.getName();
+        if ((stageIndex != null && stageIndex.get(pathOnStage) != null)
+            || isUploaded(pathOnStage, bundle.getName())) {
+          recordUpload(
+              bundle.getName(),
+              dependencyDirOnStage,
+              UploadResult.Decision.SKIPPED_IDENTICAL,
+              file.length(),
+              0);
+          continue;
+        }
+        mirror.add(file, bundle.getName());
+        mirrored.add(
+            new UploadResult(
+                bundle.getName(),
+                dependencyDirOnStage,
+                UploadResult.Decision.UPLOADED,
+                file.length()));
+      }
+    } catch (IOException e) {
+      throw new SQLException("Error bundling the dependency JARs in " + dependencyBundleDir, e);
+    }
+    sfLogger.info(
+        String.format("Bundled %d dependency JARs into %d bundles", files.size(), bundles.size()));
+    if (!mirrored.isEmpty()) {
+      sfLogger.debug(String.format("Uploading %d bundles from the mirror", mirrored.size()));
+      uploadMirrored(mirror, mirrored);
+      for (UploadResult result : mirrored) {
+        recordUploaded(
+            dependencyDirOnStage + "/" + result.getDependencyFile(),
+            result.getDependencyFile(),
+            true);
+      }
+    }
+  }
+
+  // Uploads the files of the mirror with a single wildcard PUT. Its elapsed time is reported by the
+  // query event of the PUT, the files themselves report none
+  private void uploadMirrored(DependencyMirror mirror, List<UploadResult> mirrored)
+      throws SQLException {
+    uploadFiles(mirror.wildcardPath(), dependencyDirOnStage, stageIndex != null);
+    for (UploadResult result : mirrored) {
+      uploadResults.put(result.getDependencyFile(), result);
+      listeners.uploadFinished(result);
+    }
+  }
+
+  // Path of a dependency file on the local disk
+  private String localDependencyPath(String localFilePath, String dependencyFile) {
+    String localPath = depsToLocalPaths.get(dependencyFile);
+    if (localPath != null || localFilePath == null) {
+      // Without a directory, a dependency missing from the local paths is reported as missing
+      return localPath != null ? localPath : dependencyFile;
+    }
+    return String.format("%s/%s", localFilePath, dependencyFile);
+  }
+
+  // Uploads a single dependency file on a ConcurrentUploader worker
+  private class DependencyUpload implements ConcurrentUploader.Upload {
+    private final String dependencyFilePath;
+    private final String stagePath;
+    private final String dependencyFile;
+    private final long bytes;
+
+    DependencyUpload(String dependencyFilePath, String stagePath, String dependencyFile) {
+      this.dependencyFilePath = dependencyFilePath;
+      this.stagePath = stagePath;
+      this.dependencyFile = dependencyFile;
+      this.bytes = new File(dependencyFilePath).length();
+    }
+
+    @Override
+    public String getName() {
+      return dependencyFile;
+    }
+
+    @Override
+    public long getBytes() {
+      return bytes;
+    }
+
+    @Override
+    public void run() throws SQLException {
+      sfLogger.debug("Uploading " + dependencyFile);
       uploadDependencyIfExists(dependencyFilePath, stagePath, dependencyFile);
     }
-    sfLogger.info("Dependency JARs uploaded!");
   }
 
   // Split up uploadDependencies function to avoid mocking files in tests
   public void uploadDependencyIfExists(
       String dependencyFilePath, String stagePath, String dependencyFile) throws SQLException {
-    if (new File(dependencyFilePath).isFile()) {
-      uploadFiles(dependencyFilePath, stagePath, false);
-    } else {
-      // If a jar file for the dependency is not found, skip it
-      // These are usually Gradle platform dependencies or Maven Bill-Of-Materials (BOM) which do
-      // not need to be uploaded
-      skippedDependencies.add(dependencyFile);
-      sfLogger.info(
-          String.format(
-              "Dependency jar not found at %s. This is not a problem if the dependency was a platform/bill-of-materials dependency",
-              dependencyFilePath));
+    File file = new File(dependencyFilePath);
+    if (!file.isFile()) {
+      skipMissingDependency(dependencyFilePath, stagePath, dependencyFile);
+      return;
+    }
+    long start = System.nanoTime();
+    String pathOnStage = stagePath + "/" + dependencyFile;
+    String digest = uploadDigest(file);
+    if (isUploaded(pathOnStage, digest)
+        || (stageIndex != null && isIdenticalOnStage(file, pathOnStage))) {
+      if (dependencyLayout == DependencyLayout.MAVEN) {
+        skippedUploadedByBuild(pathOnStage, digest);
+      }
+      recordUpload(
+          dependencyFile,
+          stagePath,
+          UploadResult.Decision.SKIPPED_IDENTICAL,
+          file.length(),
+          elapsedMillisSince(start));
+      sfLogger.debug(String.format("Skipping %s, identical file already uploaded", dependencyFile));
+      return;
+    }
+    // A file the stage index doesn't hold is absent, so it is put directly instead of letting PUT
+    // list the stage again. A file with another md5 may only be encrypted, so PUT still compares
+    // its digest and skips identical content
+    boolean transferred =
+        uploadFiles(
+            dependencyFilePath,
+            stagePath,
+            stageIndex != null && stageIndex.get(pathOnStage) == null);
+    if (transferred && dependencyLayout == DependencyLayout.MAVEN) {
+      checkpointImportsOverwritten();
+    }
+    recordUploaded(pathOnStage, digest, transferred);
+    recordUpload(
+        dependencyFile,
+        stagePath,
+        transferred ? UploadResult.Decision.UPLOADED : UploadResult.Decision.SKIPPED_IDENTICAL,
+        file.length(),
+        elapsedMillisSince(start));
+  }
+
+  private void skipMissingDependency(
+      String dependencyFilePath, String stagePath, String dependencyFile) {
+    // If a jar file for the dependency is not found, skip it
+    // These are usually Gradle platform dependencies or Maven Bill-Of-Materials (BOM) which do
+    // not need to be uploaded
+    skippedDependencies.add(dependencyFile);
+    ddlRenderer.invalidateImports();
+    recordUpload(dependencyFile, stagePath, UploadResult.Decision.SKIPPED_MISSING, 0, 0);
+    sfLogger.debug(
+        String.format(
+            "Dependency jar not found at %s. This is not a problem if the dependency was a platform/bill-of-materials dependency",
+            dependencyFilePath));
+  }
+
+  private boolean isIdenticalOnStage(File file, String pathOnStage) {
+    if (stageIndex.get(pathOnStage) == null) {
+      return false;
     }
+    try {
+      return stageIndex.containsIdentical(pathOnStage, FileDigest.md5Hex(file));
+    } catch (IOException e) {
+      sfLogger.info(String.format("Could not compute digest of %s, uploading: %s", file, e));
+      return false;
+    }
+  }
+
+  private void recordUpload(
+      String dependencyFile,
+      String stagePath,
+      UploadResult.Decision decision,
+      long bytes,
+      long elapsedMillis) {
+    UploadResult result =
+        new UploadResult(dependencyFile, stagePath, decision, bytes, elapsedMillis);
+    uploadResults.put(dependencyFile, result);
+    listeners.uploadFinished(result);
   }
 
-  public void uploadFiles(String localFileName, String pathOnStage, boolean overwrite)
+  private void logUploadSummary() {
+    Map<UploadResult.Decision, Integer> counts = new EnumMap<>(UploadResult.Decision.class);
+    Map<UploadResult.Decision, Long> bytes = new EnumMap<>(UploadResult.Decision.class);
+    for (UploadResult result : uploadResults.values()) {
+      counts.merge(result.getDecision(), 1, Integer::sum);
+      bytes.merge(result.getDecision(), result.getBytes(), Long::sum);
+    }
+    sfLogger.info(
+        String.format(
+            "Dependency upload summary: %d uploaded (%d bytes), %d skipped identical (%d bytes"
+                + " saved), %d skipped missing",
+            counts.getOrDefault(UploadResult.Decision.UPLOADED, 0),
+            bytes.getOrDefault(UploadResult.Decision.UPLOADED, 0L),
+            counts.getOrDefault(UploadResult.Decision.SKIPPED_IDENTICAL, 0),
+            bytes.getOrDefault(UploadResult.Decision.SKIPPED_IDENTICAL, 0L),
+            counts.getOrDefault(UploadResult.Decision.SKIPPED_MISSING, 0)));
+  }
+
+  /** Returns the upload decision for each dependency file processed by uploadDependencies */
+  public Map<String, UploadResult> getUploadResults() {
+    return Collections.unmodifiableMap(uploadResults);
+  }
+
+  /**
+   * Puts the local files on the stage
+   *
+   * @return false if PUT skipped every file because the stage already held the same content
+   */
+  public boolean uploadFiles(String localFileName, String pathOnStage, boolean overwrite)
       throws SQLException {
     Map<String, String> options = new HashMap<>();
     options.put("AUTO_COMPRESS", "FALSE");
@@ -103,7 +893,26 @@ public class Snowflake {
             normalizeLocalFile(localFileName),
             String.format("@%s/%s", stageName, pathOnStage),
             getOptionsStatement(options));
-    conn.createStatement().execute(sql);
+    return executor.execute(sql, Snowflake::anyTransferred);
+  }
+
+  // Whether the rows of a PUT report a file as transferred. Without a status to tell, the files
+  // count as transferred so that the functions importing them are recreated
+  private static boolean anyTransferred(ResultSet rs) throws SQLException {
+    if (rs == null) {
+      return true;
+    }
+    int statusColumn;
+    try {
+      statusColumn = rs.findColumn("status");
+    } catch (SQLException e) {
+      return true;
+    }
+    boolean transferred = false;
+    while (rs.next()) {
+      transferred |= !"SKIPPED".equalsIgnoreCase(rs.getString(statusColumn));
+    }
+    return transferred;
   }
 
   private String normalizeLocalFile(String file) {
@@ -132,42 +941,315 @@ public class Snowflake {
   }
 
   public String getImportString() {
+    return ddlRenderer.getImportClause();
+  }
+
+  /** Returns the stage paths of the IMPORTS clause, e.g. "@mystage/libs/project.jar" */
+  public List<String> getImportPaths() {
+    return ddlRenderer.getImportPaths();
+  }
+
+  /** Returns the renderer of the CREATE OR REPLACE statements of this deploy */
+  public DdlRenderer getDdlRenderer() {
+    return ddlRenderer;
+  }
+
+  // Computes the import paths for the renderer, which keeps them until the skipped or hashed
+  // dependencies change
+  private List<String> computeImportPaths() {
     String artifact = artifactDirOnStage + "/" + artifactFileName;
-    List<String> imports = new ArrayList<>();
+    // Identical jars share one content-addressed file in the hashed layout, so imports are
+    // deduplicated while keeping their order
+    Set<String> imports = new LinkedHashSet<>();
     imports.add(artifact);
+    if (dependencyLayout == DependencyLayout.BUNDLED && bundles != null) {
+      for (DependencyBundler.Bundle bundle : bundles) {
+        imports.add(dependencyDirOnStage + "/" + bundle.getName());
+      }
+      return stagePaths(imports);
+    }
     for (Map.Entry<String, String> entry : depsToStagePaths.entrySet()) {
       String dependencyFile = entry.getKey();
       String stagePath = entry.getValue();
       if (!skippedDependencies.contains(dependencyFile)) {
-        imports.add(stagePath + "/" + dependencyFile);
+        imports.add(dependencyImportPath(dependencyFile, stagePath));
       }
     }
-    List<String> importPaths = new ArrayList<>();
-    for (String s : imports) {
-      importPaths.add(String.format("'@%s/%s'", stageName, s));
+    return stagePaths(imports);
+  }
+
+  private List<String> stagePaths(Collection<String> paths) {
+    List<String> stagePaths = new ArrayList<>(paths.size());
+    for (String s : paths) {
+      stagePaths.add("@" + stageName + "/" + s);
     }
-    return String.join(", ", importPaths);
+    return stagePaths;
+  }
+
+  // Creates the pruner of the imports from the local JAR of each import path
+  private ImportPruner createImportPruner(List<String> importPaths) {
+    Map<String, File> localFiles = new HashMap<>();
+    if (artifactLocalFile != null && artifactLocalFile.isFile()) {
+      localFiles.put(
+          "@" + stageName + "/" + artifactDirOnStage + "/" + artifactFileName, artifactLocalFile);
+    }
+    if (dependencyLayout == DependencyLayout.BUNDLED && bundles != null) {
+      for (DependencyBundler.Bundle bundle : bundles) {
+        localFiles.put(
+            "@" + stageName + "/" + dependencyDirOnStage + "/" + bundle.getName(),
+            bundle.getFile());
+      }
+      return new ImportPruner(importPaths, localFiles);
+    }
+    for (Map.Entry<String, String> entry : depsToStagePaths.entrySet()) {
+      String dependencyFile = entry.getKey();
+      File file = new File(localDependencyPath(dependencyDir, dependencyFile));
+      if (!skippedDependencies.contains(dependencyFile) && file.isFile()) {
+        localFiles.put(
+            "@" + stageName + "/" + dependencyImportPath(dependencyFile, entry.getValue()), file);
+      }
+    }
+    return new ImportPruner(importPaths, localFiles);
+  }
+
+  // Logs the imports of each function or procedure when import pruning is on
+  private void logPrunedImports(List<? extends UserDefined> udxs) {
+    int kept = 0;
+    int total = 0;
+    for (UserDefined udx : udxs) {
+      PrunedImports pruned = ddlRenderer.getPrunedImports(udx);
+      if (pruned == null) {
+        return;
+      }
+      sfLogger.debug(udx.getType() + " " + udx.getName() + ": " + pruned);
+      kept += pruned.getImportPaths().size();
+      total += pruned.getImportPaths().size() + pruned.getPrunedPaths().size();
+    }
+    sfLogger.info(
+        String.format(
+            "Import pruning kept %d of %d imports across %d functions/procedures",
+            kept, total, udxs.size()));
+  }
+
+  // Path of a dependency file relative to the stage root
+  private String dependencyImportPath(String dependencyFile, String stagePath) {
+    String hashedName = hashedFileNames.get(dependencyFile);
+    if (dependencyLayout == DependencyLayout.HASHED && hashedName != null) {
+      return dependencyDirOnStage + "/" + hashedName;
+    }
+    return stagePath + "/" + dependencyFile;
   }
 
   public String getPackageString(String udxType) {
+    return ddlRenderer.getPackageClause(udxType);
+  }
+
+  /** Returns the packages of the PACKAGES clause for a function or procedure */
+  public List<String> getPackages(String udxType) {
     if (udxType.equals(UserDefined.procedure)) {
-      return "PACKAGES = ('com.snowflake:snowpark:latest')\n";
+      return Collections.singletonList("com.snowflake:snowpark:latest");
     }
-    return "";
+    return Collections.emptyList();
+  }
+
+  /** Returns the CREATE OR REPLACE statement for the function or procedure */
+  public String getCreateStatement(UserDefined udx) {
+    return ddlRenderer.render(udx);
   }
 
   public void createFunctionOrProc(UserDefined udx) throws SQLException {
-    String s =
+    String s = getCreateStatement(udx);
+    sfLogger.debug("Running create function statement: ");
+    sfLogger.debug(s);
+    executor.setPhase(CREATE_FUNCTIONS_PHASE);
+    executor.execute(s);
+  }
+
+  /**
+   * Creates every function and procedure using the configured DDL mode
+   *
+   * @return the outcome for each function or procedure
+   * @throws SQLException if any function or procedure could not be created. In SYNC mode this is
+   *     thrown at the first failure, otherwise once every statement has finished
+   */
+  public List<CreateResult> createFunctionsOrProcs(List<? extends UserDefined> allUdxs)
+      throws SQLException {
+    return inPhase(CREATE_FUNCTIONS_PHASE, () -> createAll(allUdxs));
+  }
+
+  private List<CreateResult> createAll(List<? extends UserDefined> allUdxs) throws SQLException {
+    List<CreateResult> results = new ArrayList<>();
+    List<UserDefined> udxs = new ArrayList<>(allUdxs);
+    if (remoteDiff) {
+      udxs = inPhase(DIFF_PHASE, () -> findChanged(allUdxs, results));
+    }
+    if (checkpoint != null) {
+      udxs = skipCreated(udxs, results);
+    }
+    logPrunedImports(udxs);
+    if (ddlMode == DdlMode.SYNC) {
+      for (UserDefined udx : udxs) {
+        try {
+          createFunctionOrProc(udx);
+        } catch (SQLException e) {
+          listeners.udxFinished(new CreateResult(udx, e));
+          throw e;
+        }
+        checkpointCreated(udx);
+        CreateResult result = new CreateResult(udx, null);
+        listeners.udxFinished(result);
+        results.add(result);
+      }
+      logCreateSummary(results);
+      return results;
+    }
+    List<String> statements = ddlRenderer.renderAll(udxs);
+    for (String s : statements) {
+      sfLogger.debug("Submitting create function statement: ");
+      sfLogger.debug(s);
+    }
+    executor.setPhase(CREATE_FUNCTIONS_PHASE);
+    List<SQLException> errors =
+        ddlMode == DdlMode.BATCH
+            ? executeAllBatched(statements)
+            : executor.executeAllAsync(statements);
+    for (int i = 0; i < udxs.size(); i++) {
+      if (errors.get(i) == null) {
+        checkpointCreated(udxs.get(i));
+      }
+      results.add(new CreateResult(udxs.get(i), errors.get(i)));
+    }
+    reportCreateResults(results);
+    return results;
+  }
+
+  // Runs independent work on the work scheduler, or on threads of the deploy without one
+  private WorkScheduler scheduler() {
+    return workScheduler != null
+        ? workScheduler
+        : new ConcurrentUploader(uploadThreads, maxInFlightBytes);
+  }
+
+  // Sends the batches one after the other, or hands them to the work scheduler if there is one
+  private List<SQLException> executeAllBatched(List<String> statements) throws SQLException {
+    if (workScheduler == null) {
+      return executor.executeAllBatched(statements, ddlBatchSize);
+    }
+    return executor.executeAllBatched(statements, ddlBatchSize, workScheduler);
+  }
+
+  // Returns the functions and procedures whose DDL differs from their definition in Snowflake. A
+  // result is added for each unchanged one
+  private List<UserDefined> findChanged(
+      List<? extends UserDefined> udxs, List<CreateResult> unchanged) throws SQLException {
+    List<UserDefined> changed = new ArrayList<>(udxs);
+    if (importsOverwritten() || (checkpoint != null && checkpoint.isImportsOverwritten())) {
+      sfLogger.info("Imported files were uploaded, recreating every function and procedure");
+      return changed;
+    }
+    RemoteCatalog catalog = RemoteCatalog.load(executor);
+    catalog.describeAll(udxs, scheduler());
+    changed.clear();
+    for (UserDefined udx : udxs) {
+      if (catalog.isUnchanged(udx, ddlRenderer.getImportPaths(udx), getPackages(udx.getType()))) {
+        CreateResult result = CreateResult.unchanged(udx);
+        sfLogger.debug(result.toString());
+        listeners.udxFinished(result);
+        unchanged.add(result);
+      } else {
+        changed.add(udx);
+      }
+    }
+    sfLogger.info(
+        String.format(
+            "%d of %d functions/procedures unchanged in Snowflake", unchanged.size(), udxs.size()));
+    return changed;
+  }
+
+  // Replacing a function is what makes it pick up new content of an imported file, so everything
+  // is recreated when an imported file was overwritten. Files in the hashed and bundled layouts
+  // never change content, a new file name changes the imports instead. Only the uploads of this
+  // deploy count, the functions created by the unfinished deploy already picked up its uploads
+  private boolean importsOverwritten() {
+    boolean importsOverwritten = artifactUploaded || importsUploadedByBuild;
+    if (dependencyLayout == DependencyLayout.MAVEN) {
+      for (UploadResult result : uploadResults.values()) {
+        importsOverwritten |= result.getDecision() == UploadResult.Decision.UPLOADED;
+      }
+    }
+    return importsOverwritten;
+  }
+
+  // Returns the functions and procedures not yet created with the same DDL by the unfinished
+  // deploy. A result is added for each one already created
+  private List<UserDefined> skipCreated(List<UserDefined> udxs, List<CreateResult> created) {
+    if (importsOverwritten()) {
+      return udxs;
+    }
+    List<UserDefined> remaining = new ArrayList<>();
+    for (UserDefined udx : udxs) {
+      if (checkpoint.isCreated(udx, getCreateStatement(udx))) {
+        CreateResult result = CreateResult.unchanged(udx);
+        sfLogger.debug(result + ", created by the unfinished deploy");
+        listeners.udxFinished(result);
+        created.add(result);
+      } else {
+        remaining.add(udx);
+      }
+    }
+    if (remaining.size() < udxs.size()) {
+      sfLogger.info(
+          String.format(
+              "Resuming after %d of %d functions/procedures created by the unfinished deploy",
+              udxs.size() - remaining.size(), udxs.size()));
+    }
+    return remaining;
+  }
+
+  // Logs the outcome of each function or procedure and throws if any of them failed. Failures are
+  // logged at info level, the rest only at debug level
+  private void reportCreateResults(List<CreateResult> results) throws SQLException {
+    List<CreateResult> failed = new ArrayList<>();
+    for (CreateResult result : results) {
+      if (!result.isUnchanged()) {
+        listeners.udxFinished(result);
+      }
+      if (result.isSucceeded()) {
+        sfLogger.debug(result.toString());
+      } else {
+        sfLogger.info(result.toString());
+        failed.add(result);
+      }
+    }
+    logCreateSummary(results);
+    if (failed.isEmpty()) {
+      return;
+    }
+    List<String> names = new ArrayList<>();
+    for (CreateResult result : failed) {
+      names.add(result.getUdx().getName());
+    }
+    SQLException aggregate =
+        new SQLException(
+            String.format(
+                "%d of %d functions/procedures failed: %s",
+                failed.size(), results.size(), String.join(", ", names)),
+            failed.get(0).getError());
+    failed.stream().skip(1).forEach(result -> aggregate.addSuppressed(result.getError()));
+    throw aggregate;
+  }
+
+  private void logCreateSummary(List<CreateResult> results) {
+    int unchanged = 0;
+    int failed = 0;
+    for (CreateResult result : results) {
+      unchanged += result.isUnchanged() ? 1 : 0;
+      failed += result.isSucceeded() ? 0 : 1;
+    }
+    sfLogger.info(
         String.format(
-                "CREATE OR REPLACE %s %s (%s)\n", udx.getType(), udx.getName(), udx.getInputs())
-            + String.format("RETURNS %s\n", udx.getReturns())
-            + "LANGUAGE java\n"
-            + getPackageString(udx.getType())
-            + String.format("HANDLER = '%s'\n", udx.getHandler())
-            + String.format("IMPORTS = (%s);", getImportString());
-    sfLogger.info("Running create function statement: ");
-    sfLogger.info(s);
-    conn.createStatement().execute(s);
+            "Functions/procedures: %d created, %d unchanged, %d failed",
+            results.size() - unchanged - failed, unchanged, failed));
   }
 
   private String normalizeStageLocation(String name) {
@@ -1,12 +1,18 @@
 package com.snowflake.plugins.udf.core;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import net.snowflake.client.jdbc.SnowflakeConnectionV1;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /** Builder class to configure Snowflake object from properties file and argument map */
 public class SnowflakeBuilder {
@@ -18,8 +24,52 @@ public class SnowflakeBuilder {
   private String artifactFileName;
   // A map of each dependency to its path on the stage
   private Map<String, String> depsToStagePaths;
+  // A map of each dependency to its local file path, e.g. in the local repository
+  private Map<String, String> depsToLocalPaths = new HashMap<>();
   // Logger object passed from Maven/Gradle plugin
   private SnowflakeLogger sfLogger;
+  // Whether to skip dependency uploads using a single LIST of the stage
+  private boolean stageIndex = false;
+  // Number of dependency files uploaded at the same time
+  private int uploadThreads = 4;
+  // Maximum total size of the dependency files uploaded at the same time
+  private long maxInFlightBytes = 256L * 1024 * 1024;
+  // How dependency files are arranged on the stage
+  private DependencyLayout dependencyLayout = DependencyLayout.MAVEN;
+  // Local directory used to build up the hashed dependency layout before it is uploaded
+  private File dependencyMirrorDir;
+  // Local directory caching the bundles of the bundled layout
+  private File dependencyBundleDir;
+  // Maximum size of the dependencies merged into one bundle in the bundled layout
+  private long maxBundleBytes = 64L * 1024 * 1024;
+  // Pool shared by every deploy of the build. A new connection is opened when not set
+  private SnowflakeConnectionPool connectionPool;
+  // Query timeout applied to each statement in seconds, 0 means no timeout
+  private int queryTimeoutSeconds = 0;
+  // How the CREATE FUNCTION/PROCEDURE statements are sent to Snowflake
+  private DdlMode ddlMode = DdlMode.SYNC;
+  // Number of statements sent in one multi-statement request in BATCH mode
+  private int ddlBatchSize = 20;
+  // When true, functions and procedures which are unchanged in Snowflake are not replaced
+  private boolean remoteDiff = false;
+  // When true, each function or procedure only imports the JARs its handler class reaches
+  private boolean pruneImports = false;
+  // When true, the artifact is shrunk to the classes reachable from the handlers before upload
+  private boolean shrinkArtifact = false;
+  // Directory the shrunk artifact is written to
+  private File shrunkArtifactDir;
+  // Classes kept in the shrunk artifact even if no handler reaches them
+  private List<String> keepRules = new ArrayList<>();
+  // Listeners receiving the structured events of the deploy, besides its report and JFR events
+  private List<DeployListener> listeners = new ArrayList<>();
+  // Directory holding the progress of unfinished deploys, null to not record progress
+  private File checkpointDir;
+  // When false, the progress of an unfinished deploy is discarded and the deploy starts over
+  private boolean resume = true;
+  // Files uploaded by the other deploys of the build
+  private SharedUploads sharedUploads;
+  // Runs the dependency uploads and the DDL batches, null for the threads of the deploy
+  private WorkScheduler workScheduler;
 
   public SnowflakeBuilder(SnowflakeLogger l) {
     sfLogger = l;
@@ -68,6 +118,146 @@ public class SnowflakeBuilder {
     return this;
   }
 
+  /**
+   * Sets the local file of each dependency, so that dependencies are uploaded from where they were
+   * resolved instead of a copy in the dependency directory
+   */
+  public SnowflakeBuilder depsToLocalPaths(Map<String, String> depsToLocalPaths) {
+    this.depsToLocalPaths = depsToLocalPaths;
+    return this;
+  }
+
+  public SnowflakeBuilder stageIndex(boolean stageIndex) {
+    this.stageIndex = stageIndex;
+    return this;
+  }
+
+  public SnowflakeBuilder uploadThreads(int uploadThreads) {
+    if (uploadThreads < 1) {
+      throw new IllegalArgumentException("'uploadThreads' must be at least 1");
+    }
+    this.uploadThreads = uploadThreads;
+    return this;
+  }
+
+  public SnowflakeBuilder maxInFlightMegabytes(long maxInFlightMegabytes) {
+    if (maxInFlightMegabytes < 1) {
+      throw new IllegalArgumentException("'maxInFlightMegabytes' must be at least 1");
+    }
+    this.maxInFlightBytes = maxInFlightMegabytes * 1024 * 1024;
+    return this;
+  }
+
+  public SnowflakeBuilder dependencyLayout(String dependencyLayout) {
+    this.dependencyLayout = DependencyLayout.fromString(dependencyLayout);
+    return this;
+  }
+
+  public SnowflakeBuilder dependencyMirrorDir(File dependencyMirrorDir) {
+    this.dependencyMirrorDir = dependencyMirrorDir;
+    return this;
+  }
+
+  public SnowflakeBuilder dependencyBundleDir(File dependencyBundleDir) {
+    this.dependencyBundleDir = dependencyBundleDir;
+    return this;
+  }
+
+  public SnowflakeBuilder bundleMaxMegabytes(long bundleMaxMegabytes) {
+    if (bundleMaxMegabytes < 1) {
+      throw new IllegalArgumentException("'bundleMaxMegabytes' must be at least 1");
+    }
+    this.maxBundleBytes = bundleMaxMegabytes * 1024 * 1024;
+    return this;
+  }
+
+  public SnowflakeBuilder connectionPool(SnowflakeConnectionPool connectionPool) {
+    this.connectionPool = connectionPool;
+    return this;
+  }
+
+  public SnowflakeBuilder queryTimeoutSeconds(int queryTimeoutSeconds) {
+    if (queryTimeoutSeconds < 0) {
+      throw new IllegalArgumentException("'queryTimeoutSeconds' must not be negative");
+    }
+    this.queryTimeoutSeconds = queryTimeoutSeconds;
+    return this;
+  }
+
+  public SnowflakeBuilder ddlMode(String ddlMode) {
+    this.ddlMode = DdlMode.fromString(ddlMode);
+    return this;
+  }
+
+  public SnowflakeBuilder remoteDiff(boolean remoteDiff) {
+    this.remoteDiff = remoteDiff;
+    return this;
+  }
+
+  public SnowflakeBuilder pruneImports(boolean pruneImports) {
+    this.pruneImports = pruneImports;
+    return this;
+  }
+
+  public SnowflakeBuilder shrinkArtifact(boolean shrinkArtifact) {
+    this.shrinkArtifact = shrinkArtifact;
+    return this;
+  }
+
+  public SnowflakeBuilder shrunkArtifactDir(File shrunkArtifactDir) {
+    this.shrunkArtifactDir = shrunkArtifactDir;
+    return this;
+  }
+
+  public SnowflakeBuilder keepRules(Collection<String> keepRules) {
+    if (keepRules != null) {
+      this.keepRules = new ArrayList<>(keepRules);
+    }
+    return this;
+  }
+
+  public SnowflakeBuilder checkpointDir(File checkpointDir) {
+    this.checkpointDir = checkpointDir;
+    return this;
+  }
+
+  public SnowflakeBuilder resume(boolean resume) {
+    this.resume = resume;
+    return this;
+  }
+
+  /**
+   * Shares the uploaded files with the other deploys of the build, so that a file already uploaded
+   * to the same target with the same content is skipped
+   */
+  public SnowflakeBuilder sharedUploads(SharedUploads sharedUploads) {
+    this.sharedUploads = sharedUploads;
+    return this;
+  }
+
+  /**
+   * Hands the dependency uploads and the DDL batches to the scheduler, such as the worker pool of a
+   * build tool, instead of running them on threads of the deploy
+   */
+  public SnowflakeBuilder workScheduler(WorkScheduler workScheduler) {
+    this.workScheduler = workScheduler;
+    return this;
+  }
+
+  /** Adds a listener receiving the phases, statements, uploads and functions of the deploy */
+  public SnowflakeBuilder listener(DeployListener listener) {
+    this.listeners.add(listener);
+    return this;
+  }
+
+  public SnowflakeBuilder ddlBatchSize(int ddlBatchSize) {
+    if (ddlBatchSize < 1) {
+      throw new IllegalArgumentException("'ddlBatchSize' must be at least 1");
+    }
+    this.ddlBatchSize = ddlBatchSize;
+    return this;
+  }
+
   // Creates the Snowflake connection object. Will throw exceptions for invalid connection data such
   // as missing/incorrect url, user, password.
   public Snowflake create() throws SQLException {
@@ -76,21 +266,186 @@ public class SnowflakeBuilder {
           "'url' field missing from auth properties. Add your Snowflake url to continue");
     }
     Properties prop = jdbcConfig(options);
-    sfLogger.info("Creating connection to snowflake at url: " + url);
-    SnowflakeConnectionV1 conn = new SnowflakeConnectionV1(url, prop);
+    DeployReport report = new DeployReport();
+    DeployListeners deployListeners = new DeployListeners();
+    deployListeners.add(report);
+    deployListeners.add(new JfrDeployListener());
+    listeners.forEach(deployListeners::add);
+    sfLogger.debug("Creating connection to snowflake at url: " + url);
+    deployListeners.phaseStarted(Snowflake.CONNECT_PHASE);
+    long start = System.nanoTime();
+    Connection conn;
+    try {
+      conn =
+          connectionPool == null
+              ? SnowflakeConnectionPool.open(url, prop)
+              : connectionPool.getConnection(url, prop);
+    } catch (SQLException | RuntimeException e) {
+      deployListeners.phaseFinished(
+          Snowflake.CONNECT_PHASE, (System.nanoTime() - start) / 1_000_000, false);
+      throw e;
+    }
+    deployListeners.phaseFinished(
+        Snowflake.CONNECT_PHASE, (System.nanoTime() - start) / 1_000_000, true);
     sfLogger.info("Snowflake Session established!");
-    return new Snowflake(sfLogger, conn, stageName, artifactFileName, depsToStagePaths);
+    Snowflake snowflake =
+        new Snowflake(sfLogger, conn, stageName, artifactFileName, depsToStagePaths);
+    snowflake.setListeners(deployListeners, report);
+    snowflake.setCheckpoint(loadCheckpoint());
+    if (sharedUploads != null) {
+      snowflake.setSharedUploads(sharedUploads, target());
+    }
+    snowflake.setDepsToLocalPaths(depsToLocalPaths);
+    snowflake.setUseStageIndex(stageIndex);
+    snowflake.setUploadThreads(uploadThreads);
+    snowflake.setMaxInFlightBytes(maxInFlightBytes);
+    snowflake.setWorkScheduler(workScheduler);
+    snowflake.setDependencyLayout(dependencyLayout);
+    snowflake.setDependencyMirrorDir(dependencyMirrorDir);
+    snowflake.setDependencyBundleDir(dependencyBundleDir);
+    snowflake.setMaxBundleBytes(maxBundleBytes);
+    snowflake.getExecutor().setQueryTimeoutSeconds(queryTimeoutSeconds);
+    snowflake.setDdlMode(ddlMode);
+    snowflake.setDdlBatchSize(ddlBatchSize);
+    snowflake.setRemoteDiff(remoteDiff);
+    snowflake.setPruneImports(pruneImports);
+    if (shrinkArtifact) {
+      if (shrunkArtifactDir == null) {
+        throw new IllegalArgumentException(
+            "A directory for the shrunk artifact is required to shrink the artifact");
+      }
+      snowflake.setArtifactShrinking(shrunkArtifactDir, keepRules);
+    }
+    return snowflake;
+  }
+
+  // Loads the progress of an unfinished deploy to the same target. A checkpoint which can't be read
+  // only costs the deploy some work, so the deploy goes on without it
+  private DeployCheckpoint loadCheckpoint() {
+    if (checkpointDir == null) {
+      return null;
+    }
+    try {
+      DeployCheckpoint checkpoint = new DeployCheckpoint(checkpointDir, target());
+      if (!resume) {
+        checkpoint.clear();
+      } else if (checkpoint.size() > 0) {
+        sfLogger.info(
+            String.format(
+                "Resuming the unfinished deploy recorded in %s (%d items done)",
+                checkpoint.getFile(), checkpoint.size()));
+      }
+      return checkpoint;
+    } catch (IOException e) {
+      sfLogger.info("Could not read the deploy checkpoint, starting over: " + e);
+      return null;
+    }
+  }
+
+  /**
+   * Returns the snapshot of a deploy whose dependencies are all read from their local paths
+   *
+   * @see #snapshot(File, File, File, Collection)
+   */
+  public DeploySnapshot snapshot(
+      File snapshotDir, File artifactFile, Collection<? extends UserDefined> udxs)
+      throws IOException {
+    return snapshot(snapshotDir, artifactFile, null, udxs);
+  }
+
+  /**
+   * Returns the snapshot of the configured deploy, computed from local files only so that it can be
+   * compared with the last successful deploy before connecting to Snowflake
+   *
+   * @param snapshotDir the directory holding the snapshots
+   * @param artifactFile the project artifact file
+   * @param dependencyDir the directory holding the dependency files without a local path
+   * @param udxs the functions and procedures to create
+   */
+  public DeploySnapshot snapshot(
+      File snapshotDir,
+      File artifactFile,
+      File dependencyDir,
+      Collection<? extends UserDefined> udxs)
+      throws IOException {
+    StringBuilder contents = new StringBuilder();
+    contents.append("layout=").append(dependencyLayout).append('\n');
+    if (dependencyLayout == DependencyLayout.BUNDLED) {
+      contents.append("maxBundleBytes=").append(maxBundleBytes).append('\n');
+    }
+    if (pruneImports) {
+      contents.append("pruneImports=true\n");
+    }
+    if (shrinkArtifact) {
+      contents.append("shrinkArtifact=").append(String.join(",", keepRules)).append('\n');
+    }
+    contents
+        .append("artifact=")
+        .append(artifactFileName)
+        .append(' ')
+        .append(fileDigest(artifactFile))
+        .append('\n');
+    Map<String, String> dependencies =
+        new TreeMap<>(depsToStagePaths == null ? new HashMap<>() : depsToStagePaths);
+    for (Map.Entry<String, String> entry : dependencies.entrySet()) {
+      contents
+          .append("dependency=")
+          .append(entry.getKey())
+          .append(' ')
+          .append(entry.getValue())
+          .append(' ')
+          .append(fileDigest(localDependencyFile(dependencyDir, entry.getKey())))
+          .append('\n');
+    }
+    // Sorted so that the order in the build file does not matter
+    Collection<String> definitions = new TreeSet<>();
+    for (UserDefined udx : udxs) {
+      definitions.add(
+          String.format(
+              "udx=%s %s(%s) %s %s",
+              udx.getType(), udx.getName(), udx.getInputs(), udx.getReturns(), udx.getHandler()));
+    }
+    definitions.forEach(definition -> contents.append(definition).append('\n'));
+    return new DeploySnapshot(snapshotDir, target(), FileDigest.sha256Hex(contents.toString()));
+  }
+
+  // Identifies the account, database, schema and stage deployed to
+  private String target() {
+    return String.join(
+        "\n",
+        String.valueOf(url),
+        String.valueOf(options.get("user")),
+        String.valueOf(options.get("role")),
+        String.valueOf(options.get("db")),
+        String.valueOf(options.get("schema")),
+        String.valueOf(stageName));
   }
 
-  // Format the user provided url to match JDBC Connection url
+  private File localDependencyFile(File dependencyDir, String dependencyFile) {
+    String localPath = depsToLocalPaths.get(dependencyFile);
+    if (localPath != null) {
+      return new File(localPath);
+    }
+    return dependencyDir == null ? null : new File(dependencyDir, dependencyFile);
+  }
+
+  private static String fileDigest(File file) throws IOException {
+    return file != null && file.isFile() ? FileDigest.sha256Hex(file) : "missing";
+  }
+
+  // Format the user provided url to match JDBC Connection url. Urls that already are JDBC urls,
+  // such as those of the offline stand-in, are used as is
   private String formatUrl(String url) {
     url = url.trim();
+    if (url.startsWith("jdbc:")) {
+      return url;
+    }
     // append :443 if no port number specified
     String urlWithPort = "^.+:\\d+$";
     if (!url.matches(urlWithPort)) {
       url = url + ":443";
     }
-    return "jdbc:snowflake://" + url;
+    return SnowflakeConnectionPool.SNOWFLAKE_URL_PREFIX + url;
   }
 
   private Properties jdbcConfig(Map<String, String> options) {
@@ -0,0 +1,100 @@
+package com.snowflake.plugins.udf.core;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+import net.snowflake.client.jdbc.SnowflakeConnectionV1;
+
+/**
+ * Pool of Snowflake JDBC connections shared by every deploy of a build. Connections are keyed by
+ * the JDBC url and the resolved connection properties, so that deploys with the same auth
+ * configuration reuse one logged in session. The plugins close the pool when the build ends
+ */
+public class SnowflakeConnectionPool implements AutoCloseable {
+  static final String SNOWFLAKE_URL_PREFIX = "jdbc:snowflake://";
+
+  // A map of each connection key to its open connection
+  private final Map<String, Connection> connections = new HashMap<>();
+
+  /**
+   * Returns the open connection for the url and properties, logging in if there is none yet or if
+   * the previous connection was closed
+   */
+  public synchronized Connection getConnection(String url, Properties properties)
+      throws SQLException {
+    String key = key(url, properties);
+    Connection conn = connections.get(key);
+    if (conn == null || conn.isClosed()) {
+      conn = connect(url, properties);
+      connections.put(key, conn);
+    }
+    return conn;
+  }
+
+  // Opens a new JDBC connection. Overridden in tests
+  protected Connection connect(String url, Properties properties) throws SQLException {
+    return open(url, properties);
+  }
+
+  /**
+   * Opens a JDBC connection without pooling it. Snowflake urls are opened by the Snowflake driver,
+   * and any other url by the JDBC driver on the plugin classpath accepting it, such as the offline
+   * stand-in of the test fixtures
+   */
+  public static Connection open(String url, Properties properties) throws SQLException {
+    if (url.startsWith(SNOWFLAKE_URL_PREFIX)) {
+      return new SnowflakeConnectionV1(url, properties);
+    }
+    for (Driver driver :
+        ServiceLoader.load(Driver.class, SnowflakeConnectionPool.class.getClassLoader())) {
+      if (driver.acceptsURL(url)) {
+        return driver.connect(url, properties);
+      }
+    }
+    throw new SQLException("No JDBC driver on the plugin classpath accepts the url: " + url);
+  }
+
+  public synchronized int size() {
+    return connections.size();
+  }
+
+  /** Closes every pooled connection. The pool can be used again afterwards */
+  @Override
+  public synchronized void close() throws SQLException {
+    List<SQLException> failures = new ArrayList<>();
+    for (Connection conn : connections.values()) {
+      try {
+        conn.close();
+      } catch (SQLException e) {
+        failures.add(e);
+      }
+    }
+    connections.clear();
+    if (!failures.isEmpty()) {
+      SQLException first = failures.get(0);
+      failures.stream().skip(1).forEach(first::addSuppressed);
+      throw first;
+    }
+  }
+
+  // Connection properties contain secrets, so the key is a digest of the url and the sorted
+  // properties rather than their plain text
+  static String key(String url, Properties properties) {
+    StringBuilder key = new StringBuilder(url);
+    Map<String, String> sorted = new TreeMap<>();
+    for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+      sorted.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+    }
+    for (Map.Entry<String, String> entry : sorted.entrySet()) {
+      key.append('\n').append(entry.getKey()).append('=').append(entry.getValue());
+    }
+    return FileDigest.sha256Hex(key.toString());
+  }
+}
@@ -1,6 +1,29 @@
 package com.snowflake.plugins.udf.core;
 
-/** Allow plugins to pass their Maven/Gradle logger to core package using this interface */
+import java.util.function.Consumer;
+
+/**
+ * Allow plugins to pass their Maven/Gradle logger to core package using this interface. Info
+ * messages are a short summary of the deploy, details such as the text of every statement are debug
+ * messages. Structured events are sent to {@link DeployListener}s instead
+ */
 public interface SnowflakeLogger {
   void info(String s);
+
+  default void debug(String s) {}
+
+  /** Returns a logger sending info and debug messages to the plugin's logger */
+  static SnowflakeLogger of(Consumer<String> info, Consumer<String> debug) {
+    return new SnowflakeLogger() {
+      @Override
+      public void info(String s) {
+        info.accept(s);
+      }
+
+      @Override
+      public void debug(String s) {
+        debug.accept(s);
+      }
+    };
+  }
 }
@@ -0,0 +1,73 @@
+package com.snowflake.plugins.udf.core;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory index of the files on a stage, built from a single LIST command. Used to decide which
+ * dependency files are already present on the stage without issuing a PUT for each of them
+ */
+public class StageIndex {
+  // A map of each file path relative to the stage root to its size and md5
+  private final Map<String, Entry> entries;
+
+  StageIndex(Map<String, Entry> entries) {
+    this.entries = entries;
+  }
+
+  /** Runs LIST on the given stage and indexes every file by its path relative to the stage */
+  public static StageIndex load(StatementExecutor executor, String stageName) throws SQLException {
+    return executor.query(
+        String.format("LIST @%s", stageName),
+        rs -> {
+          Map<String, Entry> entries = new HashMap<>();
+          while (rs.next()) {
+            entries.put(
+                relativePath(rs.getString("name")),
+                new Entry(rs.getLong("size"), rs.getString("md5")));
+          }
+          return new StageIndex(entries);
+        });
+  }
+
+  // LIST returns names prefixed with the unqualified, lower case stage name
+  // e.g. "my_stage/com/google/gson/2.10/gson-2.10.jar"
+  static String relativePath(String listedName) {
+    int slash = listedName.indexOf('/');
+    return slash < 0 ? listedName : listedName.substring(slash + 1);
+  }
+
+  public Entry get(String pathOnStage) {
+    return entries.get(pathOnStage);
+  }
+
+  /** Returns true if a file exists at the stage path and its md5 matches the given digest */
+  public boolean containsIdentical(String pathOnStage, String md5) {
+    Entry entry = entries.get(pathOnStage);
+    return entry != null && entry.getMd5() != null && entry.getMd5().equalsIgnoreCase(md5);
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /** Size and md5 of a file on the stage as reported by LIST */
+  public static class Entry {
+    private final long size;
+    private final String md5;
+
+    Entry(long size, String md5) {
+      this.size = size;
+      this.md5 = md5;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public String getMd5() {
+      return md5;
+    }
+  }
+}
@@ -0,0 +1,487 @@
+package com.snowflake.plugins.udf.core;
+
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import net.snowflake.client.core.QueryStatus;
+import net.snowflake.client.jdbc.SnowflakeConnection;
+import net.snowflake.client.jdbc.SnowflakeResultSet;
+import net.snowflake.client.jdbc.SnowflakeStatement;
+
+/**
+ * Runs SQL on a Snowflake connection. Owns the lifecycle of every statement, so that result sets
+ * and driver buffers are released as soon as a statement finishes, applies the query timeout, tags
+ * each query with the current deploy phase and reports the query ID and elapsed time of every
+ * statement. Safe to use from several threads
+ */
+public class StatementExecutor {
+  // Prefix of the QUERY_TAG set on every statement, followed by the deploy phase
+  static final String QUERY_TAG_PREFIX = "snowflake-plugins:";
+  private static final int SUMMARY_LENGTH = 100;
+  // Bounds of the interval between two status checks of asynchronous queries
+  private static final long MIN_POLL_MILLIS = 50;
+  private static final long MAX_POLL_MILLIS = 1000;
+
+  private final Connection conn;
+  // Query timeout applied to each statement in seconds, 0 means no timeout
+  private volatile int queryTimeoutSeconds = 0;
+  // The deploy phase used to tag queries
+  private volatile String phase = "deploy";
+  // Receives the record of each statement. Records are not retained by the executor
+  private volatile Consumer<QueryRecord> queryListener = record -> {};
+  // Statement count and total elapsed milliseconds of each phase
+  private final Map<String, long[]> phaseTotals = new LinkedHashMap<>();
+
+  /** Processes the result set of a query. The result set is closed afterwards */
+  public interface ResultSetHandler<T> {
+    T handle(ResultSet rs) throws SQLException;
+  }
+
+  public StatementExecutor(Connection conn) {
+    this.conn = conn;
+  }
+
+  public void setQueryTimeoutSeconds(int queryTimeoutSeconds) {
+    this.queryTimeoutSeconds = queryTimeoutSeconds;
+  }
+
+  public void setQueryListener(Consumer<QueryRecord> queryListener) {
+    this.queryListener = queryListener;
+  }
+
+  /** Sets the deploy phase used to tag the following queries */
+  public void setPhase(String phase) {
+    this.phase = phase;
+  }
+
+  public String getPhase() {
+    return phase;
+  }
+
+  /** Executes a statement which does not return rows */
+  public void execute(String sql) throws SQLException {
+    run(sql, statement -> statement.execute(sql));
+  }
+
+  /**
+   * Executes a statement, e.g. a PUT, and processes the rows it returns with the handler. The
+   * handler receives null if the statement returned no result set
+   */
+  public <T> T execute(String sql, ResultSetHandler<T> handler) throws SQLException {
+    return run(
+        sql,
+        statement -> {
+          statement.execute(sql);
+          try (ResultSet rs = statement.getResultSet()) {
+            return handler.handle(rs);
+          }
+        });
+  }
+
+  /** Executes a query and processes its rows with the handler */
+  public <T> T query(String sql, ResultSetHandler<T> handler) throws SQLException {
+    return run(
+        sql,
+        statement -> {
+          try (ResultSet rs = statement.executeQuery(sql)) {
+            return handler.handle(rs);
+          }
+        });
+  }
+
+  /**
+   * Uploads the content of the stream to the stage with the driver's stream upload, so that no
+   * local file is needed. The content is uploaded as is, without compression, and replaces any file
+   * of the same name. The stream is not closed
+   *
+   * @param stageName the stage name, without the leading "@"
+   * @param destPrefix the directory on the stage
+   */
+  public void uploadStream(
+      String stageName, String destPrefix, InputStream inputStream, String destFileName)
+      throws SQLException {
+    String currentPhase = phase;
+    long start = System.nanoTime();
+    boolean succeeded = false;
+    try {
+      snowflakeConnection().uploadStream(stageName, destPrefix, inputStream, destFileName, false);
+      succeeded = true;
+    } finally {
+      long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+      record(currentPhase, elapsedMillis);
+      String summary = String.format("PUT stream @%s/%s/%s", stageName, destPrefix, destFileName);
+      queryListener.accept(
+          new QueryRecord(currentPhase, null, summarize(summary), elapsedMillis, succeeded));
+    }
+  }
+
+  /**
+   * Submits every statement with the driver's asynchronous query support, then polls their status
+   * together until all of them have finished. Statements which are not Snowflake statements are run
+   * synchronously instead
+   *
+   * @return the error of each statement, in the order of the statements. The entry is null if the
+   *     statement succeeded
+   * @throws SQLException if interrupted while waiting for the statements
+   */
+  public List<SQLException> executeAllAsync(List<String> sqls) throws SQLException {
+    String currentPhase = phase;
+    List<SQLException> errors = new ArrayList<>(Collections.nCopies(sqls.size(), null));
+    List<PendingQuery> pending = new ArrayList<>();
+    try {
+      for (int i = 0; i < sqls.size(); i++) {
+        String sql = sqls.get(i);
+        if (!submit(i, sql, currentPhase, pending)) {
+          try {
+            execute(sql);
+          } catch (SQLException e) {
+            errors.set(i, e);
+          }
+        }
+      }
+      long pollMillis = MIN_POLL_MILLIS;
+      while (!pending.isEmpty()) {
+        Iterator<PendingQuery> it = pending.iterator();
+        while (it.hasNext()) {
+          PendingQuery query = it.next();
+          if (query.poll()) {
+            errors.set(query.index, query.error);
+            finish(query, currentPhase);
+            it.remove();
+          }
+        }
+        if (!pending.isEmpty()) {
+          Thread.sleep(pollMillis);
+          pollMillis = Math.min(pollMillis * 2, MAX_POLL_MILLIS);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      for (PendingQuery query : pending) {
+        query.cancel();
+      }
+      throw new SQLException("Interrupted while waiting for asynchronous statements", e);
+    } finally {
+      for (PendingQuery query : pending) {
+        query.close();
+      }
+    }
+    return errors;
+  }
+
+  /**
+   * Sends the statements in multi-statement requests of up to batchSize statements each, so that a
+   * batch costs a single round trip. Snowflake stops a multi-statement request at its first failing
+   * statement without saying which one failed, so the statements of a failed batch are run again
+   * one at a time to find the error of each statement. Rerunning is safe for the idempotent CREATE
+   * OR REPLACE statements this is used for
+   *
+   * @return the error of each statement, in the order of the statements. The entry is null if the
+   *     statement succeeded
+   */
+  public List<SQLException> executeAllBatched(List<String> sqls, int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("The batch size must be at least 1");
+    }
+    List<SQLException> errors = new ArrayList<>(Collections.nCopies(sqls.size(), null));
+    for (int from = 0; from < sqls.size(); from += batchSize) {
+      executeBatchAt(sqls, from, batchSize, errors);
+    }
+    return errors;
+  }
+
+  /**
+   * Like executeAllBatched, but runs each multi-statement request as a unit of work of the
+   * scheduler, so that the batches can run at the same time
+   */
+  public List<SQLException> executeAllBatched(
+      List<String> sqls, int batchSize, WorkScheduler scheduler) throws SQLException {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("The batch size must be at least 1");
+    }
+    List<SQLException> errors =
+        Collections.synchronizedList(new ArrayList<>(Collections.nCopies(sqls.size(), null)));
+    List<WorkScheduler.Work> batches = new ArrayList<>();
+    for (int from = 0; from < sqls.size(); from += batchSize) {
+      batches.add(new BatchWork(sqls, from, batchSize, errors));
+    }
+    scheduler.runAll(batches);
+    return new ArrayList<>(errors);
+  }
+
+  // Runs the batch starting at the index, then each of its statements again if the batch failed
+  private void executeBatchAt(
+      List<String> sqls, int from, int batchSize, List<SQLException> errors) {
+    List<String> batch = sqls.subList(from, Math.min(from + batchSize, sqls.size()));
+    try {
+      executeBatch(batch);
+    } catch (SQLException batchError) {
+      for (int i = 0; i < batch.size(); i++) {
+        try {
+          execute(batch.get(i));
+        } catch (SQLException e) {
+          errors.set(from + i, e);
+        }
+      }
+    }
+  }
+
+  // A multi-statement request run by a work scheduler. Its errors are recorded by statement, so the
+  // work itself never fails
+  private class BatchWork implements WorkScheduler.Work {
+    private final List<String> sqls;
+    private final int from;
+    private final int batchSize;
+    private final List<SQLException> errors;
+
+    BatchWork(List<String> sqls, int from, int batchSize, List<SQLException> errors) {
+      this.sqls = sqls;
+      this.from = from;
+      this.batchSize = batchSize;
+      this.errors = errors;
+    }
+
+    @Override
+    public String getName() {
+      return String.format(
+          "statements %d to %d", from + 1, Math.min(from + batchSize, sqls.size()));
+    }
+
+    @Override
+    public long getBytes() {
+      long bytes = 0;
+      for (String sql : sqls.subList(from, Math.min(from + batchSize, sqls.size()))) {
+        bytes += sql.length();
+      }
+      return bytes;
+    }
+
+    @Override
+    public void run() {
+      executeBatchAt(sqls, from, batchSize, errors);
+    }
+  }
+
+  private void executeBatch(List<String> batch) throws SQLException {
+    if (batch.size() == 1) {
+      execute(batch.get(0));
+      return;
+    }
+    String sql = String.join("\n", batch);
+    run(
+        sql,
+        statement -> {
+          if (!statement.isWrapperFor(SnowflakeStatement.class)) {
+            // Other drivers do not support multi-statement requests
+            for (String single : batch) {
+              statement.execute(single);
+            }
+            return null;
+          }
+          statement
+              .unwrap(SnowflakeStatement.class)
+              .setParameter("MULTI_STATEMENT_COUNT", batch.size());
+          statement.execute(sql);
+          // Step through the result of each statement so that every failure is raised
+          for (int i = 1; i < batch.size(); i++) {
+            statement.getMoreResults();
+          }
+          return null;
+        });
+  }
+
+  // Submits the statement asynchronously. Returns false if the statement is not a Snowflake
+  // statement and must be run synchronously instead
+  private boolean submit(int index, String sql, String currentPhase, List<PendingQuery> pending) {
+    Statement statement = null;
+    long start = System.nanoTime();
+    try {
+      statement = conn.createStatement();
+      if (!statement.isWrapperFor(SnowflakeStatement.class)) {
+        statement.close();
+        return false;
+      }
+      prepare(statement, currentPhase);
+      ResultSet rs = statement.unwrap(SnowflakeStatement.class).executeAsyncQuery(sql);
+      pending.add(new PendingQuery(index, sql, statement, rs, start));
+    } catch (SQLException e) {
+      PendingQuery failed = new PendingQuery(index, sql, statement, null, start);
+      failed.error = e;
+      pending.add(failed);
+    }
+    return true;
+  }
+
+  private void finish(PendingQuery query, String currentPhase) {
+    query.close();
+    long elapsedMillis = (System.nanoTime() - query.start) / 1_000_000;
+    record(currentPhase, elapsedMillis);
+    queryListener.accept(
+        new QueryRecord(
+            currentPhase, query.queryId, summarize(query.sql), elapsedMillis, query.error == null));
+  }
+
+  // A statement submitted asynchronously. The statement and its result set stay open until the
+  // query has finished
+  private class PendingQuery {
+    private final int index;
+    private final String sql;
+    private final Statement statement;
+    private final ResultSet rs;
+    private final long start;
+    private String queryId;
+    private SQLException error;
+
+    PendingQuery(int index, String sql, Statement statement, ResultSet rs, long start) {
+      this.index = index;
+      this.sql = sql;
+      this.statement = statement;
+      this.rs = rs;
+      this.start = start;
+    }
+
+    // Returns true once the query has finished, successfully or not
+    boolean poll() {
+      if (rs == null) {
+        // Submission failed
+        return true;
+      }
+      try {
+        SnowflakeResultSet snowflakeRs = rs.unwrap(SnowflakeResultSet.class);
+        if (queryId == null) {
+          queryId = snowflakeRs.getQueryID();
+        }
+        QueryStatus status = snowflakeRs.getStatus();
+        if (QueryStatus.isStillRunning(status)) {
+          if (queryTimeoutSeconds > 0
+              && System.nanoTime() - start > queryTimeoutSeconds * 1_000_000_000L) {
+            cancel();
+            error = new SQLException("Statement timed out after " + queryTimeoutSeconds + "s");
+            return true;
+          }
+          return false;
+        }
+        if (QueryStatus.isAnError(status)) {
+          error = new SQLException(status.getErrorMessage(), null, status.getErrorCode());
+        }
+      } catch (SQLException e) {
+        error = e;
+      }
+      return true;
+    }
+
+    void cancel() {
+      try {
+        statement.cancel();
+      } catch (SQLException e) {
+        // The query is abandoned either way
+      }
+    }
+
+    void close() {
+      try {
+        if (rs != null) {
+          rs.close();
+        }
+        if (statement != null) {
+          statement.close();
+        }
+      } catch (SQLException e) {
+        // Nothing more can be done with a statement which failed to close
+      }
+    }
+  }
+
+  private interface StatementAction<T> {
+    T apply(Statement statement) throws SQLException;
+  }
+
+  private <T> T run(String sql, StatementAction<T> action) throws SQLException {
+    String currentPhase = phase;
+    long start = System.nanoTime();
+    boolean succeeded = false;
+    String queryId = null;
+    try (Statement statement = conn.createStatement()) {
+      prepare(statement, currentPhase);
+      try {
+        T result = action.apply(statement);
+        succeeded = true;
+        return result;
+      } finally {
+        queryId = queryId(statement);
+      }
+    } finally {
+      long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+      record(currentPhase, elapsedMillis);
+      queryListener.accept(
+          new QueryRecord(currentPhase, queryId, summarize(sql), elapsedMillis, succeeded));
+    }
+  }
+
+  private void prepare(Statement statement, String currentPhase) throws SQLException {
+    if (queryTimeoutSeconds > 0) {
+      statement.setQueryTimeout(queryTimeoutSeconds);
+    }
+    // QUERY_TAG is set as a statement level parameter so that concurrent statements and other
+    // deploys sharing the pooled session are not affected
+    if (statement.isWrapperFor(SnowflakeStatement.class)) {
+      statement
+          .unwrap(SnowflakeStatement.class)
+          .setParameter("QUERY_TAG", QUERY_TAG_PREFIX + currentPhase);
+    }
+  }
+
+  // The stream upload is a driver extension. Connections of other drivers, such as the offline
+  // stand-in, provide it by implementing or wrapping SnowflakeConnection
+  private SnowflakeConnection snowflakeConnection() throws SQLException {
+    if (conn instanceof SnowflakeConnection) {
+      return (SnowflakeConnection) conn;
+    }
+    return conn.unwrap(SnowflakeConnection.class);
+  }
+
+  private String queryId(Statement statement) {
+    try {
+      if (statement.isWrapperFor(SnowflakeStatement.class)) {
+        return statement.unwrap(SnowflakeStatement.class).getQueryID();
+      }
+    } catch (SQLException e) {
+      // The query ID is informational only
+    }
+    return null;
+  }
+
+  private synchronized void record(String currentPhase, long elapsedMillis) {
+    long[] totals = phaseTotals.computeIfAbsent(currentPhase, key -> new long[2]);
+    totals[0]++;
+    totals[1] += elapsedMillis;
+  }
+
+  static String summarize(String sql) {
+    String trimmed = sql.trim();
+    int newline = trimmed.indexOf('\n');
+    int end = Math.min(newline < 0 ? trimmed.length() : newline, SUMMARY_LENGTH);
+    return trimmed.substring(0, end);
+  }
+
+  /** Returns the number of statements run in the phase */
+  public synchronized long getStatementCount(String phase) {
+    long[] totals = phaseTotals.get(phase);
+    return totals == null ? 0 : totals[0];
+  }
+
+  /** Returns the total elapsed milliseconds of the statements run in the phase */
+  public synchronized long getElapsedMillis(String phase) {
+    long[] totals = phaseTotals.get(phase);
+    return totals == null ? 0 : totals[1];
+  }
+}
@@ -0,0 +1,59 @@
+package com.snowflake.plugins.udf.core;
+
+/** The outcome of uploading a single file, the artifact or a dependency, to the stage */
+public class UploadResult {
+  public enum Decision {
+    // The file was PUT to the stage
+    UPLOADED,
+    // An identical file already existed at the stage path so the PUT was skipped
+    SKIPPED_IDENTICAL,
+    // No local jar file exists for the dependency, e.g. a platform/bill-of-materials dependency
+    SKIPPED_MISSING
+  }
+
+  private final String dependencyFile;
+  private final String stagePath;
+  private final Decision decision;
+  // Size of the local file in bytes, 0 if the file is missing
+  private final long bytes;
+  // Time spent deciding and uploading, 0 for files uploaded together with a single wildcard PUT
+  private final long elapsedMillis;
+
+  public UploadResult(String dependencyFile, String stagePath, Decision decision, long bytes) {
+    this(dependencyFile, stagePath, decision, bytes, 0);
+  }
+
+  public UploadResult(
+      String dependencyFile, String stagePath, Decision decision, long bytes, long elapsedMillis) {
+    this.dependencyFile = dependencyFile;
+    this.stagePath = stagePath;
+    this.decision = decision;
+    this.bytes = bytes;
+    this.elapsedMillis = elapsedMillis;
+  }
+
+  public String getDependencyFile() {
+    return dependencyFile;
+  }
+
+  public String getStagePath() {
+    return stagePath;
+  }
+
+  public Decision getDecision() {
+    return decision;
+  }
+
+  public long getBytes() {
+    return bytes;
+  }
+
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s: %s (%d bytes)", dependencyFile, decision, bytes);
+  }
+}
@@ -0,0 +1,30 @@
+package com.snowflake.plugins.udf.core;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Runs the independent units of work of a deploy phase, such as the upload of one dependency JAR or
+ * one batch of CREATE statements, and waits for all of them. By default they run on threads of the
+ * deploy, see ConcurrentUploader. Build tools can hand them to their own worker pools instead
+ */
+public interface WorkScheduler {
+  /** A unit of work which can run on any thread, at the same time as the other units */
+  interface Work {
+    // Name used to report a failure of this work
+    String getName();
+
+    // Number of bytes that will be read by this work, used to schedule the largest work first
+    long getBytes();
+
+    void run() throws SQLException;
+  }
+
+  /**
+   * Runs all work and waits for it to finish
+   *
+   * @throws SQLException if any work failed. The first failure is the cause and every other failure
+   *     is attached as a suppressed exception
+   */
+  void runAll(List<? extends Work> work) throws SQLException;
+}
@@ -0,0 +1,128 @@
+package com.snowflake.plugins.udf.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.snowflake.plugins.udf.core.pruning.Handler;
+import com.snowflake.plugins.udf.core.pruning.Helper;
+import com.snowflake.plugins.udf.core.pruning.ReflectiveHandler;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ArtifactShrinkerTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private File artifact;
+
+  // An artifact holding two handlers, their helper, an unused class and a resource
+  @Before
+  public void createArtifact() throws IOException {
+    artifact = tmp.newFile("project.jar");
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(artifact))) {
+      for (Class<?> c :
+          Arrays.asList(Handler.class, Helper.class, ReflectiveHandler.class, LoggerMock.class)) {
+        String entryName = c.getName().replace('.', '/') + ".class";
+        out.putNextEntry(new ZipEntry(entryName));
+        try (InputStream in = c.getClassLoader().getResourceAsStream(entryName)) {
+          byte[] buffer = new byte[8192];
+          int n;
+          while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+          }
+        }
+        out.closeEntry();
+      }
+      out.putNextEntry(new ZipEntry("config.properties"));
+      out.write("key=value".getBytes(StandardCharsets.UTF_8));
+      out.closeEntry();
+    }
+  }
+
+  @Test
+  public void testUnreachableClassesRemoved() throws IOException {
+    File output = new File(tmp.getRoot(), "shrunk/project.jar");
+    ShrinkResult result =
+        new ArtifactShrinker(Collections.emptyList())
+            .shrink(artifact, Collections.singletonList(Handler.class.getName() + ".run"), output);
+
+    assertFalse(result.isFallback());
+    assertEquals(output, result.getFile());
+    assertEquals(4, result.getClassesBefore());
+    assertEquals(2, result.getClassesAfter());
+    assertTrue(result.getBytesAfter() < result.getBytesBefore());
+    try (ZipFile jar = new ZipFile(output)) {
+      assertNotNull(jar.getEntry(entryName(Handler.class)));
+      assertNotNull(jar.getEntry(entryName(Helper.class)));
+      assertNotNull(jar.getEntry("config.properties"));
+      assertNull(jar.getEntry(entryName(ReflectiveHandler.class)));
+      assertNull(jar.getEntry(entryName(LoggerMock.class)));
+    }
+  }
+
+  @Test
+  public void testClassLoadingWithoutKeepRulesKeepsArtifact() throws IOException {
+    File output = new File(tmp.getRoot(), "shrunk/project.jar");
+    ShrinkResult result =
+        new ArtifactShrinker(Collections.emptyList())
+            .shrink(
+                artifact,
+                Collections.singletonList(ReflectiveHandler.class.getName() + ".run"),
+                output);
+
+    assertTrue(result.isFallback());
+    assertEquals(artifact, result.getFile());
+    assertFalse(output.exists());
+  }
+
+  @Test
+  public void testKeepRulesTrustedForClassLoading() throws IOException {
+    File output = new File(tmp.getRoot(), "shrunk/project.jar");
+    ShrinkResult result =
+        new ArtifactShrinker(Collections.singletonList(LoggerMock.class.getName()))
+            .shrink(
+                artifact,
+                Collections.singletonList(ReflectiveHandler.class.getName() + ".run"),
+                output);
+
+    assertFalse(result.isFallback());
+    try (ZipFile jar = new ZipFile(output)) {
+      assertNotNull(jar.getEntry(entryName(ReflectiveHandler.class)));
+      assertNotNull(jar.getEntry(entryName(LoggerMock.class)));
+      assertNull(jar.getEntry(entryName(Handler.class)));
+    }
+  }
+
+  @Test
+  public void testKeepRulePatterns() {
+    ArtifactShrinker shrinker =
+        new ArtifactShrinker(
+            Arrays.asList("com.example.Plugin", "com.example.api.*", "org.lib.**"));
+
+    assertTrue(shrinker.isKept("com.example.Plugin"));
+    assertTrue(shrinker.isKept("com.example.Plugin$Inner"));
+    assertFalse(shrinker.isKept("com.example.PluginFactory"));
+    assertTrue(shrinker.isKept("com.example.api.Service"));
+    assertFalse(shrinker.isKept("com.example.api.impl.Service"));
+    assertTrue(shrinker.isKept("org.lib.deep.nested.Type"));
+    assertFalse(shrinker.isKept("org.library.Type"));
+  }
+
+  private static String entryName(Class<?> c) {
+    return c.getName().replace('.', '/') + ".class";
+  }
+}
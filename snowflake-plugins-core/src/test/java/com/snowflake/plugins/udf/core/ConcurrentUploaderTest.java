@@ -0,0 +1,118 @@
+package com.snowflake.plugins.udf.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class ConcurrentUploaderTest {
+
+  // Upload which records its name and the number of bytes in flight while it runs
+  private static class FakeUpload implements ConcurrentUploader.Upload {
+    private final String name;
+    private final long bytes;
+    private final List<String> order;
+    private final AtomicLong inFlight;
+    private final AtomicLong maxInFlight;
+    private final boolean fail;
+
+    FakeUpload(
+        String name,
+        long bytes,
+        List<String> order,
+        AtomicLong inFlight,
+        AtomicLong maxInFlight,
+        boolean fail) {
+      this.name = name;
+      this.bytes = bytes;
+      this.order = order;
+      this.inFlight = inFlight;
+      this.maxInFlight = maxInFlight;
+      this.fail = fail;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public long getBytes() {
+      return bytes;
+    }
+
+    @Override
+    public void run() throws SQLException {
+      order.add(name);
+      long current = inFlight.addAndGet(bytes);
+      maxInFlight.accumulateAndGet(current, Math::max);
+      try {
+        Thread.sleep(5);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      inFlight.addAndGet(-bytes);
+      if (fail) {
+        throw new SQLException("failed " + name);
+      }
+    }
+  }
+
+  @Test
+  public void testLargestFirst() throws SQLException {
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    AtomicLong inFlight = new AtomicLong();
+    AtomicLong max = new AtomicLong();
+    List<FakeUpload> uploads =
+        Arrays.asList(
+            new FakeUpload("small", 10, order, inFlight, max, false),
+            new FakeUpload("large", 3000, order, inFlight, max, false),
+            new FakeUpload("medium", 2000, order, inFlight, max, false));
+    new ConcurrentUploader(1, 1024 * 1024).uploadAll(uploads);
+    assertArrayEquals(new String[] {"large", "medium", "small"}, order.toArray());
+  }
+
+  @Test
+  public void testInFlightBytesCapped() throws SQLException {
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    AtomicLong inFlight = new AtomicLong();
+    AtomicLong max = new AtomicLong();
+    List<FakeUpload> uploads = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      uploads.add(new FakeUpload("dep" + i, 4096, order, inFlight, max, false));
+    }
+    // 8 threads are available but only 3 files of 4 KiB fit under the 12 KiB cap
+    new ConcurrentUploader(8, 12 * 1024).uploadAll(uploads);
+    assertEquals(40, order.size());
+    assertTrue("in-flight bytes exceeded cap: " + max.get(), max.get() <= 12 * 1024);
+  }
+
+  @Test
+  public void testFailuresAggregated() {
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    AtomicLong inFlight = new AtomicLong();
+    AtomicLong max = new AtomicLong();
+    List<FakeUpload> uploads =
+        Arrays.asList(
+            new FakeUpload("ok", 10, order, inFlight, max, false),
+            new FakeUpload("bad1", 20, order, inFlight, max, true),
+            new FakeUpload("bad2", 30, order, inFlight, max, true));
+    try {
+      new ConcurrentUploader(2, 1024 * 1024).uploadAll(uploads);
+      fail("Expected upload failures to be reported");
+    } catch (SQLException e) {
+      // Every upload still ran
+      assertEquals(3, order.size());
+      assertTrue(e.getMessage().startsWith("2 of 3 uploads failed"));
+      assertEquals(1, e.getSuppressed().length);
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package com.snowflake.plugins.udf.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class DdlRendererTest {
+
+  private static UserDefined udx(String type, String name, String inputs) {
+    return new UserDefined() {
+      @Override
+      public String getInputs() {
+        return inputs;
+      }
+
+      @Override
+      public String getType() {
+        return type;
+      }
+
+      @Override
+      public String getName() {
+        return name;
+      }
+
+      @Override
+      public String getHandler() {
+        return "pkg.Handler.run";
+      }
+
+      @Override
+      public String getReturns() {
+        return "string";
+      }
+    };
+  }
+
+  @Test
+  public void testImportsRenderedOncePerDeploy() {
+    AtomicInteger computed = new AtomicInteger();
+    List<String> imports =
+        Arrays.asList("@stage/libs/project.jar", "@stage/org/dep/1.0/dep-1.0.jar");
+    DdlRenderer renderer =
+        new DdlRenderer(
+            () -> {
+              computed.incrementAndGet();
+              return imports;
+            },
+            type ->
+                type.equals(UserDefined.procedure)
+                    ? Collections.singletonList("com.snowflake:snowpark:latest")
+                    : Collections.emptyList());
+
+    List<String> plan =
+        renderer.renderAll(
+            Arrays.asList(
+                udx(UserDefined.function, "add", "a int, b int"),
+                udx(UserDefined.procedure, "run", "")));
+
+    assertEquals(
+        "CREATE OR REPLACE function add (a int, b int)\n"
+            + "RETURNS string\n"
+            + "LANGUAGE java\n"
+            + "HANDLER = 'pkg.Handler.run'\n"
+            + "IMPORTS = ('@stage/libs/project.jar', '@stage/org/dep/1.0/dep-1.0.jar');",
+        plan.get(0));
+    assertEquals(
+        "CREATE OR REPLACE procedure run ()\n"
+            + "RETURNS string\n"
+            + "LANGUAGE java\n"
+            + "PACKAGES = ('com.snowflake:snowpark:latest')\n"
+            + "HANDLER = 'pkg.Handler.run'\n"
+            + "IMPORTS = ('@stage/libs/project.jar', '@stage/org/dep/1.0/dep-1.0.jar');",
+        plan.get(1));
+    assertEquals(1, computed.get());
+
+    // Imports are computed again only after they are invalidated
+    renderer.invalidateImports();
+    renderer.render(udx(UserDefined.function, "sub", "a int"));
+    renderer.render(udx(UserDefined.function, "mul", "a int"));
+    assertEquals(2, computed.get());
+  }
+}
@@ -0,0 +1,127 @@
+package com.snowflake.plugins.udf.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DependencyBundlerTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final Map<String, File> dependencies = new HashMap<>();
+
+  @Before
+  public void createJars() throws IOException {
+    dependencies.put(
+        "b-1.0.jar",
+        jar(
+            "b-1.0.jar",
+            "com/b/B.class",
+            "b",
+            "com/shared/Dup.class",
+            "from b",
+            "META-INF/services/com.api.Codec",
+            "com.b.BCodec\n",
+            "META-INF/B.SF",
+            "signature"));
+    dependencies.put(
+        "a-1.0.jar",
+        jar(
+            "a-1.0.jar",
+            "com/a/A.class",
+            "a",
+            "com/shared/Dup.class",
+            "from a",
+            "META-INF/services/com.api.Codec",
+            "# providers\ncom.a.ACodec\n"));
+  }
+
+  // Writes a JAR of entry names and contents
+  private File jar(String name, String... entries) throws IOException {
+    File file = tmp.newFile(name);
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+      for (int i = 0; i < entries.length; i += 2) {
+        out.putNextEntry(new ZipEntry(entries[i]));
+        out.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+        out.closeEntry();
+      }
+    }
+    return file;
+  }
+
+  private static String read(JarFile jar, String name) throws IOException {
+    try (InputStream in = jar.getInputStream(jar.getEntry(name))) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  @Test
+  public void testDependenciesMergedDeterministically() throws IOException {
+    File bundleDir = new File(tmp.getRoot(), "bundles");
+    DependencyBundler bundler = new DependencyBundler(bundleDir, 1024 * 1024);
+    List<DependencyBundler.Bundle> bundles = bundler.bundle(dependencies);
+
+    assertEquals(1, bundles.size());
+    DependencyBundler.Bundle bundle = bundles.get(0);
+    assertFalse(bundle.isCached());
+    assertEquals(Arrays.asList("a-1.0.jar", "b-1.0.jar"), bundle.getDependencyFiles());
+    assertTrue(bundle.getName().startsWith("bundle-"));
+    try (JarFile jar = new JarFile(bundle.getFile())) {
+      assertEquals("a", read(jar, "com/a/A.class"));
+      assertEquals("b", read(jar, "com/b/B.class"));
+      // The first JAR by file name wins
+      assertEquals("from a", read(jar, "com/shared/Dup.class"));
+      assertEquals("com.a.ACodec\ncom.b.BCodec\n", read(jar, "META-INF/services/com.api.Codec"));
+      assertNull(jar.getEntry("META-INF/B.SF"));
+    }
+
+    // The same dependencies reuse the cached bundle, and rebuilding it gives the same bytes
+    byte[] built = Files.readAllBytes(bundle.getFile().toPath());
+    DependencyBundler.Bundle cached = bundler.bundle(dependencies).get(0);
+    assertTrue(cached.isCached());
+    assertEquals(bundle.getFile(), cached.getFile());
+    Files.delete(bundle.getFile().toPath());
+    DependencyBundler.Bundle rebuilt = bundler.bundle(dependencies).get(0);
+    assertFalse(rebuilt.isCached());
+    assertArrayEquals(built, Files.readAllBytes(rebuilt.getFile().toPath()));
+  }
+
+  @Test
+  public void testBundlesBoundedBySize() throws IOException {
+    DependencyBundler bundler = new DependencyBundler(new File(tmp.getRoot(), "bundles"), 1);
+    List<DependencyBundler.Bundle> bundles = bundler.bundle(dependencies);
+
+    assertEquals(2, bundles.size());
+    assertEquals(Arrays.asList("a-1.0.jar"), bundles.get(0).getDependencyFiles());
+    assertEquals(Arrays.asList("b-1.0.jar"), bundles.get(1).getDependencyFiles());
+  }
+
+  @Test
+  public void testDroppedEntries() {
+    assertTrue(DependencyBundler.isDropped("META-INF/MANIFEST.MF"));
+    assertTrue(DependencyBundler.isDropped("META-INF/BC1024KE.DSA"));
+    assertTrue(DependencyBundler.isDropped("META-INF/SIG-FOO"));
+    assertTrue(DependencyBundler.isDropped("META-INF/versions/9/module-info.class"));
+    assertFalse(DependencyBundler.isDropped("META-INF/maven/org/a/pom.properties"));
+    assertFalse(DependencyBundler.isDropped("com/example/Signature.RSA"));
+  }
+}
@@ -0,0 +1,41 @@
+package com.snowflake.plugins.udf.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DependencyMirrorTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void testFilesLinkedNotCopied() throws IOException {
+    File source = tmp.newFile("gson-2.10.jar");
+    byte[] content = "jar content".getBytes(StandardCharsets.UTF_8);
+    Files.write(source.toPath(), content);
+    File mirrorDir = new File(tmp.getRoot(), "mirror");
+    DependencyMirror mirror = new DependencyMirror(mirrorDir);
+    mirror.reset();
+    mirror.add(source, "abc.jar");
+    // Adding the same name again replaces the link
+    mirror.add(source, "abc.jar");
+
+    Path mirrored = mirrorDir.toPath().resolve("abc.jar");
+    assertArrayEquals(content, Files.readAllBytes(mirrored));
+    // A hard link or a symbolic link shares the source file
+    assertTrue(Files.isSameFile(source.toPath(), mirrored));
+
+    // Resetting removes the link but never the source
+    mirror.reset();
+    assertFalse(Files.exists(mirrored));
+    assertArrayEquals(content, Files.readAllBytes(source.toPath()));
+  }
+}
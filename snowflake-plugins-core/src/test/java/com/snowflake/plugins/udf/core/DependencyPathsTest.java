@@ -0,0 +1,28 @@
+package com.snowflake.plugins.udf.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import org.junit.Test;
+
+public class DependencyPathsTest {
+
+  @Test
+  public void testStagePathsImitateLocalRepository() {
+    DependencyPaths paths = new DependencyPaths();
+    File scalaXml = new File("/m2/org/scala-lang/modules/scala-xml_2.12-1.0.6.jar");
+    File netty = new File("/m2/io/netty/netty-epoll-4.1.86-linux-x86_64.jar");
+    paths.add("org.scala-lang.modules", "scala-xml_2.12", "1.0.6", scalaXml);
+    paths.add("io.netty", "netty-epoll", "4.1.86", netty);
+
+    assertEquals(
+        "org/scala-lang/modules/scala-xml_2.12/1.0.6",
+        paths.getStagePaths().get("scala-xml_2.12-1.0.6.jar"));
+    // Files are keyed by their actual name, so classifiers are kept
+    assertEquals(
+        "io/netty/netty-epoll/4.1.86",
+        paths.getStagePaths().get("netty-epoll-4.1.86-linux-x86_64.jar"));
+    assertEquals(netty.getPath(), paths.getLocalPaths().get("netty-epoll-4.1.86-linux-x86_64.jar"));
+    assertEquals(2, paths.getLocalPaths().size());
+  }
+}
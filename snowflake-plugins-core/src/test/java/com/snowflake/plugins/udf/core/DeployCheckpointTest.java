@@ -0,0 +1,83 @@
+package com.snowflake.plugins.udf.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DeployCheckpointTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private static UserDefined udx(String name, String inputs) {
+    UserDefined udx = mock(UserDefined.class);
+    when(udx.getType()).thenReturn(UserDefined.function);
+    when(udx.getName()).thenReturn(name);
+    when(udx.getInputs()).thenReturn(inputs);
+    return udx;
+  }
+
+  @Test
+  public void testProgressSurvivesReload() throws IOException {
+    File dir = tmp.getRoot();
+    DeployCheckpoint checkpoint = new DeployCheckpoint(dir, "account\nstage");
+    checkpoint.recordUpload("libs/project.jar", "abc");
+    checkpoint.recordCreated(udx("add", "a int"), "CREATE OR REPLACE function add");
+
+    DeployCheckpoint reloaded = new DeployCheckpoint(dir, "account\nstage");
+    assertEquals(2, reloaded.size());
+    assertTrue(reloaded.isUploaded("libs/project.jar", "abc"));
+    assertFalse(reloaded.isUploaded("libs/project.jar", "def"));
+    assertTrue(reloaded.isCreated(udx("add", "a int"), "CREATE OR REPLACE function add"));
+    // A changed definition or another overload is created again
+    assertFalse(reloaded.isCreated(udx("add", "a int"), "CREATE OR REPLACE function add2"));
+    assertFalse(reloaded.isCreated(udx("add", "a string"), "CREATE OR REPLACE function add"));
+
+    // Each target has its own checkpoint
+    assertEquals(0, new DeployCheckpoint(dir, "account\nother_stage").size());
+    assertNotEquals(
+        reloaded.getFile(), new DeployCheckpoint(dir, "account\nother_stage").getFile());
+
+    reloaded.clear();
+    assertFalse(reloaded.getFile().exists());
+    assertEquals(0, new DeployCheckpoint(dir, "account\nstage").size());
+  }
+
+  @Test
+  public void testImportsOverwrittenSurvivesReload() throws IOException {
+    DeployCheckpoint checkpoint = new DeployCheckpoint(tmp.getRoot(), "target");
+    assertFalse(checkpoint.isImportsOverwritten());
+    checkpoint.recordImportsOverwritten();
+    checkpoint.recordImportsOverwritten();
+
+    DeployCheckpoint reloaded = new DeployCheckpoint(tmp.getRoot(), "target");
+    assertTrue(reloaded.isImportsOverwritten());
+    assertEquals(1, Files.readAllLines(reloaded.getFile().toPath()).size());
+    reloaded.clear();
+    assertFalse(new DeployCheckpoint(tmp.getRoot(), "target").isImportsOverwritten());
+  }
+
+  @Test
+  public void testLineCutShortIgnored() throws IOException {
+    DeployCheckpoint checkpoint = new DeployCheckpoint(tmp.getRoot(), "target");
+    checkpoint.recordUpload("dependency/a.jar", "abc");
+    Files.write(
+        checkpoint.getFile().toPath(),
+        "upload\tdependency/b.jar".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+
+    DeployCheckpoint reloaded = new DeployCheckpoint(tmp.getRoot(), "target");
+    assertEquals(1, reloaded.size());
+    assertTrue(reloaded.isUploaded("dependency/a.jar", "abc"));
+  }
+}
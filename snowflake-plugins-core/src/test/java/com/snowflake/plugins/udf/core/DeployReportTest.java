@@ -0,0 +1,76 @@
+package com.snowflake.plugins.udf.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DeployReportTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private static UserDefined udx(String name) {
+    UserDefined udx = mock(UserDefined.class);
+    when(udx.getType()).thenReturn(UserDefined.function);
+    when(udx.getName()).thenReturn(name);
+    return udx;
+  }
+
+  @Test
+  public void testReportListsEveryEvent() throws IOException {
+    DeployReport report = new DeployReport();
+    report.phaseFinished("connect", 120, true);
+    report.queryFinished(
+        new QueryRecord("create_functions", "01ab-02cd", "CREATE OR REPLACE function f", 35, true));
+    report.uploadFinished(
+        new UploadResult("gson.jar", "dependency", UploadResult.Decision.UPLOADED, 2048, 17));
+    report.udxFinished(new CreateResult(udx("f"), null));
+    report.udxFinished(CreateResult.unchanged(udx("g")));
+    report.udxFinished(new CreateResult(udx("h"), new SQLException("bad \"handler\"")));
+    report.phaseFinished("create_functions", 300, false);
+
+    String json = report.toJson();
+    assertTrue(json.contains("\"succeeded\": false,"));
+    assertTrue(
+        json.contains("{\"name\": \"connect\", \"elapsedMillis\": 120, \"succeeded\": true}"));
+    assertTrue(
+        json.contains(
+            "{\"phase\": \"create_functions\", \"queryId\": \"01ab-02cd\", \"statement\":"
+                + " \"CREATE OR REPLACE function f\", \"elapsedMillis\": 35, \"succeeded\": true}"));
+    assertTrue(
+        json.contains(
+            "{\"file\": \"gson.jar\", \"stagePath\": \"dependency\", \"decision\": \"UPLOADED\","
+                + " \"bytes\": 2048, \"elapsedMillis\": 17}"));
+    assertTrue(
+        json.contains(
+            "{\"type\": \"function\", \"name\": \"f\", \"outcome\": \"created\", \"error\": null}"));
+    assertTrue(json.contains("\"name\": \"g\", \"outcome\": \"unchanged\""));
+    assertTrue(json.contains("\"outcome\": \"failed\", \"error\": \"bad \\\"handler\\\"\""));
+
+    File file = new File(tmp.getRoot(), "snowflake/deploy-report.json");
+    report.write(file);
+    assertEquals(json, new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testEmptyReport() {
+    String json = new DeployReport().toJson();
+    assertTrue(json.contains("\"succeeded\": true,"));
+    assertTrue(json.contains("\"queries\": [],"));
+    assertTrue(json.contains("\"functions\": []\n}"));
+  }
+
+  @Test
+  public void testStringEscaping() {
+    assertEquals("null", DeployReport.string(null));
+    assertEquals("\"a\\\\b\\n\\t\\u0001\"", DeployReport.string("a\\b\n\t\u0001"));
+  }
+}
@@ -0,0 +1,101 @@
+package com.snowflake.plugins.udf.core;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DeploySnapshotTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+  private File snapshotDir;
+  private File artifact;
+  private File dependencyDir;
+  private LoggerMock log = new LoggerMock();
+
+  @Before
+  public void before() throws IOException {
+    snapshotDir = new File(tmp.getRoot(), "snapshots");
+    artifact = tmp.newFile("project.jar");
+    Files.write(artifact.toPath(), "v1".getBytes(StandardCharsets.UTF_8));
+    dependencyDir = tmp.newFolder("dependency");
+    Files.write(
+        new File(dependencyDir, "dep-1.0.jar").toPath(), "dep".getBytes(StandardCharsets.UTF_8));
+  }
+
+  private SnowflakeBuilder builder(String schema) {
+    Map<String, String> depsToStagePaths = new HashMap<>();
+    depsToStagePaths.put("dep-1.0.jar", "org/dep/1.0");
+    return new SnowflakeBuilder(log::info)
+        .config("url", "myaccount.snowflakecomputing.com")
+        .config("schema", schema)
+        .stageName("mystage")
+        .artifactFileName("project.jar")
+        .depsToStagePaths(depsToStagePaths);
+  }
+
+  private List<UserDefined> udxs(String handler) {
+    return Collections.singletonList(
+        new UserDefined() {
+          @Override
+          public String getInputs() {
+            return "a string";
+          }
+
+          @Override
+          public String getType() {
+            return UserDefined.function;
+          }
+
+          @Override
+          public String getName() {
+            return "echo";
+          }
+
+          @Override
+          public String getHandler() {
+            return handler;
+          }
+
+          @Override
+          public String getReturns() {
+            return "string";
+          }
+        });
+  }
+
+  private DeploySnapshot snapshot(String schema, String handler) throws IOException {
+    return builder(schema).snapshot(snapshotDir, artifact, dependencyDir, udxs(handler));
+  }
+
+  @Test
+  public void testUpToDateAfterSave() throws IOException {
+    assertFalse(snapshot("public", "Echo.run").isUpToDate());
+    snapshot("public", "Echo.run").save();
+    assertTrue(snapshot("public", "Echo.run").isUpToDate());
+    // Other targets keep their own snapshot
+    assertFalse(snapshot("other", "Echo.run").isUpToDate());
+  }
+
+  @Test
+  public void testChangesDetected() throws IOException {
+    snapshot("public", "Echo.run").save();
+    assertFalse(snapshot("public", "Echo.call").isUpToDate());
+    Files.write(artifact.toPath(), "v2".getBytes(StandardCharsets.UTF_8));
+    assertFalse(snapshot("public", "Echo.run").isUpToDate());
+    Files.write(artifact.toPath(), "v1".getBytes(StandardCharsets.UTF_8));
+    assertTrue(snapshot("public", "Echo.run").isUpToDate());
+    Files.delete(new File(dependencyDir, "dep-1.0.jar").toPath());
+    assertFalse(snapshot("public", "Echo.run").isUpToDate());
+  }
+}
@@ -0,0 +1,153 @@
+package com.snowflake.plugins.udf.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.snowflake.plugins.udf.core.pruning.Handler;
+import com.snowflake.plugins.udf.core.pruning.Helper;
+import com.snowflake.plugins.udf.core.pruning.LoaderHandler;
+import com.snowflake.plugins.udf.core.pruning.ReflectiveHandler;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ImportPrunerTest {
+  private static final String ARTIFACT = "@stage/libs/project.jar";
+  private static final String HELPER = "@stage/org/helper/1.0/helper-1.0.jar";
+  private static final String UNUSED = "@stage/org/unused/1.0/unused-1.0.jar";
+  // An import without a local JAR, which can't be analyzed
+  private static final String REMOTE = "@stage/org/remote/1.0/remote-1.0.jar";
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final List<String> importPaths = Arrays.asList(ARTIFACT, HELPER, UNUSED, REMOTE);
+  private final Map<String, File> localFiles = new HashMap<>();
+
+  @Before
+  public void createJars() throws IOException {
+    localFiles.put(
+        ARTIFACT, jar("project.jar", Handler.class, ReflectiveHandler.class, LoaderHandler.class));
+    localFiles.put(HELPER, jar("helper-1.0.jar", Helper.class));
+    localFiles.put(UNUSED, jar("unused-1.0.jar", LoggerMock.class));
+  }
+
+  // Packs the compiled test classes into a JAR
+  private File jar(String name, Class<?>... classes) throws IOException {
+    File file = tmp.newFile(name);
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file))) {
+      for (Class<?> c : classes) {
+        String entryName = c.getName().replace('.', '/') + ".class";
+        out.putNextEntry(new ZipEntry(entryName));
+        try (InputStream in = c.getClassLoader().getResourceAsStream(entryName)) {
+          byte[] buffer = new byte[8192];
+          int n;
+          while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+          }
+        }
+        out.closeEntry();
+      }
+    }
+    return file;
+  }
+
+  // Packs empty files into a JAR
+  private File resourceJar(String name, String... entryNames) throws IOException {
+    File file = tmp.newFile(name);
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file))) {
+      for (String entryName : entryNames) {
+        out.putNextEntry(new ZipEntry(entryName));
+        out.closeEntry();
+      }
+    }
+    return file;
+  }
+
+  @Test
+  public void testUnreachableJarsPruned() {
+    ImportPruner pruner = new ImportPruner(importPaths, localFiles);
+    PrunedImports pruned = pruner.prune(Handler.class.getName() + ".run");
+
+    assertFalse(pruned.isFallback());
+    assertEquals(Arrays.asList(ARTIFACT, HELPER, REMOTE), pruned.getImportPaths());
+    assertEquals(Collections.singletonList(UNUSED), pruned.getPrunedPaths());
+    assertEquals(
+        Handler.class.getName() + ".run: importing 3 of 4 JARs, pruned " + UNUSED,
+        pruned.toString());
+  }
+
+  @Test
+  public void testClassLoadingKeepsEveryJar() {
+    ImportPruner pruner = new ImportPruner(importPaths, localFiles);
+    PrunedImports pruned = pruner.prune(ReflectiveHandler.class.getName() + ".run");
+
+    assertTrue(pruned.isFallback());
+    assertEquals(importPaths, pruned.getImportPaths());
+    assertTrue(pruned.getPrunedPaths().isEmpty());
+    assertTrue(pruned.getFallbackReason().contains("java.lang.Class.forName"));
+  }
+
+  @Test
+  public void testSubclassClassLoadingKeepsEveryJar() {
+    ImportPruner pruner = new ImportPruner(importPaths, localFiles);
+    PrunedImports pruned = pruner.prune(LoaderHandler.class.getName() + ".run");
+
+    assertTrue(pruned.isFallback());
+    assertEquals(importPaths, pruned.getImportPaths());
+    assertTrue(pruned.getFallbackReason().contains("java.net.URLClassLoader.loadClass"));
+  }
+
+  @Test
+  public void testResourceJarsKept() throws IOException {
+    String data = "@stage/org/data/1.0/data-1.0.jar";
+    String manifestOnly = "@stage/org/empty/1.0/empty-1.0.jar";
+    localFiles.put(data, resourceJar("data-1.0.jar", "META-INF/MANIFEST.MF", "org/data/words.txt"));
+    localFiles.put(manifestOnly, resourceJar("empty-1.0.jar", "META-INF/MANIFEST.MF"));
+    ImportPruner pruner =
+        new ImportPruner(Arrays.asList(ARTIFACT, HELPER, data, manifestOnly), localFiles);
+    PrunedImports pruned = pruner.prune(Handler.class.getName() + ".run");
+
+    // The handler may read the resources of a JAR whose classes it never reaches
+    assertEquals(Arrays.asList(ARTIFACT, HELPER, data), pruned.getImportPaths());
+    assertEquals(Collections.singletonList(manifestOnly), pruned.getPrunedPaths());
+  }
+
+  @Test
+  public void testUnknownHandlerKeepsEveryJar() {
+    ImportPruner pruner = new ImportPruner(importPaths, localFiles);
+    PrunedImports pruned = pruner.prune("com.example.Missing.run");
+
+    assertTrue(pruned.isFallback());
+    assertEquals(importPaths, pruned.getImportPaths());
+  }
+
+  @Test
+  public void testRendererImportsPrunedPerHandler() {
+    DdlRenderer renderer = new DdlRenderer(() -> importPaths, type -> Collections.emptyList());
+    renderer.setImportPruning(paths -> new ImportPruner(paths, localFiles));
+    UserDefined udx = mock(UserDefined.class);
+    when(udx.getType()).thenReturn(UserDefined.function);
+    when(udx.getHandler()).thenReturn(Handler.class.getName() + ".run");
+
+    assertEquals(Arrays.asList(ARTIFACT, HELPER, REMOTE), renderer.getImportPaths(udx));
+    assertTrue(
+        renderer
+            .render(udx)
+            .endsWith("IMPORTS = ('" + ARTIFACT + "', '" + HELPER + "', '" + REMOTE + "');"));
+  }
+}
@@ -0,0 +1,188 @@
+package com.snowflake.plugins.udf.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.snowflake.client.jdbc.SnowflakeConnectionV1;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RemoteCatalogTest {
+  private SnowflakeConnectionV1 conn = mock(SnowflakeConnectionV1.class);
+  private Statement statement = mock(Statement.class);
+  private List<String> imports =
+      Arrays.asList("@mystage/libs/project.jar", "@mystage/org/dep/1.0/dep-1.0.jar");
+
+  @Before
+  public void before() throws SQLException {
+    when(conn.createStatement()).thenReturn(statement);
+    ResultSet functions = mock(ResultSet.class);
+    when(statement.executeQuery("SHOW USER FUNCTIONS IN SCHEMA")).thenReturn(functions);
+    when(functions.next()).thenReturn(true, false);
+    when(functions.getString("name")).thenReturn("ADD");
+    when(functions.getString("arguments")).thenReturn("ADD(NUMBER, VARCHAR) RETURN VARCHAR");
+    ResultSet procedures = mock(ResultSet.class);
+    when(statement.executeQuery("SHOW USER PROCEDURES IN SCHEMA")).thenReturn(procedures);
+
+    ResultSet description = mock(ResultSet.class);
+    when(statement.executeQuery("DESCRIBE FUNCTION ADD(NUMBER, VARCHAR)")).thenReturn(description);
+    when(description.next()).thenReturn(true, true, true, true, true, true, false);
+    when(description.getString("property"))
+        .thenReturn("signature", "returns", "language", "handler", "imports", "packages");
+    when(description.getString("value"))
+        .thenReturn(
+            "(A NUMBER, B VARCHAR)",
+            "VARCHAR(16777216)",
+            "JAVA",
+            "Add.run",
+            "[@MYSTAGE/libs/project.jar,@MYSTAGE/org/dep/1.0/dep-1.0.jar]",
+            "[]");
+  }
+
+  private static UserDefined udx(String name, String inputs, String handler) {
+    return new UserDefined() {
+      @Override
+      public String getInputs() {
+        return inputs;
+      }
+
+      @Override
+      public String getType() {
+        return UserDefined.function;
+      }
+
+      @Override
+      public String getName() {
+        return name;
+      }
+
+      @Override
+      public String getHandler() {
+        return handler;
+      }
+
+      @Override
+      public String getReturns() {
+        return "string";
+      }
+    };
+  }
+
+  @Test
+  public void testUnchangedFunctionMatched() throws SQLException {
+    RemoteCatalog catalog = RemoteCatalog.load(new StatementExecutor(conn));
+    assertEquals(1, catalog.size());
+    assertTrue(
+        catalog.isUnchanged(
+            udx("add", "a int, b string", "Add.run"), imports, Collections.emptyList()));
+  }
+
+  @Test
+  public void testChangedDefinitionsDetected() throws SQLException {
+    RemoteCatalog catalog = RemoteCatalog.load(new StatementExecutor(conn));
+    // Different handler
+    assertFalse(
+        catalog.isUnchanged(
+            udx("add", "a int, b string", "Add.sum"), imports, Collections.emptyList()));
+    // Different signature, not described at all
+    assertFalse(
+        catalog.isUnchanged(udx("add", "a int", "Add.run"), imports, Collections.emptyList()));
+    // Qualified names are never matched
+    assertFalse(
+        catalog.isUnchanged(
+            udx("db.schema.add", "a int, b string", "Add.run"), imports, Collections.emptyList()));
+    verify(statement, times(1)).executeQuery(startsWith("DESCRIBE"));
+  }
+
+  @Test
+  public void testChangedImportsDetected() throws SQLException {
+    RemoteCatalog catalog = RemoteCatalog.load(new StatementExecutor(conn));
+    assertFalse(
+        catalog.isUnchanged(
+            udx("add", "a int, b string", "Add.run"),
+            Collections.singletonList("@mystage/libs/project.jar"),
+            Collections.emptyList()));
+  }
+
+  @Test
+  public void testImportPathsCaseSensitive() {
+    assertEquals(
+        RemoteCatalog.normalizeList("[@MYSTAGE/libs/a.jar, @DB.\"My\".STAGE/b.jar]"),
+        RemoteCatalog.normalizeList(
+            Arrays.asList("'@mystage/libs/a.jar'", "@db.\"My\".stage/b.jar")));
+    // Only the unquoted stage name is case insensitive
+    assertFalse(
+        RemoteCatalog.normalizeList("[@MYSTAGE/libs/a.jar]")
+            .equals(RemoteCatalog.normalizeList(Arrays.asList("@mystage/libs/A.jar"))));
+    assertFalse(
+        RemoteCatalog.normalizeList("[@\"MyStage\"/a.jar]")
+            .equals(RemoteCatalog.normalizeList(Arrays.asList("@\"mystage\"/a.jar"))));
+  }
+
+  @Test
+  public void testCandidatesDescribedTogether() throws SQLException {
+    RemoteCatalog catalog = RemoteCatalog.load(new StatementExecutor(conn));
+    List<Integer> scheduled = new ArrayList<>();
+    WorkScheduler inline =
+        work -> {
+          scheduled.add(work.size());
+          for (WorkScheduler.Work item : work) {
+            item.run();
+          }
+        };
+    catalog.describeAll(
+        Arrays.asList(
+            udx("add", "a int, b string", "Add.run"),
+            udx("ADD", "x number, y varchar", "Add.run"),
+            udx("missing", "a int", "Missing.run")),
+        inline);
+
+    // Both definitions of ADD share one DESCRIBE, the missing function needs none
+    assertEquals(Collections.singletonList(1), scheduled);
+    assertTrue(
+        catalog.isUnchanged(
+            udx("add", "a int, b string", "Add.run"), imports, Collections.emptyList()));
+    verify(statement, times(1)).executeQuery(startsWith("DESCRIBE"));
+  }
+
+  @Test
+  public void testOtherLanguagesNotDescribed() throws SQLException {
+    Map<String, String> signatures = new HashMap<>();
+    String key = RemoteCatalog.signatureKey(UserDefined.function, "ADD", Arrays.asList("NUMBER"));
+    signatures.put(key, "ADD(NUMBER)");
+    RemoteCatalog catalog =
+        new RemoteCatalog(
+            new StatementExecutor(conn), signatures, Collections.singletonMap(key, "PYTHON"));
+    assertFalse(
+        catalog.isUnchanged(udx("add", "a int", "Add.run"), imports, Collections.emptyList()));
+    verify(statement, never()).executeQuery(startsWith("DESCRIBE"));
+  }
+
+  @Test
+  public void testCanonicalTypes() {
+    assertEquals("VARCHAR", RemoteCatalog.canonicalType("string"));
+    assertEquals("VARCHAR", RemoteCatalog.canonicalType("VARCHAR(16777216)"));
+    assertEquals("VARCHAR(10)", RemoteCatalog.canonicalType("varchar( 10 )"));
+    assertEquals("NUMBER", RemoteCatalog.canonicalType("bigint"));
+    assertEquals("NUMBER(10,2)", RemoteCatalog.canonicalType("decimal(10, 2)"));
+    assertEquals("FLOAT", RemoteCatalog.canonicalType("double precision"));
+    assertEquals("TIMESTAMP_NTZ", RemoteCatalog.canonicalType("timestamp"));
+    assertEquals("VARIANT", RemoteCatalog.canonicalType("variant"));
+    assertEquals(
+        Arrays.asList("NUMBER", "NUMBER(10,2)"),
+        RemoteCatalog.localArgumentTypes("a int, b decimal(10, 2)"));
+    assertNull(RemoteCatalog.localArgumentTypes("a int default 1"));
+  }
+}
@@ -0,0 +1,79 @@
+package com.snowflake.plugins.udf.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+import net.snowflake.client.jdbc.SnowflakeConnectionV1;
+import org.junit.Test;
+
+public class SnowflakeConnectionPoolTest {
+
+  // Pool which hands out mocked connections and counts the logins
+  private static class MockPool extends SnowflakeConnectionPool {
+    int logins = 0;
+
+    @Override
+    protected SnowflakeConnectionV1 connect(String url, Properties properties) {
+      logins++;
+      return mock(SnowflakeConnectionV1.class);
+    }
+  }
+
+  private Properties auth(String user) {
+    Properties properties = new Properties();
+    properties.put("user", user);
+    properties.put("password", "secret");
+    properties.put("CLIENT_SESSION_KEEP_ALIVE", true);
+    return properties;
+  }
+
+  @Test
+  public void testConnectionsSharedByAuth() throws SQLException {
+    MockPool pool = new MockPool();
+    String url = "jdbc:snowflake://myaccount.snowflakecomputing.com:443";
+    Connection first = pool.getConnection(url, auth("alice"));
+    // The same url and properties reuse the session
+    assertSame(first, pool.getConnection(url, auth("alice")));
+    // Different properties log in separately
+    assertNotSame(first, pool.getConnection(url, auth("bob")));
+    assertEquals(2, pool.logins);
+    assertEquals(2, pool.size());
+  }
+
+  @Test
+  public void testClosedConnectionReplaced() throws SQLException {
+    MockPool pool = new MockPool();
+    String url = "jdbc:snowflake://myaccount.snowflakecomputing.com:443";
+    Connection first = pool.getConnection(url, auth("alice"));
+    when(first.isClosed()).thenReturn(true);
+    assertNotSame(first, pool.getConnection(url, auth("alice")));
+    assertEquals(2, pool.logins);
+  }
+
+  @Test
+  public void testCloseClosesEveryConnection() throws SQLException {
+    MockPool pool = new MockPool();
+    String url = "jdbc:snowflake://myaccount.snowflakecomputing.com:443";
+    Connection alice = pool.getConnection(url, auth("alice"));
+    Connection bob = pool.getConnection(url, auth("bob"));
+    doThrow(new SQLException("already closed")).when(alice).close();
+    try {
+      pool.close();
+    } catch (SQLException e) {
+      assertEquals("already closed", e.getMessage());
+    }
+    verify(alice).close();
+    verify(bob).close();
+    assertEquals(0, pool.size());
+  }
+
+  @Test(expected = SQLException.class)
+  public void testUrlWithoutDriverRejected() throws SQLException {
+    SnowflakeConnectionPool.open("jdbc:nodriver:somewhere", auth("alice"));
+  }
+}
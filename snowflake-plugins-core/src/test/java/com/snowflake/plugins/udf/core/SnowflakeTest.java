@@ -1,22 +1,46 @@
 package com.snowflake.plugins.udf.core;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.AdditionalMatchers.and;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import net.snowflake.client.jdbc.SnowflakeConnectionV1;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class SnowflakeTest {
   private SnowflakeConnectionV1 conn = mock(SnowflakeConnectionV1.class);
   private Statement statement = mock(Statement.class);
   private LoggerMock log = new LoggerMock();
 
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
   @Before
   public void before() throws SQLException {
     reset(conn, statement);
@@ -42,6 +66,41 @@ public class SnowflakeTest {
                 + " AUTO_COMPRESS = FALSE PARALLEL = 4");
   }
 
+  @Test
+  public void testUploadArtifactFromStream() throws SQLException {
+    Snowflake sf = new Snowflake(log::info, conn, "@mvn_stage", "myproject.jar", new HashMap<>());
+    AtomicBoolean closed = new AtomicBoolean();
+    byte[] jar = "jar built in memory".getBytes(StandardCharsets.UTF_8);
+    sf.uploadArtifact(
+        () ->
+            new ByteArrayInputStream(jar) {
+              @Override
+              public void close() {
+                closed.set(true);
+              }
+            });
+
+    verify(conn)
+        .uploadStream(
+            eq("mvn_stage"), eq("libs"), any(InputStream.class), eq("myproject.jar"), eq(false));
+    // No PUT of a local file is run
+    verify(statement, never()).execute(anyString());
+    assertTrue(closed.get());
+    assertEquals(1, sf.getExecutor().getStatementCount(Snowflake.UPLOAD_ARTIFACT_PHASE));
+
+    try {
+      sf.uploadStream(
+          () -> {
+            throw new IOException("pipe closed");
+          },
+          "libs",
+          "shrunk.jar");
+      fail("Expected the read failure to be rethrown");
+    } catch (SQLException e) {
+      assertEquals("pipe closed", e.getCause().getMessage());
+    }
+  }
+
   @Test
   public void testUploadDependencies() throws SQLException {
     Map<String, String> depsToStagePath = new HashMap<>();
@@ -67,6 +126,27 @@ public class SnowflakeTest {
             "gson-2.11.jar");
   }
 
+  @Test
+  public void testUploadDependenciesFromLocalPaths() throws SQLException {
+    DependencyPaths paths = new DependencyPaths();
+    paths.add("com.google.code.gson", "gson", "2.10", new File("/m2/com/google/gson-2.10.jar"));
+    Map<String, String> depsToStagePath = new HashMap<>(paths.getStagePaths());
+    depsToStagePath.put("dep.jar", "com/google/dep/1.2.3");
+    Snowflake sf = spy(new Snowflake(log::info, conn, "stage", "artifact", depsToStagePath));
+    sf.setDepsToLocalPaths(paths.getLocalPaths());
+    doNothing().when(sf).uploadDependencyIfExists(anyString(), anyString(), anyString());
+    sf.uploadDependencies("target/dependency");
+
+    // Dependencies with a local path are read in place, the others from the dependency directory
+    verify(sf)
+        .uploadDependencyIfExists(
+            new File("/m2/com/google/gson-2.10.jar").getPath(),
+            "com/google/code/gson/gson/2.10",
+            "gson-2.10.jar");
+    verify(sf)
+        .uploadDependencyIfExists("target/dependency/dep.jar", "com/google/dep/1.2.3", "dep.jar");
+  }
+
   @Test
   public void testUploadFiles() throws SQLException {
     Snowflake sf = new Snowflake(log::info, conn, "mystage", "artifact", new HashMap<>());
@@ -106,4 +186,517 @@ public class SnowflakeTest {
             + " '@mystage/com/google/gson/2.11/gson-2.11.jar/gson-2.11.jar'",
         importString);
   }
+
+  @Test
+  public void testUploadDependenciesWithStageIndex() throws SQLException, IOException {
+    File depDir = tmp.newFolder("dependency");
+    Files.write(new File(depDir, "same.jar").toPath(), "same".getBytes(StandardCharsets.UTF_8));
+    Files.write(new File(depDir, "changed.jar").toPath(), "new".getBytes(StandardCharsets.UTF_8));
+    Files.write(new File(depDir, "added.jar").toPath(), "added".getBytes(StandardCharsets.UTF_8));
+    Map<String, String> depsToStagePath = new HashMap<>();
+    depsToStagePath.put("same.jar", "org/same/1.0");
+    depsToStagePath.put("changed.jar", "org/changed/1.0");
+    depsToStagePath.put("added.jar", "org/added/1.0");
+    depsToStagePath.put("bom.jar", "org/bom/1.0");
+
+    // LIST reports names prefixed with the stage name
+    ResultSet listing = mock(ResultSet.class);
+    when(statement.executeQuery("LIST @mystage")).thenReturn(listing);
+    when(listing.next()).thenReturn(true, true, false);
+    when(listing.getString("name"))
+        .thenReturn("mystage/org/same/1.0/same.jar", "mystage/org/changed/1.0/changed.jar");
+    when(listing.getLong("size")).thenReturn(4L, 3L);
+    when(listing.getString("md5"))
+        .thenReturn(
+            // md5 of "same"
+            "51037A4A37730F52C8732586D3AAA316", "00000000000000000000000000000000");
+
+    Snowflake sf = new Snowflake(log::info, conn, "mystage", "project.jar", depsToStagePath);
+    sf.setUseStageIndex(true);
+    sf.uploadDependencies(depDir.getPath());
+
+    verify(statement, times(1)).executeQuery("LIST @mystage");
+    verify(statement, never()).execute(contains("same.jar"));
+    // A different md5 may be the md5 of the encrypted file, so PUT still compares the digests
+    verify(statement)
+        .execute(
+            "PUT file://"
+                + depDir.getPath()
+                + "/changed.jar @mystage/org/changed/1.0 OVERWRITE = false"
+                + " AUTO_COMPRESS = FALSE PARALLEL = 4");
+    // A file missing from the stage is put directly
+    verify(statement)
+        .execute(
+            "PUT file://"
+                + depDir.getPath()
+                + "/added.jar @mystage/org/added/1.0 OVERWRITE = true"
+                + " AUTO_COMPRESS = FALSE PARALLEL = 4");
+    Map<String, UploadResult> results = sf.getUploadResults();
+    assertEquals(UploadResult.Decision.SKIPPED_IDENTICAL, results.get("same.jar").getDecision());
+    assertEquals(4L, results.get("same.jar").getBytes());
+    assertEquals(UploadResult.Decision.UPLOADED, results.get("changed.jar").getDecision());
+    assertEquals(UploadResult.Decision.SKIPPED_MISSING, results.get("bom.jar").getDecision());
+    // Missing dependencies are still excluded from the imports
+    assertEquals(
+        "'@mystage/libs/project.jar', '@mystage/org/changed/1.0/changed.jar',"
+            + " '@mystage/org/same/1.0/same.jar', '@mystage/org/added/1.0/added.jar'",
+        sf.getImportString());
+  }
+
+  @Test
+  public void testUploadDependenciesHashedLayout() throws SQLException, IOException {
+    File depDir = tmp.newFolder("dependency");
+    File mirrorDir = new File(tmp.getRoot(), "mirror");
+    Files.write(new File(depDir, "a-1.0.jar").toPath(), "a".getBytes(StandardCharsets.UTF_8));
+    Files.write(new File(depDir, "b-1.0.jar").toPath(), "b".getBytes(StandardCharsets.UTF_8));
+    Map<String, String> depsToStagePath = new LinkedHashMap<>();
+    depsToStagePath.put("a-1.0.jar", "org/a/1.0");
+    depsToStagePath.put("b-1.0.jar", "org/b/1.0");
+    depsToStagePath.put("bom-1.0.jar", "org/bom/1.0");
+
+    Snowflake sf = new Snowflake(log::info, conn, "mystage", "project.jar", depsToStagePath);
+    sf.setDependencyLayout(DependencyLayout.HASHED);
+    sf.setDependencyMirrorDir(mirrorDir);
+    sf.uploadDependencies(depDir.getPath());
+
+    String hashA = "ca978112ca1bbdcafac231b39a23dc4da786eff8147c4e72b9807785afee48bb";
+    String hashB = "3e23e8160039594a33894f6564e1b1348bbd7a0088d42c4acb73eeaed59c009d";
+    // All dependencies go up in a single wildcard PUT from the mirror directory
+    verify(statement)
+        .execute(
+            "PUT file://"
+                + mirrorDir.getPath()
+                + "/*.jar @mystage/dependency OVERWRITE = false AUTO_COMPRESS = FALSE PARALLEL = 4");
+    verify(statement, times(1)).execute(startsWith("PUT"));
+    assertTrue(new File(mirrorDir, hashA + ".jar").isFile());
+    assertTrue(new File(mirrorDir, hashB + ".jar").isFile());
+    assertEquals(
+        UploadResult.Decision.SKIPPED_MISSING,
+        sf.getUploadResults().get("bom-1.0.jar").getDecision());
+    assertEquals(
+        "'@mystage/libs/project.jar', '@mystage/dependency/"
+            + hashA
+            + ".jar', '@mystage/dependency/"
+            + hashB
+            + ".jar'",
+        sf.getImportString());
+  }
+
+  @Test
+  public void testUploadDependenciesBundledLayout() throws SQLException, IOException {
+    File depDir = tmp.newFolder("dependency");
+    File mirrorDir = new File(tmp.getRoot(), "mirror");
+    File bundleDir = new File(tmp.getRoot(), "bundles");
+    for (String name : Arrays.asList("a-1.0.jar", "b-1.0.jar")) {
+      try (ZipOutputStream out =
+          new ZipOutputStream(new FileOutputStream(new File(depDir, name)))) {
+        out.putNextEntry(new ZipEntry(name + ".txt"));
+        out.closeEntry();
+      }
+    }
+    Map<String, String> depsToStagePath = new LinkedHashMap<>();
+    depsToStagePath.put("a-1.0.jar", "org/a/1.0");
+    depsToStagePath.put("b-1.0.jar", "org/b/1.0");
+    depsToStagePath.put("bom-1.0.jar", "org/bom/1.0");
+
+    Snowflake sf = new Snowflake(log::info, conn, "mystage", "project.jar", depsToStagePath);
+    sf.setDependencyLayout(DependencyLayout.BUNDLED);
+    sf.setDependencyMirrorDir(mirrorDir);
+    sf.setDependencyBundleDir(bundleDir);
+    sf.uploadDependencies(depDir.getPath());
+
+    // Both dependencies are merged into one bundle, which replaces them in the imports
+    File[] bundles = bundleDir.listFiles();
+    assertEquals(1, bundles.length);
+    verify(statement)
+        .execute(
+            "PUT file://"
+                + mirrorDir.getPath()
+                + "/*.jar @mystage/dependency OVERWRITE = false AUTO_COMPRESS = FALSE PARALLEL = 4");
+    verify(statement, times(1)).execute(startsWith("PUT"));
+    assertEquals(
+        UploadResult.Decision.SKIPPED_MISSING,
+        sf.getUploadResults().get("bom-1.0.jar").getDecision());
+    assertEquals(
+        "'@mystage/libs/project.jar', '@mystage/dependency/" + bundles[0].getName() + "'",
+        sf.getImportString());
+  }
+
+  @Test
+  public void testIdenticalArtifactNotUploaded() throws SQLException, IOException {
+    File artifact = tmp.newFile("project.jar");
+    Files.write(artifact.toPath(), "same".getBytes(StandardCharsets.UTF_8));
+    ResultSet listing = mock(ResultSet.class);
+    when(statement.executeQuery("LIST @mystage/libs/project.jar")).thenReturn(listing);
+    when(listing.next()).thenReturn(true, false);
+    when(listing.getString("name")).thenReturn("mystage/libs/project.jar");
+    when(listing.getString("md5")).thenReturn("51037A4A37730F52C8732586D3AAA316");
+
+    Snowflake sf = new Snowflake(log::info, conn, "mystage", "project.jar", new HashMap<>());
+    sf.setUseStageIndex(true);
+    sf.uploadArtifact(artifact.getPath());
+    verify(statement, never()).execute(startsWith("PUT"));
+  }
+
+  @Test
+  public void testArtifactWithOtherMd5PutWithoutOverwrite() throws SQLException, IOException {
+    File artifact = tmp.newFile("project.jar");
+    Files.write(artifact.toPath(), "same".getBytes(StandardCharsets.UTF_8));
+    // The md5 of the encrypted file on a stage with client side encryption
+    ResultSet listing = mock(ResultSet.class);
+    when(statement.executeQuery("LIST @mystage/libs/project.jar")).thenReturn(listing);
+    when(listing.next()).thenReturn(true, false);
+    when(listing.getString("name")).thenReturn("mystage/libs/project.jar");
+    when(listing.getString("md5")).thenReturn("0f343b0931126a20f133d67c2b018a3b");
+
+    Snowflake sf = new Snowflake(log::info, conn, "mystage", "project.jar", new HashMap<>());
+    sf.setUseStageIndex(true);
+    sf.uploadArtifact(artifact.getPath());
+    verify(statement).execute(and(startsWith("PUT"), contains("OVERWRITE = false")));
+  }
+
+  @Test
+  public void testCreateFunctionsAsyncReportsEveryFailure() throws SQLException {
+    // Plain JDBC statements cannot be submitted asynchronously, so they run one by one but every
+    // statement is still attempted
+    when(statement.execute(contains("function bad"))).thenThrow(new SQLException("bad handler"));
+    Snowflake sf = new Snowflake(log::info, conn, "mystage", "project.jar", new HashMap<>());
+    sf.setDdlMode(DdlMode.ASYNC);
+    List<UserDefined> udxs = Arrays.asList(udx("good1"), udx("bad1"), udx("good2"), udx("bad2"));
+    try {
+      sf.createFunctionsOrProcs(udxs);
+      fail("Expected the failed functions to be reported");
+    } catch (SQLException e) {
+      assertEquals("2 of 4 functions/procedures failed: bad1, bad2", e.getMessage());
+      assertEquals("bad handler", e.getCause().getMessage());
+      assertEquals(1, e.getSuppressed().length);
+    }
+    verify(statement, times(4)).execute(startsWith("CREATE OR REPLACE function"));
+  }
+
+  @Test
+  public void testDeployEventsSentToListeners() throws SQLException {
+    when(statement.execute(contains("function bad"))).thenThrow(new SQLException("bad handler"));
+    // The driver reads the whole stream
+    doAnswer(invocation -> invocation.getArgument(2, InputStream.class).readAllBytes())
+        .when(conn)
+        .uploadStream(anyString(), anyString(), any(InputStream.class), anyString(), anyBoolean());
+    List<String> events = new ArrayList<>();
+    DeployListeners listeners = new DeployListeners();
+    DeployReport report = new DeployReport();
+    listeners.add(report);
+    listeners.add(
+        new DeployListener() {
+          @Override
+          public void phaseStarted(String phase) {
+            events.add("start " + phase);
+          }
+
+          @Override
+          public void phaseFinished(String phase, long elapsedMillis, boolean succeeded) {
+            events.add((succeeded ? "finish " : "fail ") + phase);
+          }
+
+          @Override
+          public void queryFinished(QueryRecord record) {
+            events.add("query " + record.getPhase());
+          }
+
+          @Override
+          public void uploadFinished(UploadResult result) {
+            events.add("upload " + result.getDependencyFile() + " " + result.getBytes());
+          }
+
+          @Override
+          public void udxFinished(CreateResult result) {
+            events.add("udx " + result.getUdx().getName() + " " + result.isSucceeded());
+          }
+        });
+    Snowflake sf = new Snowflake(log::info, conn, "mystage", "project.jar", new HashMap<>());
+    sf.setListeners(listeners, report);
+    sf.createStage();
+    sf.uploadArtifact(() -> new ByteArrayInputStream(new byte[42]));
+    try {
+      sf.createFunctionsOrProcs(Arrays.asList(udx("good"), udx("bad")));
+      fail("Expected the failed function to be rethrown");
+    } catch (SQLException e) {
+      assertEquals("bad handler", e.getMessage());
+    }
+
+    assertEquals(
+        Arrays.asList(
+            "start create_stage",
+            "query create_stage",
+            "finish create_stage",
+            "start upload_artifact",
+            "query upload_artifact",
+            "upload project.jar 42",
+            "finish upload_artifact",
+            "start create_functions",
+            "query create_functions",
+            "udx good true",
+            "query create_functions",
+            "udx bad false",
+            "fail create_functions"),
+        events);
+    assertSame(report, sf.getReport());
+    assertEquals(4, report.getQueries().size());
+    assertEquals(2, report.getFunctions().size());
+  }
+
+  @Test
+  public void testFailedDeployResumesFromCheckpoint() throws SQLException, IOException {
+    File jar = tmp.newFile("dep.jar");
+    Files.write(jar.toPath(), "dependency".getBytes(StandardCharsets.UTF_8));
+    Map<String, String> depsToStagePath = new HashMap<>();
+    depsToStagePath.put("dep.jar", "com/dep/1.0");
+    File checkpointDir = new File(tmp.getRoot(), "checkpoints");
+    when(statement.execute(contains("function bad"))).thenThrow(new SQLException("bad handler"));
+    List<UserDefined> udxs = Arrays.asList(udx("good1"), udx("bad"), udx("good2"));
+
+    Snowflake sf = new Snowflake(log::info, conn, "mystage", "project.jar", depsToStagePath);
+    sf.setCheckpoint(new DeployCheckpoint(checkpointDir, "target"));
+    sf.uploadDependencies(tmp.getRoot().getPath());
+    try {
+      sf.createFunctionsOrProcs(udxs);
+      fail("Expected the failed function to be rethrown");
+    } catch (SQLException e) {
+      assertEquals("bad handler", e.getMessage());
+    }
+
+    // The rerun skips the uploaded file and the created function
+    reset(statement);
+    when(statement.execute(anyString())).thenReturn(true);
+    sf = new Snowflake(log::info, conn, "mystage", "project.jar", depsToStagePath);
+    sf.setCheckpoint(new DeployCheckpoint(checkpointDir, "target"));
+    sf.uploadDependencies(tmp.getRoot().getPath());
+    List<CreateResult> results = sf.createFunctionsOrProcs(udxs);
+
+    verify(statement, never()).execute(startsWith("PUT"));
+    verify(statement, never()).execute(contains("function good1"));
+    verify(statement).execute(contains("function bad"));
+    verify(statement).execute(contains("function good2"));
+    assertEquals(
+        UploadResult.Decision.SKIPPED_IDENTICAL,
+        sf.getUploadResults().get("dep.jar").getDecision());
+    assertEquals(3, results.size());
+    assertTrue(results.get(0).isUnchanged());
+
+    // A new file content is uploaded again, and every function is recreated with it
+    Files.write(jar.toPath(), "new dependency".getBytes(StandardCharsets.UTF_8));
+    reset(statement);
+    when(statement.execute(anyString())).thenReturn(true);
+    sf = new Snowflake(log::info, conn, "mystage", "project.jar", depsToStagePath);
+    sf.setCheckpoint(new DeployCheckpoint(checkpointDir, "target"));
+    sf.uploadDependencies(tmp.getRoot().getPath());
+    sf.createFunctionsOrProcs(udxs);
+    verify(statement).execute(startsWith("PUT"));
+    verify(statement, times(3)).execute(startsWith("CREATE OR REPLACE function"));
+
+    sf.clearCheckpoint();
+    assertEquals(0, new DeployCheckpoint(checkpointDir, "target").size());
+  }
+
+  @Test
+  public void testResumedRemoteDiffRecreatesFunctionsOfOverwrittenImports()
+      throws SQLException, IOException {
+    File jar = tmp.newFile("dep.jar");
+    Files.write(jar.toPath(), "dependency".getBytes(StandardCharsets.UTF_8));
+    Map<String, String> depsToStagePath = new HashMap<>();
+    depsToStagePath.put("dep.jar", "com/dep/1.0");
+    File checkpointDir = new File(tmp.getRoot(), "checkpoints");
+    when(statement.execute(contains("function bad"))).thenThrow(new SQLException("bad handler"));
+    List<UserDefined> udxs = Arrays.asList(udx("good1"), udx("bad"), udx("good2"));
+
+    Snowflake sf = new Snowflake(log::info, conn, "mystage", "project.jar", depsToStagePath);
+    sf.setRemoteDiff(true);
+    sf.setCheckpoint(new DeployCheckpoint(checkpointDir, "target"));
+    sf.uploadDependencies(tmp.getRoot().getPath());
+    try {
+      sf.createFunctionsOrProcs(udxs);
+      fail("Expected the failed function to be rethrown");
+    } catch (SQLException e) {
+      assertEquals("bad handler", e.getMessage());
+    }
+
+    // The rerun skips the overwritten file, while the functions the failed deploy didn't create
+    // still hold its old content in Snowflake
+    reset(statement);
+    when(statement.execute(anyString())).thenReturn(true);
+    sf = new Snowflake(log::info, conn, "mystage", "project.jar", depsToStagePath);
+    sf.setRemoteDiff(true);
+    sf.setCheckpoint(new DeployCheckpoint(checkpointDir, "target"));
+    sf.uploadDependencies(tmp.getRoot().getPath());
+    describeAsUnchanged(sf.getImportPaths(), "GOOD1", "BAD", "GOOD2");
+    List<CreateResult> results = sf.createFunctionsOrProcs(udxs);
+
+    verify(statement, never()).execute(startsWith("PUT"));
+    verify(statement, never()).execute(contains("function good1"));
+    verify(statement).execute(contains("function bad"));
+    verify(statement).execute(contains("function good2"));
+    assertEquals(3, results.size());
+  }
+
+  @Test
+  public void testSharedDependencyUploadedOnce() throws SQLException, IOException {
+    for (String name : Arrays.asList("shared.jar", "a.jar", "b.jar")) {
+      Files.write(tmp.newFile(name).toPath(), name.getBytes(StandardCharsets.UTF_8));
+    }
+    Map<String, String> moduleA = new HashMap<>();
+    moduleA.put("shared.jar", "com/shared/1.0");
+    moduleA.put("a.jar", "com/a/1.0");
+    Map<String, String> moduleB = new HashMap<>();
+    moduleB.put("shared.jar", "com/shared/1.0");
+    moduleB.put("b.jar", "com/b/1.0");
+    SharedUploads sharedUploads = new SharedUploads();
+
+    Snowflake a = new Snowflake(log::info, conn, "mystage", "a-module.jar", moduleA);
+    a.setSharedUploads(sharedUploads, "target");
+    a.uploadDependencies(tmp.getRoot().getPath());
+    Snowflake b = new Snowflake(log::info, conn, "mystage", "b-module.jar", moduleB);
+    b.setSharedUploads(sharedUploads, "target");
+    b.uploadDependencies(tmp.getRoot().getPath());
+    b.createFunctionsOrProcs(Arrays.asList(udx("fromb")));
+
+    verify(statement, times(1)).execute(contains("shared.jar @mystage/com/shared/1.0"));
+    verify(statement, times(1)).execute(contains("b.jar @mystage/com/b/1.0"));
+    assertEquals(3, sharedUploads.size());
+    assertEquals(
+        UploadResult.Decision.SKIPPED_IDENTICAL,
+        b.getUploadResults().get("shared.jar").getDecision());
+    // The functions of a module still import only its own dependencies
+    verify(statement).execute(contains("'@mystage/com/shared/1.0/shared.jar'"));
+    verify(statement).execute(contains("'@mystage/com/b/1.0/b.jar'"));
+    verify(statement, never()).execute(and(contains("function fromb"), contains("a.jar")));
+
+    // A deploy to another target uploads the file again
+    Snowflake other = new Snowflake(log::info, conn, "mystage", "a-module.jar", moduleA);
+    other.setSharedUploads(sharedUploads, "other target");
+    other.uploadDependencies(tmp.getRoot().getPath());
+    verify(statement, times(2)).execute(contains("shared.jar @mystage/com/shared/1.0"));
+  }
+
+  @Test
+  public void testRemoteDiffRecreatesFunctionsOfSharedUploads() throws SQLException, IOException {
+    Files.write(tmp.newFile("shared.jar").toPath(), "shared".getBytes(StandardCharsets.UTF_8));
+    Map<String, String> depsToStagePath = new HashMap<>();
+    depsToStagePath.put("shared.jar", "com/shared/1.0");
+    SharedUploads sharedUploads = new SharedUploads();
+    Snowflake a = new Snowflake(log::info, conn, "mystage", "a-module.jar", depsToStagePath);
+    a.setSharedUploads(sharedUploads, "target");
+    a.uploadDependencies(tmp.getRoot().getPath());
+
+    // The file b skips was overwritten by a, so the function of b must pick up its content
+    Snowflake b = new Snowflake(log::info, conn, "mystage", "b-module.jar", depsToStagePath);
+    b.setSharedUploads(sharedUploads, "target");
+    b.setRemoteDiff(true);
+    b.uploadDependencies(tmp.getRoot().getPath());
+    describeAsUnchanged(b.getImportPaths(), "FROMB");
+    List<CreateResult> results = b.createFunctionsOrProcs(Arrays.asList(udx("fromb")));
+
+    verify(statement, times(1)).execute(contains("shared.jar @mystage/com/shared/1.0"));
+    verify(statement).execute(contains("function fromb"));
+    assertEquals(1, results.size());
+  }
+
+  @Test
+  public void testRemoteDiffKeepsFunctionsOfFilesPutSkipped() throws SQLException, IOException {
+    File artifact = tmp.newFile("project.jar");
+    Files.write(artifact.toPath(), "project".getBytes(StandardCharsets.UTF_8));
+    Files.write(tmp.newFile("dep.jar").toPath(), "dep".getBytes(StandardCharsets.UTF_8));
+    Map<String, String> depsToStagePath = new HashMap<>();
+    depsToStagePath.put("dep.jar", "com/dep/1.0");
+    // The stage already holds the same content, so PUT skips every file
+    ResultSet putResult = mock(ResultSet.class);
+    when(statement.getResultSet()).thenReturn(putResult);
+    when(putResult.findColumn("status")).thenReturn(2);
+    when(putResult.next()).thenReturn(true, false, true, false);
+    when(putResult.getString(2)).thenReturn("SKIPPED");
+    SharedUploads sharedUploads = new SharedUploads();
+
+    Snowflake a = new Snowflake(log::info, conn, "mystage", "project.jar", depsToStagePath);
+    a.setSharedUploads(sharedUploads, "target");
+    a.setRemoteDiff(true);
+    a.uploadArtifact(artifact.getPath());
+    a.uploadDependencies(tmp.getRoot().getPath());
+    describeAsUnchanged(a.getImportPaths(), "FROMA");
+    List<CreateResult> results = a.createFunctionsOrProcs(Arrays.asList(udx("froma")));
+
+    assertEquals(
+        UploadResult.Decision.SKIPPED_IDENTICAL, a.getUploadResults().get("dep.jar").getDecision());
+    verify(statement, never()).execute(contains("function froma"));
+    assertEquals(1, results.size());
+
+    // Another module skipping the file a's PUT skipped keeps its functions as well
+    Snowflake b = new Snowflake(log::info, conn, "mystage", "b-module.jar", depsToStagePath);
+    b.setSharedUploads(sharedUploads, "target");
+    b.setRemoteDiff(true);
+    b.uploadDependencies(tmp.getRoot().getPath());
+    describeAsUnchanged(b.getImportPaths(), "FROMB");
+    b.createFunctionsOrProcs(Arrays.asList(udx("fromb")));
+    verify(statement, times(1)).execute(contains("dep.jar @mystage/com/dep/1.0"));
+    verify(statement, never()).execute(contains("function fromb"));
+  }
+
+  // Makes SHOW and DESCRIBE report the functions as defined with the same DDL and imports
+  private void describeAsUnchanged(List<String> imports, String... names) throws SQLException {
+    ResultSet functions = mock(ResultSet.class);
+    Iterator<String> rows = Arrays.asList(names).iterator();
+    String[] row = new String[1];
+    when(functions.next())
+        .thenAnswer(
+            invocation -> {
+              row[0] = rows.hasNext() ? rows.next() : null;
+              return row[0] != null;
+            });
+    when(functions.getString("name")).thenAnswer(invocation -> row[0]);
+    when(functions.getString("arguments")).thenAnswer(invocation -> row[0] + "() RETURN VARCHAR");
+    when(statement.executeQuery("SHOW USER FUNCTIONS IN SCHEMA")).thenReturn(functions);
+    when(statement.executeQuery("SHOW USER PROCEDURES IN SCHEMA"))
+        .thenReturn(mock(ResultSet.class));
+    for (String name : names) {
+      ResultSet description = mock(ResultSet.class);
+      when(statement.executeQuery("DESCRIBE FUNCTION " + name + "()")).thenReturn(description);
+      when(description.next()).thenReturn(true, true, true, true, true, true, false);
+      when(description.getString("property"))
+          .thenReturn("signature", "returns", "language", "handler", "imports", "packages");
+      when(description.getString("value"))
+          .thenReturn(
+              "()",
+              "VARCHAR(16777216)",
+              "JAVA",
+              "MyClass.run",
+              "[" + String.join(",", imports) + "]",
+              "[]");
+    }
+  }
+
+  private static UserDefined udx(String name) {
+    return new UserDefined() {
+      @Override
+      public String getInputs() {
+        return "";
+      }
+
+      @Override
+      public String getType() {
+        return UserDefined.function;
+      }
+
+      @Override
+      public String getName() {
+        return name;
+      }
+
+      @Override
+      public String getHandler() {
+        return "MyClass.run";
+      }
+
+      @Override
+      public String getReturns() {
+        return "string";
+      }
+    };
+  }
 }
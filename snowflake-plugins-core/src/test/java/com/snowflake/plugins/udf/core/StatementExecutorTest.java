@@ -0,0 +1,253 @@
+package com.snowflake.plugins.udf.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import net.snowflake.client.core.QueryStatus;
+import net.snowflake.client.jdbc.SnowflakeConnectionV1;
+import net.snowflake.client.jdbc.SnowflakeResultSet;
+import net.snowflake.client.jdbc.SnowflakeStatement;
+import org.junit.After;
+import org.junit.Test;
+
+public class StatementExecutorTest {
+
+  // Mocked statement which also implements the Snowflake statement interface
+  private interface SnowflakeJdbcStatement extends Statement, SnowflakeStatement {}
+
+  // Mocked result set which also implements the Snowflake result set interface
+  private interface SnowflakeJdbcResultSet extends ResultSet, SnowflakeResultSet {}
+
+  // The error of a QueryStatus is held by the enum constant, shared by every test of the JVM
+  private final String failedErrorMessage = QueryStatus.FAILED_WITH_ERROR.getErrorMessage();
+  private final int failedErrorCode = QueryStatus.FAILED_WITH_ERROR.getErrorCode();
+
+  @After
+  public void restoreQueryStatus() {
+    QueryStatus.FAILED_WITH_ERROR.setErrorMessage(failedErrorMessage);
+    QueryStatus.FAILED_WITH_ERROR.setErrorCode(failedErrorCode);
+  }
+
+  @Test
+  public void testStatementTaggedTimedAndClosed() throws SQLException {
+    SnowflakeConnectionV1 conn = mock(SnowflakeConnectionV1.class);
+    SnowflakeJdbcStatement statement = mock(SnowflakeJdbcStatement.class);
+    when(conn.createStatement()).thenReturn(statement);
+    when(statement.isWrapperFor(SnowflakeStatement.class)).thenReturn(true);
+    when(statement.unwrap(SnowflakeStatement.class)).thenReturn(statement);
+    when(statement.getQueryID()).thenReturn("01a2-query");
+
+    List<QueryRecord> records = new ArrayList<>();
+    StatementExecutor executor = new StatementExecutor(conn);
+    executor.setQueryTimeoutSeconds(30);
+    executor.setQueryListener(records::add);
+    executor.setPhase("create_stage");
+    executor.execute("create stage if not exists mystage");
+
+    verify(statement).setQueryTimeout(30);
+    verify(statement).setParameter("QUERY_TAG", "snowflake-plugins:create_stage");
+    verify(statement).execute("create stage if not exists mystage");
+    verify(statement).close();
+    assertEquals(1, records.size());
+    assertEquals("01a2-query", records.get(0).getQueryId());
+    assertEquals("create_stage", records.get(0).getPhase());
+    assertTrue(records.get(0).isSucceeded());
+    assertEquals(1, executor.getStatementCount("create_stage"));
+  }
+
+  @Test
+  public void testFailedStatementClosedAndRecorded() throws SQLException {
+    SnowflakeConnectionV1 conn = mock(SnowflakeConnectionV1.class);
+    Statement statement = mock(Statement.class);
+    when(conn.createStatement()).thenReturn(statement);
+    when(statement.execute(anyString())).thenThrow(new SQLException("syntax error"));
+
+    List<QueryRecord> records = new ArrayList<>();
+    StatementExecutor executor = new StatementExecutor(conn);
+    executor.setQueryListener(records::add);
+    try {
+      executor.execute("CREATE OR REPLACE FUNCTION f()\nRETURNS string");
+      fail("Expected the statement failure to be rethrown");
+    } catch (SQLException e) {
+      assertEquals("syntax error", e.getMessage());
+    }
+    // No timeout is set by default and plain JDBC statements are not tagged
+    verify(statement, never()).setQueryTimeout(anyInt());
+    verify(statement).close();
+    assertFalse(records.get(0).isSucceeded());
+    assertNull(records.get(0).getQueryId());
+    assertEquals("CREATE OR REPLACE FUNCTION f()", records.get(0).getSummary());
+  }
+
+  @Test
+  public void testAsyncStatementsPolledUntilDone() throws SQLException {
+    SnowflakeConnectionV1 conn = mock(SnowflakeConnectionV1.class);
+    SnowflakeJdbcResultSet ok = asyncResult("q-ok");
+    SnowflakeJdbcResultSet bad = asyncResult("q-bad");
+    SnowflakeJdbcStatement okStatement = asyncStatement("create function ok", ok);
+    SnowflakeJdbcStatement badStatement = asyncStatement("create function bad", bad);
+    when(conn.createStatement()).thenReturn(okStatement, badStatement);
+    when(ok.getStatus()).thenReturn(QueryStatus.RUNNING, QueryStatus.RUNNING, QueryStatus.SUCCESS);
+    QueryStatus failed = QueryStatus.FAILED_WITH_ERROR;
+    failed.setErrorMessage("invalid handler");
+    failed.setErrorCode(2001);
+    when(bad.getStatus()).thenReturn(QueryStatus.QUEUED, failed);
+
+    List<QueryRecord> records = new ArrayList<>();
+    StatementExecutor executor = new StatementExecutor(conn);
+    executor.setQueryListener(records::add);
+    executor.setPhase("create_functions");
+    List<SQLException> errors =
+        executor.executeAllAsync(Arrays.asList("create function ok", "create function bad"));
+
+    assertNull(errors.get(0));
+    assertEquals("invalid handler", errors.get(1).getMessage());
+    assertEquals(2001, errors.get(1).getErrorCode());
+    verify(ok, times(3)).getStatus();
+    verify(okStatement).close();
+    verify(badStatement).close();
+    assertEquals(2, records.size());
+    assertEquals(2, executor.getStatementCount("create_functions"));
+  }
+
+  @Test
+  public void testBatchedStatementsErrorsMappedToStatement() throws SQLException {
+    SnowflakeConnectionV1 conn = mock(SnowflakeConnectionV1.class);
+    SnowflakeJdbcStatement statement = mock(SnowflakeJdbcStatement.class);
+    when(conn.createStatement()).thenReturn(statement);
+    when(statement.isWrapperFor(SnowflakeStatement.class)).thenReturn(true);
+    when(statement.unwrap(SnowflakeStatement.class)).thenReturn(statement);
+    when(statement.execute("s3\ns4")).thenThrow(new SQLException("Statement failed"));
+    when(statement.execute("s4")).thenThrow(new SQLException("s4 failed"));
+
+    StatementExecutor executor = new StatementExecutor(conn);
+    List<SQLException> errors =
+        executor.executeAllBatched(Arrays.asList("s1", "s2", "s3", "s4", "s5"), 2);
+
+    assertNull(errors.get(0));
+    assertNull(errors.get(1));
+    assertNull(errors.get(2));
+    assertEquals("s4 failed", errors.get(3).getMessage());
+    assertNull(errors.get(4));
+    verify(statement, times(2)).setParameter("MULTI_STATEMENT_COUNT", 2);
+    verify(statement).execute("s1\ns2");
+    // Only the statements of the failed batch are run again one at a time
+    verify(statement, never()).execute("s1");
+    verify(statement).execute("s3");
+    verify(statement).execute("s5");
+  }
+
+  @Test
+  public void testBatchesHandedToWorkScheduler() throws SQLException {
+    SnowflakeConnectionV1 conn = mock(SnowflakeConnectionV1.class);
+    SnowflakeJdbcStatement statement = mock(SnowflakeJdbcStatement.class);
+    when(conn.createStatement()).thenReturn(statement);
+    when(statement.isWrapperFor(SnowflakeStatement.class)).thenReturn(true);
+    when(statement.unwrap(SnowflakeStatement.class)).thenReturn(statement);
+    when(statement.execute("s3\ns4")).thenThrow(new SQLException("Statement failed"));
+    when(statement.execute("s4")).thenThrow(new SQLException("s4 failed"));
+    List<String> scheduled = new ArrayList<>();
+    // Runs the batches in reverse order, as a worker pool may
+    WorkScheduler reversed =
+        work -> {
+          for (int i = work.size() - 1; i >= 0; i--) {
+            scheduled.add(work.get(i).getName());
+            work.get(i).run();
+          }
+        };
+
+    StatementExecutor executor = new StatementExecutor(conn);
+    List<SQLException> errors =
+        executor.executeAllBatched(Arrays.asList("s1", "s2", "s3", "s4", "s5"), 2, reversed);
+
+    assertEquals(
+        Arrays.asList("statements 5 to 5", "statements 3 to 4", "statements 1 to 2"), scheduled);
+    assertNull(errors.get(0));
+    assertNull(errors.get(2));
+    assertEquals("s4 failed", errors.get(3).getMessage());
+    assertNull(errors.get(4));
+    verify(statement).execute("s1\ns2");
+    verify(statement).execute("s5");
+  }
+
+  private static SnowflakeJdbcResultSet asyncResult(String queryId) throws SQLException {
+    SnowflakeJdbcResultSet rs = mock(SnowflakeJdbcResultSet.class);
+    when(rs.unwrap(SnowflakeResultSet.class)).thenReturn(rs);
+    when(rs.getQueryID()).thenReturn(queryId);
+    return rs;
+  }
+
+  private static SnowflakeJdbcStatement asyncStatement(String sql, ResultSet rs)
+      throws SQLException {
+    SnowflakeJdbcStatement statement = mock(SnowflakeJdbcStatement.class);
+    when(statement.isWrapperFor(SnowflakeStatement.class)).thenReturn(true);
+    when(statement.unwrap(SnowflakeStatement.class)).thenReturn(statement);
+    when(statement.executeAsyncQuery(sql)).thenReturn(rs);
+    return statement;
+  }
+
+  @Test
+  public void testHeapFlatOverThousandsOfStatements() throws SQLException {
+    AtomicLong open = new AtomicLong();
+    // Stub only mocks and proxy statements do not record invocations, so any growth in heap would
+    // come from the executor itself
+    SnowflakeConnectionV1 conn = mock(SnowflakeConnectionV1.class, withSettings().stubOnly());
+    when(conn.createStatement()).thenAnswer(invocation -> countingStatement(open));
+    StatementExecutor executor = new StatementExecutor(conn);
+    executor.setPhase("create_functions");
+    String ddl = "CREATE OR REPLACE FUNCTION f()\nRETURNS string\n" + new String(new char[4096]);
+
+    for (int i = 0; i < 2_000; i++) {
+      executor.execute(ddl);
+    }
+    long before = usedHeap();
+    for (int i = 0; i < 20_000; i++) {
+      executor.execute(ddl);
+    }
+    long growth = usedHeap() - before;
+
+    assertEquals("every statement must be closed", 0, open.get());
+    assertEquals(22_000, executor.getStatementCount("create_functions"));
+    assertTrue("heap grew by " + growth + " bytes", growth < 2 * 1024 * 1024);
+  }
+
+  private static Statement countingStatement(AtomicLong open) {
+    open.incrementAndGet();
+    return (Statement)
+        Proxy.newProxyInstance(
+            Statement.class.getClassLoader(),
+            new Class<?>[] {Statement.class},
+            (proxy, method, args) -> {
+              switch (method.getName()) {
+                case "close":
+                  open.decrementAndGet();
+                  return null;
+                case "execute":
+                case "isWrapperFor":
+                  return method.getName().equals("execute");
+                default:
+                  return null;
+              }
+            });
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
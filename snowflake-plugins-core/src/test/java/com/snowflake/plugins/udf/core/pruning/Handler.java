@@ -0,0 +1,8 @@
+package com.snowflake.plugins.udf.core.pruning;
+
+/** Handler of a function whose only reachable class outside the JDK is Helper */
+public class Handler {
+  public static int run(int x) {
+    return Helper.twice(x);
+  }
+}
@@ -0,0 +1,7 @@
+package com.snowflake.plugins.udf.core.pruning;
+
+public class Helper {
+  public static int twice(int x) {
+    return 2 * x;
+  }
+}
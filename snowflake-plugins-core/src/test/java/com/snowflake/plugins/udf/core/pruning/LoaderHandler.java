@@ -0,0 +1,13 @@
+package com.snowflake.plugins.udf.core.pruning;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/** Handler of a function which loads a class by name with its own class loader */
+public class LoaderHandler {
+  public static String run(String className) throws Exception {
+    try (URLClassLoader loader = new URLClassLoader(new URL[0])) {
+      return loader.loadClass(className).getName();
+    }
+  }
+}
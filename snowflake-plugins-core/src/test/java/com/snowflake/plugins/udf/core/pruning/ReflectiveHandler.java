@@ -0,0 +1,8 @@
+package com.snowflake.plugins.udf.core.pruning;
+
+/** Handler of a function which loads a class by name */
+public class ReflectiveHandler {
+  public static String run(String className) throws ClassNotFoundException {
+    return Class.forName(className).getName();
+  }
+}
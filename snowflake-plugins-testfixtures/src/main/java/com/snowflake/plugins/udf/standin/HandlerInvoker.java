@@ -0,0 +1,138 @@
+package com.snowflake.plugins.udf.standin;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Runs the Java handler of a function or procedure in a class loader of its imported stage files.
+ * Only the imports are visible to the handler, as on Snowflake. The Snowpark session argument of
+ * procedures is passed as null, since there is no Snowpark session without Snowflake
+ */
+final class HandlerInvoker {
+  private static final String SESSION_CLASS_NAME = "Session";
+
+  private HandlerInvoker() {}
+
+  /**
+   * Calls the handler with the arguments
+   *
+   * @param imports the local files of the imported stage paths
+   * @param arguments the String, BigDecimal, Boolean or null arguments of the call
+   * @return the value returned by the handler
+   */
+  static Object invoke(String handler, List<Path> imports, List<Object> arguments)
+      throws SQLException {
+    int dot = handler.lastIndexOf('.');
+    if (dot < 0) {
+      throw StandInAccount.compilationError("invalid handler '" + handler + "'");
+    }
+    String className = handler.substring(0, dot);
+    String methodName = handler.substring(dot + 1);
+    URL[] urls = new URL[imports.size()];
+    try {
+      for (int i = 0; i < urls.length; i++) {
+        urls[i] = imports.get(i).toUri().toURL();
+      }
+    } catch (IOException e) {
+      throw new SQLException("Invalid import " + e.getMessage(), e);
+    }
+    Thread thread = Thread.currentThread();
+    ClassLoader contextLoader = thread.getContextClassLoader();
+    try (URLClassLoader loader = new URLClassLoader(urls, ClassLoader.getPlatformClassLoader())) {
+      // Logging frameworks find their configuration through the context class loader
+      thread.setContextClassLoader(loader);
+      Class<?> handlerClass = Class.forName(className, true, loader);
+      Method method = findMethod(handlerClass, methodName, arguments.size());
+      Class<?>[] parameterTypes = method.getParameterTypes();
+      int offset = parameterTypes.length - arguments.size();
+      Object[] values = new Object[parameterTypes.length];
+      for (int i = 0; i < arguments.size(); i++) {
+        values[offset + i] = convert(arguments.get(i), parameterTypes[offset + i]);
+      }
+      Object target =
+          Modifier.isStatic(method.getModifiers())
+              ? null
+              : handlerClass.getDeclaredConstructor().newInstance();
+      return method.invoke(target, values);
+    } catch (InvocationTargetException e) {
+      throw new SQLException(
+          "Java exception in handler '" + handler + "': " + e.getCause(), "P0000", e.getCause());
+    } catch (ReflectiveOperationException | LinkageError | IOException e) {
+      throw new SQLException("Failed to run handler '" + handler + "': " + e, "42601", e);
+    } finally {
+      thread.setContextClassLoader(contextLoader);
+    }
+  }
+
+  // Finds the public method taking the arguments, optionally after a leading Snowpark session
+  private static Method findMethod(Class<?> handlerClass, String name, int argumentCount)
+      throws SQLException {
+    for (Method method : handlerClass.getMethods()) {
+      if (!method.getName().equals(name)) {
+        continue;
+      }
+      Class<?>[] types = method.getParameterTypes();
+      if (types.length == argumentCount
+          || (types.length == argumentCount + 1
+              && types[0].getSimpleName().equals(SESSION_CLASS_NAME))) {
+        return method;
+      }
+    }
+    throw StandInAccount.compilationError(
+        String.format(
+            "no public method %s of %s takes %d arguments",
+            name, handlerClass.getName(), argumentCount));
+  }
+
+  private static Object convert(Object value, Class<?> type) throws SQLException {
+    if (value == null) {
+      if (type.isPrimitive()) {
+        throw new SQLException("NULL passed to a " + type + " argument", "22000");
+      }
+      return null;
+    }
+    if (type == String.class || type == Object.class) {
+      return value.toString();
+    }
+    if (type == boolean.class || type == Boolean.class) {
+      return value instanceof Boolean ? value : Boolean.parseBoolean(value.toString());
+    }
+    BigDecimal number;
+    try {
+      number = value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString());
+    } catch (NumberFormatException e) {
+      throw new SQLException("Numeric value '" + value + "' is not recognized", "22018", e);
+    }
+    try {
+      if (type == int.class || type == Integer.class) {
+        return number.intValueExact();
+      } else if (type == long.class || type == Long.class) {
+        return number.longValueExact();
+      } else if (type == short.class || type == Short.class) {
+        return number.shortValueExact();
+      } else if (type == byte.class || type == Byte.class) {
+        return number.byteValueExact();
+      } else if (type == double.class || type == Double.class) {
+        return number.doubleValue();
+      } else if (type == float.class || type == Float.class) {
+        return number.floatValue();
+      } else if (type == BigInteger.class) {
+        return number.toBigIntegerExact();
+      } else if (type == BigDecimal.class) {
+        return number;
+      }
+    } catch (ArithmeticException e) {
+      throw new SQLException("Value " + number + " out of range for " + type, "22003", e);
+    }
+    throw new SQLException("Arguments of type " + type.getName() + " are not supported", "0A000");
+  }
+}
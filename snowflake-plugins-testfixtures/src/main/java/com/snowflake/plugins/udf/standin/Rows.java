@@ -0,0 +1,38 @@
+package com.snowflake.plugins.udf.standin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/** The columns and rows returned by a statement */
+final class Rows {
+  private final List<String> columns;
+  private final List<Object[]> values = new ArrayList<>();
+
+  Rows(String... columns) {
+    this.columns = Collections.unmodifiableList(Arrays.asList(columns));
+  }
+
+  /** Returns the result of a statement which only reports its status, like DDL in Snowflake */
+  static Rows status(String message) {
+    return new Rows("status").add(message);
+  }
+
+  Rows add(Object... row) {
+    if (row.length != columns.size()) {
+      throw new IllegalArgumentException(
+          "Expected " + columns.size() + " values but got " + row.length);
+    }
+    values.add(row);
+    return this;
+  }
+
+  List<String> getColumns() {
+    return columns;
+  }
+
+  List<Object[]> getValues() {
+    return values;
+  }
+}
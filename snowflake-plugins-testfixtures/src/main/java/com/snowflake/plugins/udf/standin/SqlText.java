@@ -0,0 +1,170 @@
+package com.snowflake.plugins.udf.standin;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/** Splitting and parsing of the small SQL subset the stand-in understands */
+final class SqlText {
+  private SqlText() {}
+
+  /** Splits a multi-statement request on the semicolons outside of string literals */
+  static List<String> splitStatements(String sql) {
+    List<String> statements = new ArrayList<>();
+    boolean quoted = false;
+    int start = 0;
+    for (int i = 0; i < sql.length(); i++) {
+      char c = sql.charAt(i);
+      if (c == '\'') {
+        quoted = !quoted;
+      } else if (c == ';' && !quoted) {
+        addStatement(statements, sql.substring(start, i));
+        start = i + 1;
+      }
+    }
+    addStatement(statements, sql.substring(start));
+    return statements;
+  }
+
+  private static void addStatement(List<String> statements, String statement) {
+    if (!statement.trim().isEmpty()) {
+      statements.add(statement.trim());
+    }
+  }
+
+  /** Splits on the commas which are outside of parentheses and string literals */
+  static List<String> splitTopLevel(String s) {
+    List<String> parts = new ArrayList<>();
+    if (s.trim().isEmpty()) {
+      return parts;
+    }
+    int depth = 0;
+    boolean quoted = false;
+    int start = 0;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '\'') {
+        quoted = !quoted;
+      } else if (quoted) {
+        continue;
+      } else if (c == '(' || c == '[') {
+        depth++;
+      } else if (c == ')' || c == ']') {
+        depth--;
+      } else if (c == ',' && depth == 0) {
+        parts.add(s.substring(start, i).trim());
+        start = i + 1;
+      }
+    }
+    parts.add(s.substring(start).trim());
+    return parts;
+  }
+
+  /** Returns the index of the parenthesis closing the one at the index, or -1 */
+  static int closingParenthesis(String s, int open) {
+    int depth = 0;
+    boolean quoted = false;
+    for (int i = open; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '\'') {
+        quoted = !quoted;
+      } else if (!quoted && c == '(') {
+        depth++;
+      } else if (!quoted && c == ')' && --depth == 0) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Parses a literal argument of a function call: a string, a number, TRUE, FALSE or NULL
+   *
+   * @return a String, BigDecimal, Boolean or null
+   */
+  static Object literal(String token) throws SQLException {
+    String s = token.trim();
+    if (s.length() >= 2 && s.startsWith("'") && s.endsWith("'")) {
+      return s.substring(1, s.length() - 1).replace("''", "'");
+    }
+    switch (s.toUpperCase(Locale.ROOT)) {
+      case "NULL":
+        return null;
+      case "TRUE":
+        return Boolean.TRUE;
+      case "FALSE":
+        return Boolean.FALSE;
+      default:
+        try {
+          return new BigDecimal(s);
+        } catch (NumberFormatException e) {
+          throw StandInAccount.compilationError("unsupported argument '" + s + "'");
+        }
+    }
+  }
+
+  /** Removes the quotes of a single quoted string, if any */
+  static String unquote(String s) {
+    String trimmed = s.trim();
+    if (trimmed.length() >= 2 && trimmed.startsWith("'") && trimmed.endsWith("'")) {
+      return trimmed.substring(1, trimmed.length() - 1);
+    }
+    return trimmed;
+  }
+
+  /** Resolves an identifier the way Snowflake does: upper case unless double quoted */
+  static String identifier(String name) {
+    String trimmed = name.trim();
+    if (trimmed.length() >= 2 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+      return trimmed.substring(1, trimmed.length() - 1);
+    }
+    return trimmed.toUpperCase(Locale.ROOT);
+  }
+
+  /**
+   * Maps a SQL type to the name Snowflake reports for it, without its precision. Types are compared
+   * this way to match the signatures of overloaded functions and procedures
+   */
+  static String canonicalType(String type) {
+    String upper = type.trim().toUpperCase(Locale.ROOT).replaceAll("\\s+", " ");
+    int open = upper.indexOf('(');
+    String base = open < 0 ? upper : upper.substring(0, open).trim();
+    switch (base) {
+      case "STRING":
+      case "TEXT":
+      case "CHAR":
+      case "CHARACTER":
+      case "NCHAR":
+      case "NVARCHAR":
+      case "NVARCHAR2":
+      case "CHAR VARYING":
+      case "NCHAR VARYING":
+        return "VARCHAR";
+      case "INT":
+      case "INTEGER":
+      case "BIGINT":
+      case "SMALLINT":
+      case "TINYINT":
+      case "BYTEINT":
+      case "NUMERIC":
+      case "DECIMAL":
+      case "DEC":
+        return "NUMBER";
+      case "FLOAT4":
+      case "FLOAT8":
+      case "DOUBLE":
+      case "DOUBLE PRECISION":
+      case "REAL":
+        return "FLOAT";
+      case "VARBINARY":
+        return "BINARY";
+      case "DATETIME":
+      case "TIMESTAMP":
+        return "TIMESTAMP_NTZ";
+      default:
+        return base;
+    }
+  }
+}
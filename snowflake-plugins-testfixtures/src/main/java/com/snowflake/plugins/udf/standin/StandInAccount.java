@@ -0,0 +1,626 @@
+package com.snowflake.plugins.udf.standin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipFile;
+
+/**
+ * A Snowflake account simulated in a local directory, with the SQL the plugins use: CREATE and DROP
+ * STAGE, PUT, LIST, SHOW USER FUNCTIONS/PROCEDURES, DESCRIBE, CREATE and DROP FUNCTION/PROCEDURE,
+ * plus SELECT and CALL of a function or procedure with literal arguments to check a deploy. Stages
+ * are directories under "stages" and functions and procedures live in the {@link StandInCatalog}.
+ * Every connection to the same directory shares the same account
+ */
+public final class StandInAccount {
+  static final String STAGES_DIR = "stages";
+  static final String CATALOG_FILE = "catalog.tsv";
+  // Uploads are written here and moved into their stage once complete, so that LIST never sees a
+  // partial file
+  static final String TMP_DIR = "tmp";
+
+  private static final Map<Path, StandInAccount> ACCOUNTS = new ConcurrentHashMap<>();
+
+  private static final int FLAGS = Pattern.CASE_INSENSITIVE | Pattern.DOTALL;
+  private static final Pattern CREATE_STAGE =
+      Pattern.compile(
+          "create\\s+(or\\s+replace\\s+)?(?:temporary\\s+)?stage\\s+(if\\s+not\\s+exists\\s+)?"
+              + "([^\\s;]+).*",
+          FLAGS);
+  private static final Pattern DROP_STAGE =
+      Pattern.compile("drop\\s+stage\\s+(if\\s+exists\\s+)?(\\S+)", FLAGS);
+  private static final Pattern PUT = Pattern.compile("put\\s+('[^']*'|\\S+)\\s+(@\\S+)(.*)", FLAGS);
+  private static final Pattern LIST = Pattern.compile("(?:list|ls)\\s+(@\\S+)", FLAGS);
+  private static final Pattern SHOW =
+      Pattern.compile("show\\s+user\\s+(function|procedure)s(?:\\s+in\\s+schema)?", FLAGS);
+  private static final Pattern DESCRIBE =
+      Pattern.compile("desc(?:ribe)?\\s+(function|procedure)\\s+([^\\s(]+)\\s*\\((.*)\\)", FLAGS);
+  private static final Pattern CREATE_UDX =
+      Pattern.compile(
+          "create\\s+(or\\s+replace\\s+)?(?:secure\\s+)?(function|procedure)\\s+"
+              + "(if\\s+not\\s+exists\\s+)?([^\\s(]+)\\s*\\(",
+          FLAGS);
+  private static final Pattern UDX_BODY =
+      Pattern.compile("\\s*returns\\s+(.+?)\\s+language\\s+(\\w+)(.*)", FLAGS);
+  private static final Pattern HANDLER_CLAUSE = Pattern.compile("handler\\s*=\\s*'([^']*)'", FLAGS);
+  private static final Pattern IMPORTS_CLAUSE =
+      Pattern.compile("imports\\s*=\\s*\\(([^)]*)\\)", FLAGS);
+  private static final Pattern PACKAGES_CLAUSE =
+      Pattern.compile("packages\\s*=\\s*\\(([^)]*)\\)", FLAGS);
+  private static final Pattern DROP_UDX =
+      Pattern.compile(
+          "drop\\s+(function|procedure)\\s+(if\\s+exists\\s+)?([^\\s(]+)\\s*\\((.*)\\)", FLAGS);
+  private static final Pattern INVOKE =
+      Pattern.compile("(select|call)\\s+([^\\s(]+)\\s*\\((.*)\\)", FLAGS);
+
+  private final Path directory;
+  private final StandInCatalog catalog;
+
+  private StandInAccount(Path directory) {
+    this.directory = directory;
+    this.catalog = new StandInCatalog(directory.resolve(CATALOG_FILE));
+  }
+
+  /** Returns the account in the directory, creating the directory if needed */
+  public static StandInAccount open(Path directory) throws SQLException {
+    Path normalized = directory.toAbsolutePath().normalize();
+    try {
+      Files.createDirectories(normalized.resolve(STAGES_DIR));
+      Files.createDirectories(normalized.resolve(TMP_DIR));
+    } catch (IOException e) {
+      throw new SQLException("Failed to create the stand-in account in " + normalized, e);
+    }
+    return ACCOUNTS.computeIfAbsent(normalized, StandInAccount::new);
+  }
+
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /** Returns the local directory of the stage, whether or not the stage exists */
+  public Path getStageDirectory(String stageName) {
+    return directory.resolve(STAGES_DIR).resolve(stageKey(stageName));
+  }
+
+  /** Drops every stage, function and procedure of the account */
+  public void reset() throws SQLException {
+    try {
+      deleteRecursively(directory.resolve(STAGES_DIR));
+      Files.createDirectories(directory.resolve(STAGES_DIR));
+      Files.deleteIfExists(directory.resolve(CATALOG_FILE));
+    } catch (IOException e) {
+      throw new SQLException("Failed to reset the stand-in account in " + directory, e);
+    }
+  }
+
+  /** Runs a single statement, without the latency of the connection */
+  Rows execute(String sql, Throttle throttle) throws SQLException {
+    String statement = sql.trim();
+    while (statement.endsWith(";")) {
+      statement = statement.substring(0, statement.length() - 1).trim();
+    }
+    Matcher m;
+    if ((m = CREATE_STAGE.matcher(statement)).matches()) {
+      return createStage(m.group(3), m.group(1) != null, m.group(2) != null);
+    } else if ((m = DROP_STAGE.matcher(statement)).matches()) {
+      return dropStage(m.group(2), m.group(1) != null);
+    } else if ((m = PUT.matcher(statement)).matches()) {
+      return put(m.group(1), m.group(2), m.group(3), throttle);
+    } else if ((m = LIST.matcher(statement)).matches()) {
+      return list(m.group(1));
+    } else if ((m = SHOW.matcher(statement)).matches()) {
+      return show(m.group(1));
+    } else if ((m = DESCRIBE.matcher(statement)).matches()) {
+      return describe(m.group(1), m.group(2), m.group(3));
+    } else if ((m = CREATE_UDX.matcher(statement)).lookingAt()) {
+      return createUdx(statement, m);
+    } else if ((m = DROP_UDX.matcher(statement)).matches()) {
+      return dropUdx(m.group(1), m.group(3), m.group(4), m.group(2) != null);
+    } else if ((m = INVOKE.matcher(statement)).matches()) {
+      return invoke(m.group(1), m.group(2), m.group(3));
+    }
+    throw compilationError(
+        "statement not supported by the Snowflake stand-in: "
+            + statement.replaceAll("\\s+", " ").substring(0, Math.min(statement.length(), 80)));
+  }
+
+  /** Writes the stream to a stage, like the driver's stream upload */
+  void upload(
+      String stageName,
+      String destPrefix,
+      InputStream in,
+      String destFileName,
+      boolean compress,
+      Throttle throttle)
+      throws SQLException {
+    String stage = stageName.startsWith("@") ? stageName.substring(1) : stageName;
+    Path stageDir = existingStage(stageKey(stage));
+    String name = compress ? destFileName + ".gz" : destFileName;
+    write(resolve(stageDir, trimSlashes(destPrefix) + "/" + name), in, compress, throttle);
+  }
+
+  /** Reads a file of a stage, like the driver's stream download */
+  InputStream download(String stageName, String sourceFileName, boolean decompress)
+      throws SQLException {
+    String stage = stageName.startsWith("@") ? stageName.substring(1) : stageName;
+    Path file = resolve(existingStage(stageKey(stage)), sourceFileName);
+    if (!Files.isRegularFile(file)) {
+      throw notFound("File '" + sourceFileName + "' does not exist on stage " + stage);
+    }
+    try {
+      InputStream in = Files.newInputStream(file);
+      return decompress ? new GZIPInputStream(in) : in;
+    } catch (IOException e) {
+      throw new SQLException("Failed to read " + file, e);
+    }
+  }
+
+  private Rows createStage(String name, boolean orReplace, boolean ifNotExists)
+      throws SQLException {
+    Path stageDir = getStageDirectory(name);
+    try {
+      if (Files.isDirectory(stageDir)) {
+        if (orReplace) {
+          deleteRecursively(stageDir);
+        } else if (ifNotExists) {
+          return Rows.status(SqlText.identifier(name) + " already exists, statement succeeded.");
+        } else {
+          throw compilationError("Object '" + SqlText.identifier(name) + "' already exists.");
+        }
+      }
+      Files.createDirectories(stageDir);
+    } catch (IOException e) {
+      throw new SQLException("Failed to create stage " + name, e);
+    }
+    return Rows.status("Stage area " + SqlText.identifier(name) + " successfully created.");
+  }
+
+  private Rows dropStage(String name, boolean ifExists) throws SQLException {
+    Path stageDir = getStageDirectory(name);
+    if (!Files.isDirectory(stageDir)) {
+      if (ifExists) {
+        return Rows.status("Drop statement executed successfully (" + name + " already dropped).");
+      }
+      throw notFound("Stage '" + SqlText.identifier(name) + "' does not exist or not authorized.");
+    }
+    try {
+      deleteRecursively(stageDir);
+    } catch (IOException e) {
+      throw new SQLException("Failed to drop stage " + name, e);
+    }
+    return Rows.status(SqlText.identifier(name) + " successfully dropped.");
+  }
+
+  private Rows put(String source, String target, String options, Throttle throttle)
+      throws SQLException {
+    String[] location = stageLocation(target);
+    Path stageDir = existingStage(location[0]);
+    boolean overwrite = option(options, "OVERWRITE", false);
+    boolean autoCompress = option(options, "AUTO_COMPRESS", true);
+    Rows rows =
+        new Rows(
+            "source",
+            "target",
+            "source_size",
+            "target_size",
+            "source_compression",
+            "target_compression",
+            "status",
+            "message");
+    for (Path file : localFiles(SqlText.unquote(source))) {
+      String name = file.getFileName().toString();
+      boolean compress = autoCompress && !name.endsWith(".gz");
+      String targetName = compress ? name + ".gz" : name;
+      Path destination = resolve(stageDir, location[1] + "/" + targetName);
+      try {
+        long sourceSize = Files.size(file);
+        // Like the driver, skips a file only when the stage holds the same content
+        if (!overwrite && Files.exists(destination) && sameContent(file, destination, compress)) {
+          rows.add(
+              name,
+              targetName,
+              sourceSize,
+              Files.size(destination),
+              "NONE",
+              compress ? "GZIP" : "NONE",
+              "SKIPPED",
+              "");
+          continue;
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+          write(destination, in, compress, throttle);
+        }
+        rows.add(
+            name,
+            targetName,
+            sourceSize,
+            Files.size(destination),
+            "NONE",
+            compress ? "GZIP" : "NONE",
+            "UPLOADED",
+            "");
+      } catch (IOException e) {
+        throw new SQLException("Failed to upload " + file, e);
+      }
+    }
+    return rows;
+  }
+
+  // Copies the stream into place at the throughput of the connection
+  private void write(Path destination, InputStream in, boolean compress, Throttle throttle)
+      throws SQLException {
+    try {
+      Files.createDirectories(destination.getParent());
+      Path partial = Files.createTempFile(directory.resolve(TMP_DIR), "upload", ".tmp");
+      try {
+        try (OutputStream out =
+            compress
+                ? new GZIPOutputStream(Files.newOutputStream(partial))
+                : Files.newOutputStream(partial)) {
+          throttle.copy(in, out);
+        }
+        Files.move(partial, destination, StandardCopyOption.REPLACE_EXISTING);
+      } finally {
+        Files.deleteIfExists(partial);
+      }
+    } catch (IOException e) {
+      throw new SQLException("Failed to upload " + destination.getFileName(), e);
+    }
+  }
+
+  // Whether the staged file holds the content of the local file
+  private static boolean sameContent(Path file, Path destination, boolean compressed)
+      throws IOException {
+    try (InputStream in = Files.newInputStream(destination);
+        InputStream staged = compressed ? new GZIPInputStream(in) : in) {
+      return Arrays.equals(Files.readAllBytes(file), staged.readAllBytes());
+    }
+  }
+
+  // The local files of a PUT source, which may end with a wildcard file name
+  private static List<Path> localFiles(String source) throws SQLException {
+    String path = source.startsWith("file://") ? source.substring("file://".length()) : source;
+    Path file = Paths.get(path);
+    String fileName = file.getFileName() == null ? "" : file.getFileName().toString();
+    List<Path> files = new ArrayList<>();
+    if (fileName.contains("*") || fileName.contains("?")) {
+      Path parent = file.getParent() == null ? Paths.get(".") : file.getParent();
+      PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + fileName);
+      if (Files.isDirectory(parent)) {
+        try (Stream<Path> children = Files.list(parent)) {
+          children
+              .filter(child -> Files.isRegularFile(child) && matcher.matches(child.getFileName()))
+              .sorted()
+              .forEach(files::add);
+        } catch (IOException e) {
+          throw new SQLException("Failed to list " + parent, e);
+        }
+      }
+    } else if (Files.isRegularFile(file)) {
+      files.add(file);
+    }
+    if (files.isEmpty()) {
+      throw new SQLException("File doesn't exist: ['" + path + "']", "02000", 253006);
+    }
+    return files;
+  }
+
+  private Rows list(String spec) throws SQLException {
+    String[] location = stageLocation(spec);
+    Path stageDir = existingStage(location[0]);
+    // Names are prefixed with the unqualified, lower case stage name
+    String namePrefix = location[0].substring(location[0].lastIndexOf('.') + 1);
+    Rows rows = new Rows("name", "size", "md5", "last_modified");
+    List<Path> files;
+    try (Stream<Path> walk = Files.walk(stageDir)) {
+      files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+    } catch (IOException e) {
+      throw new SQLException("Failed to list stage " + location[0], e);
+    }
+    for (Path file : files) {
+      String relative = stageDir.relativize(file).toString().replace(File.separatorChar, '/');
+      if (!relative.startsWith(location[1])) {
+        continue;
+      }
+      try {
+        rows.add(
+            namePrefix + "/" + relative,
+            Files.size(file),
+            md5Hex(file),
+            DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                Files.getLastModifiedTime(file).toInstant().atOffset(ZoneOffset.UTC)));
+      } catch (IOException e) {
+        throw new SQLException("Failed to list " + relative, e);
+      }
+    }
+    return rows;
+  }
+
+  private Rows show(String type) throws SQLException {
+    Rows rows =
+        new Rows(
+            "name",
+            "min_num_arguments",
+            "max_num_arguments",
+            "arguments",
+            "description",
+            "language");
+    for (StandInCatalog.Definition definition : catalog.list(type)) {
+      int count = definition.getArgumentTypes().size();
+      rows.add(
+          definition.getName(),
+          count,
+          count,
+          definition.arguments(),
+          "user-defined " + type.toLowerCase(Locale.ROOT),
+          definition.getLanguage());
+    }
+    return rows;
+  }
+
+  private Rows describe(String type, String name, String types) throws SQLException {
+    StandInCatalog.Definition definition = catalog.get(key(type, name, types));
+    if (definition == null) {
+      throw notFound(
+          String.format(
+              "%s '%s(%s)' does not exist or not authorized.",
+              capitalize(type), SqlText.identifier(name), types.trim()));
+    }
+    List<String> packages = new ArrayList<>();
+    for (String p : definition.getPackages()) {
+      packages.add("'" + p + "'");
+    }
+    return new Rows("property", "value")
+        .add("signature", "(" + definition.getInputs() + ")")
+        .add("returns", definition.getReturns())
+        .add("language", definition.getLanguage())
+        .add("imports", "[" + String.join(", ", definition.getImports()) + "]")
+        .add("handler", definition.getHandler())
+        .add("packages", "[" + String.join(", ", packages) + "]");
+  }
+
+  private Rows createUdx(String statement, Matcher header) throws SQLException {
+    boolean orReplace = header.group(1) != null;
+    String type = header.group(2).toLowerCase(Locale.ROOT);
+    boolean ifNotExists = header.group(3) != null;
+    String name = SqlText.identifier(header.group(4));
+    int open = header.end() - 1;
+    int close = SqlText.closingParenthesis(statement, open);
+    Matcher body = close < 0 ? null : UDX_BODY.matcher(statement.substring(close + 1));
+    if (body == null || !body.matches()) {
+      throw compilationError(
+          "syntax error in CREATE " + type.toUpperCase(Locale.ROOT) + " " + name);
+    }
+    String clauses = body.group(3);
+    Matcher handler = HANDLER_CLAUSE.matcher(clauses);
+    if (!body.group(2).equalsIgnoreCase("java") || !handler.find()) {
+      throw compilationError("the Snowflake stand-in only supports Java handlers in staged JARs");
+    }
+    StandInCatalog.Definition definition =
+        new StandInCatalog.Definition(
+            type,
+            name,
+            statement.substring(open + 1, close),
+            body.group(1),
+            body.group(2),
+            handler.group(1).trim(),
+            clauseItems(IMPORTS_CLAUSE, clauses),
+            clauseItems(PACKAGES_CLAUSE, clauses));
+    if (catalog.get(definition.key()) != null && !orReplace) {
+      if (ifNotExists) {
+        return Rows.status(name + " already exists, statement succeeded.");
+      }
+      throw compilationError("Object '" + name + "' already exists.");
+    }
+    checkHandler(definition);
+    catalog.put(definition);
+    return Rows.status(capitalize(type) + " " + name + " successfully created.");
+  }
+
+  // Checks that the imports exist and hold the handler class, as Snowflake does on creation
+  private void checkHandler(StandInCatalog.Definition definition) throws SQLException {
+    String handler = definition.getHandler();
+    int dot = handler.lastIndexOf('.');
+    if (dot < 0) {
+      throw compilationError("invalid handler '" + handler + "'");
+    }
+    String classEntry = handler.substring(0, dot).replace('.', '/') + ".class";
+    boolean found = false;
+    for (Path file : importFiles(definition)) {
+      if (found || !isArchive(file)) {
+        continue;
+      }
+      try (ZipFile zip = new ZipFile(file.toFile())) {
+        found = zip.getEntry(classEntry) != null;
+      } catch (IOException e) {
+        throw compilationError("import '" + file.getFileName() + "' is not a valid JAR");
+      }
+    }
+    if (!found) {
+      throw compilationError(
+          "Cannot find the handler class '" + handler.substring(0, dot) + "' in the imports");
+    }
+  }
+
+  private Rows dropUdx(String type, String name, String types, boolean ifExists)
+      throws SQLException {
+    if (catalog.remove(key(type, name, types))) {
+      return Rows.status(SqlText.identifier(name) + " successfully dropped.");
+    }
+    if (ifExists) {
+      return Rows.status("Drop statement executed successfully (" + name + " already dropped).");
+    }
+    throw notFound(
+        String.format(
+            "%s '%s(%s)' does not exist or not authorized.",
+            capitalize(type), SqlText.identifier(name), types.trim()));
+  }
+
+  private Rows invoke(String verb, String name, String argumentList) throws SQLException {
+    String type = verb.equalsIgnoreCase("call") ? "procedure" : "function";
+    String identifier = SqlText.identifier(name);
+    List<Object> arguments = new ArrayList<>();
+    for (String argument : SqlText.splitTopLevel(argumentList)) {
+      arguments.add(SqlText.literal(argument));
+    }
+    for (StandInCatalog.Definition definition : catalog.list(type)) {
+      if (definition.getName().equals(identifier)
+          && definition.getArgumentTypes().size() == arguments.size()) {
+        Object value =
+            HandlerInvoker.invoke(definition.getHandler(), importFiles(definition), arguments);
+        return new Rows(identifier).add(value);
+      }
+    }
+    throw notFound(String.format("Unknown %s %s", type, identifier));
+  }
+
+  private List<Path> importFiles(StandInCatalog.Definition definition) throws SQLException {
+    List<Path> files = new ArrayList<>();
+    for (String importPath : definition.getImports()) {
+      String[] location = stageLocation(importPath);
+      Path file = resolve(getStageDirectory(location[0]), location[1]);
+      if (!Files.isRegularFile(file)) {
+        throw notFound("File '" + importPath + "' does not exist or not authorized.");
+      }
+      files.add(file);
+    }
+    return files;
+  }
+
+  private static boolean isArchive(Path file) {
+    String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+    return name.endsWith(".jar") || name.endsWith(".zip");
+  }
+
+  private static List<String> clauseItems(Pattern clause, String clauses) {
+    List<String> items = new ArrayList<>();
+    Matcher m = clause.matcher(clauses);
+    if (m.find()) {
+      for (String item : SqlText.splitTopLevel(m.group(1))) {
+        items.add(SqlText.unquote(item));
+      }
+    }
+    return items;
+  }
+
+  private static String key(String type, String name, String types) {
+    List<String> canonical = new ArrayList<>();
+    for (String t : SqlText.splitTopLevel(types)) {
+      canonical.add(SqlText.canonicalType(t));
+    }
+    return StandInCatalog.key(type, SqlText.identifier(name), canonical);
+  }
+
+  private Path existingStage(String stageKey) throws SQLException {
+    Path stageDir = directory.resolve(STAGES_DIR).resolve(stageKey);
+    if (!Files.isDirectory(stageDir)) {
+      throw notFound(
+          "Stage '" + stageKey.toUpperCase(Locale.ROOT) + "' does not exist or not authorized.");
+    }
+    return stageDir;
+  }
+
+  // Splits "@stage/some/path" into the stage key and the path on the stage
+  private static String[] stageLocation(String spec) {
+    String s = SqlText.unquote(spec);
+    if (s.startsWith("@")) {
+      s = s.substring(1);
+    }
+    int slash = s.indexOf('/');
+    String stage = slash < 0 ? s : s.substring(0, slash);
+    String path = slash < 0 ? "" : trimSlashes(s.substring(slash + 1));
+    return new String[] {stageKey(stage), path};
+  }
+
+  // Stage names are case insensitive unless quoted. Quoted names keep their case
+  private static String stageKey(String stageName) {
+    String name = stageName.trim();
+    return name.contains("\"") ? name.replace("\"", "") : name.toLowerCase(Locale.ROOT);
+  }
+
+  // Resolves a path on the stage, refusing paths which escape it
+  private static Path resolve(Path stageDir, String path) throws SQLException {
+    Path resolved = stageDir.resolve(trimSlashes(path)).normalize();
+    if (!resolved.startsWith(stageDir)) {
+      throw compilationError("invalid stage path '" + path + "'");
+    }
+    return resolved;
+  }
+
+  private static String trimSlashes(String path) {
+    return path.replaceAll("^/+|/+$", "").replaceAll("/{2,}", "/");
+  }
+
+  private static boolean option(String options, String name, boolean defaultValue) {
+    Matcher m =
+        Pattern.compile(name + "\\s*=\\s*'?(\\w+)'?", Pattern.CASE_INSENSITIVE).matcher(options);
+    return m.find() ? Boolean.parseBoolean(m.group(1)) : defaultValue;
+  }
+
+  private static String md5Hex(Path file) throws IOException {
+    try (InputStream in =
+        new DigestInputStream(Files.newInputStream(file), MessageDigest.getInstance("MD5"))) {
+      byte[] buffer = new byte[8192];
+      while (in.read(buffer) > 0) {
+        // Read for the digest only
+      }
+      StringBuilder hex = new StringBuilder();
+      for (byte b : ((DigestInputStream) in).getMessageDigest().digest()) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("MD5 is not available", e);
+    }
+  }
+
+  private static void deleteRecursively(Path path) throws IOException {
+    if (!Files.exists(path)) {
+      return;
+    }
+    try (Stream<Path> walk = Files.walk(path)) {
+      for (Path p : walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(p);
+      }
+    }
+  }
+
+  private static String capitalize(String type) {
+    return type.substring(0, 1).toUpperCase(Locale.ROOT)
+        + type.substring(1).toLowerCase(Locale.ROOT);
+  }
+
+  static SQLException compilationError(String message) {
+    return new SQLException("SQL compilation error:\n" + message, "42000", 1003);
+  }
+
+  static SQLException notFound(String message) {
+    return new SQLException("SQL compilation error:\n" + message, "02000", 2003);
+  }
+}
@@ -0,0 +1,253 @@
+package com.snowflake.plugins.udf.standin;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The functions and procedures of a stand-in account. Definitions are kept in memory and written
+ * through to a file of the account directory, so that the build deploying and the test checking the
+ * deploy see the same catalog even when they run in different processes. The file is read again
+ * whenever another process changed it
+ */
+final class StandInCatalog {
+  // Fields are separated by tabs and list items by commas, neither of which appears in a
+  // normalized definition
+  private static final String FIELD_SEPARATOR = "\t";
+  private static final String ITEM_SEPARATOR = ",";
+
+  private final Path file;
+  // A map of each signature key, e.g. "function:ADD(NUMBER,NUMBER)", to its definition
+  private final Map<String, Definition> definitions = new TreeMap<>();
+  // The modification time and size of the file when it was last read or written
+  private FileTime loadedTime;
+  private long loadedSize = -1;
+
+  StandInCatalog(Path file) {
+    this.file = file;
+  }
+
+  /** A function or procedure as created by CREATE FUNCTION/PROCEDURE */
+  static final class Definition {
+    private final String type;
+    private final String name;
+    private final String inputs;
+    private final List<String> argumentTypes;
+    private final String returns;
+    private final String language;
+    private final String handler;
+    private final List<String> imports;
+    private final List<String> packages;
+
+    Definition(
+        String type,
+        String name,
+        String inputs,
+        String returns,
+        String language,
+        String handler,
+        List<String> imports,
+        List<String> packages)
+        throws SQLException {
+      this.type = type.toLowerCase(Locale.ROOT);
+      this.name = name;
+      this.inputs = normalize(inputs);
+      this.returns = normalize(returns);
+      this.language = language.toUpperCase(Locale.ROOT);
+      this.handler = handler;
+      this.imports = Collections.unmodifiableList(new ArrayList<>(imports));
+      this.packages = Collections.unmodifiableList(new ArrayList<>(packages));
+      List<String> types = new ArrayList<>();
+      for (String input : SqlText.splitTopLevel(this.inputs)) {
+        String[] nameAndType = input.split("\\s+", 2);
+        if (nameAndType.length < 2) {
+          throw StandInAccount.compilationError("argument '" + input + "' has no type");
+        }
+        types.add(SqlText.canonicalType(nameAndType[1]));
+      }
+      this.argumentTypes = Collections.unmodifiableList(types);
+    }
+
+    String getType() {
+      return type;
+    }
+
+    String getName() {
+      return name;
+    }
+
+    String getInputs() {
+      return inputs;
+    }
+
+    List<String> getArgumentTypes() {
+      return argumentTypes;
+    }
+
+    String getReturns() {
+      return returns;
+    }
+
+    String getLanguage() {
+      return language;
+    }
+
+    String getHandler() {
+      return handler;
+    }
+
+    List<String> getImports() {
+      return imports;
+    }
+
+    List<String> getPackages() {
+      return packages;
+    }
+
+    String key() {
+      return StandInCatalog.key(type, name, argumentTypes);
+    }
+
+    /** The arguments as SHOW reports them, e.g. "ADD(NUMBER, NUMBER) RETURN NUMBER" */
+    String arguments() {
+      return String.format(
+          "%s(%s) RETURN %s",
+          name, String.join(", ", argumentTypes), SqlText.canonicalType(returns));
+    }
+
+    private String line() {
+      return String.join(
+          FIELD_SEPARATOR,
+          type,
+          name,
+          inputs,
+          returns,
+          language,
+          handler,
+          String.join(ITEM_SEPARATOR, imports),
+          String.join(ITEM_SEPARATOR, packages));
+    }
+
+    private static Definition parse(String line) throws SQLException {
+      String[] fields = line.split(FIELD_SEPARATOR, -1);
+      if (fields.length != 8) {
+        return null;
+      }
+      return new Definition(
+          fields[0],
+          fields[1],
+          fields[2],
+          fields[3],
+          fields[4],
+          fields[5],
+          items(fields[6]),
+          items(fields[7]));
+    }
+
+    private static List<String> items(String field) {
+      return field.isEmpty() ? Collections.emptyList() : Arrays.asList(field.split(ITEM_SEPARATOR));
+    }
+
+    private static String normalize(String s) {
+      return s.trim().replaceAll("\\s+", " ");
+    }
+  }
+
+  static String key(String type, String name, List<String> argumentTypes) {
+    return type.toLowerCase(Locale.ROOT) + ":" + name + "(" + String.join(",", argumentTypes) + ")";
+  }
+
+  synchronized Definition get(String key) throws SQLException {
+    refresh();
+    return definitions.get(key);
+  }
+
+  /** Returns the definitions of the type, ordered by name */
+  synchronized List<Definition> list(String type) throws SQLException {
+    refresh();
+    List<Definition> list = new ArrayList<>();
+    for (Definition definition : definitions.values()) {
+      if (definition.getType().equalsIgnoreCase(type)) {
+        list.add(definition);
+      }
+    }
+    return list;
+  }
+
+  synchronized void put(Definition definition) throws SQLException {
+    refresh();
+    definitions.put(definition.key(), definition);
+    save();
+  }
+
+  synchronized boolean remove(String key) throws SQLException {
+    refresh();
+    if (definitions.remove(key) == null) {
+      return false;
+    }
+    save();
+    return true;
+  }
+
+  private void refresh() throws SQLException {
+    try {
+      if (!Files.isRegularFile(file)) {
+        definitions.clear();
+        loadedTime = null;
+        loadedSize = -1;
+        return;
+      }
+      FileTime time = Files.getLastModifiedTime(file);
+      long size = Files.size(file);
+      if (time.equals(loadedTime) && size == loadedSize) {
+        return;
+      }
+      definitions.clear();
+      for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+        Definition definition = Definition.parse(line);
+        if (definition != null) {
+          definitions.put(definition.key(), definition);
+        }
+      }
+      loadedTime = time;
+      loadedSize = size;
+    } catch (IOException e) {
+      throw new SQLException("Failed to read the stand-in catalog " + file, e);
+    }
+  }
+
+  // Written next to the catalog and moved into place, so that readers never see a partial file
+  private void save() throws SQLException {
+    try {
+      Files.createDirectories(file.getParent());
+      Path partial = Files.createTempFile(file.getParent(), "catalog", ".tmp");
+      try {
+        try (BufferedWriter writer = Files.newBufferedWriter(partial, StandardCharsets.UTF_8)) {
+          for (Definition definition : definitions.values()) {
+            writer.write(definition.line());
+            writer.newLine();
+          }
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING);
+      } finally {
+        Files.deleteIfExists(partial);
+      }
+      loadedTime = Files.getLastModifiedTime(file);
+      loadedSize = Files.size(file);
+    } catch (IOException e) {
+      throw new SQLException("Failed to write the stand-in catalog " + file, e);
+    }
+  }
+}
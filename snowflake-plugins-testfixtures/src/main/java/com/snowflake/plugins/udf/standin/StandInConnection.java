@@ -0,0 +1,78 @@
+package com.snowflake.plugins.udf.standin;
+
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.UUID;
+import net.snowflake.client.jdbc.SnowflakeConnection;
+
+/** A connection to a stand-in account, with the stream upload of the Snowflake driver */
+final class StandInConnection extends StandInProxy {
+  private final StandInAccount account;
+  private final Throttle throttle;
+  private final String sessionId = UUID.randomUUID().toString();
+  private volatile boolean closed;
+
+  private StandInConnection(StandInAccount account, Throttle throttle) {
+    super("StandInConnection");
+    this.account = account;
+    this.throttle = throttle;
+  }
+
+  static Connection create(StandInAccount account, Throttle throttle) {
+    return create(
+        Connection.class, SnowflakeConnection.class, new StandInConnection(account, throttle));
+  }
+
+  @Override
+  Object handle(Object proxy, String methodName, Object[] args) throws SQLException {
+    switch (methodName) {
+      case "createStatement":
+        checkOpen();
+        return StandInStatement.create((Connection) proxy, account, throttle);
+      case "uploadStream":
+        checkOpen();
+        throttle.roundTrip();
+        account.upload(
+            (String) args[0],
+            (String) args[1],
+            (InputStream) args[2],
+            (String) args[3],
+            (Boolean) args[4],
+            throttle);
+        return null;
+      case "downloadStream":
+        checkOpen();
+        throttle.roundTrip();
+        return account.download((String) args[0], (String) args[1], (Boolean) args[2]);
+      case "getSessionID":
+        return sessionId;
+      case "close":
+        closed = true;
+        return null;
+      case "isClosed":
+        return closed;
+      case "isValid":
+        return !closed;
+      case "getAutoCommit":
+        return true;
+      case "setAutoCommit":
+      case "commit":
+      case "rollback":
+      case "clearWarnings":
+        return null;
+      case "getWarnings":
+      case "getCatalog":
+      case "getSchema":
+        return null;
+      default:
+        throw unsupported(methodName);
+    }
+  }
+
+  private void checkOpen() throws SQLException {
+    if (closed) {
+      throw new SQLException("Connection is closed", "08003");
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package com.snowflake.plugins.udf.standin;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * JDBC driver of the in-process Snowflake stand-in. Its urls name the directory of the account and
+ * optionally the latency added to every statement and the bandwidth of uploads, e.g.
+ * "jdbc:snowflake-standin:/tmp/account?latencyMillis=50&amp;bandwidthBytesPerSecond=1048576". The
+ * connections implement SnowflakeConnection, so the plugins deploy to the stand-in like to
+ * Snowflake when their url is a stand-in url and this module is on the plugin classpath
+ */
+public class StandInDriver implements Driver {
+  public static final String URL_PREFIX = "jdbc:snowflake-standin:";
+  static final String LATENCY_PARAMETER = "latencyMillis";
+  static final String BANDWIDTH_PARAMETER = "bandwidthBytesPerSecond";
+
+  static {
+    try {
+      DriverManager.registerDriver(new StandInDriver());
+    } catch (SQLException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  /**
+   * Returns the url of the account in the directory
+   *
+   * @param latencyMillis the delay added to every statement
+   * @param bandwidthBytesPerSecond the maximum throughput of uploads, 0 for unlimited
+   */
+  public static String url(File directory, long latencyMillis, long bandwidthBytesPerSecond) {
+    return String.format(
+        "%s%s?%s=%d&%s=%d",
+        URL_PREFIX,
+        directory.getAbsolutePath(),
+        LATENCY_PARAMETER,
+        latencyMillis,
+        BANDWIDTH_PARAMETER,
+        bandwidthBytesPerSecond);
+  }
+
+  @Override
+  public Connection connect(String url, Properties info) throws SQLException {
+    if (!acceptsURL(url)) {
+      return null;
+    }
+    String spec = url.substring(URL_PREFIX.length());
+    int query = spec.indexOf('?');
+    String path = query < 0 ? spec : spec.substring(0, query);
+    if (path.isEmpty()) {
+      throw new SQLException("The stand-in url must name the directory of the account: " + url);
+    }
+    long latencyMillis = 0;
+    long bandwidthBytesPerSecond = 0;
+    if (query >= 0) {
+      for (String parameter : spec.substring(query + 1).split("&")) {
+        String[] nameAndValue = parameter.split("=", 2);
+        try {
+          if (nameAndValue[0].equals(LATENCY_PARAMETER) && nameAndValue.length == 2) {
+            latencyMillis = Long.parseLong(nameAndValue[1]);
+          } else if (nameAndValue[0].equals(BANDWIDTH_PARAMETER) && nameAndValue.length == 2) {
+            bandwidthBytesPerSecond = Long.parseLong(nameAndValue[1]);
+          } else if (!parameter.isEmpty()) {
+            throw new SQLException("Unknown stand-in url parameter: " + parameter);
+          }
+        } catch (NumberFormatException e) {
+          throw new SQLException("Invalid stand-in url parameter: " + parameter, e);
+        }
+      }
+    }
+    Throttle throttle;
+    try {
+      throttle = new Throttle(latencyMillis, bandwidthBytesPerSecond);
+    } catch (IllegalArgumentException e) {
+      throw new SQLException(e.getMessage() + ": " + url, e);
+    }
+    return StandInConnection.create(StandInAccount.open(Paths.get(path)), throttle);
+  }
+
+  @Override
+  public boolean acceptsURL(String url) {
+    return url != null && url.startsWith(URL_PREFIX);
+  }
+
+  @Override
+  public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+    return new DriverPropertyInfo[0];
+  }
+
+  @Override
+  public int getMajorVersion() {
+    return 1;
+  }
+
+  @Override
+  public int getMinorVersion() {
+    return 0;
+  }
+
+  @Override
+  public boolean jdbcCompliant() {
+    return false;
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    throw new SQLFeatureNotSupportedException("The Snowflake stand-in does not log");
+  }
+}
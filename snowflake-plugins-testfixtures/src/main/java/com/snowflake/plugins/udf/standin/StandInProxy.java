@@ -0,0 +1,60 @@
+package com.snowflake.plugins.udf.standin;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+/**
+ * Base of the JDBC objects of the stand-in, which are proxies implementing both the JDBC interface
+ * and its Snowflake extension. Only the methods the plugins and the ITs call are implemented, every
+ * other method throws SQLFeatureNotSupportedException
+ */
+abstract class StandInProxy implements InvocationHandler {
+  private static final Object[] NO_ARGS = new Object[0];
+
+  private final String typeName;
+
+  StandInProxy(String typeName) {
+    this.typeName = typeName;
+  }
+
+  /** Creates the proxy of a handler, implementing the JDBC interface and its extension */
+  static <T> T create(Class<T> type, Class<?> extension, StandInProxy handler) {
+    return type.cast(
+        Proxy.newProxyInstance(
+            StandInProxy.class.getClassLoader(), new Class<?>[] {type, extension}, handler));
+  }
+
+  @Override
+  public final Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    Object[] arguments = args == null ? NO_ARGS : args;
+    switch (method.getName()) {
+      case "unwrap":
+        Class<?> iface = (Class<?>) arguments[0];
+        if (!iface.isInstance(proxy)) {
+          throw new SQLException(typeName + " does not implement " + iface.getName());
+        }
+        return proxy;
+      case "isWrapperFor":
+        return ((Class<?>) arguments[0]).isInstance(proxy);
+      case "toString":
+        return typeName + "@" + Integer.toHexString(System.identityHashCode(proxy));
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      case "equals":
+        return proxy == arguments[0];
+      default:
+        return handle(proxy, method.getName(), arguments);
+    }
+  }
+
+  /** Handles a call of the named method on the proxy */
+  abstract Object handle(Object proxy, String methodName, Object[] args) throws SQLException;
+
+  SQLException unsupported(String methodName) {
+    return new SQLFeatureNotSupportedException(
+        typeName + "." + methodName + " is not supported by the Snowflake stand-in");
+  }
+}
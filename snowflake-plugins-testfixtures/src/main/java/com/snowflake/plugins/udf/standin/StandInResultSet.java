@@ -0,0 +1,120 @@
+package com.snowflake.plugins.udf.standin;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import net.snowflake.client.core.QueryStatus;
+import net.snowflake.client.jdbc.SnowflakeResultSet;
+
+/** The rows of a statement. The statement has always finished, so its status is SUCCESS */
+final class StandInResultSet extends StandInProxy {
+  private final Statement statement;
+  private final Rows rows;
+  private final String queryId;
+  private int row = -1;
+  private boolean wasNull;
+  private boolean closed;
+
+  private StandInResultSet(Statement statement, Rows rows, String queryId) {
+    super("StandInResultSet");
+    this.statement = statement;
+    this.rows = rows;
+    this.queryId = queryId;
+  }
+
+  static ResultSet create(Statement statement, Rows rows, String queryId) {
+    return create(
+        ResultSet.class, SnowflakeResultSet.class, new StandInResultSet(statement, rows, queryId));
+  }
+
+  @Override
+  Object handle(Object proxy, String methodName, Object[] args) throws SQLException {
+    switch (methodName) {
+      case "next":
+        checkOpen();
+        row = Math.min(row + 1, rows.getValues().size());
+        return row < rows.getValues().size();
+      case "getString":
+        Object value = value(args[0]);
+        return value == null ? null : value.toString();
+      case "getObject":
+        return value(args[0]);
+      case "getLong":
+        Object number = value(args[0]);
+        return number == null ? 0L : decimal(number).longValue();
+      case "getInt":
+        number = value(args[0]);
+        return number == null ? 0 : decimal(number).intValue();
+      case "getBigDecimal":
+        number = value(args[0]);
+        return number == null ? null : decimal(number);
+      case "getBoolean":
+        value = value(args[0]);
+        return value != null && Boolean.parseBoolean(value.toString());
+      case "wasNull":
+        return wasNull;
+      case "findColumn":
+        return column((String) args[0]) + 1;
+      case "getRow":
+        return row + 1;
+      case "getStatement":
+        return statement;
+      case "getQueryID":
+        return queryId;
+      case "getStatus":
+        return QueryStatus.SUCCESS;
+      case "close":
+        closed = true;
+        return null;
+      case "isClosed":
+        return closed;
+      case "getWarnings":
+      case "clearWarnings":
+        return null;
+      default:
+        throw unsupported(methodName);
+    }
+  }
+
+  // The value of the column, by 1-based index or by case insensitive name, in the current row
+  private Object value(Object column) throws SQLException {
+    checkOpen();
+    List<Object[]> values = rows.getValues();
+    if (row < 0 || row >= values.size()) {
+      throw new SQLException("The result set has no current row", "24000");
+    }
+    int index = column instanceof Integer ? (Integer) column - 1 : column((String) column);
+    if (index < 0 || index >= rows.getColumns().size()) {
+      throw new SQLException("Column index " + column + " out of range", "42S22");
+    }
+    Object value = values.get(row)[index];
+    wasNull = value == null;
+    return value;
+  }
+
+  private int column(String name) throws SQLException {
+    List<String> columns = rows.getColumns();
+    for (int i = 0; i < columns.size(); i++) {
+      if (columns.get(i).equalsIgnoreCase(name)) {
+        return i;
+      }
+    }
+    throw new SQLException("Column not found: " + name, "42S22");
+  }
+
+  private static BigDecimal decimal(Object value) throws SQLException {
+    try {
+      return value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString());
+    } catch (NumberFormatException e) {
+      throw new SQLException("Numeric value '" + value + "' is not recognized", "22018", e);
+    }
+  }
+
+  private void checkOpen() throws SQLException {
+    if (closed) {
+      throw new SQLException("Result set is closed", "24000");
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package com.snowflake.plugins.udf.standin;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import net.snowflake.client.jdbc.SnowflakeStatement;
+
+/**
+ * A statement of a stand-in connection. Statements run synchronously, including asynchronous
+ * queries, whose result set reports them as finished. Multi-statement requests need
+ * MULTI_STATEMENT_COUNT, as on Snowflake
+ */
+final class StandInStatement extends StandInProxy {
+  private static final String MULTI_STATEMENT_COUNT = "MULTI_STATEMENT_COUNT";
+
+  private final Connection connection;
+  private final StandInAccount account;
+  private final Throttle throttle;
+  // Statement level parameters, e.g. QUERY_TAG. Only MULTI_STATEMENT_COUNT has an effect
+  private final Map<String, Object> parameters = new HashMap<>();
+  // The query IDs of the statements of the last request
+  private final List<String> queryIds = new ArrayList<>();
+  private ResultSet resultSet;
+  private int queryTimeoutSeconds;
+  private boolean closed;
+
+  private StandInStatement(Connection connection, StandInAccount account, Throttle throttle) {
+    super("StandInStatement");
+    this.connection = connection;
+    this.account = account;
+    this.throttle = throttle;
+  }
+
+  static Statement create(Connection connection, StandInAccount account, Throttle throttle) {
+    return create(
+        Statement.class,
+        SnowflakeStatement.class,
+        new StandInStatement(connection, account, throttle));
+  }
+
+  @Override
+  Object handle(Object proxy, String methodName, Object[] args) throws SQLException {
+    switch (methodName) {
+      case "execute":
+        run((Statement) proxy, (String) args[0]);
+        return true;
+      case "executeQuery":
+      case "executeAsyncQuery":
+        return run((Statement) proxy, (String) args[0]);
+      case "executeUpdate":
+        run((Statement) proxy, (String) args[0]);
+        return 0;
+      case "executeLargeUpdate":
+        run((Statement) proxy, (String) args[0]);
+        return 0L;
+      case "getResultSet":
+        return resultSet;
+      case "getUpdateCount":
+        return -1;
+      case "getLargeUpdateCount":
+        return -1L;
+      case "getMoreResults":
+        // Every statement of a request ran when it was executed
+        closeResultSet();
+        return false;
+      case "setParameter":
+        parameters.put(((String) args[0]).toUpperCase(Locale.ROOT), args[1]);
+        return null;
+      case "getQueryID":
+        return queryIds.isEmpty() ? null : queryIds.get(queryIds.size() - 1);
+      case "getBatchQueryIDs":
+        return new ArrayList<>(queryIds);
+      case "setQueryTimeout":
+        queryTimeoutSeconds = (Integer) args[0];
+        return null;
+      case "getQueryTimeout":
+        return queryTimeoutSeconds;
+      case "getConnection":
+        return connection;
+      case "close":
+        closeResultSet();
+        closed = true;
+        return null;
+      case "isClosed":
+        return closed;
+      case "cancel":
+      case "clearWarnings":
+      case "setFetchSize":
+      case "setMaxRows":
+      case "setEscapeProcessing":
+      case "setPoolable":
+      case "closeOnCompletion":
+      case "getWarnings":
+        return null;
+      default:
+        throw unsupported(methodName);
+    }
+  }
+
+  private ResultSet run(Statement proxy, String sql) throws SQLException {
+    if (closed || connection.isClosed()) {
+      throw new SQLException("Statement is closed", "08003");
+    }
+    closeResultSet();
+    List<String> statements = SqlText.splitStatements(sql);
+    Object count = parameters.get(MULTI_STATEMENT_COUNT);
+    int expected = count == null ? 1 : ((Number) count).intValue();
+    if (statements.isEmpty()) {
+      throw new SQLException("Empty SQL statement.", "42000", 900);
+    }
+    if (expected != 0 && expected != statements.size()) {
+      throw new SQLException(
+          String.format(
+              "Actual statement count %d did not match the desired statement count %d.",
+              statements.size(), expected),
+          "0A000",
+          8);
+    }
+    queryIds.clear();
+    for (String statement : statements) {
+      throttle.roundTrip();
+      String queryId = UUID.randomUUID().toString();
+      queryIds.add(queryId);
+      Rows rows = account.execute(statement, throttle);
+      resultSet = StandInResultSet.create(proxy, rows, queryId);
+    }
+    return resultSet;
+  }
+
+  private void closeResultSet() throws SQLException {
+    if (resultSet != null) {
+      resultSet.close();
+      resultSet = null;
+    }
+  }
+}
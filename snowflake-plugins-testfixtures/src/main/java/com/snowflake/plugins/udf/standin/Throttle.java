@@ -0,0 +1,61 @@
+package com.snowflake.plugins.udf.standin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.SQLException;
+
+/** The latency and bandwidth injected into the statements and transfers of a connection */
+final class Throttle {
+  static final Throttle NONE = new Throttle(0, 0);
+  // Transfers are slowed down chunk by chunk, so that they progress like a real network transfer
+  private static final int CHUNK_BYTES = 64 * 1024;
+
+  // Delay added to every statement, like the round trip to the service
+  private final long latencyMillis;
+  // Maximum throughput of uploads and downloads, 0 for unlimited
+  private final long bytesPerSecond;
+
+  Throttle(long latencyMillis, long bytesPerSecond) {
+    if (latencyMillis < 0 || bytesPerSecond < 0) {
+      throw new IllegalArgumentException("Latency and bandwidth must not be negative");
+    }
+    this.latencyMillis = latencyMillis;
+    this.bytesPerSecond = bytesPerSecond;
+  }
+
+  /** Waits for the round trip of a statement */
+  void roundTrip() throws SQLException {
+    sleep(latencyMillis);
+  }
+
+  /** Copies the stream at the throughput of the connection, returning the number of bytes copied */
+  long copy(InputStream in, OutputStream out) throws IOException, SQLException {
+    byte[] buffer = new byte[CHUNK_BYTES];
+    long total = 0;
+    long start = System.nanoTime();
+    int n;
+    while ((n = in.read(buffer)) > 0) {
+      out.write(buffer, 0, n);
+      total += n;
+      if (bytesPerSecond > 0) {
+        // Sleeps until the bytes so far would have arrived, so that slow disks don't add up
+        long dueMillis = total * 1000 / bytesPerSecond;
+        sleep(dueMillis - (System.nanoTime() - start) / 1_000_000);
+      }
+    }
+    return total;
+  }
+
+  private static void sleep(long millis) throws SQLException {
+    if (millis <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for the Snowflake stand-in", e);
+    }
+  }
+}
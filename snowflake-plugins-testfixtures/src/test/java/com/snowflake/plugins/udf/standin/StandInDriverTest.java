@@ -0,0 +1,298 @@
+package com.snowflake.plugins.udf.standin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.snowflake.plugins.udf.core.CreateResult;
+import com.snowflake.plugins.udf.core.Snowflake;
+import com.snowflake.plugins.udf.core.SnowflakeBuilder;
+import com.snowflake.plugins.udf.core.UserDefined;
+import com.snowflake.plugins.udf.standin.handlers.Greeter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import net.snowflake.client.jdbc.SnowflakeConnection;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StandInDriverTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private File accountDir;
+  private File artifact;
+
+  @Before
+  public void createArtifact() throws IOException {
+    accountDir = tmp.newFolder("account");
+    artifact = tmp.newFile("project-1.0.jar");
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(artifact))) {
+      for (Class<?> c : Arrays.asList(Greeter.class, Greeter.Session.class)) {
+        String entryName = c.getName().replace('.', '/') + ".class";
+        out.putNextEntry(new ZipEntry(entryName));
+        try (InputStream in = c.getClassLoader().getResourceAsStream(entryName)) {
+          out.write(in.readAllBytes());
+        }
+        out.closeEntry();
+      }
+    }
+  }
+
+  private static List<List<String>> rows(Statement statement, String sql, String... columns)
+      throws SQLException {
+    List<List<String>> rows = new ArrayList<>();
+    try (ResultSet rs = statement.executeQuery(sql)) {
+      while (rs.next()) {
+        List<String> row = new ArrayList<>();
+        for (String column : columns) {
+          row.add(rs.getString(column));
+        }
+        rows.add(row);
+      }
+    }
+    return rows;
+  }
+
+  @Test
+  public void testStageFiles() throws Exception {
+    File libs = tmp.newFolder("libs");
+    Files.write(new File(libs, "a.jar").toPath(), "a".getBytes(StandardCharsets.UTF_8));
+    Files.write(new File(libs, "b.jar").toPath(), "bb".getBytes(StandardCharsets.UTF_8));
+    Files.write(new File(libs, "notes.txt").toPath(), "ccc".getBytes(StandardCharsets.UTF_8));
+    try (Connection conn = DriverManager.getConnection(StandInDriver.url(accountDir, 0, 0), null);
+        Statement statement = conn.createStatement()) {
+      statement.execute("create stage if not exists My_Stage");
+      statement.execute(
+          String.format(
+              "PUT file://%s/*.jar @my_stage/libs AUTO_COMPRESS = FALSE OVERWRITE = false",
+              libs.getAbsolutePath()));
+      conn.unwrap(SnowflakeConnection.class)
+          .uploadStream(
+              "MY_STAGE",
+              "app",
+              new ByteArrayInputStream("dddd".getBytes(StandardCharsets.UTF_8)),
+              "app.jar",
+              false);
+
+      assertEquals(
+          Arrays.asList(
+              Arrays.asList("my_stage/app/app.jar", "4"),
+              Arrays.asList("my_stage/libs/a.jar", "1"),
+              Arrays.asList("my_stage/libs/b.jar", "2")),
+          rows(statement, "LIST @my_stage", "name", "size"));
+      assertEquals(
+          Collections.singletonList(
+              Arrays.asList("my_stage/libs/a.jar", "0cc175b9c0f1b6a831c399e269772661")),
+          rows(statement, "LIST @my_stage/libs/a", "name", "md5"));
+
+      // Identical files are skipped unless overwritten, changed files are uploaded
+      String put = "PUT file://" + libs.getAbsolutePath() + "/a.jar @my_stage/libs";
+      assertEquals(
+          Collections.singletonList(Arrays.asList("a.jar", "SKIPPED")),
+          rows(statement, put + " AUTO_COMPRESS = FALSE", "target", "status"));
+      assertEquals(
+          Collections.singletonList(Arrays.asList("a.jar", "UPLOADED")),
+          rows(statement, put + " AUTO_COMPRESS = FALSE OVERWRITE = TRUE", "target", "status"));
+      Files.write(new File(libs, "a.jar").toPath(), "changed".getBytes(StandardCharsets.UTF_8));
+      assertEquals(
+          Collections.singletonList(Arrays.asList("a.jar", "UPLOADED")),
+          rows(statement, put + " AUTO_COMPRESS = FALSE", "target", "status"));
+
+      try {
+        statement.execute("LIST @missing_stage");
+        fail("LIST of a missing stage must fail");
+      } catch (SQLException e) {
+        assertTrue(e.getMessage().contains("does not exist"));
+      }
+    }
+  }
+
+  private static UserDefined udx(
+      String type, String name, String inputs, String handler, String returns) {
+    return new UserDefined() {
+      @Override
+      public String getInputs() {
+        return inputs;
+      }
+
+      @Override
+      public String getType() {
+        return type;
+      }
+
+      @Override
+      public String getName() {
+        return name;
+      }
+
+      @Override
+      public String getHandler() {
+        return handler;
+      }
+
+      @Override
+      public String getReturns() {
+        return returns;
+      }
+    };
+  }
+
+  private Snowflake snowflake() throws SQLException {
+    return new SnowflakeBuilder(message -> {})
+        .config("url", StandInDriver.url(accountDir, 0, 0))
+        .config("user", "tester")
+        .stageName("deploy_stage")
+        .artifactFileName(artifact.getName())
+        .depsToStagePaths(Collections.emptyMap())
+        .ddlMode("batch")
+        .remoteDiff(true)
+        .create();
+  }
+
+  @Test
+  public void testDeployedFunctionsCallable() throws Exception {
+    List<UserDefined> udxs =
+        Arrays.asList(
+            udx(
+                UserDefined.function,
+                "concat_strings",
+                "a string, b string",
+                Greeter.class.getName() + ".concat",
+                "string"),
+            udx(
+                UserDefined.function,
+                "add_numbers",
+                "a int, b int",
+                Greeter.class.getName() + ".add",
+                "int"),
+            udx(
+                UserDefined.procedure,
+                "greet",
+                "name string",
+                Greeter.class.getName() + ".greet",
+                "string"));
+    Snowflake snowflake = snowflake();
+    snowflake.createStage();
+    snowflake.uploadArtifact(artifact.getAbsolutePath());
+    for (CreateResult result : snowflake.createFunctionsOrProcs(udxs)) {
+      assertTrue(result.toString(), result.isSucceeded());
+      assertFalse(result.isUnchanged());
+    }
+
+    try (Connection conn = DriverManager.getConnection(StandInDriver.url(accountDir, 0, 0), null);
+        Statement statement = conn.createStatement()) {
+      assertEquals(
+          Collections.singletonList(Collections.singletonList("hi there")),
+          rows(statement, "SELECT concat_strings('hi', ' there')", "CONCAT_STRINGS"));
+      assertEquals(
+          Collections.singletonList(Collections.singletonList("5")),
+          rows(statement, "select add_numbers(2, 3)", "ADD_NUMBERS"));
+      assertEquals(
+          Collections.singletonList(Collections.singletonList("hello snow")),
+          rows(statement, "CALL greet('snow')", "GREET"));
+      assertEquals(
+          Arrays.asList(
+              Arrays.asList("ADD_NUMBERS", "ADD_NUMBERS(NUMBER, NUMBER) RETURN NUMBER"),
+              Arrays.asList("CONCAT_STRINGS", "CONCAT_STRINGS(VARCHAR, VARCHAR) RETURN VARCHAR")),
+          rows(statement, "SHOW USER FUNCTIONS IN SCHEMA", "name", "arguments"));
+    }
+
+    // Deploying the same functions again finds them unchanged in the catalog
+    for (CreateResult result : snowflake().createFunctionsOrProcs(udxs)) {
+      assertTrue(result.toString(), result.isUnchanged());
+    }
+  }
+
+  @Test
+  public void testHandlerValidatedOnCreate() throws Exception {
+    try (Connection conn = DriverManager.getConnection(StandInDriver.url(accountDir, 0, 0), null);
+        Statement statement = conn.createStatement()) {
+      statement.execute("create stage s");
+      Files.copy(artifact.toPath(), accountDir.toPath().resolve("stages/s/app.jar"));
+      String ddl =
+          "CREATE OR REPLACE function f (a string)\nRETURNS string\nLANGUAGE java\n"
+              + "HANDLER = '%s'\nIMPORTS = ('%s');";
+      try {
+        statement.execute(String.format(ddl, "com.example.Missing.run", "@s/app.jar"));
+        fail("A handler missing from the imports must fail");
+      } catch (SQLException e) {
+        assertTrue(e.getMessage(), e.getMessage().contains("com.example.Missing"));
+      }
+      try {
+        statement.execute(String.format(ddl, Greeter.class.getName() + ".concat", "@s/x.jar"));
+        fail("A missing import must fail");
+      } catch (SQLException e) {
+        assertTrue(e.getMessage(), e.getMessage().contains("@s/x.jar"));
+      }
+      // Multi-statement requests need their statement count
+      try {
+        statement.execute("create stage a; create stage b;");
+        fail("A multi-statement request without MULTI_STATEMENT_COUNT must fail");
+      } catch (SQLException e) {
+        assertTrue(e.getMessage(), e.getMessage().contains("statement count"));
+      }
+    }
+  }
+
+  @Test
+  public void testLatencyAndBandwidthInjected() throws Exception {
+    byte[] content = new byte[200 * 1024];
+    try (Connection conn =
+            DriverManager.getConnection(StandInDriver.url(accountDir, 50, 1024 * 1024), null);
+        Statement statement = conn.createStatement()) {
+      long start = System.nanoTime();
+      statement.execute("create stage s");
+      statement.execute("LIST @s");
+      assertTrue((System.nanoTime() - start) / 1_000_000 >= 100);
+
+      start = System.nanoTime();
+      conn.unwrap(SnowflakeConnection.class)
+          .uploadStream("s", "", new ByteArrayInputStream(content), "big.bin", false);
+      // 50 ms of latency and about 195 ms of transfer
+      assertTrue((System.nanoTime() - start) / 1_000_000 >= 240);
+    }
+  }
+
+  @Test
+  public void testCatalogSharedThroughItsFile() throws Exception {
+    File file = new File(accountDir, StandInAccount.CATALOG_FILE);
+    StandInCatalog writer = new StandInCatalog(file.toPath());
+    // Another process reads the same file
+    StandInCatalog reader = new StandInCatalog(file.toPath());
+    StandInCatalog.Definition definition =
+        new StandInCatalog.Definition(
+            "function",
+            "F",
+            "a string, b int",
+            "string",
+            "java",
+            "p.H.f",
+            Collections.singletonList("@s/app.jar"),
+            Collections.emptyList());
+    writer.put(definition);
+    String key = StandInCatalog.key("function", "F", Arrays.asList("VARCHAR", "NUMBER"));
+    assertEquals("p.H.f", reader.get(key).getHandler());
+    assertEquals(Collections.singletonList("@s/app.jar"), reader.get(key).getImports());
+
+    assertTrue(reader.remove(key));
+    assertEquals(null, writer.get(key));
+  }
+}
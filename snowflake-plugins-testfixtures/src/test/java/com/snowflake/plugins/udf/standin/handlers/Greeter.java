@@ -0,0 +1,19 @@
+package com.snowflake.plugins.udf.standin.handlers;
+
+// Handlers deployed to the stand-in by the tests
+public class Greeter {
+  public String concat(String a, String b) {
+    return a + b;
+  }
+
+  public static long add(long a, long b) {
+    return a + b;
+  }
+
+  // Procedures take the Snowpark session first
+  public String greet(Session session, String name) {
+    return "hello " + name;
+  }
+
+  public static class Session {}
+}